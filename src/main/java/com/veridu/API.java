@@ -1,5 +1,15 @@
 package com.veridu;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import com.veridu.async.Dispatchers;
+import com.veridu.batch.BatchDispatcher;
+import com.veridu.cache.ResponseCache;
+import com.veridu.circuit.CircuitBreakers;
+import com.veridu.coalesce.SingleFlight;
+import com.veridu.endpoint.AbstractEndpoint;
 import com.veridu.endpoint.Application;
 import com.veridu.endpoint.Backplane;
 import com.veridu.endpoint.Badge;
@@ -24,7 +34,11 @@ import com.veridu.endpoint.Session;
 import com.veridu.endpoint.State;
 import com.veridu.endpoint.Task;
 import com.veridu.endpoint.User;
+import com.veridu.hedge.HedgePolicy;
+import com.veridu.ratelimit.RateLimiter;
+import com.veridu.retry.RetryPolicy;
 import com.veridu.storage.Storage;
+import com.veridu.transport.Transport;
 
 public class API {
 
@@ -45,6 +59,46 @@ public class API {
      */
 
     private Storage storage = null;
+    /**
+     * Transport for every endpoint, null to use the shared pooled transport
+     */
+    private Transport transport = null;
+    /**
+     * Executor for asynchronous calls, null to use the shared one
+     */
+    private Executor executor = null;
+    /**
+     * Retry policy shared by every endpoint
+     */
+    private RetryPolicy retryPolicy = new RetryPolicy();
+    /**
+     * Circuit breakers shared by every endpoint
+     */
+    private CircuitBreakers circuitBreakers = new CircuitBreakers();
+    /**
+     * Rate limiter shared by the endpoints
+     */
+    private RateLimiter rateLimiter = new RateLimiter();
+    /**
+     * Collapses identical concurrent GET calls of every endpoint
+     */
+    private SingleFlight singleFlight = new SingleFlight();
+    /**
+     * Hedge policy and latency histograms shared by every endpoint
+     */
+    private HedgePolicy hedgePolicy = new HedgePolicy();
+    /**
+     * Response cache shared by every endpoint, disabled until enabled
+     */
+    private ResponseCache responseCache = new ResponseCache();
+    /**
+     * Folds the calls of every endpoint into Batch requests, null if off
+     */
+    private BatchDispatcher batchDispatcher = null;
+    /**
+     * Endpoints instantiated so far
+     */
+    private List<AbstractEndpoint> endpoints = new ArrayList<>();
     private Session session;
     private User user;
     private Personal personal;
@@ -69,6 +123,7 @@ public class API {
     private SSO sso;
     private State state;
     private Task task;
+    private AsyncAPI async;
 
     /**
      * Returns a new API instance
@@ -182,6 +237,270 @@ public class API {
         this.storage = storage;
     }
 
+    /**
+     * Gets the Transport
+     *
+     * @return Transport transport, null when the shared pooled transport is
+     *         used
+     */
+    public final Transport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Sets the Transport used by every endpoint, including the ones already
+     * instantiated
+     *
+     * @param transport
+     *            Transport, e.g. {@link com.veridu.transport.PooledTransport}
+     *            or {@link com.veridu.transport.LegacyTransport}
+     */
+    public final void setTransport(Transport transport) {
+        this.transport = transport;
+        for (AbstractEndpoint endpoint : this.endpoints)
+            endpoint.setTransport(transport);
+    }
+
+    /**
+     * Gets the Executor running asynchronous calls
+     *
+     * @return Executor executor, null when the shared one is used
+     */
+    public final Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets the Executor running asynchronous calls, including the ones of the
+     * endpoints already instantiated
+     *
+     * @param executor
+     *            Executor
+     */
+    public final void setExecutor(Executor executor) {
+        this.executor = executor;
+        for (AbstractEndpoint endpoint : this.endpoints)
+            endpoint.setExecutor(executor);
+    }
+
+    /**
+     * Gets the policy deciding which failed calls are retried
+     *
+     * @return RetryPolicy retryPolicy
+     */
+    public final RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Sets the policy deciding which failed calls are retried, including by
+     * the endpoints already instantiated
+     *
+     * @param retryPolicy
+     *            RetryPolicy, {@link RetryPolicy#none()} disables retries
+     */
+    public final void setRetryPolicy(RetryPolicy retryPolicy) {
+        if (retryPolicy == null)
+            throw new IllegalArgumentException("retryPolicy must not be null");
+        this.retryPolicy = retryPolicy;
+        for (AbstractEndpoint endpoint : this.endpoints)
+            endpoint.setRetryPolicy(retryPolicy);
+    }
+
+    /**
+     * Gets the circuit breakers, one per resource family; their states can be
+     * read with {@link CircuitBreakers#getStats()}
+     *
+     * @return CircuitBreakers circuitBreakers
+     */
+    public final CircuitBreakers getCircuitBreakers() {
+        return circuitBreakers;
+    }
+
+    /**
+     * Sets the circuit breakers, including for the endpoints already
+     * instantiated
+     *
+     * @param circuitBreakers
+     *            CircuitBreakers
+     */
+    public final void setCircuitBreakers(CircuitBreakers circuitBreakers) {
+        if (circuitBreakers == null)
+            throw new IllegalArgumentException("circuitBreakers must not be null");
+        this.circuitBreakers = circuitBreakers;
+        for (AbstractEndpoint endpoint : this.endpoints)
+            endpoint.setCircuitBreakers(circuitBreakers);
+    }
+
+    /**
+     * Gets the rate limiter; limits per client key and per resource family
+     * are set on it, and its buckets can be read with
+     * {@link RateLimiter#getStats()}
+     *
+     * @return RateLimiter rateLimiter
+     */
+    public final RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Sets the rate limiter, including for the endpoints already
+     * instantiated
+     *
+     * @param rateLimiter
+     *            RateLimiter
+     */
+    public final void setRateLimiter(RateLimiter rateLimiter) {
+        if (rateLimiter == null)
+            throw new IllegalArgumentException("rateLimiter must not be null");
+        this.rateLimiter = rateLimiter;
+        for (AbstractEndpoint endpoint : this.endpoints)
+            endpoint.setRateLimiter(rateLimiter);
+    }
+
+    /**
+     * Gets the SingleFlight collapsing identical concurrent GET calls; its
+     * counters can be read with {@link SingleFlight#getStats()}
+     *
+     * @return SingleFlight singleFlight
+     */
+    public final SingleFlight getSingleFlight() {
+        return singleFlight;
+    }
+
+    /**
+     * Sets the SingleFlight, including for the endpoints already
+     * instantiated
+     *
+     * @param singleFlight
+     *            SingleFlight
+     */
+    public final void setSingleFlight(SingleFlight singleFlight) {
+        if (singleFlight == null)
+            throw new IllegalArgumentException("singleFlight must not be null");
+        this.singleFlight = singleFlight;
+        for (AbstractEndpoint endpoint : this.endpoints)
+            endpoint.setSingleFlight(singleFlight);
+    }
+
+    /**
+     * Gets the hedge policy; GET calls are hedged once it is enabled, and
+     * the latency of every call is recorded in it either way, see
+     * {@link HedgePolicy#getLatencies()}
+     *
+     * @return HedgePolicy hedgePolicy
+     */
+    public final HedgePolicy getHedgePolicy() {
+        return hedgePolicy;
+    }
+
+    /**
+     * Sets the hedge policy, including for the endpoints already
+     * instantiated
+     *
+     * @param hedgePolicy
+     *            HedgePolicy
+     */
+    public final void setHedgePolicy(HedgePolicy hedgePolicy) {
+        if (hedgePolicy == null)
+            throw new IllegalArgumentException("hedgePolicy must not be null");
+        this.hedgePolicy = hedgePolicy;
+        for (AbstractEndpoint endpoint : this.endpoints)
+            endpoint.setHedgePolicy(hedgePolicy);
+    }
+
+    /**
+     * Gets the response cache; GET calls of cached families go through it
+     * once it is enabled
+     *
+     * @return ResponseCache responseCache
+     */
+    public final ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * Sets the response cache, including for the endpoints already
+     * instantiated
+     *
+     * @param responseCache
+     *            ResponseCache
+     */
+    public final void setResponseCache(ResponseCache responseCache) {
+        if (responseCache == null)
+            throw new IllegalArgumentException("responseCache must not be null");
+        this.responseCache = responseCache;
+        for (AbstractEndpoint endpoint : this.endpoints)
+            endpoint.setResponseCache(responseCache);
+    }
+
+    /**
+     * Gets the BatchDispatcher folding calls into Batch requests
+     *
+     * @return BatchDispatcher batchDispatcher, null if batching is off
+     */
+    public final BatchDispatcher getBatchDispatcher() {
+        return batchDispatcher;
+    }
+
+    /**
+     * Sets the BatchDispatcher, including for the endpoints already
+     * instantiated
+     *
+     * @param batchDispatcher
+     *            BatchDispatcher, null to send each call on its own
+     */
+    public final void setBatchDispatcher(BatchDispatcher batchDispatcher) {
+        this.batchDispatcher = batchDispatcher;
+        for (AbstractEndpoint endpoint : this.endpoints)
+            endpoint.setBatchDispatcher(batchDispatcher);
+    }
+
+    /**
+     * Folds unsigned calls made within a few milliseconds of each other into
+     * Batch requests sent by {@link #getBatch()}
+     *
+     * @return BatchDispatcher, to tune its window and batch size
+     */
+    public final BatchDispatcher useBatching() {
+        BatchDispatcher dispatcher = new BatchDispatcher(getBatch());
+        setBatchDispatcher(dispatcher);
+        return dispatcher;
+    }
+
+    /**
+     * Runs asynchronous calls on one virtual thread per call (Java 21 or
+     * newer), see {@link com.veridu.async.Dispatchers#virtual()}
+     *
+     * @throws UnsupportedOperationException
+     *             when the JVM is older than Java 21
+     */
+    public final void useVirtualThreads() {
+        setExecutor(Dispatchers.virtual());
+    }
+
+    /**
+     * Applies the client settings to a new endpoint
+     *
+     * @param endpoint
+     *            AbstractEndpoint
+     *
+     * @return endpoint
+     */
+    private <T extends AbstractEndpoint> T configure(T endpoint) {
+        endpoint.setTransport(this.transport);
+        endpoint.setExecutor(this.executor);
+        endpoint.setRetryPolicy(this.retryPolicy);
+        endpoint.setCircuitBreakers(this.circuitBreakers);
+        endpoint.setRateLimiter(this.rateLimiter);
+        endpoint.setSingleFlight(this.singleFlight);
+        endpoint.setHedgePolicy(this.hedgePolicy);
+        endpoint.setResponseCache(this.responseCache);
+        endpoint.setBatchDispatcher(this.batchDispatcher);
+        this.endpoints.add(endpoint);
+        return endpoint;
+    }
+
     /**
      * Instantiates Application
      *
@@ -192,11 +511,24 @@ public class API {
      */
     public Application getApplication() {
         if (!(this.application instanceof Application)) {
-            this.application = new Application(this.key, this.secret, this.version, this.storage);
+            this.application = configure(new Application(this.key, this.secret, this.version, this.storage));
         }
         return this.application;
     }
 
+    /**
+     * Instantiates AsyncAPI
+     *
+     * @see com.veridu.AsyncAPI
+     * @return async AsyncAPI
+     */
+    public AsyncAPI getAsync() {
+        if (!(this.async instanceof AsyncAPI)) {
+            this.async = new AsyncAPI(this);
+        }
+        return this.async;
+    }
+
     /**
      * Instantiates Backplane
      *
@@ -207,7 +539,7 @@ public class API {
      */
     public Backplane getBackplane() {
         if (!(this.backplane instanceof Backplane)) {
-            this.backplane = new Backplane(this.key, this.secret, this.version, this.storage);
+            this.backplane = configure(new Backplane(this.key, this.secret, this.version, this.storage));
         }
         return this.backplane;
     }
@@ -221,7 +553,7 @@ public class API {
      */
     public Badge getBadge() {
         if (!(this.badge instanceof Badge)) {
-            this.badge = new Badge(this.key, this.secret, this.version, this.storage);
+            this.badge = configure(new Badge(this.key, this.secret, this.version, this.storage));
         }
         return this.badge;
     }
@@ -235,7 +567,7 @@ public class API {
      */
     public Batch getBatch() {
         if (!(this.batch instanceof Batch)) {
-            this.batch = new Batch(this.key, this.secret, this.version, this.storage);
+            this.batch = configure(new Batch(this.key, this.secret, this.version, this.storage));
         }
         return this.batch;
     }
@@ -250,7 +582,7 @@ public class API {
      */
     public Certificate getCertificate() {
         if (!(this.certificate instanceof Certificate)) {
-            this.certificate = new Certificate(this.key, this.secret, this.version, this.storage);
+            this.certificate = configure(new Certificate(this.key, this.secret, this.version, this.storage));
         }
         return this.certificate;
     }
@@ -264,7 +596,7 @@ public class API {
      */
     public Check getCheck() {
         if (!(this.check instanceof Check)) {
-            this.check = new Check(this.key, this.secret, this.version, this.storage);
+            this.check = configure(new Check(this.key, this.secret, this.version, this.storage));
         }
         return this.check;
     }
@@ -278,7 +610,7 @@ public class API {
      */
     public Clone getClone() {
         if (!(this.clone instanceof Clone)) {
-            this.clone = new Clone(this.key, this.secret, this.version, this.storage);
+            this.clone = configure(new Clone(this.key, this.secret, this.version, this.storage));
         }
         return this.clone;
     }
@@ -293,7 +625,7 @@ public class API {
      */
     public Credential getCredential() {
         if (!(this.credential instanceof Credential)) {
-            this.credential = new Credential(this.key, this.secret, this.version, this.storage);
+            this.credential = configure(new Credential(this.key, this.secret, this.version, this.storage));
         }
         return this.credential;
     }
@@ -308,7 +640,7 @@ public class API {
      */
     public Details getDetails() {
         if (!(this.details instanceof Details)) {
-            this.details = new Details(this.key, this.secret, this.version, this.storage);
+            this.details = configure(new Details(this.key, this.secret, this.version, this.storage));
         }
         return this.details;
     }
@@ -322,7 +654,7 @@ public class API {
      */
     public Facts getFacts() {
         if (!(this.facts instanceof Facts)) {
-            this.facts = new Facts(this.key, this.secret, this.version, this.storage);
+            this.facts = configure(new Facts(this.key, this.secret, this.version, this.storage));
         }
         return this.facts;
     }
@@ -336,7 +668,7 @@ public class API {
      */
     public Hook getHook() {
         if (!(this.hook instanceof Hook)) {
-            this.hook = new Hook(this.key, this.secret, this.version, this.storage);
+            this.hook = configure(new Hook(this.key, this.secret, this.version, this.storage));
         }
         return this.hook;
     }
@@ -351,7 +683,7 @@ public class API {
      */
     public Lookup getLookup() {
         if (!(this.lookup instanceof Lookup)) {
-            this.lookup = new Lookup(this.key, this.secret, this.version, this.storage);
+            this.lookup = configure(new Lookup(this.key, this.secret, this.version, this.storage));
         }
         return this.lookup;
     }
@@ -365,7 +697,7 @@ public class API {
      */
     public OTP getOTP() {
         if (!(this.otp instanceof OTP)) {
-            this.otp = new OTP(this.key, this.secret, this.version, this.storage);
+            this.otp = configure(new OTP(this.key, this.secret, this.version, this.storage));
         }
         return this.otp;
     }
@@ -380,7 +712,7 @@ public class API {
      */
     public Password getPassword() {
         if (!(this.password instanceof Password)) {
-            this.password = new Password(this.key, this.secret, this.version, this.storage);
+            this.password = configure(new Password(this.key, this.secret, this.version, this.storage));
         }
         return this.password;
     }
@@ -395,7 +727,7 @@ public class API {
      */
     public Personal getPersonal() {
         if (!(this.personal instanceof Personal)) {
-            this.personal = new Personal(this.key, this.secret, this.version, this.storage);
+            this.personal = configure(new Personal(this.key, this.secret, this.version, this.storage));
         }
         return this.personal;
 
@@ -411,7 +743,7 @@ public class API {
      */
     public Profile getProfile() {
         if (!(this.profile instanceof Profile)) {
-            this.profile = new Profile(this.key, this.secret, this.version, this.storage);
+            this.profile = configure(new Profile(this.key, this.secret, this.version, this.storage));
         }
         return this.profile;
     }
@@ -426,7 +758,7 @@ public class API {
      */
     public Provider getProvider() {
         if (!(this.provider instanceof Provider)) {
-            this.provider = new Provider(this.key, this.secret, this.version, this.storage);
+            this.provider = configure(new Provider(this.key, this.secret, this.version, this.storage));
         }
         return this.provider;
 
@@ -441,7 +773,7 @@ public class API {
      */
     public Raw getRaw() {
         if (!(this.raw instanceof Raw)) {
-            this.raw = new Raw(this.key, this.secret, this.version, this.storage);
+            this.raw = configure(new Raw(this.key, this.secret, this.version, this.storage));
         }
         return this.raw;
     }
@@ -456,7 +788,7 @@ public class API {
      */
     public Request getRequest() {
         if (!(this.request instanceof Request)) {
-            this.request = new Request(this.key, this.secret, this.version, this.storage);
+            this.request = configure(new Request(this.key, this.secret, this.version, this.storage));
         }
         return this.request;
     }
@@ -471,7 +803,7 @@ public class API {
      */
     public Session getSession() {
         if (!(this.session instanceof Session)) {
-            this.session = new Session(this.key, this.secret, this.version, this.storage);
+            this.session = configure(new Session(this.key, this.secret, this.version, this.storage));
         }
         return this.session;
     }
@@ -485,7 +817,7 @@ public class API {
      */
     public SSO getSSO() {
         if (!(this.sso instanceof SSO)) {
-            this.sso = new SSO(this.key, this.secret, this.version, this.storage);
+            this.sso = configure(new SSO(this.key, this.secret, this.version, this.storage));
         }
         return this.sso;
     }
@@ -499,7 +831,7 @@ public class API {
      */
     public State getState() {
         if (!(this.state instanceof State)) {
-            this.state = new State(this.key, this.secret, this.version, this.storage);
+            this.state = configure(new State(this.key, this.secret, this.version, this.storage));
         }
         return this.state;
     }
@@ -513,7 +845,7 @@ public class API {
      */
     public Task getTask() {
         if (!(this.task instanceof Task)) {
-            this.task = new Task(this.key, this.secret, this.version, this.storage);
+            this.task = configure(new Task(this.key, this.secret, this.version, this.storage));
         }
         return this.task;
     }
@@ -527,7 +859,7 @@ public class API {
      */
     public User getUser() {
         if (!(this.user instanceof User)) {
-            this.user = new User(this.key, this.secret, this.version, this.storage);
+            this.user = configure(new User(this.key, this.secret, this.version, this.storage));
         }
         return this.user;
     }
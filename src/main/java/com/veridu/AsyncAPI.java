@@ -0,0 +1,66 @@
+package com.veridu;
+
+import java.util.concurrent.Callable;
+
+import com.veridu.async.AsyncResult;
+import com.veridu.async.Dispatchers;
+
+/**
+ * Class AsyncAPI runs any endpoint call of an API without blocking the caller,
+ * on the API's executor
+ *
+ * <pre>
+ * AsyncResult&lt;JSONObject&gt; profile = api.getAsync().submit(new Callable&lt;JSONObject&gt;() {
+ *     public JSONObject call() throws Exception {
+ *         return api.getProfile().retrieve(Profile.FILTER_ALL, username);
+ *     }
+ * });
+ * </pre>
+ *
+ * On Java 8 or newer the callable can be a lambda:
+ * {@code api.getAsync().submit(() -> api.getUser().getAllAttributeScores(username))}.
+ *
+ * @version 1.0
+ */
+public class AsyncAPI {
+
+    /**
+     * API whose endpoints are called
+     */
+    private final API api;
+
+    /**
+     * Class Constructor
+     *
+     * @param api
+     *            API
+     */
+    public AsyncAPI(API api) {
+        this.api = api;
+    }
+
+    /**
+     * Gets the wrapped API
+     *
+     * @return API api
+     */
+    public final API getApi() {
+        return this.api;
+    }
+
+    /**
+     * Runs a call on the API's executor
+     *
+     * @param call
+     *            Callable, usually one endpoint method call
+     *
+     * @return AsyncResult completed with the call's result or failed with the
+     *         exception it threw
+     */
+    public <T> AsyncResult<T> submit(Callable<T> call) {
+        if (this.api.getExecutor() == null)
+            return Dispatchers.submit(Dispatchers.shared(), call);
+        return Dispatchers.submit(this.api.getExecutor(), call);
+    }
+
+}
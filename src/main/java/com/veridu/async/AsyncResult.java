@@ -0,0 +1,222 @@
+package com.veridu.async;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class AsyncResult is a Future completed by the SDK, with callbacks run once
+ * the outcome is known
+ *
+ * @version 1.0
+ */
+public class AsyncResult<T> implements Future<T> {
+
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final AtomicBoolean settled = new AtomicBoolean(false);
+    private final ConcurrentLinkedQueue<Callback<? super T>> callbacks = new ConcurrentLinkedQueue<>();
+    private volatile T result = null;
+    private volatile Exception exception = null;
+    private volatile boolean cancelled = false;
+    private volatile Future<?> task = null;
+
+    /**
+     * Returns a result that already succeeded
+     *
+     * @param result
+     *            Result
+     *
+     * @return AsyncResult
+     */
+    public static <T> AsyncResult<T> completed(T result) {
+        AsyncResult<T> async = new AsyncResult<>();
+        async.complete(result);
+        return async;
+    }
+
+    /**
+     * Returns a result that already failed
+     *
+     * @param exception
+     *            Failure
+     *
+     * @return AsyncResult
+     */
+    public static <T> AsyncResult<T> failed(Exception exception) {
+        AsyncResult<T> async = new AsyncResult<>();
+        async.fail(exception);
+        return async;
+    }
+
+    /**
+     * Combines several results, e.g. calls fanned out to different resources
+     *
+     * @param results
+     *            List of AsyncResult
+     *
+     * @return AsyncResult completed with every result, in order, or failed
+     *         with the first failure
+     */
+    public static <T> AsyncResult<List<T>> all(final List<? extends AsyncResult<? extends T>> results) {
+        final AsyncResult<List<T>> all = new AsyncResult<>();
+        if (results.isEmpty()) {
+            all.complete(new ArrayList<T>());
+            return all;
+        }
+        final AtomicInteger pending = new AtomicInteger(results.size());
+        for (AsyncResult<? extends T> result : results) {
+            result.addCallback(new Callback<Object>() {
+                @Override
+                public void onSuccess(Object value) {
+                    if (pending.decrementAndGet() > 0)
+                        return;
+                    List<T> values = new ArrayList<>(results.size());
+                    for (AsyncResult<? extends T> done : results)
+                        values.add(done.result);
+                    all.complete(values);
+                }
+
+                @Override
+                public void onFailure(Exception exception) {
+                    all.fail(exception);
+                }
+            });
+        }
+        return all;
+    }
+
+    /**
+     * Completes with a result
+     *
+     * @param result
+     *            Result
+     *
+     * @return true if this call settled the outcome
+     */
+    public boolean complete(T result) {
+        return settle(result, null, false);
+    }
+
+    /**
+     * Completes with a failure
+     *
+     * @param exception
+     *            Failure
+     *
+     * @return true if this call settled the outcome
+     */
+    public boolean fail(Exception exception) {
+        return settle(null, exception, false);
+    }
+
+    /**
+     * Registers a callback, run immediately if the outcome is already known
+     *
+     * @param callback
+     *            Callback
+     *
+     * @return self
+     */
+    public AsyncResult<T> addCallback(Callback<? super T> callback) {
+        this.callbacks.add(callback);
+        if (isDone())
+            runCallbacks();
+        return this;
+    }
+
+    /**
+     * Binds the task computing this result so cancel() can interrupt it
+     *
+     * @param task
+     *            Future
+     */
+    public void setTask(Future<?> task) {
+        this.task = task;
+        if (this.cancelled)
+            task.cancel(true);
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (!settle(null, new CancellationException(), true))
+            return false;
+        Future<?> task = this.task;
+        if (task != null)
+            task.cancel(mayInterruptIfRunning);
+        return true;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return this.cancelled;
+    }
+
+    @Override
+    public boolean isDone() {
+        return this.done.getCount() == 0;
+    }
+
+    /**
+     * Checks if the call failed
+     *
+     * @return boolean
+     */
+    public boolean isFailed() {
+        return isDone() && (this.exception != null);
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        this.done.await();
+        return report();
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!this.done.await(timeout, unit))
+            throw new TimeoutException();
+        return report();
+    }
+
+    private boolean settle(T result, Exception exception, boolean cancelled) {
+        if (!this.settled.compareAndSet(false, true))
+            return false;
+        this.result = result;
+        this.exception = exception;
+        this.cancelled = cancelled;
+        this.done.countDown();
+        runCallbacks();
+        return true;
+    }
+
+    private T report() throws ExecutionException {
+        if (this.exception == null)
+            return this.result;
+        if (this.exception instanceof CancellationException)
+            throw (CancellationException) this.exception;
+        throw new ExecutionException(this.exception);
+    }
+
+    private void runCallbacks() {
+        Callback<? super T> callback;
+        while ((callback = this.callbacks.poll()) != null) {
+            try {
+                if (this.exception == null)
+                    callback.onSuccess(this.result);
+                else
+                    callback.onFailure(this.exception);
+            } catch (RuntimeException e) {
+                // a failing callback must not prevent the others from running
+            }
+        }
+    }
+
+}
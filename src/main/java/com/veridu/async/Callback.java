@@ -0,0 +1,26 @@
+package com.veridu.async;
+
+/**
+ * Interface Callback receives the outcome of an asynchronous call
+ *
+ * @version 1.0
+ */
+public interface Callback<T> {
+
+    /**
+     * Called when the call succeeds
+     *
+     * @param result
+     *            Result
+     */
+    public void onSuccess(T result);
+
+    /**
+     * Called when the call fails
+     *
+     * @param exception
+     *            Failure, usually a {@link com.veridu.exceptions.SDKException}
+     */
+    public void onFailure(Exception exception);
+
+}
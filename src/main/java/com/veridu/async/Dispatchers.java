@@ -0,0 +1,167 @@
+package com.veridu.async;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class Dispatchers runs blocking SDK calls off the caller's thread
+ *
+ * @version 1.0
+ */
+public class Dispatchers {
+
+    /**
+     * Threads of the shared executor
+     */
+    private static final int SHARED_THREADS = 64;
+
+    /**
+     * Executor used when none was configured
+     */
+    private static final ExecutorService SHARED = createShared();
+
+    /**
+     * Single daemon thread running delayed SDK work: rate-limited and
+     * batched calls waiting for their turn
+     */
+    private static final ScheduledThreadPoolExecutor TIMER = createTimer();
+
+    /**
+     * Returns the executor shared by every client that was not given one: up
+     * to 64 daemon threads, idle ones released after a minute
+     *
+     * @return ExecutorService
+     */
+    public static ExecutorService shared() {
+        return SHARED;
+    }
+
+    /**
+     * Checks whether the running JVM has virtual threads (Java 21 or newer)
+     *
+     * @return boolean
+     */
+    public static boolean isVirtualAvailable() {
+        try {
+            java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns an executor starting one virtual thread per call. Blocked calls
+     * then park their virtual thread instead of holding a platform thread, so
+     * tens of thousands of calls can be in flight; the connection pool of the
+     * transport still bounds how many reach the network at once.
+     *
+     * @return ExecutorService
+     *
+     * @throws UnsupportedOperationException
+     *             when the JVM is older than Java 21
+     */
+    public static ExecutorService virtual() {
+        try {
+            Method factory = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21");
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new UnsupportedOperationException("Virtual thread executor could not be created: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Runs a call on an executor
+     *
+     * @param executor
+     *            Executor
+     * @param call
+     *            Callable
+     *
+     * @return AsyncResult completed with the call's outcome
+     */
+    public static <T> AsyncResult<T> submit(Executor executor, final Callable<T> call) {
+        final AsyncResult<T> result = new AsyncResult<>();
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                if (result.isDone())
+                    return;
+                try {
+                    result.complete(call.call());
+                } catch (Exception e) {
+                    result.fail(e);
+                }
+            }
+        };
+        try {
+            if (executor instanceof ExecutorService)
+                result.setTask(((ExecutorService) executor).submit(task));
+            else
+                executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            result.fail(e);
+        }
+        return result;
+    }
+
+    /**
+     * Runs a short task after a delay on the shared timer thread; tasks
+     * making calls must hand them to an executor
+     *
+     * @param task
+     *            Runnable
+     * @param delay
+     *            Delay
+     * @param unit
+     *            TimeUnit of the delay
+     *
+     * @return ScheduledFuture cancelling the task
+     */
+    public static ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+        return TIMER.schedule(task, delay, unit);
+    }
+
+    private static ScheduledThreadPoolExecutor createTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "veridu-timer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+
+    private static ExecutorService createShared() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(SHARED_THREADS, SHARED_THREADS, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "veridu-async-" + this.count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+}
@@ -0,0 +1,269 @@
+package com.veridu.batch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import com.veridu.async.AsyncResult;
+import com.veridu.async.Callback;
+import com.veridu.async.Dispatchers;
+import com.veridu.endpoint.Batch;
+import com.veridu.exceptions.InvalidResponse;
+import com.veridu.exceptions.SDKException;
+
+/**
+ * Class BatchBuilder records endpoint calls as the jobs of one Batch request.
+ * Each recorded call returns the result it will settle, typed as the
+ * endpoint method returns it:
+ *
+ * <pre>
+ * BatchBuilder builder = api.getBatch().builder();
+ * AsyncResult&lt;JSONObject&gt; profile = builder.profile().retrieve(Profile.FILTER_ALL, "user");
+ * AsyncResult&lt;String&gt; score = builder.user().attributeScore("email", "user");
+ * builder.submit();
+ * </pre>
+ *
+ * A job the API failed fails its own result only; a call rejected while
+ * recording (e.g. an invalid username) fails its result and is not sent.
+ * Calls may be recorded and submitted from any thread. Batches are sent on
+ * threads of the builders' own, never on the executor of the calls waiting
+ * for them.
+ *
+ * @version 1.0
+ */
+public class BatchBuilder {
+
+    /**
+     * Sends the batches of builders that were not given an executor
+     */
+    private static final Executor SHARED_EXECUTOR = BatchDispatcher.createExecutor();
+
+    private final Batch batch;
+    private final ReentrantLock lock = new ReentrantLock();
+    private List<Job<?>> jobs = new ArrayList<>();
+    private volatile Executor executor = SHARED_EXECUTOR;
+    private final ProfileJobs profile = new ProfileJobs(this);
+    private final UserJobs user = new UserJobs(this);
+
+    /**
+     * Class constructor
+     *
+     * @param batch
+     *            Batch endpoint sending the jobs, in the session of the calls
+     */
+    public BatchBuilder(Batch batch) {
+        this.batch = batch;
+    }
+
+    /**
+     * Records Profile Resource calls
+     *
+     * @return ProfileJobs
+     */
+    public ProfileJobs profile() {
+        return this.profile;
+    }
+
+    /**
+     * Records User Resource calls
+     *
+     * @return UserJobs
+     */
+    public UserJobs user() {
+        return this.user;
+    }
+
+    /**
+     * Gets the number of jobs recorded since the last submit
+     *
+     * @return int
+     */
+    public int size() {
+        this.lock.lock();
+        try {
+            return this.jobs.size();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Sends the recorded jobs as one batch request on the builder's
+     * executor; the builder is empty again afterwards. A batch request that
+     * fails as a whole, or that the executor rejects, fails every job it
+     * carried.
+     */
+    public void submit() {
+        final List<Job<?>> jobs;
+        this.lock.lock();
+        try {
+            jobs = this.jobs;
+            this.jobs = new ArrayList<>();
+        } finally {
+            this.lock.unlock();
+        }
+        if (jobs.isEmpty())
+            return;
+        final List<JSONObject> json = new ArrayList<>(jobs.size());
+        for (Job<?> job : jobs)
+            json.add(job.json);
+        Dispatchers.submit(this.executor, new Callable<JSONArray>() {
+            @Override
+            public JSONArray call() throws Exception {
+                return BatchBuilder.this.batch.request(json);
+            }
+        }).addCallback(new Callback<JSONArray>() {
+            @Override
+            public void onSuccess(JSONArray results) {
+                for (int i = 0; i < jobs.size(); i++)
+                    jobs.get(i).settle((results != null) && (i < results.size()) ? results.get(i) : null);
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                for (Job<?> job : jobs)
+                    job.result.fail(exception);
+            }
+        });
+    }
+
+    /**
+     * Records a job
+     *
+     * @param method
+     *            String
+     * @param resource
+     *            String, e.g. formatted from an endpoint's template
+     * @param data
+     *            Parameters, null for none
+     * @param reader
+     *            Reader turning the job's response into its result
+     *
+     * @return AsyncResult settled once the batch returns
+     */
+    @SuppressWarnings("unchecked")
+    <T> AsyncResult<T> add(String method, String resource, Map<String, String> data, Reader<T> reader) {
+        JSONObject json = new JSONObject();
+        json.put("method", method);
+        json.put("resource", resource.startsWith("/") ? resource : "/" + resource);
+        if ((data != null) && !data.isEmpty()) {
+            JSONObject fields = new JSONObject();
+            fields.putAll(data);
+            json.put("data", fields);
+        }
+        Job<T> job = new Job<>(json, reader);
+        this.lock.lock();
+        try {
+            this.jobs.add(job);
+        } finally {
+            this.lock.unlock();
+        }
+        return job.result;
+    }
+
+    /**
+     * Gets the executor sending the batches
+     *
+     * @return Executor
+     */
+    public Executor getExecutor() {
+        return this.executor;
+    }
+
+    /**
+     * Sets the executor sending the batches; by default four daemon threads
+     * shared by the builders, with up to 256 batches queued. It must not be
+     * the executor of the calls waiting for batches.
+     *
+     * @param executor
+     *            Executor
+     */
+    public void setExecutor(Executor executor) {
+        if (executor == null)
+            throw new IllegalArgumentException("executor must not be null");
+        this.executor = executor;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BatchBuilder[jobs=%d]", size());
+    }
+
+    /**
+     * Turns a job's response into the value its endpoint method returns
+     */
+    abstract static class Reader<T> {
+
+        /**
+         * The whole response
+         */
+        static final Reader<JSONObject> RESPONSE = new Reader<JSONObject>() {
+            @Override
+            JSONObject read(JSONObject json) {
+                return json;
+            }
+        };
+
+        /**
+         * An object member of the response
+         */
+        static Reader<JSONObject> member(final String name) {
+            return new Reader<JSONObject>() {
+                @Override
+                JSONObject read(JSONObject json) {
+                    return (JSONObject) json.get(name);
+                }
+            };
+        }
+
+        /**
+         * A member of the response as a String
+         */
+        static Reader<String> string(final String name) {
+            return new Reader<String>() {
+                @Override
+                String read(JSONObject json) {
+                    return json.get(name).toString();
+                }
+            };
+        }
+
+        abstract T read(JSONObject json);
+    }
+
+    /**
+     * A recorded call
+     */
+    private static final class Job<T> {
+        final JSONObject json;
+        final Reader<T> reader;
+        final AsyncResult<T> result = new AsyncResult<>();
+
+        Job(JSONObject json, Reader<T> reader) {
+            this.json = json;
+            this.reader = reader;
+        }
+
+        void settle(Object entry) {
+            T value;
+            try {
+                value = this.reader.read(BatchDispatcher.check(entry));
+            } catch (SDKException e) {
+                this.result.fail(e);
+                return;
+            } catch (RuntimeException e) {
+                // a member missing or of another type
+                this.result.fail(new InvalidResponse());
+                return;
+            }
+            this.result.complete(value);
+        }
+    }
+
+}
@@ -0,0 +1,435 @@
+package com.veridu.batch;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import com.veridu.async.AsyncResult;
+import com.veridu.async.Callback;
+import com.veridu.async.Dispatchers;
+import com.veridu.endpoint.Batch;
+import com.veridu.exceptions.APIError;
+import com.veridu.exceptions.InvalidResponse;
+import com.veridu.exceptions.SDKException;
+
+/**
+ * Class BatchDispatcher folds independent API calls into Batch requests.
+ * Calls are queued as jobs; the queue is sent as one batch/ POST once it
+ * holds maxJobs jobs or when the window opened by its first job closes,
+ * and each job's entry of the batch array settles the caller's result.
+ *
+ * A job the API failed fails its own result with an APIError; a batch
+ * request that fails as a whole fails every job it carried.
+ *
+ * Batches are sent on the dispatcher's own threads, never on the executor
+ * of the calls waiting for them, so a call made on that executor cannot
+ * starve it.
+ *
+ * @version 1.0
+ */
+public class BatchDispatcher {
+
+    private final Batch batch;
+    private final ReentrantLock lock = new ReentrantLock();
+    private List<Job> pending = new ArrayList<>();
+    private ScheduledFuture<?> timer = null;
+
+    /**
+     * Time the first queued job waits for others, in milliseconds
+     */
+    private volatile long window = 5;
+
+    /**
+     * Jobs sent in one batch at most
+     */
+    private volatile int maxJobs = 20;
+
+    /**
+     * Longest wait of a blocking call for its batch, in milliseconds
+     */
+    private volatile long timeout = 30000;
+
+    /**
+     * Sends the batches
+     */
+    private volatile Executor executor = createExecutor();
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong jobs = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+
+    /**
+     * Class constructor
+     *
+     * @param batch
+     *            Batch endpoint sending the jobs, in the session of the calls
+     */
+    public BatchDispatcher(Batch batch) {
+        this.batch = batch;
+    }
+
+    /**
+     * Queues a call
+     *
+     * @param method
+     *            String
+     * @param resource
+     *            String
+     * @param data
+     *            Form-encoded parameters, as fetch takes them
+     *
+     * @return AsyncResult completed with the job's response or failed with
+     *         the exception fetch would throw
+     */
+    public AsyncResult<JSONObject> submit(String method, String resource, String data) {
+        Job job;
+        try {
+            job = new Job(method, resource, data);
+        } catch (UnsupportedEncodingException e) {
+            return AsyncResult.failed(e);
+        }
+        List<Job> full = null;
+        this.lock.lock();
+        try {
+            this.pending.add(job);
+            if (this.pending.size() >= this.maxJobs) {
+                full = take();
+            } else if (this.pending.size() == 1) {
+                this.timer = Dispatchers.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        flush();
+                    }
+                }, this.window, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        if (full != null)
+            send(full);
+        return job.result;
+    }
+
+    /**
+     * Checks if no job is queued, so a call made now would open the window
+     * and wait it out alone
+     *
+     * @return boolean
+     */
+    public boolean isIdle() {
+        this.lock.lock();
+        try {
+            return this.pending.isEmpty();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Sends the queued jobs now
+     */
+    public void flush() {
+        List<Job> jobs;
+        this.lock.lock();
+        try {
+            jobs = take();
+        } finally {
+            this.lock.unlock();
+        }
+        if (!jobs.isEmpty())
+            send(jobs);
+    }
+
+    /**
+     * Takes the queued jobs, lock held
+     *
+     * @return jobs
+     */
+    private List<Job> take() {
+        List<Job> jobs = this.pending;
+        this.pending = new ArrayList<>();
+        if (this.timer != null) {
+            this.timer.cancel(false);
+            this.timer = null;
+        }
+        return jobs;
+    }
+
+    /**
+     * Sends jobs as one batch on the dispatcher's executor
+     *
+     * @param jobs
+     *            List of Job
+     */
+    private void send(final List<Job> jobs) {
+        final List<JSONObject> json = new ArrayList<>(jobs.size());
+        for (Job job : jobs)
+            json.add(job.json);
+        this.batches.incrementAndGet();
+        this.jobs.addAndGet(jobs.size());
+        Dispatchers.submit(this.executor, new Callable<JSONArray>() {
+            @Override
+            public JSONArray call() throws Exception {
+                return BatchDispatcher.this.batch.request(json);
+            }
+        }).addCallback(new Callback<JSONArray>() {
+            @Override
+            public void onSuccess(JSONArray results) {
+                for (int i = 0; i < jobs.size(); i++)
+                    settle(jobs.get(i).result, (results != null) && (i < results.size()) ? results.get(i) : null);
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                BatchDispatcher.this.failedBatches.incrementAndGet();
+                for (Job job : jobs)
+                    job.result.fail(exception);
+            }
+        });
+    }
+
+    /**
+     * Settles the result of a job with its entry of the batch array
+     *
+     * @param result
+     *            AsyncResult of the job
+     * @param entry
+     *            Entry of the batch array, null if missing
+     */
+    static void settle(AsyncResult<JSONObject> result, Object entry) {
+        try {
+            result.complete(check(entry));
+        } catch (SDKException e) {
+            result.fail(e);
+        }
+    }
+
+    /**
+     * Checks an entry of the batch array
+     *
+     * @param entry
+     *            Entry of the batch array, null if missing
+     *
+     * @return JSONObject response of the job
+     *
+     * @throws InvalidResponse
+     *             Exception
+     * @throws APIError
+     *             Exception
+     */
+    static JSONObject check(Object entry) throws InvalidResponse, APIError {
+        if (!(entry instanceof JSONObject))
+            throw new InvalidResponse();
+        JSONObject json = (JSONObject) entry;
+        if (Boolean.FALSE.equals(json.get("status"))) {
+            Object error = json.get("error");
+            throw APIError.from(error instanceof JSONObject ? (JSONObject) error : null);
+        }
+        return json;
+    }
+
+    /**
+     * Gets the number of batch requests sent
+     *
+     * @return batches
+     */
+    public long getBatches() {
+        return this.batches.get();
+    }
+
+    /**
+     * Gets the number of jobs sent
+     *
+     * @return jobs
+     */
+    public long getJobs() {
+        return this.jobs.get();
+    }
+
+    /**
+     * Gets the number of batch requests that failed as a whole
+     *
+     * @return failedBatches
+     */
+    public long getFailedBatches() {
+        return this.failedBatches.get();
+    }
+
+    /**
+     * Gets the time the first queued job waits for others
+     *
+     * @return window in milliseconds
+     */
+    public long getWindow() {
+        return this.window;
+    }
+
+    /**
+     * Sets the time the first queued job waits for others
+     *
+     * @param window
+     *            milliseconds
+     */
+    public void setWindow(long window) {
+        if (window < 0)
+            throw new IllegalArgumentException("window must not be negative");
+        this.window = window;
+    }
+
+    /**
+     * Gets the number of jobs sent in one batch at most
+     *
+     * @return maxJobs
+     */
+    public int getMaxJobs() {
+        return this.maxJobs;
+    }
+
+    /**
+     * Sets the number of jobs sent in one batch at most
+     *
+     * @param maxJobs
+     *            int
+     */
+    public void setMaxJobs(int maxJobs) {
+        if (maxJobs < 1)
+            throw new IllegalArgumentException("maxJobs must be positive");
+        this.maxJobs = maxJobs;
+    }
+
+    /**
+     * Gets the longest wait of a blocking call for its batch
+     *
+     * @return timeout in milliseconds
+     */
+    public long getTimeout() {
+        return this.timeout;
+    }
+
+    /**
+     * Sets the longest wait of a blocking call for its batch; a call waiting
+     * longer fails with RequestFailed
+     *
+     * @param timeout
+     *            milliseconds
+     */
+    public void setTimeout(long timeout) {
+        if (timeout <= 0)
+            throw new IllegalArgumentException("timeout must be positive");
+        this.timeout = timeout;
+    }
+
+    /**
+     * Gets the executor sending the batches
+     *
+     * @return Executor
+     */
+    public Executor getExecutor() {
+        return this.executor;
+    }
+
+    /**
+     * Sets the executor sending the batches; by default four daemon threads
+     * of the dispatcher's own, with up to 256 batches queued. A batch it
+     * rejects fails every job it carried. It must not be the executor of
+     * the calls waiting for batches.
+     *
+     * @param executor
+     *            Executor
+     */
+    public void setExecutor(Executor executor) {
+        if (executor == null)
+            throw new IllegalArgumentException("executor must not be null");
+        this.executor = executor;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BatchDispatcher[window=%dms, maxJobs=%d, batches=%d, jobs=%d, failed=%d]", this.window,
+                this.maxJobs, this.batches.get(), this.jobs.get(), this.failedBatches.get());
+    }
+
+    /**
+     * Builds the job of a call
+     *
+     * @param method
+     *            String
+     * @param resource
+     *            String
+     * @param data
+     *            Form-encoded parameters
+     *
+     * @return JSONObject with method, resource and data
+     *
+     * @throws UnsupportedEncodingException
+     *             Exception
+     */
+    @SuppressWarnings("unchecked")
+    static JSONObject job(String method, String resource, String data) throws UnsupportedEncodingException {
+        JSONObject job = new JSONObject();
+        job.put("method", method);
+        job.put("resource", resource.startsWith("/") ? resource : "/" + resource);
+        if ((data != null) && !data.isEmpty()) {
+            JSONObject fields = new JSONObject();
+            for (String pair : data.split("&")) {
+                if (pair.isEmpty())
+                    continue;
+                int equals = pair.indexOf('=');
+                String name = equals < 0 ? pair : pair.substring(0, equals);
+                String value = equals < 0 ? "" : pair.substring(equals + 1);
+                fields.put(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+            }
+            job.put("data", fields);
+        }
+        return job;
+    }
+
+    /**
+     * Creates an executor of four daemon threads sending batches, with up to
+     * 256 batches queued
+     *
+     * @return Executor
+     */
+    static Executor createExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(4, 4, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(256), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "veridu-batch-" + this.count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * A queued call
+     */
+    private static final class Job {
+        final JSONObject json;
+        final AsyncResult<JSONObject> result = new AsyncResult<>();
+
+        Job(String method, String resource, String data) throws UnsupportedEncodingException {
+            this.json = job(method, resource, data);
+        }
+    }
+
+}
@@ -0,0 +1,201 @@
+package com.veridu.batch;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Class BatchSizer adapts the chunk size and concurrency of bulk batch runs
+ * to how the API copes, AIMD style. Every chunk that returns in time grows
+ * the chunk size by chunkStep; once chunks are at their largest, each round
+ * of successful chunks adds one to the concurrency. A chunk that fails as a
+ * whole or returns after targetLatency halves both, once per round: chunks
+ * sent before the last decrease do not decrease them again.
+ *
+ * Both values stay within the bounds given; {@link #getStats()} publishes
+ * the operating point.
+ *
+ * @version 1.0
+ */
+public class BatchSizer {
+
+    /**
+     * Weight of the last chunk in the latency and error rate averages
+     */
+    private static final double ALPHA = 0.2;
+
+    private final int minChunkSize;
+    private final int maxChunkSize;
+    private final int minConcurrency;
+    private final int maxConcurrency;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private volatile int chunkSize;
+    private volatile int concurrency;
+    private int successes = 0;
+    private long lastDecrease;
+    private double latency = 0;
+    private double errorRate = 0;
+    private long chunks = 0;
+    private long increases = 0;
+    private long decreases = 0;
+
+    /**
+     * Latency above which a chunk counts as a sign of overload, in
+     * milliseconds
+     */
+    private volatile long targetLatency = 5000;
+
+    /**
+     * Jobs added to the chunk size by a chunk that returned in time
+     */
+    private volatile int chunkStep = 10;
+
+    /**
+     * Class constructor; runs start at the lower bounds
+     *
+     * @param minChunkSize
+     *            int
+     * @param maxChunkSize
+     *            int, the largest batch the API accepts
+     * @param minConcurrency
+     *            int
+     * @param maxConcurrency
+     *            int
+     */
+    public BatchSizer(int minChunkSize, int maxChunkSize, int minConcurrency, int maxConcurrency) {
+        if ((minChunkSize < 1) || (maxChunkSize < minChunkSize))
+            throw new IllegalArgumentException("chunk size bounds must be positive and ordered");
+        if ((minConcurrency < 1) || (maxConcurrency < minConcurrency))
+            throw new IllegalArgumentException("concurrency bounds must be positive and ordered");
+        this.minChunkSize = minChunkSize;
+        this.maxChunkSize = maxChunkSize;
+        this.minConcurrency = minConcurrency;
+        this.maxConcurrency = maxConcurrency;
+        this.chunkSize = minChunkSize;
+        this.concurrency = minConcurrency;
+        this.lastDecrease = System.nanoTime();
+    }
+
+    /**
+     * Records the outcome of a chunk
+     *
+     * @param sent
+     *            System.nanoTime() when the chunk was sent
+     * @param failed
+     *            whether the chunk failed as a whole
+     */
+    public void record(long sent, boolean failed) {
+        record(sent, failed, System.nanoTime());
+    }
+
+    void record(long sent, boolean failed, long now) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(now - sent);
+        this.lock.lock();
+        try {
+            this.chunks++;
+            this.latency = this.chunks == 1 ? millis : (ALPHA * millis) + ((1 - ALPHA) * this.latency);
+            this.errorRate = (ALPHA * (failed ? 1 : 0)) + ((1 - ALPHA) * this.errorRate);
+            if (failed || (millis > this.targetLatency)) {
+                this.successes = 0;
+                if ((sent - this.lastDecrease) < 0)
+                    return;
+                this.chunkSize = Math.max(this.minChunkSize, this.chunkSize / 2);
+                this.concurrency = Math.max(this.minConcurrency, this.concurrency / 2);
+                this.lastDecrease = now;
+                this.decreases++;
+                return;
+            }
+            if (this.chunkSize < this.maxChunkSize) {
+                this.chunkSize = Math.min(this.maxChunkSize, this.chunkSize + this.chunkStep);
+                this.increases++;
+            } else if ((++this.successes >= this.concurrency) && (this.concurrency < this.maxConcurrency)) {
+                this.successes = 0;
+                this.concurrency++;
+                this.increases++;
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of jobs the next chunk carries
+     *
+     * @return chunkSize
+     */
+    public int getChunkSize() {
+        return this.chunkSize;
+    }
+
+    /**
+     * Gets the number of chunks allowed in flight at once
+     *
+     * @return concurrency
+     */
+    public int getConcurrency() {
+        return this.concurrency;
+    }
+
+    /**
+     * Gets the operating point, e.g. for a dashboard
+     *
+     * @return SizerStats
+     */
+    public SizerStats getStats() {
+        this.lock.lock();
+        try {
+            return new SizerStats(this.chunkSize, this.concurrency, this.latency, this.errorRate, this.chunks,
+                    this.increases, this.decreases);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the latency above which a chunk counts as a sign of overload
+     *
+     * @return targetLatency in milliseconds
+     */
+    public long getTargetLatency() {
+        return this.targetLatency;
+    }
+
+    /**
+     * Sets the latency above which a chunk counts as a sign of overload
+     *
+     * @param targetLatency
+     *            milliseconds
+     */
+    public void setTargetLatency(long targetLatency) {
+        if (targetLatency < 1)
+            throw new IllegalArgumentException("targetLatency must be positive");
+        this.targetLatency = targetLatency;
+    }
+
+    /**
+     * Gets the number of jobs a chunk that returned in time adds
+     *
+     * @return chunkStep
+     */
+    public int getChunkStep() {
+        return this.chunkStep;
+    }
+
+    /**
+     * Sets the number of jobs a chunk that returned in time adds
+     *
+     * @param chunkStep
+     *            int
+     */
+    public void setChunkStep(int chunkStep) {
+        if (chunkStep < 1)
+            throw new IllegalArgumentException("chunkStep must be positive");
+        this.chunkStep = chunkStep;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchSizer[" + getStats() + "]";
+    }
+
+}
@@ -0,0 +1,310 @@
+package com.veridu.batch;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import com.veridu.async.Callback;
+import com.veridu.async.Dispatchers;
+import com.veridu.endpoint.Batch;
+import com.veridu.exceptions.SDKException;
+
+/**
+ * Class BulkBatch runs a large or unbounded stream of jobs through the Batch
+ * endpoint. The stream is cut into chunks of chunkSize jobs, and up to
+ * concurrency chunks are in flight at once on an executor of its own, never
+ * the one of the caller waiting for the run; each job's outcome goes to the
+ * callback as soon as its chunk returns. Only the chunks in flight are held in memory, so a run of a
+ * million jobs takes no more than a run of a thousand.
+ *
+ * With a {@link BatchSizer} set, chunk size and concurrency follow the
+ * sizer instead of the fixed settings.
+ *
+ * @version 1.0
+ */
+public class BulkBatch {
+
+    /**
+     * Sends the chunks of bulk batches that were not given an executor
+     */
+    private static final Executor SHARED_EXECUTOR = BatchDispatcher.createExecutor();
+
+    private final Batch batch;
+
+    /**
+     * Executor sending the chunks
+     */
+    private volatile Executor executor = SHARED_EXECUTOR;
+
+    /**
+     * Jobs sent in one batch request at most
+     */
+    private volatile int chunkSize = 100;
+
+    /**
+     * Batch requests in flight at once at most
+     */
+    private volatile int concurrency = 4;
+
+    /**
+     * Sizer adapting chunk size and concurrency, null for the fixed ones
+     */
+    private volatile BatchSizer sizer = null;
+
+    /**
+     * Class constructor
+     *
+     * @param batch
+     *            Batch endpoint sending the chunks, in the session of the jobs
+     */
+    public BulkBatch(Batch batch) {
+        this.batch = batch;
+    }
+
+    /**
+     * Runs every job of a stream, returning once each job's outcome went to
+     * the callback. A job the API failed goes to onFailure with its APIError;
+     * a chunk that failed as a whole sends each of its jobs there with the
+     * chunk's exception.
+     *
+     * @param jobs
+     *            Iterator of jobs, read as chunks are sent
+     * @param callback
+     *            JobCallback receiving each job's outcome
+     *
+     * @return BulkStats of the run
+     *
+     * @throws InterruptedException
+     *             when interrupted while waiting for a chunk; chunks already
+     *             sent still report to the callback
+     */
+    public BulkStats run(Iterator<JSONObject> jobs, JobCallback callback) throws InterruptedException {
+        Run run = new Run(callback, this.sizer);
+        long index = 0;
+        while (jobs.hasNext()) {
+            int size = run.chunkSize();
+            List<JSONObject> chunk = new ArrayList<>(size);
+            while ((chunk.size() < size) && jobs.hasNext())
+                chunk.add(jobs.next());
+            run.await(false);
+            run.send(chunk, index);
+            index += chunk.size();
+        }
+        run.await(true);
+        return run.stats();
+    }
+
+    /**
+     * Gets the number of jobs sent in one batch request at most
+     *
+     * @return chunkSize
+     */
+    public int getChunkSize() {
+        return this.chunkSize;
+    }
+
+    /**
+     * Sets the number of jobs sent in one batch request at most
+     *
+     * @param chunkSize
+     *            int
+     */
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize < 1)
+            throw new IllegalArgumentException("chunkSize must be positive");
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Gets the number of batch requests in flight at once at most
+     *
+     * @return concurrency
+     */
+    public int getConcurrency() {
+        return this.concurrency;
+    }
+
+    /**
+     * Sets the number of batch requests in flight at once at most
+     *
+     * @param concurrency
+     *            int
+     */
+    public void setConcurrency(int concurrency) {
+        if (concurrency < 1)
+            throw new IllegalArgumentException("concurrency must be positive");
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Gets the sizer adapting chunk size and concurrency
+     *
+     * @return BatchSizer, null if the fixed settings apply
+     */
+    public BatchSizer getSizer() {
+        return this.sizer;
+    }
+
+    /**
+     * Sets the sizer adapting chunk size and concurrency of the next runs
+     *
+     * @param sizer
+     *            BatchSizer, null for the fixed settings
+     */
+    public void setSizer(BatchSizer sizer) {
+        this.sizer = sizer;
+    }
+
+    /**
+     * Gets the executor sending the chunks
+     *
+     * @return Executor
+     */
+    public Executor getExecutor() {
+        return this.executor;
+    }
+
+    /**
+     * Sets the executor sending the chunks; by default four daemon threads
+     * shared by the bulk batches, with up to 256 chunks queued. It must not
+     * be the executor of the caller running the batch.
+     *
+     * @param executor
+     *            Executor
+     */
+    public void setExecutor(Executor executor) {
+        if (executor == null)
+            throw new IllegalArgumentException("executor must not be null");
+        this.executor = executor;
+    }
+
+    @Override
+    public String toString() {
+        BatchSizer sizer = this.sizer;
+        if (sizer != null)
+            return "BulkBatch[" + sizer.getStats() + "]";
+        return String.format("BulkBatch[chunkSize=%d, concurrency=%d]", this.chunkSize, this.concurrency);
+    }
+
+    /**
+     * State of one run: chunks in flight and counters
+     */
+    private final class Run {
+        final JobCallback callback;
+        final BatchSizer sizer;
+        final ReentrantLock lock = new ReentrantLock();
+        final Condition returned = this.lock.newCondition();
+        final long started = System.currentTimeMillis();
+        final AtomicLong jobs = new AtomicLong();
+        final AtomicLong chunks = new AtomicLong();
+        final AtomicLong succeeded = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final AtomicLong failedChunks = new AtomicLong();
+        int inFlight = 0;
+
+        Run(JobCallback callback, BatchSizer sizer) {
+            this.callback = callback;
+            this.sizer = sizer;
+        }
+
+        int chunkSize() {
+            return this.sizer != null ? this.sizer.getChunkSize() : BulkBatch.this.chunkSize;
+        }
+
+        int concurrency() {
+            return this.sizer != null ? this.sizer.getConcurrency() : BulkBatch.this.concurrency;
+        }
+
+        /**
+         * Waits until another chunk may be sent, or until none is in flight
+         */
+        void await(boolean drain) throws InterruptedException {
+            this.lock.lock();
+            try {
+                while (this.inFlight >= (drain ? 1 : concurrency()))
+                    this.returned.await();
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        void send(final List<JSONObject> chunk, final long first) {
+            this.lock.lock();
+            try {
+                this.inFlight++;
+            } finally {
+                this.lock.unlock();
+            }
+            this.jobs.addAndGet(chunk.size());
+            this.chunks.incrementAndGet();
+            final long sent = System.nanoTime();
+            Dispatchers.submit(BulkBatch.this.executor, new Callable<JSONArray>() {
+                @Override
+                public JSONArray call() throws Exception {
+                    return BulkBatch.this.batch.request(chunk);
+                }
+            }).addCallback(new Callback<JSONArray>() {
+                @Override
+                public void onSuccess(JSONArray results) {
+                    if (Run.this.sizer != null)
+                        Run.this.sizer.record(sent, false);
+                    try {
+                        for (int i = 0; i < chunk.size(); i++) {
+                            JSONObject result;
+                            try {
+                                result = BatchDispatcher.check(
+                                        (results != null) && (i < results.size()) ? results.get(i) : null);
+                            } catch (SDKException e) {
+                                Run.this.failed.incrementAndGet();
+                                Run.this.callback.onFailure(first + i, chunk.get(i), e);
+                                continue;
+                            }
+                            Run.this.succeeded.incrementAndGet();
+                            Run.this.callback.onSuccess(first + i, chunk.get(i), result);
+                        }
+                    } finally {
+                        done();
+                    }
+                }
+
+                @Override
+                public void onFailure(Exception exception) {
+                    if (Run.this.sizer != null)
+                        Run.this.sizer.record(sent, true);
+                    try {
+                        Run.this.failedChunks.incrementAndGet();
+                        Run.this.failed.addAndGet(chunk.size());
+                        for (int i = 0; i < chunk.size(); i++)
+                            Run.this.callback.onFailure(first + i, chunk.get(i), exception);
+                    } finally {
+                        done();
+                    }
+                }
+            });
+        }
+
+        void done() {
+            this.lock.lock();
+            try {
+                this.inFlight--;
+                this.returned.signalAll();
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        BulkStats stats() {
+            return new BulkStats(this.jobs.get(), this.chunks.get(), this.succeeded.get(), this.failed.get(),
+                    this.failedChunks.get(), System.currentTimeMillis() - this.started);
+        }
+    }
+
+}
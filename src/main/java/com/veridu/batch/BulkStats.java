@@ -0,0 +1,101 @@
+package com.veridu.batch;
+
+/**
+ * Class BulkStats is a snapshot of a bulk run
+ *
+ * @version 1.0
+ */
+public class BulkStats {
+
+    private final long jobs;
+    private final long chunks;
+    private final long succeeded;
+    private final long failed;
+    private final long failedChunks;
+    private final long elapsed;
+
+    /**
+     * Class constructor
+     *
+     * @param jobs
+     *            Jobs submitted
+     * @param chunks
+     *            Batch requests sent
+     * @param succeeded
+     *            Jobs that succeeded
+     * @param failed
+     *            Jobs that failed, alone or with their chunk
+     * @param failedChunks
+     *            Batch requests that failed as a whole
+     * @param elapsed
+     *            Duration of the run in milliseconds
+     */
+    public BulkStats(long jobs, long chunks, long succeeded, long failed, long failedChunks, long elapsed) {
+        this.jobs = jobs;
+        this.chunks = chunks;
+        this.succeeded = succeeded;
+        this.failed = failed;
+        this.failedChunks = failedChunks;
+        this.elapsed = elapsed;
+    }
+
+    /**
+     * Gets the number of jobs submitted
+     *
+     * @return jobs
+     */
+    public long getJobs() {
+        return this.jobs;
+    }
+
+    /**
+     * Gets the number of batch requests sent
+     *
+     * @return chunks
+     */
+    public long getChunks() {
+        return this.chunks;
+    }
+
+    /**
+     * Gets the number of jobs that succeeded
+     *
+     * @return succeeded
+     */
+    public long getSucceeded() {
+        return this.succeeded;
+    }
+
+    /**
+     * Gets the number of jobs that failed, alone or with their chunk
+     *
+     * @return failed
+     */
+    public long getFailed() {
+        return this.failed;
+    }
+
+    /**
+     * Gets the number of batch requests that failed as a whole
+     *
+     * @return failedChunks
+     */
+    public long getFailedChunks() {
+        return this.failedChunks;
+    }
+
+    /**
+     * Gets the duration of the run
+     *
+     * @return elapsed in milliseconds
+     */
+    public long getElapsed() {
+        return this.elapsed;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("jobs=%d chunks=%d succeeded=%d failed=%d failedChunks=%d elapsed=%dms", this.jobs,
+                this.chunks, this.succeeded, this.failed, this.failedChunks, this.elapsed);
+    }
+}
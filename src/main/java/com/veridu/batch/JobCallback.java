@@ -0,0 +1,38 @@
+package com.veridu.batch;
+
+import org.json.simple.JSONObject;
+
+/**
+ * Interface JobCallback receives the outcome of each job of a bulk run as
+ * soon as the chunk carrying it returns. Chunks return in any order and
+ * callbacks may run on several threads at once.
+ *
+ * @version 1.0
+ */
+public interface JobCallback {
+
+    /**
+     * Called when a job succeeds
+     *
+     * @param index
+     *            Position of the job in the job stream, from 0
+     * @param job
+     *            JSONObject job as submitted
+     * @param result
+     *            JSONObject response of the job
+     */
+    public void onSuccess(long index, JSONObject job, JSONObject result);
+
+    /**
+     * Called when a job fails, alone or with the chunk carrying it
+     *
+     * @param index
+     *            Position of the job in the job stream, from 0
+     * @param job
+     *            JSONObject job as submitted
+     * @param exception
+     *            Failure, usually a {@link com.veridu.exceptions.SDKException}
+     */
+    public void onFailure(long index, JSONObject job, Exception exception);
+
+}
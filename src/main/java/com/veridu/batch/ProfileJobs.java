@@ -0,0 +1,65 @@
+package com.veridu.batch;
+
+import java.util.HashMap;
+
+import org.json.simple.JSONObject;
+
+import com.veridu.async.AsyncResult;
+import com.veridu.endpoint.AbstractEndpoint;
+import com.veridu.endpoint.Profile;
+import com.veridu.exceptions.InvalidUsername;
+
+/**
+ * Class ProfileJobs records Profile Resource calls as batch jobs; each
+ * result settles as {@link Profile}'s method of the same name returns
+ *
+ * @version 1.0
+ */
+public class ProfileJobs {
+
+    private final BatchBuilder builder;
+
+    ProfileJobs(BatchBuilder builder) {
+        this.builder = builder;
+    }
+
+    /**
+     * Retrieves the consolidated profile of a given user
+     *
+     * @param username
+     *            String username
+     *
+     * @return AsyncResult of the user's profile, failed with InvalidUsername
+     *         if the username is not valid
+     */
+    public AsyncResult<JSONObject> retrieve(String username) {
+        if (!AbstractEndpoint.validateUsername(username))
+            return AsyncResult.failed(new InvalidUsername());
+
+        return this.builder.add("GET", String.format(Profile.RESOURCE_PROFILE, username), null,
+                BatchBuilder.Reader.RESPONSE);
+    }
+
+    /**
+     * Retrieves the consolidated profile of a given user, filtered
+     *
+     * @param map
+     *            Example: Profile.FILTER_KBA | Profile.FILTER_OTP
+     * @param username
+     *            String username
+     *
+     * @return AsyncResult of the user's profile, failed with InvalidUsername
+     *         if the username is not valid
+     */
+    public AsyncResult<JSONObject> retrieve(int map, String username) {
+        if (!AbstractEndpoint.validateUsername(username))
+            return AsyncResult.failed(new InvalidUsername());
+
+        HashMap<String, String> data = new HashMap<>();
+        data.put("filter", Profile.createFilter(map));
+
+        return this.builder.add("GET", String.format(Profile.RESOURCE_PROFILE, username), data,
+                BatchBuilder.Reader.RESPONSE);
+    }
+
+}
@@ -0,0 +1,117 @@
+package com.veridu.batch;
+
+/**
+ * Class SizerStats is a snapshot of the operating point of a BatchSizer
+ *
+ * @version 1.0
+ */
+public class SizerStats {
+
+    private final int chunkSize;
+    private final int concurrency;
+    private final double latency;
+    private final double errorRate;
+    private final long chunks;
+    private final long increases;
+    private final long decreases;
+
+    /**
+     * Class constructor
+     *
+     * @param chunkSize
+     *            Jobs the next chunk carries
+     * @param concurrency
+     *            Chunks allowed in flight at once
+     * @param latency
+     *            Moving average of the chunk latency, in milliseconds
+     * @param errorRate
+     *            Moving average of the share of chunks that failed
+     * @param chunks
+     *            Chunks recorded
+     * @param increases
+     *            Additive increases
+     * @param decreases
+     *            Multiplicative decreases
+     */
+    public SizerStats(int chunkSize, int concurrency, double latency, double errorRate, long chunks, long increases,
+            long decreases) {
+        this.chunkSize = chunkSize;
+        this.concurrency = concurrency;
+        this.latency = latency;
+        this.errorRate = errorRate;
+        this.chunks = chunks;
+        this.increases = increases;
+        this.decreases = decreases;
+    }
+
+    /**
+     * Gets the number of jobs the next chunk carries
+     *
+     * @return chunkSize
+     */
+    public int getChunkSize() {
+        return this.chunkSize;
+    }
+
+    /**
+     * Gets the number of chunks allowed in flight at once
+     *
+     * @return concurrency
+     */
+    public int getConcurrency() {
+        return this.concurrency;
+    }
+
+    /**
+     * Gets the moving average of the chunk latency
+     *
+     * @return latency in milliseconds
+     */
+    public double getLatency() {
+        return this.latency;
+    }
+
+    /**
+     * Gets the moving average of the share of chunks that failed
+     *
+     * @return errorRate, from 0 to 1
+     */
+    public double getErrorRate() {
+        return this.errorRate;
+    }
+
+    /**
+     * Gets the number of chunks recorded
+     *
+     * @return chunks
+     */
+    public long getChunks() {
+        return this.chunks;
+    }
+
+    /**
+     * Gets the number of additive increases
+     *
+     * @return increases
+     */
+    public long getIncreases() {
+        return this.increases;
+    }
+
+    /**
+     * Gets the number of multiplicative decreases
+     *
+     * @return decreases
+     */
+    public long getDecreases() {
+        return this.decreases;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "chunkSize=%d concurrency=%d latency=%.1fms errorRate=%.3f chunks=%d increases=%d decreases=%d",
+                this.chunkSize, this.concurrency, this.latency, this.errorRate, this.chunks, this.increases,
+                this.decreases);
+    }
+}
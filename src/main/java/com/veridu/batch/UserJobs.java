@@ -0,0 +1,127 @@
+package com.veridu.batch;
+
+import org.json.simple.JSONObject;
+
+import com.veridu.async.AsyncResult;
+import com.veridu.endpoint.AbstractEndpoint;
+import com.veridu.endpoint.User;
+import com.veridu.exceptions.InvalidUsername;
+
+/**
+ * Class UserJobs records User Resource reads as batch jobs; each result
+ * settles as {@link User}'s method of the same name returns. Signed calls
+ * (create, rename) cannot be batched.
+ *
+ * @version 1.0
+ */
+public class UserJobs {
+
+    private final BatchBuilder builder;
+
+    UserJobs(BatchBuilder builder) {
+        this.builder = builder;
+    }
+
+    /**
+     * Retrieves details for the given attribute
+     *
+     * @param attribute
+     *            Attributes name
+     * @param username
+     *            String username
+     *
+     * @return AsyncResult of the attribute details
+     */
+    public AsyncResult<JSONObject> attributeDetails(String attribute, String username) {
+        if (!AbstractEndpoint.validateUsername(username))
+            return AsyncResult.failed(new InvalidUsername());
+
+        return this.builder.add("GET", String.format(User.RESOURCE_ATTRIBUTE_DETAILS, username, attribute), null,
+                BatchBuilder.Reader.member("attribute"));
+    }
+
+    /**
+     * Retrieves the score for the given attribute
+     *
+     * @param attribute
+     *            The attribute name
+     * @param username
+     *            String username
+     *
+     * @return AsyncResult of the score
+     */
+    public AsyncResult<String> attributeScore(String attribute, String username) {
+        if (!AbstractEndpoint.validateUsername(username))
+            return AsyncResult.failed(new InvalidUsername());
+
+        return this.builder.add("GET", String.format(User.RESOURCE_ATTRIBUTE_SCORE, username, attribute), null,
+                BatchBuilder.Reader.string("attribute"));
+    }
+
+    /**
+     * Retrieves the value for the given attribute
+     *
+     * @param attribute
+     *            The attribute name
+     * @param username
+     *            String username
+     *
+     * @return AsyncResult of the value
+     */
+    public AsyncResult<String> attributeValue(String attribute, String username) {
+        if (!AbstractEndpoint.validateUsername(username))
+            return AsyncResult.failed(new InvalidUsername());
+
+        return this.builder.add("GET", String.format(User.RESOURCE_ATTRIBUTE_VALUE, username, attribute), null,
+                BatchBuilder.Reader.string("attribute"));
+    }
+
+    /**
+     * Retrieves all attribute scores
+     *
+     * @param username
+     *            String username
+     *
+     * @return AsyncResult of the profile scores
+     */
+    public AsyncResult<JSONObject> getAllAttributeScores(String username) {
+        if (!AbstractEndpoint.validateUsername(username))
+            return AsyncResult.failed(new InvalidUsername());
+
+        return this.builder.add("GET", String.format(User.RESOURCE_SCORES, username), null,
+                BatchBuilder.Reader.member("profile"));
+    }
+
+    /**
+     * Retrieves all attribute values
+     *
+     * @param username
+     *            String username
+     *
+     * @return AsyncResult of the profile values
+     */
+    public AsyncResult<JSONObject> getAllAttributeValues(String username) {
+        if (!AbstractEndpoint.validateUsername(username))
+            return AsyncResult.failed(new InvalidUsername());
+
+        return this.builder.add("GET", String.format(User.RESOURCE_VALUES, username), null,
+                BatchBuilder.Reader.member("profile"));
+    }
+
+    /**
+     * Retrieves every attribute's details
+     *
+     * @param username
+     *            String username
+     *
+     * @return AsyncResult of the profile details
+     */
+    public AsyncResult<JSONObject> getAllDetails(String username) {
+        if (!AbstractEndpoint.validateUsername(username))
+            return AsyncResult.failed(new InvalidUsername());
+
+        return this.builder.add("GET", String.format(User.RESOURCE_DETAILS, username), null,
+                BatchBuilder.Reader.member("profile"));
+    }
+
+}
@@ -0,0 +1,254 @@
+package com.veridu.bloom;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Class BloomFilter remembers usernames known to exist in a fixed number of
+ * bits, however many there are. A username never added is reported as
+ * unknown, save for a false positive rate fixed when sizing the filter: at
+ * the expected number of usernames, that share of unknown usernames is
+ * reported as known. Adding more usernames than expected raises the rate,
+ * as {@link #getStats()} shows.
+ *
+ * A filter is seeded from a file of usernames, one per line, and can be
+ * written out and read back in its binary form. Adds and lookups are safe
+ * from any thread.
+ *
+ * @version 1.0
+ */
+public class BloomFilter {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int MAGIC = 0x56424c4d;
+
+    private final AtomicLongArray words;
+    private final long bits;
+    private final int hashes;
+    private final long expectedInsertions;
+    private final double targetFpp;
+    private final AtomicLong insertions = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * Class constructor
+     *
+     * @param expectedInsertions
+     *            Usernames the filter is sized for
+     * @param fpp
+     *            False positive rate at that many usernames, e.g. 0.001
+     */
+    public BloomFilter(long expectedInsertions, double fpp) {
+        if (expectedInsertions < 1)
+            throw new IllegalArgumentException("expectedInsertions must be positive");
+        if ((fpp <= 0) || (fpp >= 1))
+            throw new IllegalArgumentException("fpp must be between 0 and 1");
+        double ln2 = Math.log(2);
+        long bits = Math.max(64, (long) Math.ceil((-expectedInsertions * Math.log(fpp)) / (ln2 * ln2)));
+        if (((bits + 63) / 64) > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("filter too large, raise fpp");
+        this.bits = bits;
+        this.hashes = (int) Math.max(1, Math.round(((double) bits / expectedInsertions) * ln2));
+        this.words = new AtomicLongArray((int) ((bits + 63) / 64));
+        this.expectedInsertions = expectedInsertions;
+        this.targetFpp = fpp;
+    }
+
+    private BloomFilter(long bits, int hashes, long expectedInsertions, double targetFpp) {
+        this.bits = bits;
+        this.hashes = hashes;
+        this.words = new AtomicLongArray((int) ((bits + 63) / 64));
+        this.expectedInsertions = expectedInsertions;
+        this.targetFpp = targetFpp;
+    }
+
+    /**
+     * Adds a username
+     *
+     * @param username
+     *            String
+     *
+     * @return whether it was unknown before
+     */
+    public boolean add(String username) {
+        long h1 = hash(username);
+        long h2 = mix(h1 + 0x9e3779b97f4a7c15L) | 1;
+        boolean changed = false;
+        for (int i = 0; i < this.hashes; i++) {
+            long bit = ((h1 + (i * h2)) & Long.MAX_VALUE) % this.bits;
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            while (true) {
+                long current = this.words.get(word);
+                if ((current & mask) != 0)
+                    break;
+                if (this.words.compareAndSet(word, current, current | mask)) {
+                    changed = true;
+                    break;
+                }
+            }
+        }
+        if (changed)
+            this.insertions.incrementAndGet();
+        return changed;
+    }
+
+    /**
+     * Checks if a username may have been added
+     *
+     * @param username
+     *            String
+     *
+     * @return false if it certainly was not; true if it was, or on a false
+     *         positive
+     */
+    public boolean mightContain(String username) {
+        long h1 = hash(username);
+        long h2 = mix(h1 + 0x9e3779b97f4a7c15L) | 1;
+        for (int i = 0; i < this.hashes; i++) {
+            long bit = ((h1 + (i * h2)) & Long.MAX_VALUE) % this.bits;
+            if ((this.words.get((int) (bit >>> 6)) & (1L << bit)) == 0)
+                return false;
+        }
+        this.hits.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Adds the usernames of a list, one per line; blank lines are skipped
+     *
+     * @param usernames
+     *            Reader of the list
+     *
+     * @return number of usernames read
+     *
+     * @throws IOException
+     *             Exception thrown if the list cannot be read
+     */
+    public long seed(Reader usernames) throws IOException {
+        BufferedReader reader = new BufferedReader(usernames);
+        long count = 0;
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            String username = line.trim();
+            if (username.isEmpty())
+                continue;
+            add(username);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Adds the usernames of a UTF-8 file, one per line
+     *
+     * @param usernames
+     *            File of the list
+     *
+     * @return number of usernames read
+     *
+     * @throws IOException
+     *             Exception thrown if the file cannot be read
+     */
+    public long seed(File usernames) throws IOException {
+        try (Reader reader = new InputStreamReader(new FileInputStream(usernames), UTF8)) {
+            return seed(reader);
+        }
+    }
+
+    /**
+     * Writes the filter out in its binary form
+     *
+     * @param out
+     *            OutputStream, left open
+     *
+     * @throws IOException
+     *             Exception thrown if it cannot be written
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeLong(this.bits);
+        data.writeInt(this.hashes);
+        data.writeLong(this.expectedInsertions);
+        data.writeDouble(this.targetFpp);
+        data.writeLong(this.insertions.get());
+        for (int i = 0; i < this.words.length(); i++)
+            data.writeLong(this.words.get(i));
+        data.flush();
+    }
+
+    /**
+     * Reads a filter written by {@link #writeTo(OutputStream)}
+     *
+     * @param in
+     *            InputStream, left open
+     *
+     * @return BloomFilter
+     *
+     * @throws IOException
+     *             Exception thrown if it cannot be read or is not a filter
+     */
+    public static BloomFilter readFrom(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC)
+            throw new IOException("not a BloomFilter");
+        long bits = data.readLong();
+        int hashes = data.readInt();
+        long expectedInsertions = data.readLong();
+        double targetFpp = data.readDouble();
+        if ((bits < 64) || (((bits + 63) / 64) > Integer.MAX_VALUE) || (hashes < 1))
+            throw new IOException("corrupt BloomFilter");
+        BloomFilter filter = new BloomFilter(bits, hashes, expectedInsertions, targetFpp);
+        filter.insertions.set(data.readLong());
+        for (int i = 0; i < filter.words.length(); i++)
+            filter.words.set(i, data.readLong());
+        return filter;
+    }
+
+    /**
+     * Gets a snapshot of the size and fill of the filter
+     *
+     * @return BloomStats
+     */
+    public BloomStats getStats() {
+        long set = 0;
+        for (int i = 0; i < this.words.length(); i++)
+            set += Long.bitCount(this.words.get(i));
+        double fpp = Math.pow((double) set / this.bits, this.hashes);
+        return new BloomStats(this.bits, this.hashes, this.insertions.get(), this.expectedInsertions,
+                this.targetFpp, fpp, this.hits.get());
+    }
+
+    @Override
+    public String toString() {
+        return "BloomFilter[" + getStats() + "]";
+    }
+
+    private static long hash(String username) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < username.length(); i++)
+            hash = (hash ^ username.charAt(i)) * 0x100000001b3L;
+        return mix(hash);
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+}
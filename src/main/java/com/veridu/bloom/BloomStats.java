@@ -0,0 +1,127 @@
+package com.veridu.bloom;
+
+/**
+ * Class BloomStats is a snapshot of the size and fill of a BloomFilter
+ *
+ * @version 1.0
+ */
+public class BloomStats {
+
+    private final long bits;
+    private final int hashes;
+    private final long insertions;
+    private final long expectedInsertions;
+    private final double targetFpp;
+    private final double fpp;
+    private final long hits;
+
+    /**
+     * Class constructor
+     *
+     * @param bits
+     *            Bits of the filter
+     * @param hashes
+     *            Bits set per username
+     * @param insertions
+     *            Usernames added that were not known yet
+     * @param expectedInsertions
+     *            Usernames the filter was sized for
+     * @param targetFpp
+     *            False positive rate the filter was sized for
+     * @param fpp
+     *            False positive rate estimated from the bits set
+     * @param hits
+     *            Lookups answered as known
+     */
+    public BloomStats(long bits, int hashes, long insertions, long expectedInsertions, double targetFpp, double fpp,
+            long hits) {
+        this.bits = bits;
+        this.hashes = hashes;
+        this.insertions = insertions;
+        this.expectedInsertions = expectedInsertions;
+        this.targetFpp = targetFpp;
+        this.fpp = fpp;
+        this.hits = hits;
+    }
+
+    /**
+     * Gets the number of bits of the filter
+     *
+     * @return bits
+     */
+    public long getBits() {
+        return this.bits;
+    }
+
+    /**
+     * Gets the memory the bits take
+     *
+     * @return bytes
+     */
+    public long getMemoryBytes() {
+        return ((this.bits + 63) / 64) * 8;
+    }
+
+    /**
+     * Gets the number of bits set per username
+     *
+     * @return hashes
+     */
+    public int getHashes() {
+        return this.hashes;
+    }
+
+    /**
+     * Gets the number of usernames added that were not known yet
+     *
+     * @return insertions
+     */
+    public long getInsertions() {
+        return this.insertions;
+    }
+
+    /**
+     * Gets the number of usernames the filter was sized for
+     *
+     * @return expectedInsertions
+     */
+    public long getExpectedInsertions() {
+        return this.expectedInsertions;
+    }
+
+    /**
+     * Gets the false positive rate the filter was sized for
+     *
+     * @return targetFpp, from 0 to 1
+     */
+    public double getTargetFpp() {
+        return this.targetFpp;
+    }
+
+    /**
+     * Gets the false positive rate estimated from the share of bits set;
+     * above the target once more usernames were added than the filter was
+     * sized for
+     *
+     * @return fpp, from 0 to 1
+     */
+    public double getFpp() {
+        return this.fpp;
+    }
+
+    /**
+     * Gets the number of lookups answered as known
+     *
+     * @return hits
+     */
+    public long getHits() {
+        return this.hits;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("bits=%d memory=%dB hashes=%d insertions=%d/%d fpp=%.6f/%.6f hits=%d", this.bits,
+                getMemoryBytes(), this.hashes, this.insertions, this.expectedInsertions, this.fpp, this.targetFpp,
+                this.hits);
+    }
+}
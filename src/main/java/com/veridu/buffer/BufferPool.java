@@ -0,0 +1,193 @@
+package com.veridu.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class BufferPool recycles fixed-size byte buffers between calls, so request
+ * bodies, response reads and signature inputs stop allocating per call. The
+ * pool is bounded: buffers released beyond the limit, and buffers larger than
+ * the pooled size, are left to the garbage collector.
+ *
+ * @version 1.0
+ */
+public class BufferPool {
+
+    /**
+     * Size of the buffers of the shared pool
+     */
+    final public static int DEFAULT_BUFFER_SIZE = 8192;
+
+    /**
+     * Buffers kept by the shared pool (4 MB)
+     */
+    final public static int DEFAULT_MAX_POOLED = 512;
+
+    private static final BufferPool SHARED = new BufferPool(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_POOLED, false);
+
+    private final int bufferSize;
+    private final int maxPooled;
+    private final boolean direct;
+    private final ConcurrentLinkedQueue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong oversized = new AtomicLong();
+
+    /**
+     * Class constructor
+     *
+     * @param bufferSize
+     *            Capacity of each pooled buffer
+     * @param maxPooled
+     *            Maximum number of idle buffers kept
+     * @param direct
+     *            Whether buffers are allocated off-heap
+     */
+    public BufferPool(int bufferSize, int maxPooled, boolean direct) {
+        if (bufferSize < 1)
+            throw new IllegalArgumentException("bufferSize must be positive");
+        if (maxPooled < 0)
+            throw new IllegalArgumentException("maxPooled must not be negative");
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+        this.direct = direct;
+    }
+
+    /**
+     * Returns the pool shared by clients that were not given one: 8 KB heap
+     * buffers, up to 512 kept
+     *
+     * @return BufferPool
+     */
+    public static BufferPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * Takes a cleared buffer of the pooled size
+     *
+     * @return ByteBuffer
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = this.free.poll();
+        if (buffer != null) {
+            this.pooled.decrementAndGet();
+            this.hits.incrementAndGet();
+            return buffer;
+        }
+        this.misses.incrementAndGet();
+        return allocate(this.bufferSize);
+    }
+
+    /**
+     * Takes a cleared buffer holding at least the given capacity. Requests
+     * larger than the pooled size get a buffer of their own.
+     *
+     * @param capacity
+     *            Minimum capacity
+     *
+     * @return ByteBuffer
+     */
+    public ByteBuffer acquire(int capacity) {
+        if (capacity <= this.bufferSize)
+            return acquire();
+        this.oversized.incrementAndGet();
+        return allocate(capacity);
+    }
+
+    /**
+     * Hands a buffer back. The caller must not touch it afterwards.
+     *
+     * @param buffer
+     *            ByteBuffer taken from this pool, null is ignored
+     */
+    public void release(ByteBuffer buffer) {
+        if ((buffer == null) || (buffer.capacity() != this.bufferSize) || (buffer.isDirect() != this.direct)
+                || buffer.isReadOnly())
+            return;
+        if (this.pooled.incrementAndGet() > this.maxPooled) {
+            this.pooled.decrementAndGet();
+            return;
+        }
+        buffer.clear();
+        this.free.offer(buffer);
+    }
+
+    /**
+     * Gets the capacity of pooled buffers
+     *
+     * @return bufferSize
+     */
+    public int getBufferSize() {
+        return this.bufferSize;
+    }
+
+    /**
+     * Gets the maximum number of idle buffers kept
+     *
+     * @return maxPooled
+     */
+    public int getMaxPooled() {
+        return this.maxPooled;
+    }
+
+    /**
+     * Checks if buffers are allocated off-heap
+     *
+     * @return boolean
+     */
+    public boolean isDirect() {
+        return this.direct;
+    }
+
+    /**
+     * Gets the number of idle buffers
+     *
+     * @return pooled
+     */
+    public int getPooled() {
+        return this.pooled.get();
+    }
+
+    /**
+     * Gets the number of acquisitions served by an idle buffer
+     *
+     * @return hits
+     */
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    /**
+     * Gets the number of acquisitions that allocated a pooled-size buffer
+     *
+     * @return misses
+     */
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    /**
+     * Gets the number of acquisitions larger than the pooled size
+     *
+     * @return oversized
+     */
+    public long getOversized() {
+        return this.oversized.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BufferPool[size=%d, direct=%b, pooled=%d/%d, hits=%d, misses=%d, oversized=%d]",
+                this.bufferSize, this.direct, this.pooled.get(), this.maxPooled, this.hits.get(), this.misses.get(),
+                this.oversized.get());
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        return this.direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+}
@@ -0,0 +1,68 @@
+package com.veridu.buffer;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Class ByteBufferInputStream reads the remaining bytes of a buffer, heap or
+ * direct, and hands the buffer back to its pool once closed
+ *
+ * @version 1.0
+ */
+public class ByteBufferInputStream extends InputStream {
+
+    private final BufferPool pool;
+    private ByteBuffer buffer;
+
+    /**
+     * Class constructor
+     *
+     * @param buffer
+     *            ByteBuffer in read mode
+     * @param pool
+     *            BufferPool the buffer goes back to on close, may be null
+     */
+    public ByteBufferInputStream(ByteBuffer buffer, BufferPool pool) {
+        this.buffer = buffer;
+        this.pool = pool;
+    }
+
+    @Override
+    public int read() {
+        if ((this.buffer == null) || !this.buffer.hasRemaining())
+            return -1;
+        return this.buffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+        if ((this.buffer == null) || !this.buffer.hasRemaining())
+            return -1;
+        int n = Math.min(length, this.buffer.remaining());
+        this.buffer.get(bytes, offset, n);
+        return n;
+    }
+
+    @Override
+    public long skip(long n) {
+        if ((this.buffer == null) || (n <= 0))
+            return 0;
+        int skipped = (int) Math.min(n, this.buffer.remaining());
+        this.buffer.position(this.buffer.position() + skipped);
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return this.buffer == null ? 0 : this.buffer.remaining();
+    }
+
+    @Override
+    public void close() {
+        ByteBuffer buffer = this.buffer;
+        this.buffer = null;
+        if ((buffer != null) && (this.pool != null))
+            this.pool.release(buffer);
+    }
+
+}
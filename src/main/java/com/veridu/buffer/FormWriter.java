@@ -0,0 +1,156 @@
+package com.veridu.buffer;
+
+import java.io.Writer;
+import java.nio.ByteBuffer;
+
+/**
+ * Class FormWriter writes an application/x-www-form-urlencoded body straight
+ * into a pooled buffer: text written through it is UTF-8 and URL encoded on
+ * the fly, as URLEncoder does, so a large JSON value can be serialized into
+ * a request body without building the JSON string, its encoded copy and
+ * their bytes first.
+ *
+ * @version 1.0
+ */
+public class FormWriter extends Writer {
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private final BufferPool pool;
+    private ByteBuffer buffer;
+    private char highSurrogate = 0;
+
+    /**
+     * Class constructor
+     *
+     * @param pool
+     *            BufferPool lending the buffers
+     * @param capacity
+     *            Expected body size in bytes
+     */
+    public FormWriter(BufferPool pool, int capacity) {
+        this.pool = pool;
+        this.buffer = pool.acquire(capacity);
+    }
+
+    /**
+     * Writes text as is, e.g. a field name followed by '='
+     *
+     * @param text
+     *            ASCII text, already encoded
+     *
+     * @return self
+     */
+    public FormWriter raw(String text) {
+        ensure(text.length());
+        for (int i = 0; i < text.length(); i++)
+            this.buffer.put((byte) text.charAt(i));
+        return this;
+    }
+
+    @Override
+    public void write(int c) {
+        encode((char) c);
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int length) {
+        for (int i = offset; i < (offset + length); i++)
+            encode(chars[i]);
+    }
+
+    @Override
+    public void write(String text) {
+        write(text, 0, text.length());
+    }
+
+    @Override
+    public void write(String text, int offset, int length) {
+        for (int i = offset; i < (offset + length); i++)
+            encode(text.charAt(i));
+    }
+
+    /**
+     * Hands the body over to the caller, who releases it to the pool
+     *
+     * @return ByteBuffer in read mode
+     */
+    public ByteBuffer toBuffer() {
+        if (this.highSurrogate != 0) {
+            this.highSurrogate = 0;
+            escape('?');
+        }
+        ByteBuffer body = this.buffer;
+        this.buffer = null;
+        body.flip();
+        return body;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    /**
+     * Releases the buffer unless it was handed over
+     */
+    @Override
+    public void close() {
+        this.pool.release(this.buffer);
+        this.buffer = null;
+    }
+
+    private void encode(char c) {
+        if (this.highSurrogate != 0) {
+            char high = this.highSurrogate;
+            this.highSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                int code = Character.toCodePoint(high, c);
+                escape(0xF0 | (code >> 18));
+                escape(0x80 | ((code >> 12) & 0x3F));
+                escape(0x80 | ((code >> 6) & 0x3F));
+                escape(0x80 | (code & 0x3F));
+                return;
+            }
+            escape('?');
+        }
+        if (((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z')) || ((c >= '0') && (c <= '9')) || (c == '.')
+                || (c == '-') || (c == '*') || (c == '_')) {
+            ensure(1);
+            this.buffer.put((byte) c);
+        } else if (c == ' ') {
+            ensure(1);
+            this.buffer.put((byte) '+');
+        } else if (c < 0x80) {
+            escape(c);
+        } else if (c < 0x800) {
+            escape(0xC0 | (c >> 6));
+            escape(0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c)) {
+            this.highSurrogate = c;
+        } else if (Character.isSurrogate(c)) {
+            escape('?');
+        } else {
+            escape(0xE0 | (c >> 12));
+            escape(0x80 | ((c >> 6) & 0x3F));
+            escape(0x80 | (c & 0x3F));
+        }
+    }
+
+    private void escape(int b) {
+        ensure(3);
+        this.buffer.put((byte) '%');
+        this.buffer.put((byte) HEX[(b >> 4) & 0x0F]);
+        this.buffer.put((byte) HEX[b & 0x0F]);
+    }
+
+    private void ensure(int n) {
+        if (this.buffer.remaining() >= n)
+            return;
+        ByteBuffer bigger = this.pool.acquire(Math.max(this.buffer.capacity() * 2, this.buffer.position() + n));
+        this.buffer.flip();
+        bigger.put(this.buffer);
+        this.pool.release(this.buffer);
+        this.buffer = bigger;
+    }
+
+}
@@ -0,0 +1,96 @@
+package com.veridu.buffer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Class PooledReader decodes a UTF-8 stream through a pooled byte buffer,
+ * where an InputStreamReader would allocate its own on every call
+ *
+ * @version 1.0
+ */
+public class PooledReader extends Reader {
+
+    private final InputStream in;
+    private final BufferPool pool;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private ByteBuffer bytes;
+    private byte[] scratch = null;
+    private boolean eof = false;
+    private boolean flushed = false;
+
+    /**
+     * Class constructor
+     *
+     * @param in
+     *            InputStream of UTF-8 text
+     * @param pool
+     *            BufferPool lending the byte buffer
+     */
+    public PooledReader(InputStream in, BufferPool pool) {
+        this.in = in;
+        this.pool = pool;
+        this.bytes = pool.acquire();
+        this.bytes.flip();
+    }
+
+    @Override
+    public int read(char[] chars, int offset, int length) throws IOException {
+        if (this.bytes == null)
+            throw new IOException("Reader closed");
+        if (length == 0)
+            return 0;
+        CharBuffer out = CharBuffer.wrap(chars, offset, length);
+        while (true) {
+            CoderResult result = this.decoder.decode(this.bytes, out, this.eof);
+            if (this.eof && result.isUnderflow() && !this.flushed) {
+                this.decoder.flush(out);
+                this.flushed = true;
+            }
+            if (out.position() > offset)
+                return out.position() - offset;
+            if (this.eof)
+                return -1;
+            if (result.isOverflow())
+                continue;
+            fill();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        ByteBuffer bytes = this.bytes;
+        this.bytes = null;
+        this.pool.release(bytes);
+        this.in.close();
+    }
+
+    private void fill() throws IOException {
+        this.bytes.compact();
+        int n;
+        if (this.bytes.hasArray()) {
+            n = this.in.read(this.bytes.array(), this.bytes.arrayOffset() + this.bytes.position(),
+                    this.bytes.remaining());
+            if (n > 0)
+                this.bytes.position(this.bytes.position() + n);
+        } else {
+            if (this.scratch == null)
+                this.scratch = new byte[Math.min(this.bytes.capacity(), 4096)];
+            n = this.in.read(this.scratch, 0, Math.min(this.scratch.length, this.bytes.remaining()));
+            if (n > 0)
+                this.bytes.put(this.scratch, 0, n);
+        }
+        if (n == -1)
+            this.eof = true;
+        this.bytes.flip();
+    }
+
+}
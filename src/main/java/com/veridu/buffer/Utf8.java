@@ -0,0 +1,56 @@
+package com.veridu.buffer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Class Utf8 encodes text straight into pooled buffers, skipping the
+ * intermediate arrays of String.getBytes
+ *
+ * @version 1.0
+ */
+public final class Utf8 {
+
+    private Utf8() {
+    }
+
+    /**
+     * Encodes text as UTF-8 into a buffer borrowed from a pool. Unpaired
+     * surrogates are replaced by '?', as String.getBytes does.
+     *
+     * @param text
+     *            CharSequence
+     * @param pool
+     *            BufferPool lending the buffer
+     *
+     * @return ByteBuffer in read mode, to be released to the pool
+     */
+    public static ByteBuffer encode(CharSequence text, BufferPool pool) {
+        int length = text.length();
+        ByteBuffer buffer = pool.acquire(length * 3);
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && ((i + 1) < length)
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int code = Character.toCodePoint(c, text.charAt(++i));
+                buffer.put((byte) (0xF0 | (code >> 18)));
+                buffer.put((byte) (0x80 | ((code >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((code >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (code & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+}
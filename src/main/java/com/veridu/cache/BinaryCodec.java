@@ -0,0 +1,215 @@
+package com.veridu.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+ * Class BinaryCodec writes API responses in a compact binary form: a tag
+ * byte per value, lengths and integers as varints, text as UTF-8. It covers
+ * the types json-simple parses into; other values are rejected.
+ *
+ * @version 1.0
+ */
+final class BinaryCodec {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final byte NULL = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = 2;
+    private static final byte LONG = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte STRING = 5;
+    private static final byte OBJECT = 6;
+    private static final byte ARRAY = 7;
+
+    private BinaryCodec() {
+    }
+
+    /**
+     * Encodes a response
+     *
+     * @param value
+     *            JSONObject
+     *
+     * @return byte[]
+     *
+     * @throws IllegalArgumentException
+     *             Exception thrown if the response holds a value of another
+     *             type than json-simple parses into
+     */
+    static byte[] encode(JSONObject value) {
+        Output out = new Output(256);
+        write(out, value);
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes a response
+     *
+     * @param bytes
+     *            byte[] holding the encoded response
+     * @param offset
+     *            Where it starts
+     * @param length
+     *            Its length in bytes
+     *
+     * @return JSONObject
+     *
+     * @throws IllegalArgumentException
+     *             Exception thrown if the bytes are not an encoded response
+     */
+    static JSONObject decode(byte[] bytes, int offset, int length) {
+        ByteBuffer in = ByteBuffer.wrap(bytes, offset, length);
+        Object value;
+        try {
+            value = read(in);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("malformed response", e);
+        }
+        if (!(value instanceof JSONObject) || in.hasRemaining())
+            throw new IllegalArgumentException("malformed response");
+        return (JSONObject) value;
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static void write(Output out, Object value) {
+        if (value == null)
+            out.write(NULL);
+        else if (value instanceof Boolean)
+            out.write((Boolean) value ? TRUE : FALSE);
+        else if ((value instanceof Long) || (value instanceof Integer) || (value instanceof Short)
+                || (value instanceof Byte)) {
+            long number = ((Number) value).longValue();
+            out.write(LONG);
+            out.writeVarint((number << 1) ^ (number >> 63));
+        } else if ((value instanceof Double) || (value instanceof Float)) {
+            long bits = Double.doubleToLongBits(((Number) value).doubleValue());
+            out.write(DOUBLE);
+            for (int shift = 56; shift >= 0; shift -= 8)
+                out.write((int) (bits >>> shift));
+        } else if (value instanceof String) {
+            out.write(STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map) value;
+            out.write(OBJECT);
+            out.writeVarint(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeString(out, String.valueOf(entry.getKey()));
+                write(out, entry.getValue());
+            }
+        } else if (value instanceof List) {
+            List<?> list = (List) value;
+            out.write(ARRAY);
+            out.writeVarint(list.size());
+            for (Object item : list)
+                write(out, item);
+        } else
+            throw new IllegalArgumentException("cannot encode " + value.getClass().getName());
+    }
+
+    private static void writeString(Output out, String value) {
+        byte[] bytes = value.getBytes(UTF8);
+        out.writeVarint(bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object read(ByteBuffer in) {
+        byte tag = in.get();
+        switch (tag) {
+        case NULL:
+            return null;
+        case TRUE:
+            return Boolean.TRUE;
+        case FALSE:
+            return Boolean.FALSE;
+        case LONG:
+            long zigzag = readVarint(in);
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        case DOUBLE:
+            return Double.longBitsToDouble(in.getLong());
+        case STRING:
+            return readString(in);
+        case OBJECT:
+            int members = (int) readVarint(in);
+            JSONObject object = new JSONObject();
+            for (int i = 0; i < members; i++) {
+                String name = readString(in);
+                object.put(name, read(in));
+            }
+            return object;
+        case ARRAY:
+            int items = (int) readVarint(in);
+            JSONArray array = new JSONArray();
+            for (int i = 0; i < items; i++)
+                array.add(read(in));
+            return array;
+        default:
+            throw new IllegalArgumentException("unknown tag " + tag);
+        }
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = (int) readVarint(in);
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length, UTF8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    private static long readVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7f) << shift;
+            if (b >= 0)
+                return value;
+        }
+        throw new IllegalArgumentException("varint too long");
+    }
+
+    /**
+     * Growing byte array
+     */
+    private static final class Output {
+        byte[] bytes;
+        int size = 0;
+
+        Output(int capacity) {
+            this.bytes = new byte[capacity];
+        }
+
+        void write(int b) {
+            if (this.size == this.bytes.length)
+                this.bytes = Arrays.copyOf(this.bytes, this.bytes.length * 2);
+            this.bytes[this.size++] = (byte) b;
+        }
+
+        void write(byte[] b, int offset, int length) {
+            if ((this.size + length) > this.bytes.length)
+                this.bytes = Arrays.copyOf(this.bytes, Math.max(this.bytes.length * 2, this.size + length));
+            System.arraycopy(b, offset, this.bytes, this.size, length);
+            this.size += length;
+        }
+
+        void writeVarint(long value) {
+            while ((value & ~0x7fL) != 0) {
+                write((int) ((value & 0x7f) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(this.bytes, this.size);
+        }
+    }
+
+}
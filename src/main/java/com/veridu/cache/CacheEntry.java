@@ -0,0 +1,136 @@
+package com.veridu.cache;
+
+import org.json.simple.JSONObject;
+
+/**
+ * Class CacheEntry is a cached API response, when it was fetched and the
+ * validators the API sent with it
+ *
+ * @version 1.0
+ */
+public class CacheEntry {
+
+    private final JSONObject value;
+    private final String user;
+    private final long created;
+    private final long expires;
+    private final String etag;
+    private final String lastModified;
+
+    /**
+     * Class constructor for a response without validators
+     *
+     * @param value
+     *            JSONObject response
+     * @param user
+     *            Username the resource belongs to, null if none
+     * @param created
+     *            When the call that fetched it started, epoch milliseconds
+     * @param expires
+     *            When it expires, epoch milliseconds
+     */
+    public CacheEntry(JSONObject value, String user, long created, long expires) {
+        this(value, user, created, expires, null, null);
+    }
+
+    /**
+     * Class constructor
+     *
+     * @param value
+     *            JSONObject response
+     * @param user
+     *            Username the resource belongs to, null if none
+     * @param created
+     *            When the call that fetched it started, epoch milliseconds
+     * @param expires
+     *            When it expires, epoch milliseconds
+     * @param etag
+     *            ETag header of the response, null if none
+     * @param lastModified
+     *            Last-Modified header of the response, null if none
+     */
+    public CacheEntry(JSONObject value, String user, long created, long expires, String etag, String lastModified) {
+        this.value = value;
+        this.user = user;
+        this.created = created;
+        this.expires = expires;
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Gets the response; callers must not change it
+     *
+     * @return value
+     */
+    public JSONObject getValue() {
+        return this.value;
+    }
+
+    /**
+     * Gets the username the resource belongs to
+     *
+     * @return user, null if none
+     */
+    public String getUser() {
+        return this.user;
+    }
+
+    /**
+     * Gets when the call that fetched the response started
+     *
+     * @return created, epoch milliseconds
+     */
+    public long getCreated() {
+        return this.created;
+    }
+
+    /**
+     * Gets when the entry expires
+     *
+     * @return expires, epoch milliseconds
+     */
+    public long getExpires() {
+        return this.expires;
+    }
+
+    /**
+     * Gets the ETag header of the response
+     *
+     * @return etag, null if none
+     */
+    public String getEtag() {
+        return this.etag;
+    }
+
+    /**
+     * Gets the Last-Modified header of the response
+     *
+     * @return lastModified, null if none
+     */
+    public String getLastModified() {
+        return this.lastModified;
+    }
+
+    /**
+     * Checks if the response can be revalidated with a conditional GET
+     *
+     * @return boolean
+     */
+    public boolean hasValidators() {
+        return (this.etag != null) || (this.lastModified != null);
+    }
+
+    /**
+     * Checks if the entry expired
+     *
+     * @param now
+     *            epoch milliseconds
+     *
+     * @return boolean
+     */
+    public boolean isExpired(long now) {
+        return now >= this.expires;
+    }
+
+}
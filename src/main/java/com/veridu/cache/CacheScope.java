@@ -0,0 +1,17 @@
+package com.veridu.cache;
+
+/**
+ * Enum CacheScope tells who shares a cached response
+ *
+ * @version 1.0
+ */
+public enum CacheScope {
+    /**
+     * Calls made in the same session
+     */
+    SESSION,
+    /**
+     * Calls made with the same client key, whatever their session
+     */
+    CLIENT
+}
@@ -0,0 +1,156 @@
+package com.veridu.cache;
+
+/**
+ * Class CacheStats is a snapshot of the counters of a ResponseCache
+ *
+ * @version 1.0
+ */
+public class CacheStats {
+
+    private final long hits;
+    private final long misses;
+    private final long stale;
+    private final long errors;
+    private final long revalidations;
+    private final long refreshes;
+    private final long entries;
+    private final long evictions;
+    private final long invalidations;
+
+    /**
+     * Class constructor
+     *
+     * @param hits
+     *            Calls answered from the cache
+     * @param misses
+     *            Cacheable calls sent to the API
+     * @param stale
+     *            Hits answered with an expired entry while it was refreshed
+     * @param errors
+     *            Hits failed with a cached error
+     * @param revalidations
+     *            Calls the API answered 304 Not Modified
+     * @param refreshes
+     *            Background refreshes started
+     * @param entries
+     *            Entries held
+     * @param evictions
+     *            Entries evicted to make room
+     * @param invalidations
+     *            Users whose entries were invalidated
+     */
+    public CacheStats(long hits, long misses, long stale, long errors, long revalidations, long refreshes,
+            long entries, long evictions, long invalidations) {
+        this.hits = hits;
+        this.misses = misses;
+        this.stale = stale;
+        this.errors = errors;
+        this.revalidations = revalidations;
+        this.refreshes = refreshes;
+        this.entries = entries;
+        this.evictions = evictions;
+        this.invalidations = invalidations;
+    }
+
+    /**
+     * Gets the number of calls answered from the cache
+     *
+     * @return hits
+     */
+    public long getHits() {
+        return this.hits;
+    }
+
+    /**
+     * Gets the number of cacheable calls sent to the API
+     *
+     * @return misses
+     */
+    public long getMisses() {
+        return this.misses;
+    }
+
+    /**
+     * Gets the number of hits answered with an expired entry while it was
+     * refreshed in the background
+     *
+     * @return stale
+     */
+    public long getStale() {
+        return this.stale;
+    }
+
+    /**
+     * Gets the number of hits failed with a cached error
+     *
+     * @return errors
+     */
+    public long getErrors() {
+        return this.errors;
+    }
+
+    /**
+     * Gets the number of calls the API answered 304 Not Modified, served
+     * from the cache without a body
+     *
+     * @return revalidations
+     */
+    public long getRevalidations() {
+        return this.revalidations;
+    }
+
+    /**
+     * Gets the number of background refreshes started
+     *
+     * @return refreshes
+     */
+    public long getRefreshes() {
+        return this.refreshes;
+    }
+
+    /**
+     * Gets the share of cacheable calls answered from the cache
+     *
+     * @return hit ratio, from 0 to 1
+     */
+    public double getHitRatio() {
+        long total = this.hits + this.misses;
+        return total == 0 ? 0 : (double) this.hits / total;
+    }
+
+    /**
+     * Gets the number of entries held
+     *
+     * @return entries
+     */
+    public long getEntries() {
+        return this.entries;
+    }
+
+    /**
+     * Gets the number of entries evicted to make room
+     *
+     * @return evictions
+     */
+    public long getEvictions() {
+        return this.evictions;
+    }
+
+    /**
+     * Gets the number of user invalidations
+     *
+     * @return invalidations
+     */
+    public long getInvalidations() {
+        return this.invalidations;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "hits=%d misses=%d hitRatio=%.3f stale=%d errors=%d revalidations=%d refreshes=%d entries=%d "
+                        + "evictions=%d invalidations=%d",
+                this.hits, this.misses, getHitRatio(), this.stale, this.errors, this.revalidations, this.refreshes,
+                this.entries, this.evictions, this.invalidations);
+    }
+}
@@ -0,0 +1,74 @@
+package com.veridu.cache;
+
+/**
+ * Interface CacheStore holds the entries of a ResponseCache. Stores bound
+ * their own size and evict as they see fit; expiry and invalidation are
+ * left to the ResponseCache, save that a store outliving it must also keep
+ * invalidations.
+ *
+ * @version 1.0
+ */
+public interface CacheStore {
+
+    /**
+     * Gets an entry
+     *
+     * @param key
+     *            String
+     *
+     * @return CacheEntry, null if absent
+     */
+    public CacheEntry get(String key);
+
+    /**
+     * Stores an entry, replacing any under the same key
+     *
+     * @param key
+     *            String
+     * @param entry
+     *            CacheEntry
+     */
+    public void put(String key, CacheEntry entry);
+
+    /**
+     * Removes an entry
+     *
+     * @param key
+     *            String
+     */
+    public void remove(String key);
+
+    /**
+     * Records that the entries of a user fetched up to a time are stale.
+     * The ResponseCache drops them as it reads them; a store whose entries
+     * outlive the ResponseCache must keep the record so they are not read
+     * again after a restart, others may ignore it.
+     *
+     * @param user
+     *            Username
+     * @param stamp
+     *            Entries created up to this time are stale, epoch
+     *            milliseconds
+     */
+    public void invalidate(String user, long stamp);
+
+    /**
+     * Removes every entry
+     */
+    public void clear();
+
+    /**
+     * Gets the number of entries
+     *
+     * @return int
+     */
+    public int size();
+
+    /**
+     * Gets the number of entries evicted to make room
+     *
+     * @return long
+     */
+    public long getEvictions();
+
+}
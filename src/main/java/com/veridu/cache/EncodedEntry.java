@@ -0,0 +1,128 @@
+package com.veridu.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import org.json.simple.JSONObject;
+
+/**
+ * Class EncodedEntry is a cache entry read back from its binary form, as
+ * stores outside the heap keep it. Metadata is read at once; the response
+ * is only decoded when first asked for, so entries dropped for being
+ * expired or invalidated never are.
+ *
+ * The binary form is: created, expires, user, etag, last modified (each
+ * text a length, -1 for null, and its UTF-8 bytes) and the response in
+ * the {@link BinaryCodec} form, up to the end of the array.
+ *
+ * @version 1.0
+ */
+final class EncodedEntry extends CacheEntry {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final byte[] bytes;
+    private final int offset;
+    private volatile JSONObject value;
+
+    private EncodedEntry(String user, long created, long expires, String etag, String lastModified, byte[] bytes,
+            int offset) {
+        super(null, user, created, expires, etag, lastModified);
+        this.bytes = bytes;
+        this.offset = offset;
+    }
+
+    @Override
+    public JSONObject getValue() {
+        JSONObject value = this.value;
+        if (value == null) {
+            value = BinaryCodec.decode(this.bytes, this.offset, this.bytes.length - this.offset);
+            this.value = value;
+        }
+        return value;
+    }
+
+    /**
+     * Encodes an entry
+     *
+     * @param entry
+     *            CacheEntry
+     * @param prefix
+     *            Bytes left free ahead of the entry, for the store's own
+     *            header
+     *
+     * @return byte[]
+     *
+     * @throws IllegalArgumentException
+     *             Exception thrown if the response holds a value that is not
+     *             JSON
+     */
+    static byte[] encode(CacheEntry entry, int prefix) {
+        byte[][] texts = { utf8(entry.getUser()), utf8(entry.getEtag()), utf8(entry.getLastModified()) };
+        byte[] value = BinaryCodec.encode(entry.getValue());
+        int length = prefix + 16 + value.length;
+        for (byte[] text : texts)
+            length += 4 + (text == null ? 0 : text.length);
+        ByteBuffer out = ByteBuffer.allocate(length);
+        out.position(prefix);
+        out.putLong(entry.getCreated()).putLong(entry.getExpires());
+        for (byte[] text : texts) {
+            out.putInt(text == null ? -1 : text.length);
+            if (text != null)
+                out.put(text);
+        }
+        out.put(value);
+        return out.array();
+    }
+
+    /**
+     * Reads an entry back
+     *
+     * @param bytes
+     *            byte[] holding the entry up to its end
+     * @param offset
+     *            Where the entry starts
+     *
+     * @return CacheEntry
+     */
+    static CacheEntry decode(byte[] bytes, int offset) {
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        in.position(offset);
+        long created = in.getLong();
+        long expires = in.getLong();
+        String user = text(in);
+        String etag = text(in);
+        String lastModified = text(in);
+        return new EncodedEntry(user, created, expires, etag, lastModified, bytes, in.position());
+    }
+
+    /**
+     * Gets the UTF-8 bytes of a text
+     *
+     * @param text
+     *            String, may be null
+     *
+     * @return byte[], null for null
+     */
+    static byte[] utf8(String text) {
+        return text == null ? null : text.getBytes(UTF8);
+    }
+
+    /**
+     * Reads a text written as its length, -1 for null, and its UTF-8 bytes
+     *
+     * @param in
+     *            ByteBuffer backed by an array
+     *
+     * @return String, may be null
+     */
+    static String text(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0)
+            return null;
+        String text = new String(in.array(), in.arrayOffset() + in.position(), length, UTF8);
+        in.position(in.position() + length);
+        return text;
+    }
+
+}
@@ -0,0 +1,207 @@
+package com.veridu.cache;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Class HookInvalidator turns the events of hooks registered with the Hook
+ * Resource into invalidations of a ResponseCache, so responses can be
+ * cached for long without being served once the API changed them. An
+ * event names a trigger and a user; the trigger's resource families are
+ * invalidated for that user, every family of the user if the trigger has
+ * none set. A trigger without families of its own takes those of its
+ * first segment, so "profile.update" takes those of "profile".
+ *
+ * By default, "state" invalidates state, profile and user responses;
+ * "profile" adds details and facts; "check" adds check, certificate and
+ * badge responses to those.
+ *
+ * @version 1.0
+ */
+public class HookInvalidator {
+
+    private final ResponseCache cache;
+    private final ConcurrentMap<String, String[]> families = new ConcurrentHashMap<>();
+    private final AtomicLong events = new AtomicLong();
+    private final AtomicLong ignored = new AtomicLong();
+
+    /**
+     * Told of each invalidation, null for none
+     */
+    private volatile InvalidationListener listener = null;
+
+    /**
+     * Class constructor
+     *
+     * @param cache
+     *            ResponseCache to invalidate
+     */
+    public HookInvalidator(ResponseCache cache) {
+        this.cache = cache;
+        this.families.put("state", new String[] { "state", "profile", "user" });
+        this.families.put("profile", new String[] { "profile", "user", "details", "facts" });
+        this.families.put("check",
+                new String[] { "check", "profile", "user", "details", "facts", "certificate", "badge" });
+    }
+
+    /**
+     * Handles the body of a hook callback
+     *
+     * @param body
+     *            JSON object holding "trigger" and "user" (or "username")
+     *
+     * @return whether the event named a user and invalidated its responses
+     *
+     * @throws ParseException
+     *             Exception thrown if the body is not JSON
+     */
+    public boolean handle(String body) throws ParseException {
+        Object event = new JSONParser().parse(body);
+        if (!(event instanceof JSONObject)) {
+            this.events.incrementAndGet();
+            this.ignored.incrementAndGet();
+            return false;
+        }
+        return handle((JSONObject) event);
+    }
+
+    /**
+     * Handles a hook event
+     *
+     * @param event
+     *            JSONObject holding "trigger" and "user" (or "username")
+     *
+     * @return whether the event named a user and invalidated its responses
+     */
+    public boolean handle(JSONObject event) {
+        Object trigger = event.get("trigger");
+        Object username = event.containsKey("user") ? event.get("user") : event.get("username");
+        if (!(username instanceof String) || ((String) username).isEmpty()) {
+            this.events.incrementAndGet();
+            this.ignored.incrementAndGet();
+            return false;
+        }
+        invalidate(trigger == null ? "" : trigger.toString(), (String) username);
+        return true;
+    }
+
+    /**
+     * Invalidates the responses a trigger changes for a user
+     *
+     * @param trigger
+     *            Hook trigger
+     * @param username
+     *            User the event is about
+     */
+    public void invalidate(String trigger, String username) {
+        this.events.incrementAndGet();
+        String[] families = getFamilies(trigger);
+        if (families == null)
+            this.cache.invalidate(username);
+        else {
+            for (String family : families)
+                this.cache.invalidate(username, family);
+        }
+        InvalidationListener listener = this.listener;
+        if (listener != null)
+            listener.onInvalidated(trigger, username, families);
+    }
+
+    /**
+     * Gets the resource families a trigger invalidates
+     *
+     * @param trigger
+     *            Hook trigger
+     *
+     * @return families, null if every family of the user
+     */
+    public String[] getFamilies(String trigger) {
+        String[] families = this.families.get(trigger);
+        if (families == null) {
+            int end = 0;
+            while ((end < trigger.length()) && Character.isLetterOrDigit(trigger.charAt(end)))
+                end++;
+            if ((end > 0) && (end < trigger.length()))
+                families = this.families.get(trigger.substring(0, end));
+        }
+        return families == null ? null : families.clone();
+    }
+
+    /**
+     * Sets the resource families a trigger invalidates
+     *
+     * @param trigger
+     *            Hook trigger, or the first segment of triggers
+     * @param families
+     *            Resource families, none to invalidate every family of the
+     *            user
+     */
+    public void setFamilies(String trigger, String... families) {
+        if ((families == null) || (families.length == 0))
+            this.families.remove(trigger);
+        else
+            this.families.put(trigger, families.clone());
+    }
+
+    /**
+     * Gets the triggers with families set
+     *
+     * @return families keyed by trigger, in trigger order
+     */
+    public Map<String, String[]> getTriggers() {
+        Map<String, String[]> triggers = new TreeMap<>();
+        for (Map.Entry<String, String[]> entry : this.families.entrySet())
+            triggers.put(entry.getKey(), entry.getValue().clone());
+        return triggers;
+    }
+
+    /**
+     * Gets the listener told of each invalidation
+     *
+     * @return InvalidationListener, null if none
+     */
+    public InvalidationListener getListener() {
+        return this.listener;
+    }
+
+    /**
+     * Sets the listener told of each invalidation
+     *
+     * @param listener
+     *            InvalidationListener, null for none
+     */
+    public void setListener(InvalidationListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Gets the number of events handled
+     *
+     * @return long
+     */
+    public long getEvents() {
+        return this.events.get();
+    }
+
+    /**
+     * Gets the number of events ignored for not naming a user
+     *
+     * @return long
+     */
+    public long getIgnored() {
+        return this.ignored.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("HookInvalidator[events=%d, ignored=%d]", this.events.get(), this.ignored.get());
+    }
+
+}
@@ -0,0 +1,25 @@
+package com.veridu.cache;
+
+/**
+ * Interface InvalidationListener is told of the cached responses a hook
+ * event invalidated, e.g. to fetch them again before they are asked for.
+ * It runs on the thread handling the event.
+ *
+ * @version 1.0
+ */
+public interface InvalidationListener {
+
+    /**
+     * Called once the responses are invalidated
+     *
+     * @param trigger
+     *            Trigger of the hook event
+     * @param username
+     *            User the event is about
+     * @param families
+     *            Resource families invalidated, null if every family of the
+     *            user was
+     */
+    public void onInvalidated(String trigger, String username, String[] families);
+
+}
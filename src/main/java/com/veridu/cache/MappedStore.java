@@ -0,0 +1,525 @@
+package com.veridu.cache;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Class MappedStore keeps cache entries in a memory-mapped file, so a
+ * restarted application starts with the responses the last run cached
+ * instead of fetching them all again. The file is an append-only log of
+ * puts, removals and invalidations, each with a checksum; opening the
+ * store scans it once to rebuild the index of keys, leaving out expired
+ * entries and stopping at the first record a crash left incomplete.
+ *
+ * When the log is full it is compacted: the live entries are copied into
+ * a new file, which then replaces it, with the invalidations no older than
+ * the oldest of them. If they would fill more than half of it, the oldest
+ * entries are evicted. An entry that does not fit, or that comes when the
+ * log cannot be compacted, is not stored.
+ *
+ * Keys hold the session token unless the ResponseCache scope is
+ * {@link CacheScope#CLIENT}, which a store surviving restarts calls for.
+ * Writes reach the disk as the operating system flushes them; {@link #flush()}
+ * forces them.
+ *
+ * @version 1.0
+ */
+public class MappedStore implements CacheStore, Closeable {
+
+    private static final int MAGIC = 0x56434c47;
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER = 8;
+
+    /**
+     * Record layout: length, CRC32 of the bytes after it, type, then for a
+     * put the key length, key and the entry as {@link EncodedEntry} writes
+     * it; for a removal the key length and key; for an invalidation the
+     * user and stamp
+     */
+    private static final int RECORD_HEADER = 9;
+
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final byte INVALIDATE = 3;
+
+    private final File file;
+    private final int maxBytes;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, Integer> index = new HashMap<>();
+
+    /**
+     * Invalidations, kept across compactions while an entry as old remains
+     */
+    private final Map<String, Long> stamps = new HashMap<>();
+
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong compactions = new AtomicLong();
+    private FileChannel channel;
+    private MappedByteBuffer log;
+    private int position;
+    private boolean closed = false;
+
+    /**
+     * Class constructor; opens the file, creating it if needed, and
+     * rebuilds the index of the entries it holds
+     *
+     * @param file
+     *            File of the log
+     * @param maxBytes
+     *            Size of the log, 64 KiB or more
+     *
+     * @throws IOException
+     *             Exception thrown if the file cannot be opened or mapped
+     */
+    public MappedStore(File file, int maxBytes) throws IOException {
+        if (maxBytes < 65536)
+            throw new IllegalArgumentException("maxBytes must be at least 65536");
+        this.file = file;
+        this.maxBytes = maxBytes;
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(maxBytes);
+            this.channel = raf.getChannel();
+            this.log = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, maxBytes);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+        rebuild(System.currentTimeMillis());
+    }
+
+    @Override
+    public CacheEntry get(String key) {
+        byte[] record;
+        this.lock.lock();
+        try {
+            Integer offset = this.index.get(key);
+            if (offset == null)
+                return null;
+            record = read(offset);
+        } finally {
+            this.lock.unlock();
+        }
+        return entry(record);
+    }
+
+    @Override
+    public void put(String key, CacheEntry entry) {
+        byte[] name = EncodedEntry.utf8(key);
+        byte[] record;
+        try {
+            record = EncodedEntry.encode(entry, RECORD_HEADER + 4 + name.length);
+        } catch (IllegalArgumentException e) {
+            record = null;
+        }
+        if (record != null) {
+            ByteBuffer.wrap(record, RECORD_HEADER, 4 + name.length).putInt(name.length).put(name);
+            seal(record, PUT);
+        }
+        this.lock.lock();
+        try {
+            if (this.closed)
+                return;
+            int offset = record == null ? -1 : append(record);
+            if (offset >= 0) {
+                this.index.put(key, offset);
+                return;
+            }
+            // the previous entry must not outlive its replacement
+            this.rejected.incrementAndGet();
+            if (this.index.remove(key) != null)
+                append(removal(name));
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public void remove(String key) {
+        this.lock.lock();
+        try {
+            if (!this.closed && (this.index.remove(key) != null))
+                append(removal(EncodedEntry.utf8(key)));
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public void invalidate(String user, long stamp) {
+        this.lock.lock();
+        try {
+            if (this.closed)
+                return;
+            Long previous = this.stamps.get(user);
+            if ((previous != null) && (previous >= stamp))
+                return;
+            this.stamps.put(user, stamp);
+            append(invalidation(user, stamp));
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        this.lock.lock();
+        try {
+            if (this.closed)
+                return;
+            this.index.clear();
+            this.stamps.clear();
+            this.log.putInt(FILE_HEADER, 0);
+            this.position = FILE_HEADER;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        this.lock.lock();
+        try {
+            return this.index.size();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public long getEvictions() {
+        return this.evictions.get();
+    }
+
+    /**
+     * Gets the number of entries not stored, not fitting in the log or not
+     * being JSON
+     *
+     * @return long
+     */
+    public long getRejected() {
+        return this.rejected.get();
+    }
+
+    /**
+     * Gets the number of times the log was compacted
+     *
+     * @return long
+     */
+    public long getCompactions() {
+        return this.compactions.get();
+    }
+
+    /**
+     * Gets the size of the log
+     *
+     * @return maxBytes
+     */
+    public int getMaxBytes() {
+        return this.maxBytes;
+    }
+
+    /**
+     * Gets the number of bytes of the log written, including those of
+     * entries replaced or removed since
+     *
+     * @return int
+     */
+    public int getUsedBytes() {
+        this.lock.lock();
+        try {
+            return this.position;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the file of the log
+     *
+     * @return file
+     */
+    public File getFile() {
+        return this.file;
+    }
+
+    /**
+     * Forces the writes so far to the disk
+     */
+    public void flush() {
+        this.lock.lock();
+        try {
+            if (!this.closed)
+                this.log.force();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Flushes and closes the log; a closed store is empty and ignores
+     * writes
+     *
+     * @throws IOException
+     *             Exception thrown if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        this.lock.lock();
+        try {
+            if (this.closed)
+                return;
+            this.closed = true;
+            this.log.force();
+            this.index.clear();
+            this.stamps.clear();
+            this.channel.close();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MappedStore[file=%s, entries=%d, usedBytes=%d, maxBytes=%d, evictions=%d, rejected=%d]",
+                this.file, size(), getUsedBytes(), this.maxBytes, this.evictions.get(), this.rejected.get());
+    }
+
+    /**
+     * Scans the log, indexing the entries still to be served
+     */
+    private void rebuild(long now) {
+        if ((this.log.getInt(0) != MAGIC) || (this.log.getInt(4) != VERSION)) {
+            this.log.putInt(0, MAGIC);
+            this.log.putInt(4, VERSION);
+            this.log.putInt(FILE_HEADER, 0);
+            this.position = FILE_HEADER;
+            return;
+        }
+        int offset = FILE_HEADER;
+        while (offset <= (this.maxBytes - RECORD_HEADER)) {
+            int length = this.log.getInt(offset);
+            if ((length < RECORD_HEADER) || (length > (this.maxBytes - offset)))
+                break;
+            byte[] record = read(offset);
+            if (!isSealed(record))
+                break;
+            ByteBuffer in = ByteBuffer.wrap(record);
+            in.position(RECORD_HEADER);
+            if (record[8] == INVALIDATE) {
+                String user = EncodedEntry.text(in);
+                long stamp = in.getLong();
+                Long previous = this.stamps.get(user);
+                if ((previous == null) || (previous < stamp))
+                    this.stamps.put(user, stamp);
+            } else {
+                String key = EncodedEntry.text(in);
+                CacheEntry entry = record[8] == PUT ? entry(record) : null;
+                if ((entry == null) || (entry.isExpired(now) && !entry.hasValidators()))
+                    this.index.remove(key);
+                else
+                    this.index.put(key, offset);
+            }
+            offset += length;
+        }
+        this.position = offset;
+        if (offset <= (this.maxBytes - 4))
+            this.log.putInt(offset, 0);
+        // entries put before an invalidation logged after them
+        for (Iterator<Integer> offsets = this.index.values().iterator(); offsets.hasNext();) {
+            if (isStale(entry(read(offsets.next()))))
+                offsets.remove();
+        }
+    }
+
+    private boolean isStale(CacheEntry entry) {
+        if (entry.getUser() == null)
+            return false;
+        Long stamp = this.stamps.get(entry.getUser());
+        return (stamp != null) && (entry.getCreated() <= stamp);
+    }
+
+    /**
+     * Appends a record, compacting the log if it is full
+     *
+     * @return offset of the record, -1 if it does not fit
+     */
+    private int append(byte[] record) {
+        if ((this.position + record.length + 4) > this.maxBytes) {
+            try {
+                compact(System.currentTimeMillis());
+            } catch (IOException | RuntimeException e) {
+                return -1;
+            }
+            if ((this.position + record.length + 4) > this.maxBytes)
+                return -1;
+        }
+        int offset = this.position;
+        // the end mark goes first, so a record cut short is never followed
+        // by older ones
+        this.log.putInt(offset + record.length, 0);
+        this.log.position(offset);
+        this.log.put(record);
+        this.position = offset + record.length;
+        return offset;
+    }
+
+    /**
+     * Copies the live entries into a new log, with the invalidations that
+     * could still drop one of them, evicting the oldest entries while they
+     * and those invalidations fill more than half of it
+     */
+    private void compact(long now) throws IOException {
+        List<Map.Entry<String, Integer>> live = new ArrayList<>(this.index.entrySet());
+        Collections.sort(live, new Comparator<Map.Entry<String, Integer>>() {
+            @Override
+            public int compare(Map.Entry<String, Integer> a, Map.Entry<String, Integer> b) {
+                return a.getValue().compareTo(b.getValue());
+            }
+        });
+        long used = FILE_HEADER;
+        List<byte[]> records = new ArrayList<>(live.size());
+        long[] created = new long[live.size()];
+        for (int i = 0; i < live.size(); i++) {
+            byte[] record = read(live.get(i).getValue());
+            CacheEntry entry = entry(record);
+            if ((entry.isExpired(now) && !entry.hasValidators()) || isStale(entry))
+                record = null;
+            else
+                used += record.length;
+            records.add(record);
+            created[i] = entry.getCreated();
+        }
+        // oldest[i] is the creation time of the oldest entry kept at or past i
+        long[] oldest = new long[records.size() + 1];
+        oldest[records.size()] = Long.MAX_VALUE;
+        for (int i = records.size() - 1; i >= 0; i--)
+            oldest[i] = records.get(i) == null ? oldest[i + 1] : Math.min(created[i], oldest[i + 1]);
+
+        List<Map.Entry<String, Long>> stamps = new ArrayList<>(this.stamps.entrySet());
+        Collections.sort(stamps, new Comparator<Map.Entry<String, Long>>() {
+            @Override
+            public int compare(Map.Entry<String, Long> a, Map.Entry<String, Long> b) {
+                return a.getValue().compareTo(b.getValue());
+            }
+        });
+        List<byte[]> invalidations = new ArrayList<>(stamps.size());
+        for (Map.Entry<String, Long> stamp : stamps) {
+            byte[] record = invalidation(stamp.getKey(), stamp.getValue());
+            invalidations.add(record);
+            used += record.length;
+        }
+        // stamps older than every entry kept cannot drop any of them
+        int dropped = 0;
+        int evicted = 0;
+        for (int i = 0; i <= records.size(); i++) {
+            while ((dropped < stamps.size()) && (stamps.get(dropped).getValue() < oldest[i]))
+                used -= invalidations.get(dropped++).length;
+            if ((i == records.size()) || (used <= (this.maxBytes / 2)))
+                break;
+            if (records.get(i) == null)
+                continue;
+            used -= records.get(i).length;
+            records.set(i, null);
+            evicted++;
+        }
+
+        File compacted = new File(this.file.getPath() + ".compact");
+        RandomAccessFile raf = new RandomAccessFile(compacted, "rw");
+        FileChannel channel = raf.getChannel();
+        try {
+            raf.setLength(this.maxBytes);
+            MappedByteBuffer log = channel.map(FileChannel.MapMode.READ_WRITE, 0, this.maxBytes);
+            log.putInt(MAGIC).putInt(VERSION);
+            for (int i = dropped; i < invalidations.size(); i++)
+                log.put(invalidations.get(i));
+            Map<String, Integer> index = new HashMap<>();
+            for (int i = 0; i < records.size(); i++) {
+                if (records.get(i) == null)
+                    continue;
+                index.put(live.get(i).getKey(), log.position());
+                log.put(records.get(i));
+            }
+            int position = log.position();
+            log.putInt(0);
+            log.force();
+            Files.move(compacted.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            this.channel.close();
+            this.channel = channel;
+            this.log = log;
+            this.position = position;
+            this.index.clear();
+            this.index.putAll(index);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            compacted.delete();
+            throw e;
+        }
+        for (int i = 0; i < dropped; i++)
+            this.stamps.remove(stamps.get(i).getKey());
+        this.evictions.addAndGet(evicted);
+        this.compactions.incrementAndGet();
+    }
+
+    private byte[] read(int offset) {
+        byte[] record = new byte[this.log.getInt(offset)];
+        this.log.position(offset);
+        this.log.get(record);
+        return record;
+    }
+
+    private static CacheEntry entry(byte[] record) {
+        int length = ByteBuffer.wrap(record).getInt(RECORD_HEADER);
+        return EncodedEntry.decode(record, RECORD_HEADER + 4 + length);
+    }
+
+    private static byte[] removal(byte[] name) {
+        byte[] record = new byte[RECORD_HEADER + 4 + name.length];
+        ByteBuffer.wrap(record, RECORD_HEADER, 4 + name.length).putInt(name.length).put(name);
+        return seal(record, REMOVE);
+    }
+
+    private static byte[] invalidation(String user, long stamp) {
+        byte[] name = EncodedEntry.utf8(user);
+        byte[] record = new byte[RECORD_HEADER + 4 + name.length + 8];
+        ByteBuffer.wrap(record, RECORD_HEADER, 12 + name.length).putInt(name.length).put(name).putLong(stamp);
+        return seal(record, INVALIDATE);
+    }
+
+    /**
+     * Fills in the length, type and checksum of a record
+     */
+    private static byte[] seal(byte[] record, byte type) {
+        record[8] = type;
+        CRC32 crc = new CRC32();
+        crc.update(record, 8, record.length - 8);
+        ByteBuffer.wrap(record).putInt(0, record.length).putInt(4, (int) crc.getValue());
+        return record;
+    }
+
+    private static boolean isSealed(byte[] record) {
+        CRC32 crc = new CRC32();
+        crc.update(record, 8, record.length - 8);
+        return ByteBuffer.wrap(record).getInt(4) == (int) crc.getValue();
+    }
+
+}
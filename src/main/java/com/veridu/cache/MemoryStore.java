@@ -0,0 +1,150 @@
+package com.veridu.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Class MemoryStore keeps cache entries on the heap, evicting the least
+ * recently used. Keys are spread over segments with a lock and an LRU
+ * order each, so concurrent readers of different keys rarely contend; each
+ * segment holds its share of maxEntries.
+ *
+ * @version 1.0
+ */
+public class MemoryStore implements CacheStore {
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final int maxEntries;
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Class constructor
+     *
+     * @param maxEntries
+     *            Entries kept at most
+     */
+    public MemoryStore(int maxEntries) {
+        if (maxEntries < 1)
+            throw new IllegalArgumentException("maxEntries must be positive");
+        this.maxEntries = maxEntries;
+        int share = Math.max(1, (maxEntries + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++)
+            this.segments[i] = new Segment(share);
+    }
+
+    private Segment segment(String key) {
+        int hash = key.hashCode();
+        return this.segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    @Override
+    public CacheEntry get(String key) {
+        Segment segment = segment(key);
+        segment.lock.lock();
+        try {
+            return segment.entries.get(key);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    @Override
+    public void put(String key, CacheEntry entry) {
+        Segment segment = segment(key);
+        segment.lock.lock();
+        try {
+            segment.entries.put(key, entry);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    @Override
+    public void remove(String key) {
+        Segment segment = segment(key);
+        segment.lock.lock();
+        try {
+            segment.entries.remove(key);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    @Override
+    public void invalidate(String user, long stamp) {
+        // entries do not outlive the ResponseCache, which drops them
+    }
+
+    @Override
+    public void clear() {
+        for (Segment segment : this.segments) {
+            segment.lock.lock();
+            try {
+                segment.entries.clear();
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Segment segment : this.segments) {
+            segment.lock.lock();
+            try {
+                size += segment.entries.size();
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public long getEvictions() {
+        return this.evictions.get();
+    }
+
+    /**
+     * Gets the number of entries kept at most
+     *
+     * @return maxEntries
+     */
+    public int getMaxEntries() {
+        return this.maxEntries;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MemoryStore[entries=%d, maxEntries=%d, evictions=%d]", size(), this.maxEntries,
+                this.evictions.get());
+    }
+
+    /**
+     * Entries of a share of the keys, in access order
+     */
+    private final class Segment {
+        final ReentrantLock lock = new ReentrantLock();
+        final LinkedHashMap<String, CacheEntry> entries;
+
+        Segment(final int capacity) {
+            this.entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                    if (size() <= capacity)
+                        return false;
+                    MemoryStore.this.evictions.incrementAndGet();
+                    return true;
+                }
+            };
+        }
+    }
+
+}
@@ -0,0 +1,433 @@
+package com.veridu.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Class OffHeapStore keeps cache entries outside the Java heap, so a cache
+ * of millions of responses neither grows the heap nor lengthens garbage
+ * collection pauses. Entries are written in a compact binary form into
+ * direct buffers (slabs) of slabSize bytes, up to maxBytes in all; a
+ * response is only decoded back into a JSONObject when a hit's value is
+ * read.
+ *
+ * Keys are spread over segments, each with a lock, its share of the
+ * slabs and an index of primitive arrays. Slabs are filled in turn; once
+ * the budget is used up, the oldest slab is emptied for new entries, and
+ * a hit on an entry of that slab moves the entry to the newest one, so
+ * entries still in use survive. An entry larger than a slab, or holding a
+ * value that is not JSON, is not stored.
+ *
+ * Direct buffers count against the JVM's -XX:MaxDirectMemorySize, which
+ * must leave room for maxBytes.
+ *
+ * @version 1.0
+ */
+public class OffHeapStore implements CacheStore {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int SEGMENTS = 16;
+
+    /**
+     * Slabs of a segment, unless slabs would exceed MAX_SLAB_SIZE
+     */
+    private static final int SLABS = 8;
+
+    private static final int MIN_SLAB_SIZE = 1024;
+    private static final int MAX_SLAB_SIZE = 1 << 24;
+
+    /**
+     * Record layout: hash, record length, key length, key and the entry as
+     * {@link EncodedEntry} writes it
+     */
+    private static final int HEADER = 12;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final long maxBytes;
+    private final int slabSize;
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Class constructor
+     *
+     * @param maxBytes
+     *            Bytes of direct memory used at most, 128 KiB or more
+     */
+    public OffHeapStore(long maxBytes) {
+        this(maxBytes, (int) Math.max(MIN_SLAB_SIZE, Math.min(MAX_SLAB_SIZE, maxBytes / (SEGMENTS * SLABS))));
+    }
+
+    /**
+     * Class constructor
+     *
+     * @param maxBytes
+     *            Bytes of direct memory used at most
+     * @param slabSize
+     *            Bytes of a slab, and of the largest entry stored; maxBytes
+     *            must hold two slabs per segment
+     */
+    public OffHeapStore(long maxBytes, int slabSize) {
+        if (slabSize < MIN_SLAB_SIZE)
+            throw new IllegalArgumentException("slabSize must be at least " + MIN_SLAB_SIZE);
+        if ((maxBytes / slabSize) < (2 * SEGMENTS))
+            throw new IllegalArgumentException("maxBytes must hold " + (2 * SEGMENTS) + " slabs");
+        long slabs = maxBytes / slabSize / SEGMENTS;
+        if (slabs > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("too many slabs, raise slabSize");
+        this.maxBytes = maxBytes;
+        this.slabSize = slabSize;
+        for (int i = 0; i < SEGMENTS; i++)
+            this.segments[i] = new Segment((int) slabs);
+    }
+
+    private static int hash(String key) {
+        int hash = key.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    private Segment segment(int hash) {
+        return this.segments[hash & (SEGMENTS - 1)];
+    }
+
+    @Override
+    public CacheEntry get(String key) {
+        int hash = hash(key);
+        byte[] name = key.getBytes(UTF8);
+        byte[] record;
+        Segment segment = segment(hash);
+        segment.lock.lock();
+        try {
+            record = segment.get(hash, name);
+        } finally {
+            segment.lock.unlock();
+        }
+        return record == null ? null : EncodedEntry.decode(record, HEADER + name.length);
+    }
+
+    @Override
+    public void put(String key, CacheEntry entry) {
+        int hash = hash(key);
+        byte[] name = key.getBytes(UTF8);
+        byte[] record;
+        try {
+            record = record(hash, name, entry);
+        } catch (IllegalArgumentException e) {
+            record = null;
+        }
+        Segment segment = segment(hash);
+        segment.lock.lock();
+        try {
+            if ((record == null) || (record.length > this.slabSize)) {
+                // the previous entry must not outlive its replacement
+                segment.remove(hash, name);
+                this.rejected.incrementAndGet();
+                return;
+            }
+            segment.put(hash, name, record);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    @Override
+    public void remove(String key) {
+        int hash = hash(key);
+        Segment segment = segment(hash);
+        segment.lock.lock();
+        try {
+            segment.remove(hash, key.getBytes(UTF8));
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    @Override
+    public void invalidate(String user, long stamp) {
+        // entries do not outlive the ResponseCache, which drops them
+    }
+
+    @Override
+    public void clear() {
+        for (Segment segment : this.segments) {
+            segment.lock.lock();
+            try {
+                segment.clear();
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Segment segment : this.segments) {
+            segment.lock.lock();
+            try {
+                size += segment.count;
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public long getEvictions() {
+        return this.evictions.get();
+    }
+
+    /**
+     * Gets the number of entries not stored, being larger than a slab or
+     * not JSON
+     *
+     * @return long
+     */
+    public long getRejected() {
+        return this.rejected.get();
+    }
+
+    /**
+     * Gets the number of bytes of direct memory used at most
+     *
+     * @return maxBytes
+     */
+    public long getMaxBytes() {
+        return this.maxBytes;
+    }
+
+    /**
+     * Gets the number of bytes of a slab, and of the largest entry stored
+     *
+     * @return slabSize
+     */
+    public int getSlabSize() {
+        return this.slabSize;
+    }
+
+    /**
+     * Gets the number of bytes written into slabs, including those of
+     * entries replaced or removed since
+     *
+     * @return long
+     */
+    public long getUsedBytes() {
+        long used = 0;
+        for (Segment segment : this.segments) {
+            segment.lock.lock();
+            try {
+                for (int limit : segment.limits)
+                    used += limit;
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return used;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("OffHeapStore[entries=%d, usedBytes=%d, maxBytes=%d, evictions=%d, rejected=%d]",
+                size(), getUsedBytes(), this.maxBytes, this.evictions.get(), this.rejected.get());
+    }
+
+    private static byte[] record(int hash, byte[] name, CacheEntry entry) {
+        byte[] record = EncodedEntry.encode(entry, HEADER + name.length);
+        ByteBuffer.wrap(record).putInt(hash).putInt(record.length).putInt(name.length).put(name);
+        return record;
+    }
+
+    /**
+     * Slabs and index of a share of the keys
+     */
+    private final class Segment {
+        final ReentrantLock lock = new ReentrantLock();
+        final ByteBuffer[] slabs;
+
+        /**
+         * End of the records written into each slab
+         */
+        final int[] limits;
+
+        /**
+         * Slab written into
+         */
+        int current = 0;
+
+        /**
+         * Open addressing index: (slab + 1) << 32 | offset of each record, 0
+         * for a free slot, and the hash of its key
+         */
+        long[] addresses = new long[64];
+        int[] hashes = new int[64];
+        int count = 0;
+
+        Segment(int slabs) {
+            this.slabs = new ByteBuffer[slabs];
+            this.limits = new int[slabs];
+        }
+
+        byte[] get(int hash, byte[] name) {
+            int slot = find(hash, name);
+            if (slot < 0)
+                return null;
+            long address = this.addresses[slot];
+            ByteBuffer slab = this.slabs[slab(address)];
+            int offset = (int) address;
+            byte[] record = new byte[slab.getInt(offset + 4)];
+            slab.position(offset);
+            slab.get(record);
+            // the oldest slab is the next one emptied: move the record out
+            int oldest = (this.current + 1) % this.slabs.length;
+            if ((slab(address) == oldest) && (this.limits[oldest] > 0)) {
+                delete(slot);
+                put(hash, name, record);
+            }
+            return record;
+        }
+
+        void put(int hash, byte[] name, byte[] record) {
+            long address = append(record);
+            int slot = find(hash, name);
+            if (slot >= 0) {
+                this.addresses[slot] = address;
+                return;
+            }
+            if (((this.count + 1) * 4) > (this.addresses.length * 3))
+                resize();
+            insert(hash, address);
+            this.count++;
+        }
+
+        void remove(int hash, byte[] name) {
+            int slot = find(hash, name);
+            if (slot >= 0)
+                delete(slot);
+        }
+
+        void clear() {
+            Arrays.fill(this.addresses, 0);
+            Arrays.fill(this.limits, 0);
+            this.count = 0;
+            this.current = 0;
+        }
+
+        /**
+         * Writes a record, emptying the oldest slab if the current one is
+         * full
+         */
+        long append(byte[] record) {
+            int position = this.limits[this.current];
+            if ((position + record.length) > OffHeapStore.this.slabSize) {
+                this.current = (this.current + 1) % this.slabs.length;
+                evict(this.current);
+                position = 0;
+            }
+            ByteBuffer slab = this.slabs[this.current];
+            if (slab == null) {
+                slab = ByteBuffer.allocateDirect(OffHeapStore.this.slabSize);
+                this.slabs[this.current] = slab;
+            }
+            slab.position(position);
+            slab.put(record);
+            this.limits[this.current] = position + record.length;
+            return ((long) (this.current + 1) << 32) | position;
+        }
+
+        /**
+         * Drops the index entries of every record still live in a slab
+         */
+        void evict(int index) {
+            ByteBuffer slab = this.slabs[index];
+            int limit = this.limits[index];
+            for (int offset = 0; offset < limit; offset += slab.getInt(offset + 4)) {
+                long address = ((long) (index + 1) << 32) | offset;
+                int mask = this.addresses.length - 1;
+                for (int slot = slot(slab.getInt(offset), mask); this.addresses[slot] != 0; slot = (slot + 1) & mask) {
+                    if (this.addresses[slot] == address) {
+                        delete(slot);
+                        OffHeapStore.this.evictions.incrementAndGet();
+                        break;
+                    }
+                }
+            }
+            this.limits[index] = 0;
+        }
+
+        int find(int hash, byte[] name) {
+            int mask = this.addresses.length - 1;
+            for (int slot = slot(hash, mask); this.addresses[slot] != 0; slot = (slot + 1) & mask) {
+                if ((this.hashes[slot] == hash) && matches(this.addresses[slot], name))
+                    return slot;
+            }
+            return -1;
+        }
+
+        boolean matches(long address, byte[] name) {
+            ByteBuffer slab = this.slabs[slab(address)];
+            int offset = (int) address;
+            if (slab.getInt(offset + 8) != name.length)
+                return false;
+            offset += HEADER;
+            for (int i = 0; i < name.length; i++) {
+                if (slab.get(offset + i) != name[i])
+                    return false;
+            }
+            return true;
+        }
+
+        void insert(int hash, long address) {
+            int mask = this.addresses.length - 1;
+            int slot = slot(hash, mask);
+            while (this.addresses[slot] != 0)
+                slot = (slot + 1) & mask;
+            this.addresses[slot] = address;
+            this.hashes[slot] = hash;
+        }
+
+        /**
+         * Frees a slot, shifting back the entries probed past it
+         */
+        void delete(int slot) {
+            int mask = this.addresses.length - 1;
+            int free = slot;
+            for (int next = (free + 1) & mask; this.addresses[next] != 0; next = (next + 1) & mask) {
+                int home = slot(this.hashes[next], mask);
+                boolean reachable = free < next ? (free < home) && (home <= next) : (free < home) || (home <= next);
+                if (!reachable) {
+                    this.addresses[free] = this.addresses[next];
+                    this.hashes[free] = this.hashes[next];
+                    free = next;
+                }
+            }
+            this.addresses[free] = 0;
+            this.count--;
+        }
+
+        void resize() {
+            long[] addresses = this.addresses;
+            int[] hashes = this.hashes;
+            this.addresses = new long[addresses.length * 2];
+            this.hashes = new int[hashes.length * 2];
+            for (int i = 0; i < addresses.length; i++) {
+                if (addresses[i] != 0)
+                    insert(hashes[i], addresses[i]);
+            }
+        }
+    }
+
+    private static int slab(long address) {
+        return (int) (address >>> 32) - 1;
+    }
+
+    private static int slot(int hash, int mask) {
+        int mixed = hash * 0x9e3779b9;
+        return (mixed ^ (mixed >>> 16)) & mask;
+    }
+
+}
@@ -0,0 +1,806 @@
+package com.veridu.cache;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import com.veridu.exceptions.APIError;
+import com.veridu.ratelimit.RateLimiter;
+
+/**
+ * Class ResponseCache keeps the responses of GET calls for a time set per
+ * resource family. Responses are keyed by client key, URL (version,
+ * resource and parameters) and, in SESSION scope, session token; they are
+ * held by a {@link CacheStore}, a size-bounded LRU {@link MemoryStore}
+ * unless another was set.
+ *
+ * A call that changes a user's data (any call but GET) invalidates every
+ * entry of that user, the user being the second segment of the resource
+ * path, as in profile/username or user/username/score. Invalidation
+ * is striped: it stamps the user's stripe, and entries fetched before the
+ * stamp are dropped when next read, so it costs the same however many
+ * entries the user has. A user sharing a stripe with an invalidated one
+ * loses entries it did not have to, never keeps one it should not.
+ * {@link #invalidate(String, String)} does the same for the entries of one
+ * resource family of a user, as a {@link HookInvalidator} does on the
+ * API's notice that they changed.
+ *
+ * Expired entries the API sent an ETag or Last-Modified header with are
+ * kept until evicted: the next call for them is a conditional GET, and a
+ * 304 Not Modified answer renews the entry without a body being sent.
+ *
+ * A family with a stale TTL serves its expired entries for that much longer
+ * while one background refresh per entry fetches them again, so callers
+ * only wait on the API once the stale TTL ran out too. Refreshes run on a
+ * dedicated executor, at a bounded rate; one that cannot start leaves the
+ * entry to the next call. No family has a stale TTL by default, and the
+ * profile and state families are not cached at all until given a time to
+ * live, so serving them stale takes both {@link #setTtl(String, long)} and
+ * {@link #setStaleTtl(String, long)}.
+ *
+ * Errors can be cached too: a GET the API failed with an error type that
+ * has a negative TTL fails again from the cache, without a call, until that
+ * TTL runs out or the user's entries are invalidated, as creating the user
+ * or one of its providers does. Only NOT_FOUND errors are cached by
+ * default, for ten seconds.
+ *
+ * The cache is disabled by default.
+ *
+ * @version 1.0
+ */
+public class ResponseCache {
+
+    /**
+     * Time to live of the families cached by default, in milliseconds
+     */
+    final public static long DEFAULT_TTL = 60000;
+
+    /**
+     * Time to live of NOT_FOUND errors by default, in milliseconds
+     */
+    final public static long DEFAULT_NEGATIVE_TTL = 10000;
+
+    private static final int STRIPES = 1024;
+
+    /**
+     * Client of the refresh rate limit
+     */
+    private static final String REFRESH = "refresh";
+
+    private final ConcurrentMap<String, Long> ttls = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Long> staleTtls = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Long> negativeTtls = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Boolean> refreshing = new ConcurrentHashMap<>();
+    private final RateLimiter refreshLimiter = new RateLimiter();
+    private final AtomicLongArray invalidated = new AtomicLongArray(STRIPES);
+    private final AtomicLongArray familyInvalidated = new AtomicLongArray(STRIPES);
+
+    /**
+     * Holds the entries
+     */
+    private volatile CacheStore store = new MemoryStore(10000);
+
+    /**
+     * Whether GET calls go through the cache at all
+     */
+    private volatile boolean enabled = false;
+
+    /**
+     * Who shares a cached response
+     */
+    private volatile CacheScope scope = CacheScope.SESSION;
+
+    /**
+     * Time to live of families without one of their own, 0 to not cache
+     * them
+     */
+    private volatile long defaultTtl = 0;
+
+    /**
+     * Runs background refreshes
+     */
+    private volatile Executor refreshExecutor = createRefreshExecutor();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+    private final AtomicLong stale = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+
+    /**
+     * Class constructor; details, facts, certificate, badge, provider and
+     * user resources are kept for DEFAULT_TTL
+     */
+    public ResponseCache() {
+        for (String family : new String[] { "details", "facts", "certificate", "badge", "provider", "user" })
+            this.ttls.put(family, DEFAULT_TTL);
+        this.negativeTtls.put("NOT_FOUND", DEFAULT_NEGATIVE_TTL);
+        this.refreshLimiter.setClientLimit(REFRESH, 10, 10);
+    }
+
+    /**
+     * Builds the key of a call
+     *
+     * @param client
+     *            Client key
+     * @param session
+     *            Session token, may be null
+     * @param url
+     *            URL, holding the version and resource
+     * @param data
+     *            Query parameters, may be null
+     *
+     * @return String
+     */
+    public String key(String client, String session, String url, String data) {
+        StringBuilder key = new StringBuilder(url.length() + 64);
+        key.append(client).append(' ');
+        if (this.scope == CacheScope.SESSION)
+            key.append(session);
+        key.append(' ').append(url);
+        if ((data != null) && !data.isEmpty())
+            key.append('?').append(data);
+        return key.toString();
+    }
+
+    /**
+     * Gets the entry of a call. A fresh entry answers the call, as does an
+     * expired one within its family's stale TTL, to be refreshed; past it an
+     * expired entry is only returned if it has validators, to revalidate it
+     * with a conditional GET.
+     *
+     * @param key
+     *            String, from {@link #key(String, String, String, String)}
+     * @param family
+     *            Resource family
+     *
+     * @return CacheEntry, whose value is shared: callers must not change it;
+     *         null on a miss
+     */
+    public CacheEntry get(String key, String family) {
+        return get(key, family, System.currentTimeMillis());
+    }
+
+    CacheEntry get(String key, String family, long now) {
+        CacheStore store = this.store;
+        CacheEntry entry = store.get(key);
+        if ((entry != null) && (isInvalidated(entry, family)
+                || (!isServable(entry, family, now) && !entry.hasValidators()))) {
+            store.remove(key);
+            entry = null;
+        }
+        if ((entry == null) || !isServable(entry, family, now)) {
+            this.misses.incrementAndGet();
+            return entry;
+        }
+        if (entry.isExpired(now))
+            this.stale.incrementAndGet();
+        if (isError(entry))
+            this.errors.incrementAndGet();
+        this.hits.incrementAndGet();
+        return entry;
+    }
+
+    /**
+     * Gets the cached error of a call, for families whose responses are not
+     * cached; a miss is not counted
+     *
+     * @param key
+     *            String, from {@link #key(String, String, String, String)}
+     * @param family
+     *            Resource family
+     *
+     * @return CacheEntry holding an error, null if none is cached
+     */
+    public CacheEntry getError(String key, String family) {
+        return getError(key, family, System.currentTimeMillis());
+    }
+
+    CacheEntry getError(String key, String family, long now) {
+        CacheStore store = this.store;
+        CacheEntry entry = store.get(key);
+        if ((entry == null) || !isError(entry))
+            return null;
+        if (isInvalidated(entry, family) || entry.isExpired(now)) {
+            store.remove(key);
+            return null;
+        }
+        this.errors.incrementAndGet();
+        this.hits.incrementAndGet();
+        return entry;
+    }
+
+    /**
+     * Checks if an entry may answer a call: it is fresh, or expired within
+     * its family's stale TTL
+     *
+     * @param entry
+     *            CacheEntry
+     * @param family
+     *            Resource family
+     * @param now
+     *            epoch milliseconds
+     *
+     * @return boolean
+     */
+    public boolean isServable(CacheEntry entry, String family, long now) {
+        if (!entry.isExpired(now))
+            return true;
+        return (now < (entry.getExpires() + getStaleTtl(family))) && !isError(entry);
+    }
+
+    /**
+     * Checks if an entry holds an error rather than a response
+     *
+     * @param entry
+     *            CacheEntry
+     *
+     * @return boolean
+     */
+    public static boolean isError(CacheEntry entry) {
+        return Boolean.FALSE.equals(entry.getValue().get("status"));
+    }
+
+    /**
+     * Gets the error an entry holds
+     *
+     * @param entry
+     *            CacheEntry for which {@link #isError(CacheEntry)} holds
+     *
+     * @return APIError, as the API failed the call with
+     */
+    public static APIError error(CacheEntry entry) {
+        return APIError.from((JSONObject) entry.getValue().get("error"));
+    }
+
+    /**
+     * Copies a response deeply. Endpoint methods hand out nested members of
+     * responses, so a shallow copy would let a caller changing them change
+     * the cached entry.
+     *
+     * @param value
+     *            JSONObject
+     *
+     * @return JSONObject sharing no object or array with value
+     */
+    @SuppressWarnings("unchecked")
+    public static JSONObject copy(JSONObject value) {
+        JSONObject copy = new JSONObject();
+        for (Object member : value.entrySet()) {
+            Map.Entry<Object, Object> entry = (Map.Entry<Object, Object>) member;
+            copy.put(entry.getKey(), copyValue(entry.getValue()));
+        }
+        return copy;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object copyValue(Object value) {
+        if (value instanceof JSONObject)
+            return copy((JSONObject) value);
+        if (!(value instanceof JSONArray))
+            return value;
+        JSONArray array = (JSONArray) value;
+        JSONArray copy = new JSONArray();
+        for (Object item : array)
+            copy.add(copyValue(item));
+        return copy;
+    }
+
+    /**
+     * Starts the background refresh of an entry served stale, unless one is
+     * running already, the refresh rate limit is reached or the executor
+     * turns it down
+     *
+     * @param key
+     *            String
+     * @param family
+     *            Resource family
+     * @param refresh
+     *            Runnable fetching the entry again and caching it
+     *
+     * @return whether the refresh started
+     */
+    public boolean refresh(final String key, String family, final Runnable refresh) {
+        if (this.refreshing.putIfAbsent(key, Boolean.TRUE) != null)
+            return false;
+        if (this.refreshLimiter.reserve(REFRESH, family, 0) < 0) {
+            this.refreshing.remove(key);
+            return false;
+        }
+        try {
+            this.refreshExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        refresh.run();
+                    } finally {
+                        ResponseCache.this.refreshing.remove(key);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            this.refreshing.remove(key);
+            return false;
+        }
+        this.refreshes.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Caches a response for the time to live of its family
+     *
+     * @param key
+     *            String
+     * @param user
+     *            Username the resource belongs to, null if none
+     * @param family
+     *            Resource family
+     * @param value
+     *            JSONObject response, kept as is; pass a {@link #copy(JSONObject)} if it is handed out
+     * @param started
+     *            When the call that fetched it started, epoch milliseconds
+     */
+    public void put(String key, String user, String family, JSONObject value, long started) {
+        put(key, user, family, value, started, null, null);
+    }
+
+    /**
+     * Caches a response and its validators for the time to live of its
+     * family
+     *
+     * @param key
+     *            String
+     * @param user
+     *            Username the resource belongs to, null if none
+     * @param family
+     *            Resource family
+     * @param value
+     *            JSONObject response, kept as is; pass a {@link #copy(JSONObject)} if it is handed out
+     * @param started
+     *            When the call that fetched it started, epoch milliseconds
+     * @param etag
+     *            ETag header of the response, null if none
+     * @param lastModified
+     *            Last-Modified header of the response, null if none
+     */
+    public void put(String key, String user, String family, JSONObject value, long started, String etag,
+            String lastModified) {
+        long ttl = getTtl(family);
+        if ((ttl <= 0) || (value == null))
+            return;
+        CacheEntry entry = new CacheEntry(value, user, started, started + ttl, etag, lastModified);
+        // the user's data changed while the call ran
+        if (isInvalidated(entry, family))
+            return;
+        this.store.put(key, entry);
+    }
+
+    /**
+     * Caches an error for the negative time to live of its type
+     *
+     * @param key
+     *            String
+     * @param user
+     *            Username the resource belongs to, null if none
+     * @param family
+     *            Resource family
+     * @param error
+     *            APIError the call failed with
+     * @param started
+     *            When the call started, epoch milliseconds
+     */
+    @SuppressWarnings("unchecked")
+    public void putError(String key, String user, String family, APIError error, long started) {
+        long ttl = getNegativeTtl(error.getType());
+        if (ttl <= 0)
+            return;
+        JSONObject detail = new JSONObject();
+        detail.put("message", error.getMessage());
+        detail.put("type", error.getType());
+        detail.put("code", (long) error.getCode());
+        JSONObject value = new JSONObject();
+        value.put("status", false);
+        value.put("error", detail);
+        CacheEntry entry = new CacheEntry(value, user, started, started + ttl);
+        if (isInvalidated(entry, family))
+            return;
+        this.store.put(key, entry);
+    }
+
+    /**
+     * Renews an entry the API answered 304 Not Modified for
+     *
+     * @param key
+     *            String
+     * @param family
+     *            Resource family
+     * @param entry
+     *            CacheEntry revalidated
+     * @param started
+     *            When the conditional call started, epoch milliseconds
+     * @param etag
+     *            ETag header of the 304 response, null to keep the entry's
+     */
+    public void revalidated(String key, String family, CacheEntry entry, long started, String etag) {
+        this.revalidations.incrementAndGet();
+        put(key, entry.getUser(), family, entry.getValue(), started, etag != null ? etag : entry.getEtag(),
+                entry.getLastModified());
+    }
+
+    /**
+     * Invalidates every entry of a user
+     *
+     * @param user
+     *            Username, null does nothing
+     */
+    public void invalidate(String user) {
+        invalidate(user, System.currentTimeMillis());
+    }
+
+    void invalidate(String user, long now) {
+        if (user == null)
+            return;
+        stamp(this.invalidated, stripe(user), now);
+        this.store.invalidate(user, now);
+        this.invalidations.incrementAndGet();
+    }
+
+    /**
+     * Invalidates the entries of one resource family of a user
+     *
+     * @param user
+     *            Username, null does nothing
+     * @param family
+     *            Resource family, e.g. "profile"
+     */
+    public void invalidate(String user, String family) {
+        invalidate(user, family, System.currentTimeMillis());
+    }
+
+    void invalidate(String user, String family, long now) {
+        if (user == null)
+            return;
+        stamp(this.familyInvalidated, stripe(family + '/' + user), now);
+        // stores outliving the cache only know of whole users
+        this.store.invalidate(user, now);
+        this.invalidations.incrementAndGet();
+    }
+
+    /**
+     * Removes every entry
+     */
+    public void clear() {
+        this.store.clear();
+    }
+
+    private static void stamp(AtomicLongArray stamps, int stripe, long now) {
+        while (true) {
+            long stamp = stamps.get(stripe);
+            if ((stamp >= now) || stamps.compareAndSet(stripe, stamp, now))
+                return;
+        }
+    }
+
+    private boolean isInvalidated(CacheEntry entry, String family) {
+        String user = entry.getUser();
+        if (user == null)
+            return false;
+        return (entry.getCreated() <= this.invalidated.get(stripe(user)))
+                || (entry.getCreated() <= this.familyInvalidated.get(stripe(family + '/' + user)));
+    }
+
+    private static int stripe(String user) {
+        int hash = user.hashCode();
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+
+    /**
+     * Gets the user a resource belongs to
+     *
+     * @param resource
+     *            String, e.g. "profile/john"
+     *
+     * @return the second segment of the path, null if there is none
+     */
+    public static String user(String resource) {
+        int start = 0;
+        while ((start < resource.length()) && (resource.charAt(start) == '/'))
+            start++;
+        int end = start;
+        while ((end < resource.length()) && (resource.charAt(end) != '/') && (resource.charAt(end) != '?'))
+            end++;
+        if ((end >= resource.length()) || (resource.charAt(end) == '?'))
+            return null;
+        start = end + 1;
+        end = start;
+        while ((end < resource.length()) && (resource.charAt(end) != '/') && (resource.charAt(end) != '?'))
+            end++;
+        return end == start ? null : resource.substring(start, end);
+    }
+
+    /**
+     * Checks if a family's responses are cached
+     *
+     * @param family
+     *            Resource family
+     *
+     * @return boolean
+     */
+    public boolean isCached(String family) {
+        return getTtl(family) > 0;
+    }
+
+    /**
+     * Gets the time to live of a family's responses
+     *
+     * @param family
+     *            Resource family
+     *
+     * @return ttl in milliseconds, 0 if they are not cached
+     */
+    public long getTtl(String family) {
+        Long ttl = this.ttls.get(family);
+        return ttl == null ? this.defaultTtl : ttl;
+    }
+
+    /**
+     * Sets the time to live of a family's responses
+     *
+     * @param family
+     *            Resource family, e.g. "profile"
+     * @param ttl
+     *            milliseconds, 0 to not cache them
+     */
+    public void setTtl(String family, long ttl) {
+        if (ttl < 0)
+            throw new IllegalArgumentException("ttl must not be negative");
+        this.ttls.put(family, ttl);
+    }
+
+    /**
+     * Gets how long a family's expired responses are still served while
+     * they are refreshed
+     *
+     * @param family
+     *            Resource family
+     *
+     * @return staleTtl in milliseconds, 0 if they are not
+     */
+    public long getStaleTtl(String family) {
+        Long staleTtl = this.staleTtls.get(family);
+        return staleTtl == null ? 0 : staleTtl;
+    }
+
+    /**
+     * Sets how long a family's expired responses are still served while
+     * they are refreshed in the background, on top of their time to live;
+     * a family without one, as profile and state are by default, is not
+     * cached and so never served stale
+     *
+     * @param family
+     *            Resource family, e.g. "profile"
+     * @param staleTtl
+     *            milliseconds, 0 to wait for the API once they expire
+     */
+    public void setStaleTtl(String family, long staleTtl) {
+        if (staleTtl < 0)
+            throw new IllegalArgumentException("staleTtl must not be negative");
+        this.staleTtls.put(family, staleTtl);
+    }
+
+    /**
+     * Gets how long errors of a type are cached
+     *
+     * @param type
+     *            APIError type, e.g. "NOT_FOUND"; may be null
+     *
+     * @return negativeTtl in milliseconds, 0 if they are not
+     */
+    public long getNegativeTtl(String type) {
+        Long negativeTtl = type == null ? null : this.negativeTtls.get(type);
+        return negativeTtl == null ? 0 : negativeTtl;
+    }
+
+    /**
+     * Sets how long errors of a type are cached
+     *
+     * @param type
+     *            APIError type, e.g. "NOT_FOUND"
+     * @param negativeTtl
+     *            milliseconds, 0 to not cache them
+     */
+    public void setNegativeTtl(String type, long negativeTtl) {
+        if (negativeTtl < 0)
+            throw new IllegalArgumentException("negativeTtl must not be negative");
+        this.negativeTtls.put(type, negativeTtl);
+    }
+
+    /**
+     * Checks if any error type is cached
+     *
+     * @return boolean
+     */
+    public boolean isCachingErrors() {
+        for (Long negativeTtl : this.negativeTtls.values()) {
+            if (negativeTtl > 0)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Sets the rate of background refreshes, 10 per second by default
+     *
+     * @param perSecond
+     *            Refreshes started per second at most
+     * @param burst
+     *            Refreshes started at once at most
+     */
+    public void setRefreshLimit(double perSecond, int burst) {
+        this.refreshLimiter.setClientLimit(REFRESH, perSecond, burst);
+    }
+
+    /**
+     * Gets the executor running background refreshes
+     *
+     * @return Executor
+     */
+    public Executor getRefreshExecutor() {
+        return this.refreshExecutor;
+    }
+
+    /**
+     * Sets the executor running background refreshes; by default two daemon
+     * threads of the cache's own, with up to 256 refreshes queued
+     *
+     * @param refreshExecutor
+     *            Executor
+     */
+    public void setRefreshExecutor(Executor refreshExecutor) {
+        if (refreshExecutor == null)
+            throw new IllegalArgumentException("refreshExecutor must not be null");
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    /**
+     * Gets the time to live of every family that has one of its own
+     *
+     * @return ttls keyed by family, in family order
+     */
+    public Map<String, Long> getTtls() {
+        return new TreeMap<>(this.ttls);
+    }
+
+    /**
+     * Gets the time to live of families without one of their own
+     *
+     * @return defaultTtl in milliseconds
+     */
+    public long getDefaultTtl() {
+        return this.defaultTtl;
+    }
+
+    /**
+     * Sets the time to live of families without one of their own
+     *
+     * @param defaultTtl
+     *            milliseconds, 0 to not cache them
+     */
+    public void setDefaultTtl(long defaultTtl) {
+        if (defaultTtl < 0)
+            throw new IllegalArgumentException("defaultTtl must not be negative");
+        this.defaultTtl = defaultTtl;
+    }
+
+    /**
+     * Gets the store holding the entries
+     *
+     * @return CacheStore
+     */
+    public CacheStore getStore() {
+        return this.store;
+    }
+
+    /**
+     * Sets the store holding the entries; entries of the previous one are
+     * not carried over
+     *
+     * @param store
+     *            CacheStore
+     */
+    public void setStore(CacheStore store) {
+        if (store == null)
+            throw new IllegalArgumentException("store must not be null");
+        this.store = store;
+    }
+
+    /**
+     * Gets who shares a cached response
+     *
+     * @return scope
+     */
+    public CacheScope getScope() {
+        return this.scope;
+    }
+
+    /**
+     * Sets who shares a cached response
+     *
+     * @param scope
+     *            CacheScope
+     */
+    public void setScope(CacheScope scope) {
+        if (scope == null)
+            throw new IllegalArgumentException("scope must not be null");
+        this.scope = scope;
+    }
+
+    /**
+     * Checks if GET calls go through the cache
+     *
+     * @return enabled
+     */
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * Enables or disables the cache
+     *
+     * @param enabled
+     *            boolean
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Gets a snapshot of the counters
+     *
+     * @return CacheStats
+     */
+    public CacheStats getStats() {
+        CacheStore store = this.store;
+        return new CacheStats(this.hits.get(), this.misses.get(), this.stale.get(), this.errors.get(),
+                this.revalidations.get(),
+                this.refreshes.get(), store.size(),
+                store.getEvictions(), this.invalidations.get());
+    }
+
+    @Override
+    public String toString() {
+        return "ResponseCache[" + getStats() + "]";
+    }
+
+    private static Executor createRefreshExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 2, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(256), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "veridu-refresh-" + this.count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+}
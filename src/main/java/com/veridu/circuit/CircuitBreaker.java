@@ -0,0 +1,217 @@
+package com.veridu.circuit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Class CircuitBreaker stops calls to a resource family that keeps failing
+ * or answering slowly. Outcomes are kept in a sliding window of the last
+ * calls; once enough calls are in it and the failure or slow-call rate
+ * reaches its threshold, the breaker opens and calls fail fast. After the
+ * open duration a few probe calls are let through: if they all succeed the
+ * breaker closes, if any fails it opens again.
+ *
+ * Thresholds are read from the owning {@link CircuitBreakers}.
+ *
+ * @version 1.0
+ */
+public class CircuitBreaker {
+
+    private static final byte FAILED = 1;
+    private static final byte SLOW = 2;
+
+    private final String name;
+    private final CircuitBreakers settings;
+    private final ReentrantLock lock = new ReentrantLock();
+    private byte[] window;
+    private int next = 0;
+    private int calls = 0;
+    private int failures = 0;
+    private int slowCalls = 0;
+    private CircuitState state = CircuitState.CLOSED;
+    private long openedAt = 0;
+    private int probes = 0;
+    private int probeSuccesses = 0;
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong opened = new AtomicLong();
+
+    /**
+     * Class constructor
+     *
+     * @param name
+     *            Resource family
+     * @param settings
+     *            CircuitBreakers holding the thresholds
+     */
+    CircuitBreaker(String name, CircuitBreakers settings) {
+        this.name = name;
+        this.settings = settings;
+        this.window = new byte[settings.getWindowSize()];
+    }
+
+    /**
+     * Asks permission for a call. Every permitted call must be followed by
+     * {@link #record(long, boolean)}.
+     *
+     * @return false if the call must fail fast
+     */
+    public boolean tryAcquire() {
+        this.lock.lock();
+        try {
+            if ((this.state == CircuitState.OPEN)
+                    && ((System.currentTimeMillis() - this.openedAt) >= this.settings.getOpenDuration())) {
+                this.state = CircuitState.HALF_OPEN;
+                this.probes = 0;
+                this.probeSuccesses = 0;
+            }
+            switch (this.state) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (this.probes < this.settings.getProbes()) {
+                    this.probes++;
+                    return true;
+                }
+                break;
+            default:
+                break;
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        this.rejected.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Records the outcome of a permitted call
+     *
+     * @param duration
+     *            milliseconds the call took
+     * @param failed
+     *            whether the call failed
+     */
+    public void record(long duration, boolean failed) {
+        boolean slow = duration >= this.settings.getSlowCallDuration();
+        this.lock.lock();
+        try {
+            switch (this.state) {
+            case HALF_OPEN:
+                if (failed || slow) {
+                    open();
+                } else if (++this.probeSuccesses >= this.settings.getProbes()) {
+                    this.state = CircuitState.CLOSED;
+                    clear();
+                }
+                break;
+            case CLOSED:
+                add((byte) ((failed ? FAILED : 0) | (slow ? SLOW : 0)));
+                if ((this.calls >= this.settings.getMinimumCalls())
+                        && ((rate(this.failures) >= this.settings.getFailureRateThreshold())
+                                || (rate(this.slowCalls) >= this.settings.getSlowCallRateThreshold())))
+                    open();
+                break;
+            default:
+                // a call permitted before the breaker opened
+                break;
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the breaker and forgets the recorded calls
+     */
+    public void reset() {
+        this.lock.lock();
+        try {
+            this.state = CircuitState.CLOSED;
+            clear();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the resource family
+     *
+     * @return name
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Gets the state, an open breaker past its open duration reads as
+     * half-open
+     *
+     * @return CircuitState
+     */
+    public CircuitState getState() {
+        this.lock.lock();
+        try {
+            if ((this.state == CircuitState.OPEN)
+                    && ((System.currentTimeMillis() - this.openedAt) >= this.settings.getOpenDuration()))
+                return CircuitState.HALF_OPEN;
+            return this.state;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Gets a snapshot of the breaker
+     *
+     * @return CircuitStats
+     */
+    public CircuitStats getStats() {
+        CircuitState state = getState();
+        this.lock.lock();
+        try {
+            return new CircuitStats(this.name, state, this.calls, rate(this.failures), rate(this.slowCalls),
+                    this.rejected.get(), this.opened.get());
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void open() {
+        this.state = CircuitState.OPEN;
+        this.openedAt = System.currentTimeMillis();
+        this.opened.incrementAndGet();
+        clear();
+    }
+
+    private void clear() {
+        if (this.window.length != this.settings.getWindowSize())
+            this.window = new byte[this.settings.getWindowSize()];
+        this.next = 0;
+        this.calls = 0;
+        this.failures = 0;
+        this.slowCalls = 0;
+    }
+
+    private void add(byte outcome) {
+        if (this.calls == this.window.length) {
+            byte evicted = this.window[this.next];
+            if ((evicted & FAILED) != 0)
+                this.failures--;
+            if ((evicted & SLOW) != 0)
+                this.slowCalls--;
+        } else {
+            this.calls++;
+        }
+        this.window[this.next] = outcome;
+        this.next = (this.next + 1) % this.window.length;
+        if ((outcome & FAILED) != 0)
+            this.failures++;
+        if ((outcome & SLOW) != 0)
+            this.slowCalls++;
+    }
+
+    private double rate(int count) {
+        return this.calls == 0 ? 0 : (count * 100.0) / this.calls;
+    }
+
+}
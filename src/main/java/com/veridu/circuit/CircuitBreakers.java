@@ -0,0 +1,275 @@
+package com.veridu.circuit;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Class CircuitBreakers holds one circuit breaker per resource family
+ * ("profile", "check", "otp", "batch"...) and the thresholds they share, so
+ * a degraded part of the API stops holding threads without cutting off the
+ * rest.
+ *
+ * @version 1.0
+ */
+public class CircuitBreakers {
+
+    private final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    /**
+     * Whether calls go through the breakers at all
+     */
+    private volatile boolean enabled = true;
+
+    /**
+     * Calls kept in the sliding window of each breaker
+     */
+    private volatile int windowSize = 20;
+
+    /**
+     * Calls needed in the window before rates are evaluated
+     */
+    private volatile int minimumCalls = 10;
+
+    /**
+     * Percentage of failed calls opening the breaker
+     */
+    private volatile double failureRateThreshold = 50;
+
+    /**
+     * Calls taking at least this long are slow, in milliseconds
+     */
+    private volatile long slowCallDuration = 5000;
+
+    /**
+     * Percentage of slow calls opening the breaker
+     */
+    private volatile double slowCallRateThreshold = 80;
+
+    /**
+     * Time an open breaker fails fast before probing, in milliseconds
+     */
+    private volatile long openDuration = 30000;
+
+    /**
+     * Probe calls let through while half-open
+     */
+    private volatile int probes = 3;
+
+    /**
+     * Gets the resource family of a resource: its first path segment
+     *
+     * @param resource
+     *            Resource, e.g. "profile/john"
+     *
+     * @return family, e.g. "profile"
+     */
+    public static String family(String resource) {
+        int start = 0;
+        while ((start < resource.length()) && (resource.charAt(start) == '/'))
+            start++;
+        int end = start;
+        while ((end < resource.length()) && (resource.charAt(end) != '/') && (resource.charAt(end) != '?'))
+            end++;
+        return resource.substring(start, end);
+    }
+
+    /**
+     * Gets the breaker of a resource family, creating it on first use
+     *
+     * @param family
+     *            String
+     *
+     * @return CircuitBreaker
+     */
+    public CircuitBreaker get(String family) {
+        CircuitBreaker breaker = this.breakers.get(family);
+        if (breaker != null)
+            return breaker;
+        breaker = new CircuitBreaker(family, this);
+        CircuitBreaker existing = this.breakers.putIfAbsent(family, breaker);
+        return existing == null ? breaker : existing;
+    }
+
+    /**
+     * Gets the state of every breaker, e.g. for a dashboard
+     *
+     * @return CircuitStats keyed by resource family, in name order
+     */
+    public Map<String, CircuitStats> getStats() {
+        Map<String, CircuitStats> stats = new TreeMap<>();
+        for (CircuitBreaker breaker : this.breakers.values())
+            stats.put(breaker.getName(), breaker.getStats());
+        return stats;
+    }
+
+    /**
+     * Closes every breaker
+     */
+    public void reset() {
+        for (CircuitBreaker breaker : this.breakers.values())
+            breaker.reset();
+    }
+
+    /**
+     * Checks if calls go through the breakers
+     *
+     * @return enabled
+     */
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * Enables or disables the breakers
+     *
+     * @param enabled
+     *            boolean
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Gets the number of calls kept in each sliding window
+     *
+     * @return windowSize
+     */
+    public int getWindowSize() {
+        return this.windowSize;
+    }
+
+    /**
+     * Sets the number of calls kept in each sliding window; windows are
+     * resized the next time they are cleared
+     *
+     * @param windowSize
+     *            int
+     */
+    public void setWindowSize(int windowSize) {
+        if (windowSize < 1)
+            throw new IllegalArgumentException("windowSize must be positive");
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Gets the number of calls needed before rates are evaluated
+     *
+     * @return minimumCalls
+     */
+    public int getMinimumCalls() {
+        return this.minimumCalls;
+    }
+
+    /**
+     * Sets the number of calls needed before rates are evaluated
+     *
+     * @param minimumCalls
+     *            int
+     */
+    public void setMinimumCalls(int minimumCalls) {
+        if (minimumCalls < 1)
+            throw new IllegalArgumentException("minimumCalls must be positive");
+        this.minimumCalls = minimumCalls;
+    }
+
+    /**
+     * Gets the failure rate opening a breaker
+     *
+     * @return failureRateThreshold in percent
+     */
+    public double getFailureRateThreshold() {
+        return this.failureRateThreshold;
+    }
+
+    /**
+     * Sets the failure rate opening a breaker
+     *
+     * @param failureRateThreshold
+     *            percent, 0 to 100
+     */
+    public void setFailureRateThreshold(double failureRateThreshold) {
+        this.failureRateThreshold = failureRateThreshold;
+    }
+
+    /**
+     * Gets the duration from which a call is slow
+     *
+     * @return slowCallDuration in milliseconds
+     */
+    public long getSlowCallDuration() {
+        return this.slowCallDuration;
+    }
+
+    /**
+     * Sets the duration from which a call is slow
+     *
+     * @param slowCallDuration
+     *            milliseconds
+     */
+    public void setSlowCallDuration(long slowCallDuration) {
+        this.slowCallDuration = slowCallDuration;
+    }
+
+    /**
+     * Gets the slow-call rate opening a breaker
+     *
+     * @return slowCallRateThreshold in percent
+     */
+    public double getSlowCallRateThreshold() {
+        return this.slowCallRateThreshold;
+    }
+
+    /**
+     * Sets the slow-call rate opening a breaker
+     *
+     * @param slowCallRateThreshold
+     *            percent, 0 to 100
+     */
+    public void setSlowCallRateThreshold(double slowCallRateThreshold) {
+        this.slowCallRateThreshold = slowCallRateThreshold;
+    }
+
+    /**
+     * Gets the time an open breaker fails fast before probing
+     *
+     * @return openDuration in milliseconds
+     */
+    public long getOpenDuration() {
+        return this.openDuration;
+    }
+
+    /**
+     * Sets the time an open breaker fails fast before probing
+     *
+     * @param openDuration
+     *            milliseconds
+     */
+    public void setOpenDuration(long openDuration) {
+        this.openDuration = openDuration;
+    }
+
+    /**
+     * Gets the number of probe calls let through while half-open
+     *
+     * @return probes
+     */
+    public int getProbes() {
+        return this.probes;
+    }
+
+    /**
+     * Sets the number of probe calls let through while half-open; that many
+     * must succeed to close the breaker
+     *
+     * @param probes
+     *            int
+     */
+    public void setProbes(int probes) {
+        if (probes < 1)
+            throw new IllegalArgumentException("probes must be positive");
+        this.probes = probes;
+    }
+
+}
@@ -0,0 +1,25 @@
+package com.veridu.circuit;
+
+/**
+ * States of a circuit breaker
+ *
+ * @version 1.0
+ */
+public enum CircuitState {
+
+    /**
+     * Calls go through and their outcomes are recorded
+     */
+    CLOSED,
+
+    /**
+     * Calls fail fast until the open duration has passed
+     */
+    OPEN,
+
+    /**
+     * A few probe calls go through to decide between closing and reopening
+     */
+    HALF_OPEN
+
+}
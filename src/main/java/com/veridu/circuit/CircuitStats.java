@@ -0,0 +1,116 @@
+package com.veridu.circuit;
+
+/**
+ * Class CircuitStats is a snapshot of a circuit breaker
+ *
+ * @version 1.0
+ */
+public class CircuitStats {
+
+    private final String name;
+    private final CircuitState state;
+    private final int calls;
+    private final double failureRate;
+    private final double slowCallRate;
+    private final long rejected;
+    private final long opened;
+
+    /**
+     * Class constructor
+     *
+     * @param name
+     *            Resource family
+     * @param state
+     *            CircuitState
+     * @param calls
+     *            Calls in the sliding window
+     * @param failureRate
+     *            Percentage of failed calls in the window
+     * @param slowCallRate
+     *            Percentage of slow calls in the window
+     * @param rejected
+     *            Calls refused while open
+     * @param opened
+     *            Times the breaker opened
+     */
+    public CircuitStats(String name, CircuitState state, int calls, double failureRate, double slowCallRate,
+            long rejected, long opened) {
+        this.name = name;
+        this.state = state;
+        this.calls = calls;
+        this.failureRate = failureRate;
+        this.slowCallRate = slowCallRate;
+        this.rejected = rejected;
+        this.opened = opened;
+    }
+
+    /**
+     * Gets the resource family
+     *
+     * @return name
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Gets the state
+     *
+     * @return state
+     */
+    public CircuitState getState() {
+        return this.state;
+    }
+
+    /**
+     * Gets the number of calls in the sliding window
+     *
+     * @return calls
+     */
+    public int getCalls() {
+        return this.calls;
+    }
+
+    /**
+     * Gets the percentage of failed calls in the window
+     *
+     * @return failureRate, 0 to 100
+     */
+    public double getFailureRate() {
+        return this.failureRate;
+    }
+
+    /**
+     * Gets the percentage of slow calls in the window
+     *
+     * @return slowCallRate, 0 to 100
+     */
+    public double getSlowCallRate() {
+        return this.slowCallRate;
+    }
+
+    /**
+     * Gets the number of calls refused while open
+     *
+     * @return rejected
+     */
+    public long getRejected() {
+        return this.rejected;
+    }
+
+    /**
+     * Gets the number of times the breaker opened
+     *
+     * @return opened
+     */
+    public long getOpened() {
+        return this.opened;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CircuitStats[%s %s, calls=%d, failures=%.1f%%, slow=%.1f%%, rejected=%d, opened=%d]",
+                this.name, this.state, this.calls, this.failureRate, this.slowCallRate, this.rejected, this.opened);
+    }
+
+}
@@ -0,0 +1,85 @@
+package com.veridu.coalesce;
+
+/**
+ * Class CoalescingStats is a snapshot of the counters of a SingleFlight
+ *
+ * @version 1.0
+ */
+public class CoalescingStats {
+
+    private final long calls;
+    private final long hits;
+    private final long collapses;
+    private final int inFlight;
+
+    /**
+     * Class constructor
+     *
+     * @param calls
+     *            Upstream calls made
+     * @param hits
+     *            Callers served by another caller's call
+     * @param collapses
+     *            Upstream calls that served more than one caller
+     * @param inFlight
+     *            Calls running now
+     */
+    public CoalescingStats(long calls, long hits, long collapses, int inFlight) {
+        this.calls = calls;
+        this.hits = hits;
+        this.collapses = collapses;
+        this.inFlight = inFlight;
+    }
+
+    /**
+     * Gets the number of upstream calls made
+     *
+     * @return calls
+     */
+    public long getCalls() {
+        return this.calls;
+    }
+
+    /**
+     * Gets the number of callers served by another caller's call
+     *
+     * @return hits
+     */
+    public long getHits() {
+        return this.hits;
+    }
+
+    /**
+     * Gets the number of upstream calls that served more than one caller
+     *
+     * @return collapses
+     */
+    public long getCollapses() {
+        return this.collapses;
+    }
+
+    /**
+     * Gets the number of calls running now
+     *
+     * @return inFlight
+     */
+    public int getInFlight() {
+        return this.inFlight;
+    }
+
+    /**
+     * Gets the share of callers that did not need a call of their own
+     *
+     * @return ratio between 0 and 1
+     */
+    public double getHitRatio() {
+        long total = this.calls + this.hits;
+        return total == 0 ? 0 : (double) this.hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("calls=%d hits=%d collapses=%d inFlight=%d hitRatio=%.2f", this.calls, this.hits,
+                this.collapses, this.inFlight, getHitRatio());
+    }
+}
@@ -0,0 +1,112 @@
+package com.veridu.coalesce;
+
+import java.util.concurrent.CountDownLatch;
+
+import com.veridu.exceptions.RequestFailed;
+import com.veridu.exceptions.SDKException;
+
+/**
+ * Class Flight is one upstream call shared by every caller that asked for
+ * the same thing while it was running. The caller that started it is the
+ * leader: it makes the call and must {@link #complete(Object)} or
+ * {@link #fail(SDKException)} the flight, then {@link #land()} it. The others
+ * {@link #await()} its outcome.
+ *
+ * @version 1.0
+ */
+public class Flight {
+
+    private final SingleFlight owner;
+    private final String key;
+    private final Thread leader = Thread.currentThread();
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile Object result = null;
+    private volatile SDKException failure = null;
+
+    /**
+     * Class constructor
+     *
+     * @param owner
+     *            SingleFlight registry
+     * @param key
+     *            Call key
+     */
+    Flight(SingleFlight owner, String key) {
+        this.owner = owner;
+        this.key = key;
+    }
+
+    /**
+     * Gets the key of the call
+     *
+     * @return key
+     */
+    public String getKey() {
+        return this.key;
+    }
+
+    /**
+     * Checks if the calling thread leads the flight
+     *
+     * @return boolean
+     */
+    public boolean isLeader() {
+        return this.leader == Thread.currentThread();
+    }
+
+    /**
+     * Shares the result of the call
+     *
+     * @param result
+     *            Object
+     */
+    public void complete(Object result) {
+        if (this.done.getCount() == 0)
+            return;
+        this.result = result;
+        this.done.countDown();
+    }
+
+    /**
+     * Shares the failure of the call
+     *
+     * @param failure
+     *            SDKException
+     */
+    public void fail(SDKException failure) {
+        if (this.done.getCount() == 0)
+            return;
+        this.failure = failure;
+        this.done.countDown();
+    }
+
+    /**
+     * Ends the flight; later callers start a new one. Waiters of a flight
+     * that was neither completed nor failed get a RequestFailed.
+     */
+    public void land() {
+        fail(new RequestFailed("Shared call ended without a response"));
+        this.owner.remove(this);
+    }
+
+    /**
+     * Waits for the outcome of the call
+     *
+     * @return result shared by the leader
+     *
+     * @throws SDKException
+     *             the failure of the call
+     */
+    public Object await() throws SDKException {
+        try {
+            this.done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RequestFailed("Interrupted waiting for a shared call");
+        }
+        if (this.failure != null)
+            throw this.failure;
+        return this.result;
+    }
+
+}
@@ -0,0 +1,91 @@
+package com.veridu.coalesce;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class SingleFlight collapses identical concurrent calls into one: the
+ * first caller for a key makes the call, callers arriving with the same key
+ * while it runs wait for it and share its outcome. Nothing is kept once the
+ * call is over, so this is no cache; it only removes duplicate work from
+ * bursts such as many threads reading the same profile after a login.
+ *
+ * @version 1.0
+ */
+public class SingleFlight {
+
+    private final ConcurrentMap<String, Flight> flights = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Flight, Boolean> shared = new ConcurrentHashMap<>();
+
+    /**
+     * Whether calls are coalesced at all
+     */
+    private volatile boolean enabled = true;
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong collapses = new AtomicLong();
+
+    /**
+     * Joins the call in flight for a key, or starts one with the caller as
+     * its leader
+     *
+     * @param key
+     *            Identifies the call
+     *
+     * @return Flight, led by the caller if {@link Flight#isLeader()}
+     */
+    public Flight join(String key) {
+        Flight flight = new Flight(this, key);
+        Flight existing = this.flights.putIfAbsent(key, flight);
+        if (existing == null) {
+            this.calls.incrementAndGet();
+            return flight;
+        }
+        this.hits.incrementAndGet();
+        if (this.shared.putIfAbsent(existing, Boolean.TRUE) == null)
+            this.collapses.incrementAndGet();
+        return existing;
+    }
+
+    /**
+     * Forgets a flight that landed
+     *
+     * @param flight
+     *            Flight
+     */
+    void remove(Flight flight) {
+        this.flights.remove(flight.getKey(), flight);
+        this.shared.remove(flight);
+    }
+
+    /**
+     * Takes a snapshot of the counters
+     *
+     * @return CoalescingStats
+     */
+    public CoalescingStats getStats() {
+        return new CoalescingStats(this.calls.get(), this.hits.get(), this.collapses.get(), this.flights.size());
+    }
+
+    /**
+     * Checks if calls are coalesced
+     *
+     * @return enabled
+     */
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * Enables or disables coalescing
+     *
+     * @param enabled
+     *            boolean
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+}
@@ -1,18 +1,28 @@
 package com.veridu.endpoint;
 
 import java.io.BufferedReader;
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.PushbackInputStream;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
 import java.security.SecureRandom;
 import java.security.SignatureException;
 import java.util.HashMap;
 import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -20,16 +30,41 @@ import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
+import com.veridu.async.AsyncResult;
+import com.veridu.async.Callback;
+import com.veridu.async.Dispatchers;
+import com.veridu.batch.BatchDispatcher;
+import com.veridu.buffer.BufferPool;
+import com.veridu.buffer.PooledReader;
+import com.veridu.buffer.Utf8;
+import com.veridu.cache.CacheEntry;
+import com.veridu.cache.ResponseCache;
+import com.veridu.circuit.CircuitBreaker;
+import com.veridu.circuit.CircuitBreakers;
+import com.veridu.coalesce.Flight;
+import com.veridu.coalesce.SingleFlight;
 import com.veridu.exceptions.APIError;
+import com.veridu.exceptions.CircuitOpen;
 import com.veridu.exceptions.EmptyResponse;
 import com.veridu.exceptions.InvalidFormat;
 import com.veridu.exceptions.InvalidResponse;
 import com.veridu.exceptions.NonceMismatch;
+import com.veridu.exceptions.RateLimited;
 import com.veridu.exceptions.RequestFailed;
+import com.veridu.exceptions.SDKException;
 import com.veridu.exceptions.SignatureFailed;
+import com.veridu.hedge.HedgePolicy;
+import com.veridu.ratelimit.RateLimiter;
+import com.veridu.retry.Attempt;
+import com.veridu.retry.RetryPolicy;
 import com.veridu.signature.Hex;
 import com.veridu.signature.Signature;
 import com.veridu.storage.Storage;
+import com.veridu.transport.CompressingTransport;
+import com.veridu.transport.HttpRequest;
+import com.veridu.transport.HttpResponse;
+import com.veridu.transport.PooledTransport;
+import com.veridu.transport.Transport;
 
 /**
  * Class AbstractEndpoint implements behavior that is common to all endpoints
@@ -43,6 +78,87 @@ public class AbstractEndpoint {
      */
     final public static String BASE_URL = "https://api.veridu.com/";
 
+    /**
+     * Transport shared by endpoints that were not given one: pooled
+     * connections, compressed responses
+     */
+    final private static Transport DEFAULT_TRANSPORT = new CompressingTransport(new PooledTransport());
+
+    /**
+     * Retry policy of endpoints that were not given one
+     */
+    final private static RetryPolicy DEFAULT_RETRY_POLICY = new RetryPolicy();
+
+    /**
+     * Circuit breakers of endpoints that were not given any
+     */
+    final private static CircuitBreakers DEFAULT_CIRCUIT_BREAKERS = new CircuitBreakers();
+
+    /**
+     * Rate limiter of endpoints that were not given one
+     */
+    final private static RateLimiter DEFAULT_RATE_LIMITER = new RateLimiter();
+
+    /**
+     * Coalesces the GET calls of endpoints that were not given a SingleFlight
+     */
+    final private static SingleFlight DEFAULT_SINGLE_FLIGHT = new SingleFlight();
+
+    /**
+     * Hedge policy and latency histograms of endpoints that were not given
+     * one
+     */
+    final private static HedgePolicy DEFAULT_HEDGE_POLICY = new HedgePolicy();
+
+    /**
+     * Response cache of endpoints that were not given one, disabled
+     */
+    final private static ResponseCache DEFAULT_RESPONSE_CACHE = new ResponseCache();
+
+    /**
+     * Nonce generators, seeded once and picked by thread id. A new SHA1PRNG
+     * per call seeds itself from the system entropy source while holding a
+     * lock, and a single shared one serializes concurrent signed calls on its
+     * own lock; striping keeps contention low however many (virtual) threads
+     * sign.
+     */
+    final private static SecureRandom[] NONCE_RANDOMS = createNonceRandoms(64);
+
+    /**
+     * Idle JSON parsers; each keeps its 16K lexer buffer between calls
+     */
+    final private static BlockingQueue<JSONParser> PARSERS = new ArrayBlockingQueue<>(64);
+
+    /**
+     * Call in progress on this thread. Calls made inside it (signedFetch's
+     * fetch) run a single attempt, so only the outermost call retries.
+     */
+    final private static ThreadLocal<Attempt> ATTEMPT = new ThreadLocal<>();
+
+    /**
+     * Set while an asynchronous call runs whose first permit was reserved
+     * before it was dispatched
+     */
+    final private static ThreadLocal<Boolean> PREPAID = new ThreadLocal<>();
+
+    /**
+     * Body encoded ahead by {@link #fetchEncoded(String, String, ByteBuffer)},
+     * sent by the calls made on this thread instead of their data
+     */
+    final private static ThreadLocal<ByteBuffer> BODY = new ThreadLocal<>();
+
+    /**
+     * Cacheable GET in progress on this thread: the entry it revalidates
+     * and the validators of its response
+     */
+    final private static ThreadLocal<Validation> VALIDATION = new ThreadLocal<>();
+
+    /**
+     * Request of a hedged call made by the current thread, aborted if the
+     * other request wins
+     */
+    final private static ThreadLocal<Leg> LEG = new ThreadLocal<>();
+
     /**
      * Validates the username given
      *
@@ -86,6 +202,51 @@ public class AbstractEndpoint {
      */
     private int lastCode = 0;
 
+    /**
+     * Transport used to reach the API
+     */
+    private Transport transport = null;
+
+    /**
+     * Executor running asynchronous calls
+     */
+    private Executor executor = null;
+
+    /**
+     * Decides which failed calls are retried
+     */
+    private RetryPolicy retryPolicy = null;
+
+    /**
+     * Circuit breakers keyed by resource family
+     */
+    private CircuitBreakers circuitBreakers = null;
+
+    /**
+     * Keeps calls within the API's rate limits
+     */
+    private RateLimiter rateLimiter = null;
+
+    /**
+     * Collapses identical concurrent GET calls
+     */
+    private SingleFlight singleFlight = null;
+
+    /**
+     * Decides which slow GET calls get a second request
+     */
+    private HedgePolicy hedgePolicy = null;
+
+    /**
+     * Keeps the responses of GET calls
+     */
+    private ResponseCache responseCache = null;
+
+    /**
+     * Folds calls into Batch requests, null to send each call on its own
+     */
+    private BatchDispatcher batchDispatcher = null;
+
     /**
      * Class constructor
      *
@@ -162,14 +323,15 @@ public class AbstractEndpoint {
     }
 
     /**
-     * Fetches an API Resource
+     * Fetches an API Resource with a form body encoded ahead, e.g. by a
+     * {@link com.veridu.buffer.FormWriter}; retries resend the same bytes
      *
      * @param method
      *            String
      * @param resource
      *            String
-     * @param data
-     *            String
+     * @param body
+     *            ByteBuffer in read mode, released by the caller
      *
      * @return JSONObject API response
      *
@@ -184,211 +346,201 @@ public class AbstractEndpoint {
      * @throws RequestFailed
      *             Exception
      */
-    public JSONObject fetch(String method, String resource, String data)
+    protected JSONObject fetchEncoded(String method, String resource, ByteBuffer body)
             throws EmptyResponse, InvalidFormat, InvalidResponse, APIError, RequestFailed {
-        JSONObject json;
-        String url = AbstractEndpoint.BASE_URL + this.version;
-        if (resource.charAt(0) != '/')
-            url = url.concat("/");
-
-        url = url.concat(resource);
-        String response = request(method, url, data);
-
-        if ((response == null) || (response.isEmpty()))
-            throw new EmptyResponse();
-
+        BODY.set(body);
         try {
-            JSONParser parser = new JSONParser();
-            json = (JSONObject) parser.parse(response);
-        } catch (ParseException ex) {
-            throw new InvalidFormat();
-        }
-
-        if (!json.containsKey("status"))
-            throw new InvalidResponse();
-
-        if (json.get("status").equals(false)) {
-            JSONObject error = (JSONObject) json.get("error");
-            throw new APIError(error.get("message").toString());
-        }
-
-        return json;
-    }
-
-    String generateNonce() {
-        try {
-            SecureRandom random = SecureRandom.getInstance("SHA1PRNG");
-            byte[] bytes = new byte[10];
-            random.nextBytes(bytes);
-            return Hex.Encode(bytes);
-        } catch (Exception e) {
-            return null;
+            return fetch(method, resource, "");
+        } finally {
+            BODY.remove();
         }
     }
 
     /**
-     * Gets the Client Id
+     * Fetches an API Resource, retrying transient failures as the retry
+     * policy allows. A GET made while the same GET (same client, session,
+     * resource and data) is in flight waits for it and shares its response
+     * instead of calling the API again; signed and mutating calls are never
+     * shared. With the response cache enabled, GET calls of cached families
+     * are answered from it, and any other call invalidates the entries of
+     * the user it names.
      *
-     * @return key
-     */
-    public final String getKey() {
-        return key;
-    }
-
-    /**
-     * Gets the Secret
+     * @param method
+     *            String
+     * @param resource
+     *            String
+     * @param data
+     *            String
      *
-     * @return secret
-     */
-    public final String getSecret() {
-        return secret;
-    }
-
-    /**
-     * Gets Version of API
+     * @return JSONObject API response
      *
-     * @return version
+     * @throws EmptyResponse
+     *             Exception
+     * @throws InvalidFormat
+     *             Exception
+     * @throws InvalidResponse
+     *             Exception
+     * @throws APIError
+     *             Exception
+     * @throws RequestFailed
+     *             Exception
      */
-    public final String getVersion() {
-        return version;
+    public JSONObject fetch(String method, String resource, String data)
+            throws EmptyResponse, InvalidFormat, InvalidResponse, APIError, RequestFailed {
+        String url = url(resource);
+        ResponseCache cache = getResponseCache();
+        if (!cache.isEnabled())
+            return load(method, resource, url, data);
+        if (method.compareTo("GET") != 0) {
+            try {
+                return load(method, resource, url, data);
+            } finally {
+                cache.invalidate(ResponseCache.user(resource));
+            }
+        }
+        String family = CircuitBreakers.family(resource);
+        if ((ATTEMPT.get() != null) || (!cache.isCached(family) && !cache.isCachingErrors()))
+            return load(method, resource, url, data);
+        String key = cache.key(this.key, this.storage.getSessionToken(), url, data);
+        long started = System.currentTimeMillis();
+        CacheEntry entry = cache.isCached(family) ? cache.get(key, family) : cache.getError(key, family);
+        if ((entry != null) && cache.isServable(entry, family, started)) {
+            if (ResponseCache.isError(entry))
+                throw ResponseCache.error(entry);
+            if (entry.isExpired(started))
+                refresh(cache, key, family, resource, url, data, entry);
+            return ResponseCache.copy(entry.getValue());
+        }
+        return reload(cache, key, family, resource, url, data, entry);
     }
 
     /**
-     * Method that converts Hash Table data to an encoded (UTF-8) String.
+     * Builds the URL of an API Resource
      *
-     * @param data
+     * @param resource
+     *            String
      *
-     * @return String dataAsString
+     * @return String
      */
-    private String queryBuilder(HashMap<String, String> data) throws UnsupportedEncodingException {
-        if (data.isEmpty())
-            return "";
-        StringBuilder dataAsString = new StringBuilder();
-        for (Entry<String, String> entry : data.entrySet()) {
-            dataAsString.append("&");
-            dataAsString.append(URLEncoder.encode(entry.getKey(), "UTF-8"));
-            dataAsString.append("=");
-            dataAsString.append(URLEncoder.encode(entry.getValue(), "UTF-8"));
-        }
-        return dataAsString.toString();
+    private String url(String resource) {
+        String url = AbstractEndpoint.BASE_URL + this.version;
+        if (resource.charAt(0) != '/')
+            url = url.concat("/");
+        return url.concat(resource);
     }
 
     /**
-     * Process request to API
+     * Fetches a cacheable GET and caches its response, as a conditional GET
+     * if the expired entry has validators
      *
-     * @param method
+     * @param cache
+     *            ResponseCache
+     * @param key
+     *            String, the call's cache key
+     * @param family
+     *            Resource family
+     * @param resource
      *            String
      * @param url
      *            String
      * @param data
      *            String
+     * @param entry
+     *            CacheEntry expired, null if none
      *
-     * @return String response
+     * @return JSONObject API response
      *
+     * @throws EmptyResponse
+     *             Exception
+     * @throws InvalidFormat
+     *             Exception
+     * @throws InvalidResponse
+     *             Exception
+     * @throws APIError
+     *             Exception
      * @throws RequestFailed
      *             Exception
      */
-    public String request(String method, String url, String data) {
-        HttpURLConnection connection = null;
+    private JSONObject reload(ResponseCache cache, String key, String family, String resource, String url,
+            String data, CacheEntry entry)
+            throws EmptyResponse, InvalidFormat, InvalidResponse, APIError, RequestFailed {
+        long started = System.currentTimeMillis();
+        Validation validation = new Validation(entry);
+        JSONObject response;
+        VALIDATION.set(validation);
         try {
-            if ((method.compareTo("GET") == 0) && (data != null) && (!data.isEmpty())) {
-                if (url.contains("?"))
-                    url = url.concat("&");
-                else
-                    url = url.concat("?");
-                url = url.concat(data);
-            }
-            // Create connection
-            URL requestUrl = new URL(url);
-            connection = (HttpURLConnection) requestUrl.openConnection();
-            connection.setRequestProperty("Veridu-Client", this.key);
-            if ((this.storage.getSessionToken() != null) && (!this.storage.getSessionToken().isEmpty()))
-                connection.setRequestProperty("Veridu-Session", this.storage.getSessionToken());
-            connection.setRequestMethod(method);
-            connection.setConnectTimeout(10000);
-            connection.setReadTimeout(10000);
-            connection.setUseCaches(false);
-            connection.setDoOutput(true);
-            // Send request
-            if ((method.compareTo("GET") != 0) && (data != null) && (!data.isEmpty())) {
-                connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
-                connection.setRequestProperty("Content-Length", Integer.toString(data.getBytes().length));
-                connection.setDoInput(true);
-                DataOutputStream wr = new DataOutputStream(connection.getOutputStream());
-                wr.writeBytes(data);
-                wr.flush();
-                wr.close();
-            }
-
-            // Get Response
-            this.lastCode = connection.getResponseCode();
-            InputStream is;
-            if (this.lastCode >= 400)
-                is = connection.getErrorStream();
-            else
-                is = connection.getInputStream();
-            BufferedReader rd = new BufferedReader(new InputStreamReader(is));
-            String line;
-            StringBuilder response = new StringBuilder();
-            while ((line = rd.readLine()) != null) {
-                response.append(line);
-                response.append('\r');
-            }
-            rd.close();
-            return response.toString();
-
-        } catch (IOException e) {
-            e.printStackTrace();
+            response = load("GET", resource, url, data);
+        } catch (APIError e) {
+            cache.putError(key, ResponseCache.user(resource), family, e, started);
+            throw e;
         } finally {
-            if (connection != null)
-                connection.disconnect();
+            VALIDATION.remove();
         }
-        return null;
+        if (validation.notModified)
+            cache.revalidated(key, family, entry, started, validation.etag);
+        else if (response != null)
+            cache.put(key, ResponseCache.user(resource), family, ResponseCache.copy(response), started,
+                    validation.etag, validation.lastModified);
+        return response;
     }
 
     /**
-     * Sets the Client Id
-     *
-     * @param key
-     *            String
+     * Reloads an entry served stale in the background; a failed refresh
+     * leaves the entry to the next call
      */
-    public final void setKey(String key) {
-        this.key = key;
+    private void refresh(final ResponseCache cache, final String key, final String family, final String resource,
+            final String url, final String data, final CacheEntry entry) {
+        cache.refresh(key, family, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    reload(cache, key, family, resource, url, data, entry);
+                } catch (SDKException e) {
+                    // served stale until the next call refreshes it
+                }
+            }
+        });
     }
 
     /**
-     * Sets secret
-     *
-     * @param secret
-     *            String
+     * Validators of a cacheable GET: those of the expired entry it sends
+     * as a conditional GET, and those of its response
      */
-    public final void setSecret(String secret) {
-        this.secret = secret;
-    }
+    private static final class Validation {
+        final CacheEntry stale;
+        volatile boolean notModified = false;
+        volatile String etag = null;
+        volatile String lastModified = null;
 
-    /**
-     * Sets Version of API
-     *
-     * @param version
-     *            String
-     */
-    public final void setVersion(String version) {
-        this.version = version;
+        Validation(CacheEntry stale) {
+            this.stale = (stale != null) && stale.hasValidators() ? stale : null;
+        }
+
+        /**
+         * Takes the validators of the response of one of the requests of a
+         * hedged call
+         */
+        void take(Validation leg) {
+            this.notModified = leg.notModified;
+            this.etag = leg.etag;
+            this.lastModified = leg.lastModified;
+        }
     }
 
     /**
+     * Fetches an API Resource past the response cache
      *
      * @param method
      *            String
      * @param resource
      *            String
+     * @param url
+     *            String
+     * @param data
+     *            String
      *
      * @return JSONObject API response
      *
-     * @throws SignatureFailed
-     *             Exception
-     * @throws NonceMismatch
-     *             Exception
      * @throws EmptyResponse
      *             Exception
      * @throws InvalidFormat
@@ -399,28 +551,52 @@ public class AbstractEndpoint {
      *             Exception
      * @throws RequestFailed
      *             Exception
-     * @throws ParseException
      */
-    public JSONObject signedFetch(String method, String resource) throws SignatureFailed, NonceMismatch, EmptyResponse,
-            InvalidFormat, InvalidResponse, APIError, RequestFailed, ParseException {
-        return signedFetch(method, resource, "");
+    private JSONObject load(String method, String resource, String url, String data)
+            throws EmptyResponse, InvalidFormat, InvalidResponse, APIError, RequestFailed {
+        String family = CircuitBreakers.family(resource);
+        CircuitBreakers breakers = getCircuitBreakers();
+        CircuitBreaker breaker = breakers.isEnabled() ? breakers.get(family) : null;
+        Attempt current = ATTEMPT.get();
+        if (current != null)
+            return fetch(method, url, data, current, family, breaker);
+        SingleFlight flights = getSingleFlight();
+        if (!flights.isEnabled() || (method.compareTo("GET") != 0))
+            return call(method, resource, url, data, family, breaker);
+        Flight flight = flights.join(flightKey(url, data));
+        if (!flight.isLeader())
+            return follow(flight);
+        try {
+            JSONObject response = call(method, resource, url, data, family, breaker);
+            flight.complete(response == null ? null : ResponseCache.copy(response));
+            return response;
+        } catch (SDKException e) {
+            flight.fail(e);
+            throw e;
+        } finally {
+            flight.land();
+        }
     }
 
     /**
+     * Makes an API call on its own, or as a job of a Batch request if a
+     * BatchDispatcher was set and holds jobs the call can join
      *
      * @param method
      *            String
      * @param resource
      *            String
+     * @param url
+     *            String
      * @param data
-     *            HashMap
+     *            String
+     * @param family
+     *            Resource family
+     * @param breaker
+     *            CircuitBreaker, null if breakers are disabled
      *
      * @return JSONObject API response
      *
-     * @throws SignatureFailed
-     *             Exception
-     * @throws NonceMismatch
-     *             Exception
      * @throws EmptyResponse
      *             Exception
      * @throws InvalidFormat
@@ -431,30 +607,1372 @@ public class AbstractEndpoint {
      *             Exception
      * @throws RequestFailed
      *             Exception
-     * @throws UnsupportedEncodingException
-     *             Exception
-     * @throws ParseException
      */
-    public JSONObject signedFetch(String method, String resource, HashMap<String, String> data)
-            throws SignatureFailed, NonceMismatch, EmptyResponse, InvalidFormat, InvalidResponse, APIError,
-            RequestFailed, UnsupportedEncodingException, ParseException {
-        String dataAsString = queryBuilder(data);
-        return signedFetch(method, resource, dataAsString);
+    private JSONObject call(String method, String resource, String url, String data, String family,
+            CircuitBreaker breaker) throws EmptyResponse, InvalidFormat, InvalidResponse, APIError, RequestFailed {
+        BatchDispatcher dispatcher = this.batchDispatcher;
+        // a call alone would only wait out the window
+        if (!isBatched(family) || dispatcher.isIdle())
+            return fetchWithRetries(method, url, data, family, breaker);
+        AsyncResult<JSONObject> result = dispatcher.submit(method, resource, data);
+        try {
+            return result.get(dispatcher.getTimeout(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        } catch (TimeoutException e) {
+            throw new RequestFailed("Timed out waiting for a batch");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RequestFailed("Interrupted waiting for a batch");
+        }
+    }
+
+    /**
+     * Checks if calls to a resource family go through the BatchDispatcher:
+     * one is set, the call has a session, and it is not itself a batch
+     *
+     * @param family
+     *            Resource family
+     *
+     * @return boolean
+     */
+    private boolean isBatched(String family) {
+        return (this.batchDispatcher != null) && !"batch".equals(family) && (this.storage != null)
+                && !this.storage.isSessionEmpty();
     }
 
     /**
-     * Fetches an API Signed Resource
+     * Makes an API call, attempting it again as the retry policy allows
      *
      * @param method
      *            String
-     * @param resource
+     * @param url
      *            String
      * @param data
      *            String
+     * @param family
+     *            Resource family
+     * @param breaker
+     *            CircuitBreaker, null if breakers are disabled
      *
      * @return JSONObject API response
      *
-     * @throws SignatureFailed
+     * @throws EmptyResponse
+     *             Exception
+     * @throws InvalidFormat
+     *             Exception
+     * @throws InvalidResponse
+     *             Exception
+     * @throws APIError
+     *             Exception
+     * @throws RequestFailed
+     *             Exception
+     */
+    private JSONObject fetchWithRetries(String method, String url, String data, String family,
+            CircuitBreaker breaker) throws EmptyResponse, InvalidFormat, InvalidResponse, APIError, RequestFailed {
+        boolean hedged = (method.compareTo("GET") == 0) && getHedgePolicy().isEnabled();
+        Attempt attempt = new Attempt();
+        ATTEMPT.set(attempt);
+        try {
+            while (true) {
+                try {
+                    if (hedged)
+                        return hedge(method, url, data, attempt, family, breaker);
+                    return fetch(method, url, data, attempt, family, breaker);
+                } catch (SDKException e) {
+                    if (!backOff(method, attempt, e))
+                        throw e;
+                }
+            }
+        } finally {
+            ATTEMPT.remove();
+        }
+    }
+
+    /**
+     * Identifies a GET call for coalescing: who asks, in which session, for
+     * what
+     *
+     * @param url
+     *            String
+     * @param data
+     *            String
+     *
+     * @return key
+     */
+    private String flightKey(String url, String data) {
+        return this.key + '\n' + this.storage.getSessionToken() + '\n' + url + '\n' + data;
+    }
+
+    /**
+     * Waits for the call another caller is making and takes its outcome; the
+     * leader completes the flight with a copy of its response and each
+     * follower gets a deep copy of that, so no caller shares a nested member
+     * with another
+     *
+     * @param flight
+     *            Flight led by another caller
+     *
+     * @return JSONObject API response
+     *
+     * @throws EmptyResponse
+     *             Exception
+     * @throws InvalidFormat
+     *             Exception
+     * @throws InvalidResponse
+     *             Exception
+     * @throws APIError
+     *             Exception
+     * @throws RequestFailed
+     *             Exception
+     */
+    private static JSONObject follow(Flight flight)
+            throws EmptyResponse, InvalidFormat, InvalidResponse, APIError, RequestFailed {
+        try {
+            JSONObject response = (JSONObject) flight.await();
+            return response == null ? null : ResponseCache.copy(response);
+        } catch (EmptyResponse | InvalidFormat | InvalidResponse | APIError | RequestFailed e) {
+            throw e;
+        } catch (SDKException e) {
+            throw new RequestFailed(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Makes a single attempt at an API call once the rate limiter grants it a
+     * permit, then adapts the limiter to the rate-limit headers of the
+     * response
+     *
+     * @param method
+     *            String
+     * @param url
+     *            String
+     * @param data
+     *            String
+     * @param attempt
+     *            Attempt recording the response
+     * @param family
+     *            Resource family
+     * @param breaker
+     *            CircuitBreaker, null if breakers are disabled
+     *
+     * @return JSONObject API response
+     *
+     * @throws EmptyResponse
+     *             Exception
+     * @throws InvalidFormat
+     *             Exception
+     * @throws InvalidResponse
+     *             Exception
+     * @throws APIError
+     *             Exception
+     * @throws RequestFailed
+     *             Exception
+     */
+    private JSONObject fetch(String method, String url, String data, Attempt attempt, String family,
+            CircuitBreaker breaker) throws EmptyResponse, InvalidFormat, InvalidResponse, APIError, RequestFailed {
+        RateLimiter limiter = getRateLimiter();
+        if (limiter.isEnabled()) {
+            if (PREPAID.get() != null)
+                PREPAID.remove();
+            else
+                limiter.acquire(this.key, family);
+        }
+        long started = System.currentTimeMillis();
+        try {
+            return fetch(method, url, data, attempt, breaker);
+        } finally {
+            if (attempt.getStatus() > 0)
+                getHedgePolicy().record(family, System.currentTimeMillis() - started);
+            if (limiter.isEnabled())
+                limiter.update(this.key, attempt.getStatus(), attempt.getHeaders());
+        }
+    }
+
+    /**
+     * Makes a single attempt at a GET call, racing it with a second request
+     * if it has not answered within the hedge delay of its resource family.
+     * The call runs on the caller's thread and the hedge on the hedge
+     * policy's executor. The first response wins, failed or not; a transport
+     * failure only wins once both requests failed. The other request is
+     * aborted, closing its connection.
+     *
+     * @param method
+     *            String
+     * @param url
+     *            String
+     * @param data
+     *            String
+     * @param attempt
+     *            Attempt recording the winning response
+     * @param family
+     *            Resource family
+     * @param breaker
+     *            CircuitBreaker, null if breakers are disabled
+     *
+     * @return JSONObject API response
+     *
+     * @throws EmptyResponse
+     *             Exception
+     * @throws InvalidFormat
+     *             Exception
+     * @throws InvalidResponse
+     *             Exception
+     * @throws APIError
+     *             Exception
+     * @throws RequestFailed
+     *             Exception
+     */
+    private JSONObject hedge(final String method, final String url, final String data, Attempt attempt,
+            final String family, final CircuitBreaker breaker)
+            throws EmptyResponse, InvalidFormat, InvalidResponse, APIError, RequestFailed {
+        final HedgePolicy policy = getHedgePolicy();
+        long delay = policy.delay(family);
+        if (delay < 0)
+            return fetch(method, url, data, attempt, family, breaker);
+        Validation validation = VALIDATION.get();
+        final Race race = new Race(validation);
+        ScheduledFuture<?> timer = Dispatchers.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (race.isOver() || !policy.tryHedge())
+                    return;
+                boolean hedged = race.hedge(policy.getExecutor(), new Runnable() {
+                    @Override
+                    public void run() {
+                        runLeg(race, race.second, method, url, data, family, breaker);
+                    }
+                });
+                if (!hedged)
+                    policy.refund();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+        try {
+            runLeg(race, race.first, method, url, data, family, breaker);
+        } finally {
+            timer.cancel(false);
+        }
+        Leg winner;
+        try {
+            winner = race.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            race.second.abort();
+            throw new RequestFailed("Interrupted waiting for a response");
+        }
+        if (winner == race.second)
+            policy.won();
+        if (validation != null)
+            validation.take(winner.validation);
+        attempt.record(winner.attempt.getStatus(), winner.attempt.getHeaders());
+        if (winner.failure instanceof RuntimeException)
+            throw (RuntimeException) winner.failure;
+        if (winner.failure != null)
+            throw rethrow(winner.failure);
+        return winner.response;
+    }
+
+    /**
+     * Runs one of the requests of a hedged call with validators of its own
+     * and enters its outcome in the race
+     *
+     * @param race
+     *            Race
+     * @param leg
+     *            Leg to run
+     * @param method
+     *            String
+     * @param url
+     *            String
+     * @param data
+     *            String
+     * @param family
+     *            Resource family
+     * @param breaker
+     *            CircuitBreaker, null if breakers are disabled
+     */
+    private void runLeg(Race race, Leg leg, String method, String url, String data, String family,
+            CircuitBreaker breaker) {
+        Validation previous = VALIDATION.get();
+        if (leg.validation != null)
+            VALIDATION.set(leg.validation);
+        LEG.set(leg);
+        try {
+            leg.response = fetch(method, url, data, leg.attempt, family, breaker);
+        } catch (SDKException | RuntimeException e) {
+            leg.failure = e;
+        } finally {
+            LEG.remove();
+            if (previous == null)
+                VALIDATION.remove();
+            else
+                VALIDATION.set(previous);
+        }
+        race.finish(leg);
+    }
+
+    /**
+     * One of the requests of a hedged call
+     */
+    private static final class Leg {
+        final Attempt attempt = new Attempt();
+        final Validation validation;
+        JSONObject response = null;
+        Exception failure = null;
+        private HttpRequest request = null;
+        private boolean aborted = false;
+
+        /**
+         * @param validation
+         *            Validation of the call, null if it is not cacheable
+         */
+        Leg(Validation validation) {
+            this.validation = validation == null ? null : new Validation(validation.stale);
+        }
+
+        /**
+         * Registers the request about to be sent, aborting it at once if the
+         * leg lost already
+         */
+        synchronized void sending(HttpRequest request) {
+            if (this.aborted)
+                request.abort();
+            else
+                this.request = request;
+        }
+
+        synchronized void abort() {
+            this.aborted = true;
+            if (this.request != null)
+                this.request.abort();
+        }
+
+        synchronized boolean isAborted() {
+            return this.aborted;
+        }
+    }
+
+    /**
+     * The call and the hedge racing it; the outcomes of both are written
+     * before they are entered, and read once the winner is known
+     */
+    private static final class Race {
+        final Leg first;
+        final Leg second;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition decided = this.lock.newCondition();
+        private Leg winner = null;
+        private boolean hedged = false;
+        private int failures = 0;
+
+        Race(Validation validation) {
+            this.first = new Leg(validation);
+            this.second = new Leg(validation);
+        }
+
+        boolean isOver() {
+            this.lock.lock();
+            try {
+                return this.winner != null;
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        /**
+         * Starts the hedge, unless the race is over or the executor has no
+         * room for it
+         */
+        boolean hedge(Executor executor, Runnable hedge) {
+            this.lock.lock();
+            try {
+                if (this.winner != null)
+                    return false;
+                this.hedged = true;
+                try {
+                    executor.execute(hedge);
+                    return true;
+                } catch (RejectedExecutionException e) {
+                    this.hedged = false;
+                    return false;
+                }
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        /**
+         * Enters a finished leg, aborting the other one if it wins
+         */
+        void finish(Leg leg) {
+            this.lock.lock();
+            try {
+                if (this.winner != null)
+                    return;
+                if ((leg.attempt.getStatus() == 0) && this.hedged && (++this.failures < 2))
+                    return;
+                this.winner = leg;
+                this.decided.signalAll();
+            } finally {
+                this.lock.unlock();
+            }
+            (leg == this.first ? this.second : this.first).abort();
+        }
+
+        /**
+         * Waits for the winner without pinning a virtual thread's carrier
+         */
+        Leg await() throws InterruptedException {
+            this.lock.lock();
+            try {
+                while (this.winner == null)
+                    this.decided.await();
+                return this.winner;
+            } finally {
+                this.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Turns the failure of a call made on another thread back into the
+     * exception fetch declares
+     *
+     * @param failure
+     *            Throwable
+     *
+     * @return RequestFailed to throw if the failure is none of the others
+     *
+     * @throws EmptyResponse
+     *             Exception
+     * @throws InvalidFormat
+     *             Exception
+     * @throws InvalidResponse
+     *             Exception
+     * @throws APIError
+     *             Exception
+     * @throws RequestFailed
+     *             Exception
+     */
+    private static RequestFailed rethrow(Throwable failure)
+            throws EmptyResponse, InvalidFormat, InvalidResponse, APIError, RequestFailed {
+        if (failure instanceof EmptyResponse)
+            throw (EmptyResponse) failure;
+        if (failure instanceof InvalidFormat)
+            throw (InvalidFormat) failure;
+        if (failure instanceof InvalidResponse)
+            throw (InvalidResponse) failure;
+        if (failure instanceof APIError)
+            throw (APIError) failure;
+        if (failure instanceof RequestFailed)
+            throw (RequestFailed) failure;
+        return new RequestFailed(String.valueOf(failure), failure);
+    }
+
+    /**
+     * Makes a single attempt at an API call through the circuit breaker of
+     * its resource family. Transport failures and 5xx responses count as
+     * failures; API errors answered by a healthy server do not.
+     *
+     * @param method
+     *            String
+     * @param url
+     *            String
+     * @param data
+     *            String
+     * @param attempt
+     *            Attempt recording the response status
+     * @param breaker
+     *            CircuitBreaker, null if breakers are disabled
+     *
+     * @return JSONObject API response
+     *
+     * @throws EmptyResponse
+     *             Exception
+     * @throws InvalidFormat
+     *             Exception
+     * @throws InvalidResponse
+     *             Exception
+     * @throws APIError
+     *             Exception
+     * @throws RequestFailed
+     *             Exception
+     */
+    private JSONObject fetch(String method, String url, String data, Attempt attempt, CircuitBreaker breaker)
+            throws EmptyResponse, InvalidFormat, InvalidResponse, APIError, RequestFailed {
+        if (breaker == null)
+            return fetch(method, url, data, attempt);
+        if (!breaker.tryAcquire())
+            throw new CircuitOpen("Circuit open for " + breaker.getName());
+        long started = System.currentTimeMillis();
+        try {
+            return fetch(method, url, data, attempt);
+        } finally {
+            int status = attempt.getStatus();
+            Leg leg = LEG.get();
+            // the losing request of a hedged call is aborted, not failed
+            boolean aborted = (leg != null) && leg.isAborted();
+            breaker.record(System.currentTimeMillis() - started, !aborted && ((status == 0) || (status >= 500)));
+        }
+    }
+
+    private JSONObject fetch(String method, String url, String data, Attempt attempt)
+            throws EmptyResponse, InvalidFormat, InvalidResponse, APIError, RequestFailed {
+        JSONObject json;
+        Object response = send(method, url, data, attempt);
+
+        if (response == null)
+            throw new EmptyResponse();
+
+        if (!(response instanceof JSONObject))
+            throw new InvalidFormat();
+        json = (JSONObject) response;
+
+        if (!json.containsKey("status"))
+            throw new InvalidResponse();
+
+        if (json.get("status").equals(false))
+            throw APIError.from((JSONObject) json.get("error"));
+
+        return json;
+    }
+
+    /**
+     * Waits before retrying a failed attempt, if the retry policy allows it
+     *
+     * @param method
+     *            String
+     * @param attempt
+     *            Attempt that failed
+     * @param failure
+     *            SDKException
+     *
+     * @return true if the call should be attempted again
+     */
+    private boolean backOff(String method, Attempt attempt, SDKException failure) {
+        long delay = getRetryPolicy().delay(method, attempt, failure);
+        if (delay < 0)
+            return false;
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        attempt.next();
+        return true;
+    }
+
+    /**
+     * Fetches an API Resource without blocking the caller
+     *
+     * @param method
+     *            String
+     * @param resource
+     *            String
+     *
+     * @return AsyncResult completed with the API response or failed with the
+     *         exception fetch would throw
+     *
+     * @see #fetch(String, String)
+     */
+    public AsyncResult<JSONObject> fetchAsync(String method, String resource) {
+        return fetchAsync(method, resource, "");
+    }
+
+    /**
+     * Fetches an API Resource without blocking the caller
+     *
+     * @param method
+     *            String
+     * @param resource
+     *            String
+     * @param data
+     *            HashMap
+     *
+     * @return AsyncResult completed with the API response or failed with the
+     *         exception fetch would throw
+     *
+     * @see #fetch(String, String, HashMap)
+     */
+    public AsyncResult<JSONObject> fetchAsync(final String method, final String resource,
+            final HashMap<String, String> data) {
+        if (isBatched(CircuitBreakers.family(resource))) {
+            try {
+                return submitBatched(method, resource, queryBuilder(data));
+            } catch (UnsupportedEncodingException e) {
+                return AsyncResult.failed(e);
+            }
+        }
+        return dispatch(resource, new Callable<JSONObject>() {
+            @Override
+            public JSONObject call() throws Exception {
+                return fetch(method, resource, data);
+            }
+        });
+    }
+
+    /**
+     * Fetches an API Resource without blocking the caller
+     *
+     * @param method
+     *            String
+     * @param resource
+     *            String
+     * @param data
+     *            String
+     *
+     * @return AsyncResult completed with the API response or failed with the
+     *         exception fetch would throw
+     *
+     * @see #fetch(String, String, String)
+     */
+    public AsyncResult<JSONObject> fetchAsync(final String method, final String resource, final String data) {
+        if (isBatched(CircuitBreakers.family(resource)))
+            return submitBatched(method, resource, data);
+        return dispatch(resource, new Callable<JSONObject>() {
+            @Override
+            public JSONObject call() throws Exception {
+                return fetch(method, resource, data);
+            }
+        });
+    }
+
+    /**
+     * Submits an asynchronous call to the BatchDispatcher as fetch would
+     * make it: a GET answered by the response cache is not submitted, one
+     * that is has its response cached, and any other call invalidates the
+     * entries of the user it names, all before its result settles
+     *
+     * @param method
+     *            String
+     * @param resource
+     *            String
+     * @param data
+     *            String
+     *
+     * @return AsyncResult completed with the API response or failed with the
+     *         exception fetch would throw
+     */
+    private AsyncResult<JSONObject> submitBatched(String method, final String resource, String data) {
+        final ResponseCache cache = getResponseCache();
+        BatchDispatcher dispatcher = this.batchDispatcher;
+        if (!cache.isEnabled())
+            return dispatcher.submit(method, resource, data);
+        final AsyncResult<JSONObject> result = new AsyncResult<>();
+        if (method.compareTo("GET") != 0) {
+            dispatcher.submit(method, resource, data).addCallback(new Callback<JSONObject>() {
+                @Override
+                public void onSuccess(JSONObject response) {
+                    cache.invalidate(ResponseCache.user(resource));
+                    result.complete(response);
+                }
+
+                @Override
+                public void onFailure(Exception exception) {
+                    cache.invalidate(ResponseCache.user(resource));
+                    result.fail(exception);
+                }
+            });
+            return result;
+        }
+        final String family = CircuitBreakers.family(resource);
+        if (!cache.isCached(family) && !cache.isCachingErrors())
+            return dispatcher.submit(method, resource, data);
+        String url = url(resource);
+        final String key = cache.key(this.key, this.storage.getSessionToken(), url, data);
+        final long started = System.currentTimeMillis();
+        CacheEntry entry = cache.isCached(family) ? cache.get(key, family) : cache.getError(key, family);
+        if ((entry != null) && cache.isServable(entry, family, started)) {
+            if (ResponseCache.isError(entry))
+                return AsyncResult.failed(ResponseCache.error(entry));
+            if (entry.isExpired(started))
+                refresh(cache, key, family, resource, url, data, entry);
+            return AsyncResult.completed(ResponseCache.copy(entry.getValue()));
+        }
+        dispatcher.submit(method, resource, data).addCallback(new Callback<JSONObject>() {
+            @Override
+            public void onSuccess(JSONObject response) {
+                if (response != null)
+                    cache.put(key, ResponseCache.user(resource), family, ResponseCache.copy(response), started);
+                result.complete(response);
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                if (exception instanceof APIError)
+                    cache.putError(key, ResponseCache.user(resource), family, (APIError) exception, started);
+                result.fail(exception);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Runs an asynchronous call on the executor once the rate limiter grants
+     * it a permit. A call that has to wait is handed to the limiter's timer
+     * rather than holding an executor thread.
+     *
+     * @param resource
+     *            String
+     * @param call
+     *            Callable making the call
+     *
+     * @return AsyncResult, failed with RateLimited if the acquire mode does
+     *         not allow the wait
+     */
+    private AsyncResult<JSONObject> dispatch(String resource, final Callable<JSONObject> call) {
+        final Executor executor = getExecutor();
+        RateLimiter limiter = getRateLimiter();
+        if (!limiter.isEnabled())
+            return Dispatchers.submit(executor, call);
+        String family = CircuitBreakers.family(resource);
+        long wait = limiter.reserve(this.key, family);
+        if (wait < 0)
+            return AsyncResult.failed(new RateLimited("Rate limit reached for " + family));
+        final Callable<JSONObject> prepaid = new Callable<JSONObject>() {
+            @Override
+            public JSONObject call() throws Exception {
+                PREPAID.set(Boolean.TRUE);
+                try {
+                    return call.call();
+                } finally {
+                    PREPAID.remove();
+                }
+            }
+        };
+        if (wait == 0)
+            return Dispatchers.submit(executor, prepaid);
+        final AsyncResult<JSONObject> result = new AsyncResult<>();
+        result.setTask(Dispatchers.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (result.isDone())
+                    return;
+                AsyncResult<JSONObject> running = Dispatchers.submit(executor, prepaid);
+                result.setTask(running);
+                running.addCallback(new Callback<JSONObject>() {
+                    @Override
+                    public void onSuccess(JSONObject response) {
+                        result.complete(response);
+                    }
+
+                    @Override
+                    public void onFailure(Exception exception) {
+                        result.fail(exception);
+                    }
+                });
+            }
+        }, wait, TimeUnit.NANOSECONDS));
+        return result;
+    }
+
+    String generateNonce() {
+        if (NONCE_RANDOMS == null)
+            return null;
+        byte[] bytes = new byte[10];
+        long id = Thread.currentThread().getId();
+        NONCE_RANDOMS[(int) ((id ^ (id >>> 7)) & (NONCE_RANDOMS.length - 1))].nextBytes(bytes);
+        return Hex.Encode(bytes);
+    }
+
+    /**
+     * Creates the nonce generators, each seeded from the first, null if
+     * SHA1PRNG is unavailable
+     *
+     * @param count
+     *            Number of generators, a power of two
+     *
+     * @return SecureRandom[]
+     */
+    private static SecureRandom[] createNonceRandoms(int count) {
+        try {
+            SecureRandom seeder = SecureRandom.getInstance("SHA1PRNG");
+            SecureRandom[] randoms = new SecureRandom[count];
+            for (int i = 0; i < count; i++) {
+                byte[] seed = new byte[20];
+                seeder.nextBytes(seed);
+                // seeded before its first use, it does not read the entropy source
+                randoms[i] = SecureRandom.getInstance("SHA1PRNG");
+                randoms[i].setSeed(seed);
+            }
+            return randoms;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Gets the Client Id
+     *
+     * @return key
+     */
+    public final String getKey() {
+        return key;
+    }
+
+    /**
+     * Gets the Secret
+     *
+     * @return secret
+     */
+    public final String getSecret() {
+        return secret;
+    }
+
+    /**
+     * Gets Version of API
+     *
+     * @return version
+     */
+    public final String getVersion() {
+        return version;
+    }
+
+    /**
+     * Gets the Transport, the shared pooled and compressing transport unless
+     * one was set
+     *
+     * @return transport
+     */
+    public final Transport getTransport() {
+        if (this.transport == null)
+            return DEFAULT_TRANSPORT;
+        return this.transport;
+    }
+
+    /**
+     * Gets the Executor running asynchronous calls, the shared one unless one
+     * was set
+     *
+     * @return executor
+     */
+    public final Executor getExecutor() {
+        if (this.executor == null)
+            return Dispatchers.shared();
+        return this.executor;
+    }
+
+    /**
+     * Gets the policy deciding which failed calls are retried, the shared one
+     * unless one was set
+     *
+     * @return retryPolicy
+     */
+    public final RetryPolicy getRetryPolicy() {
+        if (this.retryPolicy == null)
+            return DEFAULT_RETRY_POLICY;
+        return this.retryPolicy;
+    }
+
+    /**
+     * Gets the circuit breakers, the shared ones unless some were set
+     *
+     * @return circuitBreakers
+     */
+    public final CircuitBreakers getCircuitBreakers() {
+        if (this.circuitBreakers == null)
+            return DEFAULT_CIRCUIT_BREAKERS;
+        return this.circuitBreakers;
+    }
+
+    /**
+     * Gets the rate limiter, the shared one unless one was set
+     *
+     * @return rateLimiter
+     */
+    public final RateLimiter getRateLimiter() {
+        if (this.rateLimiter == null)
+            return DEFAULT_RATE_LIMITER;
+        return this.rateLimiter;
+    }
+
+    /**
+     * Gets the SingleFlight coalescing GET calls, the shared one unless one
+     * was set
+     *
+     * @return singleFlight
+     */
+    public final SingleFlight getSingleFlight() {
+        if (this.singleFlight == null)
+            return DEFAULT_SINGLE_FLIGHT;
+        return this.singleFlight;
+    }
+
+    /**
+     * Gets the hedge policy, holding the latency histograms, the shared one
+     * unless one was set
+     *
+     * @return hedgePolicy
+     */
+    public final HedgePolicy getHedgePolicy() {
+        if (this.hedgePolicy == null)
+            return DEFAULT_HEDGE_POLICY;
+        return this.hedgePolicy;
+    }
+
+    /**
+     * Gets the response cache, the shared one unless one was set
+     *
+     * @return responseCache
+     */
+    public final ResponseCache getResponseCache() {
+        if (this.responseCache == null)
+            return DEFAULT_RESPONSE_CACHE;
+        return this.responseCache;
+    }
+
+    /**
+     * Gets the BatchDispatcher folding calls into Batch requests
+     *
+     * @return batchDispatcher, null if calls are sent on their own
+     */
+    public final BatchDispatcher getBatchDispatcher() {
+        return this.batchDispatcher;
+    }
+
+    /**
+     * Method that converts Hash Table data to an encoded (UTF-8) String.
+     *
+     * @param data
+     *
+     * @return String dataAsString
+     */
+    private String queryBuilder(HashMap<String, String> data) throws UnsupportedEncodingException {
+        if (data.isEmpty())
+            return "";
+        StringBuilder dataAsString = new StringBuilder();
+        for (Entry<String, String> entry : data.entrySet()) {
+            dataAsString.append("&");
+            dataAsString.append(URLEncoder.encode(entry.getKey(), "UTF-8"));
+            dataAsString.append("=");
+            dataAsString.append(URLEncoder.encode(entry.getValue(), "UTF-8"));
+        }
+        return dataAsString.toString();
+    }
+
+    /**
+     * Process request to API
+     *
+     * @param method
+     *            String
+     * @param url
+     *            String
+     * @param data
+     *            String
+     *
+     * @return String response
+     *
+     * @throws RequestFailed
+     *             Exception
+     *
+     * @deprecated fetch parses the response stream through
+     *             {@link #send(String, String, String)}; kept for callers
+     *             that need the raw body
+     */
+    @Deprecated
+    public String request(String method, String url, String data) {
+        HttpResponse response = null;
+        ByteBuffer encoded = encodeBody(method, data);
+        try {
+            response = getTransport().execute(buildRequest(method, url, data, encoded));
+            this.lastCode = response.getCode();
+            BufferedReader rd = new BufferedReader(new InputStreamReader(response.getBody()));
+            String line;
+            StringBuilder body = new StringBuilder();
+            while ((line = rd.readLine()) != null) {
+                body.append(line);
+                body.append('\r');
+            }
+            rd.close();
+            return body.toString();
+
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            if (response != null) {
+                try {
+                    response.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            BufferPool.shared().release(encoded);
+        }
+        return null;
+    }
+
+    /**
+     * Sends a request to the API and parses the response body as it arrives,
+     * decoded as UTF-8, without buffering it first. The request body, the
+     * decoding buffer and the parser are all borrowed from pools.
+     *
+     * @param method
+     *            String
+     * @param url
+     *            String
+     * @param data
+     *            String
+     *
+     * @return Object parsed JSON value, null if the body is empty
+     *
+     * @throws InvalidFormat
+     *             Exception
+     * @throws RequestFailed
+     *             Exception
+     */
+    public Object send(String method, String url, String data) throws InvalidFormat, RequestFailed {
+        return send(method, url, data, null);
+    }
+
+    /**
+     * Sends a request to the API, recording the response status for the
+     * retry policy
+     *
+     * @param method
+     *            String
+     * @param url
+     *            String
+     * @param data
+     *            String
+     * @param attempt
+     *            Attempt, may be null
+     *
+     * @return Object parsed JSON value, null if the body is empty
+     *
+     * @throws InvalidFormat
+     *             Exception
+     * @throws RequestFailed
+     *             Exception
+     */
+    private Object send(String method, String url, String data, Attempt attempt) throws InvalidFormat, RequestFailed {
+        HttpResponse response = null;
+        ByteBuffer preset = BODY.get();
+        ByteBuffer body = preset != null ? preset : encodeBody(method, data);
+        Validation validation = method.compareTo("GET") == 0 ? VALIDATION.get() : null;
+        try {
+            HttpRequest request = buildRequest(method, url, data, body);
+            if ((validation != null) && (validation.stale != null)) {
+                if (validation.stale.getEtag() != null)
+                    request.setHeader("If-None-Match", validation.stale.getEtag());
+                if (validation.stale.getLastModified() != null)
+                    request.setHeader("If-Modified-Since", validation.stale.getLastModified());
+            }
+            Leg leg = LEG.get();
+            if (leg != null)
+                leg.sending(request);
+            response = getTransport().execute(request);
+            this.lastCode = response.getCode();
+            if (attempt != null)
+                attempt.record(response.getCode(), response.getHeaders());
+            if (validation != null) {
+                validation.etag = response.getHeader("etag");
+                validation.lastModified = response.getHeader("last-modified");
+                if ((response.getCode() == 304) && (validation.stale != null)) {
+                    validation.notModified = true;
+                    return ResponseCache.copy(validation.stale.getValue());
+                }
+            }
+            PushbackInputStream in = new PushbackInputStream(response.getBody(), 1);
+            int first = in.read();
+            if (first == -1)
+                return null;
+            in.unread(first);
+            return parse(new PooledReader(in, BufferPool.shared()));
+        } catch (ParseException e) {
+            throw new InvalidFormat();
+        } catch (IOException e) {
+            throw new RequestFailed(e.getMessage() == null ? e.toString() : e.getMessage(), e);
+        } finally {
+            if (response != null) {
+                try {
+                    response.close();
+                } catch (IOException e) {
+                    // the body was consumed, the connection is discarded
+                }
+            }
+            if (preset == null)
+                BufferPool.shared().release(body);
+        }
+    }
+
+    /**
+     * Parses a JSON document with a pooled parser, closing the reader
+     *
+     * @param reader
+     *            Reader
+     *
+     * @return Object parsed JSON value
+     *
+     * @throws ParseException
+     *             Exception
+     * @throws IOException
+     *             Exception
+     */
+    private static Object parse(Reader reader) throws ParseException, IOException {
+        JSONParser parser = PARSERS.poll();
+        if (parser == null)
+            parser = new JSONParser();
+        try {
+            return parser.parse(reader);
+        } finally {
+            reader.close();
+            PARSERS.offer(parser);
+        }
+    }
+
+    /**
+     * Encodes the form body of a non-GET call into a pooled buffer
+     *
+     * @param method
+     *            String
+     * @param data
+     *            String
+     *
+     * @return ByteBuffer to release once the call is over, null without body
+     */
+    private static ByteBuffer encodeBody(String method, String data) {
+        if ((method.compareTo("GET") == 0) || (data == null) || data.isEmpty())
+            return null;
+        return Utf8.encode(data, BufferPool.shared());
+    }
+
+    /**
+     * Builds the HTTP request for an API call
+     *
+     * @param method
+     *            String
+     * @param url
+     *            String
+     * @param data
+     *            String
+     * @param body
+     *            ByteBuffer holding the encoded data of a non-GET call, or null
+     *
+     * @return HttpRequest
+     */
+    private HttpRequest buildRequest(String method, String url, String data, ByteBuffer body) {
+        if ((method.compareTo("GET") == 0) && (data != null) && (!data.isEmpty())) {
+            if (url.contains("?"))
+                url = url.concat("&");
+            else
+                url = url.concat("?");
+            url = url.concat(data);
+        }
+        HttpRequest request = new HttpRequest(method, url);
+        request.setHeader("Veridu-Client", this.key);
+        if ((this.storage.getSessionToken() != null) && (!this.storage.getSessionToken().isEmpty()))
+            request.setHeader("Veridu-Session", this.storage.getSessionToken());
+        if (body != null) {
+            request.setHeader("Content-Type", "application/x-www-form-urlencoded");
+            request.setBody(body.array(), body.remaining());
+        }
+        return request;
+    }
+
+    /**
+     * Sets the Client Id
+     *
+     * @param key
+     *            String
+     */
+    public final void setKey(String key) {
+        this.key = key;
+    }
+
+    /**
+     * Sets secret
+     *
+     * @param secret
+     *            String
+     */
+    public final void setSecret(String secret) {
+        this.secret = secret;
+    }
+
+    /**
+     * Sets Version of API
+     *
+     * @param version
+     *            String
+     */
+    public final void setVersion(String version) {
+        this.version = version;
+    }
+
+    /**
+     * Sets the Transport
+     *
+     * @param transport
+     *            Transport
+     */
+    public final void setTransport(Transport transport) {
+        this.transport = transport;
+    }
+
+    /**
+     * Sets the Executor running asynchronous calls
+     *
+     * @param executor
+     *            Executor
+     */
+    public final void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Sets the policy deciding which failed calls are retried
+     *
+     * @param retryPolicy
+     *            RetryPolicy, {@link RetryPolicy#none()} disables retries, null
+     *            restores the shared one
+     */
+    public final void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Sets the circuit breakers
+     *
+     * @param circuitBreakers
+     *            CircuitBreakers, null restores the shared ones
+     */
+    public final void setCircuitBreakers(CircuitBreakers circuitBreakers) {
+        this.circuitBreakers = circuitBreakers;
+    }
+
+    /**
+     * Sets the rate limiter
+     *
+     * @param rateLimiter
+     *            RateLimiter, null restores the shared one
+     */
+    public final void setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * Sets the SingleFlight coalescing GET calls
+     *
+     * @param singleFlight
+     *            SingleFlight, null restores the shared one
+     */
+    public final void setSingleFlight(SingleFlight singleFlight) {
+        this.singleFlight = singleFlight;
+    }
+
+    /**
+     * Sets the hedge policy
+     *
+     * @param hedgePolicy
+     *            HedgePolicy, null restores the shared one
+     */
+    public final void setHedgePolicy(HedgePolicy hedgePolicy) {
+        this.hedgePolicy = hedgePolicy;
+    }
+
+    /**
+     * Sets the response cache
+     *
+     * @param responseCache
+     *            ResponseCache, null restores the shared one
+     */
+    public final void setResponseCache(ResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    /**
+     * Sets the BatchDispatcher folding unsigned calls into Batch requests
+     *
+     * @param batchDispatcher
+     *            BatchDispatcher, null to send each call on its own
+     */
+    public final void setBatchDispatcher(BatchDispatcher batchDispatcher) {
+        this.batchDispatcher = batchDispatcher;
+    }
+
+    /**
+     *
+     * @param method
+     *            String
+     * @param resource
+     *            String
+     *
+     * @return JSONObject API response
+     *
+     * @throws SignatureFailed
+     *             Exception
+     * @throws NonceMismatch
+     *             Exception
+     * @throws EmptyResponse
+     *             Exception
+     * @throws InvalidFormat
+     *             Exception
+     * @throws InvalidResponse
+     *             Exception
+     * @throws APIError
+     *             Exception
+     * @throws RequestFailed
+     *             Exception
+     * @throws ParseException
+     */
+    public JSONObject signedFetch(String method, String resource) throws SignatureFailed, NonceMismatch, EmptyResponse,
+            InvalidFormat, InvalidResponse, APIError, RequestFailed, ParseException {
+        return signedFetch(method, resource, "");
+    }
+
+    /**
+     *
+     * @param method
+     *            String
+     * @param resource
+     *            String
+     * @param data
+     *            HashMap
+     *
+     * @return JSONObject API response
+     *
+     * @throws SignatureFailed
+     *             Exception
+     * @throws NonceMismatch
+     *             Exception
+     * @throws EmptyResponse
+     *             Exception
+     * @throws InvalidFormat
+     *             Exception
+     * @throws InvalidResponse
+     *             Exception
+     * @throws APIError
+     *             Exception
+     * @throws RequestFailed
+     *             Exception
+     * @throws UnsupportedEncodingException
+     *             Exception
+     * @throws ParseException
+     */
+    public JSONObject signedFetch(String method, String resource, HashMap<String, String> data)
+            throws SignatureFailed, NonceMismatch, EmptyResponse, InvalidFormat, InvalidResponse, APIError,
+            RequestFailed, UnsupportedEncodingException, ParseException {
+        String dataAsString = queryBuilder(data);
+        return signedFetch(method, resource, dataAsString);
+    }
+
+    /**
+     * Fetches an API Signed Resource, retrying transient failures as the retry
+     * policy allows; each attempt gets a fresh nonce and timestamp
+     *
+     * @param method
+     *            String
+     * @param resource
+     *            String
+     * @param data
+     *            String
+     *
+     * @return JSONObject API response
+     *
+     * @throws SignatureFailed
      *             Exception
      * @throws NonceMismatch
      *             Exception
@@ -473,31 +1991,115 @@ public class AbstractEndpoint {
      */
     public JSONObject signedFetch(String method, String resource, String data) throws SignatureFailed, NonceMismatch,
             EmptyResponse, InvalidFormat, InvalidResponse, APIError, RequestFailed, ParseException {
-        String nonce = generateNonce();
-        String sign;
-        JSONObject response;
+        Attempt outer = ATTEMPT.get();
+        Attempt attempt = outer == null ? new Attempt() : outer;
+        if (outer == null)
+            ATTEMPT.set(attempt);
         try {
-            sign = this.signature.signRequest(method, resource, nonce);
-        } catch (SignatureException ex) {
-            throw new SignatureFailed();
-        }
+            while (true) {
+                // every attempt is signed anew, a retried nonce would be refused
+                String nonce = generateNonce();
+                String sign;
+                JSONObject response;
+                try {
+                    sign = this.signature.signRequest(method, resource, nonce);
+                } catch (SignatureException ex) {
+                    throw new SignatureFailed();
+                }
 
-        if ((data == null) || (data.isEmpty()))
-            response = fetch(method, resource, sign);
-        else
-            response = fetch(method, resource, sign.concat("&".concat(data)));
+                try {
+                    if ((data == null) || (data.isEmpty()))
+                        response = fetch(method, resource, sign);
+                    else
+                        response = fetch(method, resource, sign.concat("&".concat(data)));
+                } catch (SDKException e) {
+                    if ((outer != null) || !backOff(method, attempt, e))
+                        throw e;
+                    continue;
+                }
 
-        if ((response == null) || (response.isEmpty()))
-            return null;
+                if ((response == null) || (response.isEmpty()))
+                    return null;
 
-        if (response.get("status").equals(true)) {
-            if (nonce.compareTo(response.get("nonce").toString()) != 0)
-                throw new NonceMismatch();
-            response.remove("nonce");
-            return response;
+                if (response.get("status").equals(true)) {
+                    if (nonce.compareTo(response.get("nonce").toString()) != 0)
+                        throw new NonceMismatch();
+                    response.remove("nonce");
+                    return response;
+                }
+
+                return null;
+            }
+        } finally {
+            if (outer == null)
+                ATTEMPT.remove();
         }
+    }
 
-        return null;
+    /**
+     * Fetches an API Signed Resource without blocking the caller
+     *
+     * @param method
+     *            String
+     * @param resource
+     *            String
+     *
+     * @return AsyncResult completed with the API response or failed with the
+     *         exception signedFetch would throw
+     *
+     * @see #signedFetch(String, String)
+     */
+    public AsyncResult<JSONObject> signedFetchAsync(String method, String resource) {
+        return signedFetchAsync(method, resource, "");
+    }
+
+    /**
+     * Fetches an API Signed Resource without blocking the caller
+     *
+     * @param method
+     *            String
+     * @param resource
+     *            String
+     * @param data
+     *            HashMap
+     *
+     * @return AsyncResult completed with the API response or failed with the
+     *         exception signedFetch would throw
+     *
+     * @see #signedFetch(String, String, HashMap)
+     */
+    public AsyncResult<JSONObject> signedFetchAsync(final String method, final String resource,
+            final HashMap<String, String> data) {
+        return dispatch(resource, new Callable<JSONObject>() {
+            @Override
+            public JSONObject call() throws Exception {
+                return signedFetch(method, resource, data);
+            }
+        });
+    }
+
+    /**
+     * Fetches an API Signed Resource without blocking the caller
+     *
+     * @param method
+     *            String
+     * @param resource
+     *            String
+     * @param data
+     *            String
+     *
+     * @return AsyncResult completed with the API response or failed with the
+     *         exception signedFetch would throw
+     *
+     * @see #signedFetch(String, String, String)
+     */
+    public AsyncResult<JSONObject> signedFetchAsync(final String method, final String resource, final String data) {
+        return dispatch(resource, new Callable<JSONObject>() {
+            @Override
+            public JSONObject call() throws Exception {
+                return signedFetch(method, resource, data);
+            }
+        });
     }
 
 }
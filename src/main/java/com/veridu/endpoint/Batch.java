@@ -1,12 +1,16 @@
 package com.veridu.endpoint;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
-import java.util.HashMap;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 
+import com.veridu.batch.BatchBuilder;
+import com.veridu.buffer.BufferPool;
+import com.veridu.buffer.FormWriter;
 import com.veridu.exceptions.APIError;
 import com.veridu.exceptions.EmptyResponse;
 import com.veridu.exceptions.EmptySession;
@@ -59,12 +63,36 @@ public class Batch extends AbstractEndpoint {
         if (this.storage.isSessionEmpty())
             throw new EmptySession();
 
-        HashMap<String, String> data = new HashMap<>();
-        data.put("jobs", jobs.toString());
+        // the jobs are serialized and URL encoded straight into the body
+        FormWriter writer = new FormWriter(BufferPool.shared(),
+                Math.max(BufferPool.DEFAULT_BUFFER_SIZE, jobs.size() * 128));
+        ByteBuffer body;
+        try {
+            writer.raw("jobs=");
+            JSONArray.writeJSONString(jobs, writer);
+            body = writer.toBuffer();
+        } catch (IOException e) {
+            writer.close();
+            throw new RequestFailed(e.getMessage() == null ? e.toString() : e.getMessage(), e);
+        }
 
-        JSONObject json = this.fetch("POST", "batch/", data);
+        JSONObject json;
+        try {
+            json = this.fetchEncoded("POST", "batch/", body);
+        } finally {
+            BufferPool.shared().release(body);
+        }
 
         return (JSONArray) json.get("batch");
     }
 
+    /**
+     * Starts recording typed jobs for one batch request
+     *
+     * @return BatchBuilder sending its jobs through this endpoint
+     */
+    public BatchBuilder builder() {
+        return new BatchBuilder(this);
+    }
+
 }
@@ -18,6 +18,11 @@ import com.veridu.storage.Storage;
 /**
  * Profile Resource
  *
+ * Profiles are not cached by default; to serve them from the response cache,
+ * and stale while they are refreshed, give the profile family a time to live
+ * and a stale TTL, e.g. {@code getResponseCache().setTtl("profile", 60000)}
+ * and {@code setStaleTtl("profile", 300000)}.
+ *
  * @see <a href="https://veridu.com/wiki/Profile_Resource"> Wiki/
  *      Profile_Resource </a>
  * @version 1.0
@@ -85,6 +90,11 @@ public class Profile extends AbstractEndpoint {
      */
     final static public int FILTER_PERSONAL = 0x2000;
 
+    /**
+     * Resource of a user's profile, formatted with the username
+     */
+    final static public String RESOURCE_PROFILE = "profile/%s";
+
     public Profile(String key, String version, String secret, Storage storage) {
         super(key, version, secret, storage);
     }
@@ -97,7 +107,7 @@ public class Profile extends AbstractEndpoint {
      *
      * @return The filter's name
      */
-    private String createFilter(int map) {
+    public static String createFilter(int map) {
         String filter = null;
         if ((map & Profile.FILTER_STATE) == Profile.FILTER_STATE)
             filter = "state";
@@ -295,7 +305,7 @@ public class Profile extends AbstractEndpoint {
         HashMap<String, String> data = new HashMap<>();
         data.put("filter", createFilter(map));
 
-        JSONObject json = this.fetch("GET", String.format("profile/%s", username), data);
+        JSONObject json = this.fetch("GET", String.format(RESOURCE_PROFILE, username), data);
 
         return json;
     }
@@ -337,7 +347,7 @@ public class Profile extends AbstractEndpoint {
         if (!AbstractEndpoint.validateUsername(username))
             throw new InvalidUsername();
 
-        JSONObject json = this.fetch("GET", String.format("profile/%s", username));
+        JSONObject json = this.fetch("GET", String.format(RESOURCE_PROFILE, username));
 
         return json;
     }
@@ -289,8 +289,7 @@ public class Provider extends AbstractEndpoint {
         if (!AbstractEndpoint.validateUsername(username))
             throw new InvalidUsername();
 
-        JSONObject json = this.fetch("POST", String.format("provider/%s/%s", this.storage.getUsername(), provider),
-                data);
+        JSONObject json = this.fetch("POST", String.format("provider/%s/%s", username, provider), data);
 
         return json.get("task_id").toString();
     }
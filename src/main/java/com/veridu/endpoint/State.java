@@ -15,6 +15,11 @@ import com.veridu.storage.Storage;
 /**
  * State Resource
  *
+ * States are not cached by default; to serve them from the response cache,
+ * and stale while they are refreshed, give the state family a time to live
+ * and a stale TTL, e.g. {@code getResponseCache().setTtl("state", 60000)}
+ * and {@code setStaleTtl("state", 300000)}.
+ *
  * @see <a href="https://veridu.com/wiki/State_Resource"> Wiki/State_Resource
  *      </a>
  * @version 1.0
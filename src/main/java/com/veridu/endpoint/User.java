@@ -1,8 +1,11 @@
 package com.veridu.endpoint;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.json.simple.JSONObject;
 import org.json.simple.parser.ParseException;
 
+import com.veridu.bloom.BloomFilter;
 import com.veridu.exceptions.APIError;
 import com.veridu.exceptions.EmptyResponse;
 import com.veridu.exceptions.EmptySession;
@@ -23,6 +26,39 @@ import com.veridu.storage.Storage;
  */
 public class User extends AbstractEndpoint {
 
+    /**
+     * Resource of an attribute's details, formatted with the username and attribute
+     */
+    final static public String RESOURCE_ATTRIBUTE_DETAILS = "user/%s/%s/all";
+    /**
+     * Resource of an attribute's score, formatted with the username and attribute
+     */
+    final static public String RESOURCE_ATTRIBUTE_SCORE = "user/%s/%s/score";
+    /**
+     * Resource of an attribute's value, formatted with the username and attribute
+     */
+    final static public String RESOURCE_ATTRIBUTE_VALUE = "user/%s/%s/value";
+    /**
+     * Resource of every attribute score, formatted with the username
+     */
+    final static public String RESOURCE_SCORES = "user/%s/score";
+    /**
+     * Resource of every attribute value, formatted with the username
+     */
+    final static public String RESOURCE_VALUES = "user/%s/value";
+    /**
+     * Resource of every attribute's details, formatted with the username
+     */
+    final static public String RESOURCE_DETAILS = "user/%s/all/";
+
+    /**
+     * Usernames known to exist, whose creation is skipped; null for none
+     */
+    private volatile BloomFilter knownUsers = null;
+
+    private final AtomicLong skippedCreates = new AtomicLong();
+    private final AtomicLong falsePositives = new AtomicLong();
+
     public User(String key, String version, String secret, Storage storage) {
         super(key, version, secret, storage);
     }
@@ -103,7 +139,7 @@ public class User extends AbstractEndpoint {
         if (!AbstractEndpoint.validateUsername(username))
             throw new InvalidUsername();
 
-        JSONObject json = this.fetch("GET", String.format("user/%s/%s/all", username, attribute));
+        JSONObject json = this.fetch("GET", String.format(RESOURCE_ATTRIBUTE_DETAILS, username, attribute));
 
         return (JSONObject) json.get("attribute");
     }
@@ -184,7 +220,7 @@ public class User extends AbstractEndpoint {
         if (!AbstractEndpoint.validateUsername(username))
             throw new InvalidUsername();
 
-        JSONObject json = this.fetch("GET", String.format("user/%s/%s/score", username, attribute));
+        JSONObject json = this.fetch("GET", String.format(RESOURCE_ATTRIBUTE_SCORE, username, attribute));
 
         return json.get("attribute").toString();
     }
@@ -265,7 +301,7 @@ public class User extends AbstractEndpoint {
         if (!AbstractEndpoint.validateUsername(username))
             throw new InvalidUsername();
 
-        JSONObject json = this.fetch("GET", String.format("user/%s/%s/value", username, attribute));
+        JSONObject json = this.fetch("GET", String.format(RESOURCE_ATTRIBUTE_VALUE, username, attribute));
 
         return json.get("attribute").toString();
     }
@@ -356,12 +392,18 @@ public class User extends AbstractEndpoint {
     }
 
     /**
-     * Creates a new user and assign it to the current session
+     * Creates a new user and assign it to the current session. With a filter
+     * of known users set, a username it knows is looked up with a GET of its
+     * scores first, and only created if the API answers NOT_FOUND; any other
+     * error of that GET is thrown without sending the create call. Created
+     * users are added to the filter. A username the filter does not know is
+     * always created.
      *
      * @param username
      *            String username
      *
-     * @return Boolean status
+     * @return Boolean status, true if the user was created or confirmed to
+     *         exist
      *
      * @throws RequestFailed
      *             Exception
@@ -398,9 +440,84 @@ public class User extends AbstractEndpoint {
             throw new InvalidUsername();
 
         this.storage.setUsername(username);
+        BloomFilter knownUsers = this.knownUsers;
+        if ((knownUsers != null) && knownUsers.mightContain(username)) {
+            if (exists(username)) {
+                this.skippedCreates.incrementAndGet();
+                return true;
+            }
+            this.falsePositives.incrementAndGet();
+        }
         JSONObject json = this.signedFetch("POST", String.format("user/%s/", username));
 
-        return Boolean.parseBoolean(json.get("status").toString());
+        boolean status = Boolean.parseBoolean(json.get("status").toString());
+        if (status && (knownUsers != null))
+            knownUsers.add(username);
+        return status;
+    }
+
+    /**
+     * Confirms a user the filter of known users reports
+     *
+     * @param username
+     *            String username
+     *
+     * @return false if the API could not find it
+     *
+     * @throws APIError
+     *             Exception thrown for any error but NOT_FOUND, which the
+     *             create call would fail with too
+     */
+    private boolean exists(String username)
+            throws EmptyResponse, InvalidFormat, InvalidResponse, APIError, RequestFailed {
+        try {
+            this.fetch("GET", String.format(RESOURCE_SCORES, username));
+            return true;
+        } catch (APIError e) {
+            if ("NOT_FOUND".equals(e.getType()))
+                return false;
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the filter of usernames known to exist
+     *
+     * @return BloomFilter, null if none
+     */
+    public BloomFilter getKnownUsers() {
+        return this.knownUsers;
+    }
+
+    /**
+     * Sets the filter of usernames known to exist: {@link #create(String)}
+     * skips those it knows and the API confirms, trading the create call for
+     * a GET, cached if the response cache is enabled
+     *
+     * @param knownUsers
+     *            BloomFilter, null to send every create call
+     */
+    public void setKnownUsers(BloomFilter knownUsers) {
+        this.knownUsers = knownUsers;
+    }
+
+    /**
+     * Gets the number of create calls skipped for users confirmed to exist
+     *
+     * @return long
+     */
+    public long getSkippedCreates() {
+        return this.skippedCreates.get();
+    }
+
+    /**
+     * Gets the number of usernames the filter of known users reported that
+     * the API did not find, and that were created after all
+     *
+     * @return long
+     */
+    public long getFalsePositives() {
+        return this.falsePositives.get();
     }
 
     /**
@@ -474,7 +591,7 @@ public class User extends AbstractEndpoint {
         if (!AbstractEndpoint.validateUsername(username))
             throw new InvalidUsername();
 
-        JSONObject json = this.fetch("GET", String.format("user/%s/score", username));
+        JSONObject json = this.fetch("GET", String.format(RESOURCE_SCORES, username));
 
         return (JSONObject) json.get("profile");
     }
@@ -550,7 +667,7 @@ public class User extends AbstractEndpoint {
         if (!AbstractEndpoint.validateUsername(username))
             throw new InvalidUsername();
 
-        JSONObject json = this.fetch("GET", String.format("user/%s/value", username));
+        JSONObject json = this.fetch("GET", String.format(RESOURCE_VALUES, username));
 
         return (JSONObject) json.get("profile");
     }
@@ -624,7 +741,7 @@ public class User extends AbstractEndpoint {
         if (!AbstractEndpoint.validateUsername(username))
             throw new InvalidUsername();
 
-        JSONObject json = this.fetch("GET", String.format("user/%s/all/", username));
+        JSONObject json = this.fetch("GET", String.format(RESOURCE_DETAILS, username));
 
         return (JSONObject) json.get("profile");
     }
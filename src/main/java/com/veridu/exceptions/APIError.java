@@ -1,12 +1,26 @@
 package com.veridu.exceptions;
 
+import org.json.simple.JSONObject;
+
 /**
  * Class APIError
  */
 public class APIError extends SDKException {
 
+    /**
+     * Error type reported by the API, e.g. SESSION_TOKEN_INVALID
+     */
+    private final String type;
+
+    /**
+     * Error code reported by the API
+     */
+    private final int code;
+
     public APIError() {
         super("API Error");
+        this.type = null;
+        this.code = 0;
     }
 
     /**
@@ -16,6 +30,59 @@ public class APIError extends SDKException {
      *            String
      */
     public APIError(String msg) {
+        this(msg, null, 0);
+    }
+
+    /**
+     * throws API Error message with the type and code of the error
+     *
+     * @param msg
+     *            String
+     * @param type
+     *            String, null if unknown
+     * @param code
+     *            int, 0 if unknown
+     */
+    public APIError(String msg, String type, int code) {
         super(msg);
+        this.type = type;
+        this.code = code;
+    }
+
+    /**
+     * Builds the APIError described by the "error" member of a failed
+     * response
+     *
+     * @param error
+     *            JSONObject with message, type and code; may be null
+     *
+     * @return APIError
+     */
+    public static APIError from(JSONObject error) {
+        if (error == null)
+            return new APIError();
+        Object message = error.get("message");
+        Object type = error.get("type");
+        Object code = error.get("code");
+        return new APIError(message == null ? "API Error" : message.toString(), type == null ? null : type.toString(),
+                code instanceof Number ? ((Number) code).intValue() : 0);
+    }
+
+    /**
+     * Gets the error type
+     *
+     * @return type, null if the API did not send one
+     */
+    public String getType() {
+        return this.type;
+    }
+
+    /**
+     * Gets the error code
+     *
+     * @return code, 0 if the API did not send one
+     */
+    public int getCode() {
+        return this.code;
     }
 }
@@ -0,0 +1,22 @@
+package com.veridu.exceptions;
+
+/**
+ * Class CircuitOpen is thrown without reaching the API while the circuit
+ * breaker of a resource family is open
+ */
+public class CircuitOpen extends RequestFailed {
+
+    public CircuitOpen() {
+        super("Circuit Open");
+    }
+
+    /**
+     * Throws CircuitOpen Exception with message
+     *
+     * @param msg
+     *            String
+     */
+    public CircuitOpen(String msg) {
+        super(msg);
+    }
+}
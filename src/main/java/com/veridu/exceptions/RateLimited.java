@@ -0,0 +1,22 @@
+package com.veridu.exceptions;
+
+/**
+ * Class RateLimited is thrown without reaching the API when the client-side
+ * rate limiter has no permit for a call within the allowed wait
+ */
+public class RateLimited extends RequestFailed {
+
+    public RateLimited() {
+        super("Rate Limited");
+    }
+
+    /**
+     * Throws RateLimited Exception with message
+     *
+     * @param msg
+     *            String
+     */
+    public RateLimited(String msg) {
+        super(msg);
+    }
+}
@@ -18,4 +18,17 @@ public class RequestFailed extends SDKException {
     public RequestFailed(String msg) {
         super(msg);
     }
+
+    /**
+     * Throws RequestFailed Exception with message and the I/O failure behind
+     * it
+     *
+     * @param msg
+     *            String
+     * @param cause
+     *            Throwable
+     */
+    public RequestFailed(String msg, Throwable cause) {
+        super(msg, cause);
+    }
 }
@@ -19,4 +19,16 @@ public class SDKException extends Exception {
     public SDKException(String message) {
         super(message);
     }
+
+    /**
+     * Throws SDK Exception with message and cause
+     *
+     * @param message
+     *            String
+     * @param cause
+     *            Throwable
+     */
+    public SDKException(String message, Throwable cause) {
+        super(message, cause);
+    }
 }
@@ -0,0 +1,344 @@
+package com.veridu.hedge;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class HedgePolicy decides when a slow GET gets a second, identical request
+ * racing it. It keeps a latency histogram per resource family, fed with
+ * every call that got an answer; a call not answered after the chosen
+ * percentile of its family's latency is hedged, the first response wins
+ * and the other request is aborted.
+ *
+ * Hedges are capped by a budget shared by every family: at most
+ * budgetPercent hedges per hundred hedgeable calls, so a slow API does not
+ * see its load doubled. The call itself runs on the caller's thread; only
+ * hedges run on the policy's executor, and a hedge finding no free thread
+ * is not sent.
+ *
+ * @version 1.0
+ */
+public class HedgePolicy {
+
+    private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    /**
+     * Whether GETs are hedged; latencies are recorded either way
+     */
+    private volatile boolean enabled = false;
+
+    /**
+     * Latency percentile after which a call is hedged
+     */
+    private volatile double percentile = 95;
+
+    /**
+     * Shortest hedge delay, in milliseconds
+     */
+    private volatile long minDelay = 10;
+
+    /**
+     * Latencies recorded before a family is hedged
+     */
+    private volatile long minSamples = 20;
+
+    /**
+     * Hedges allowed per hundred hedgeable calls
+     */
+    private volatile double budgetPercent = 5;
+
+    /**
+     * Samples kept by each histogram before older ones are decayed
+     */
+    private volatile long maxSamples = 10000;
+
+    /**
+     * Runs the hedges
+     */
+    private volatile Executor executor = createExecutor();
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong wins = new AtomicLong();
+    private final AtomicLong denied = new AtomicLong();
+
+    /**
+     * Records the latency of a call that got an answer
+     *
+     * @param family
+     *            Resource family
+     * @param millis
+     *            Duration in milliseconds
+     */
+    public void record(String family, long millis) {
+        LatencyHistogram histogram = this.histograms.get(family);
+        if (histogram == null) {
+            histogram = new LatencyHistogram(this.maxSamples);
+            LatencyHistogram existing = this.histograms.putIfAbsent(family, histogram);
+            if (existing != null)
+                histogram = existing;
+        }
+        histogram.record(millis);
+    }
+
+    /**
+     * Gets the latency histogram of a resource family
+     *
+     * @param family
+     *            Resource family
+     *
+     * @return LatencyHistogram, null if no call was recorded
+     */
+    public LatencyHistogram getHistogram(String family) {
+        return this.histograms.get(family);
+    }
+
+    /**
+     * Counts a hedgeable call and gets how long to wait before hedging it
+     *
+     * @param family
+     *            Resource family
+     *
+     * @return milliseconds, -1 if the call is not hedged
+     */
+    public long delay(String family) {
+        if (!this.enabled)
+            return -1;
+        this.calls.incrementAndGet();
+        LatencyHistogram histogram = this.histograms.get(family);
+        if ((histogram == null) || (histogram.getCount() < this.minSamples))
+            return -1;
+        return Math.max(this.minDelay, histogram.getPercentile(this.percentile));
+    }
+
+    /**
+     * Takes a hedge from the budget
+     *
+     * @return false if the budget is spent
+     */
+    public boolean tryHedge() {
+        while (true) {
+            long hedges = this.hedges.get();
+            if (((hedges + 1) * 100) > (this.calls.get() * this.budgetPercent)) {
+                this.denied.incrementAndGet();
+                return false;
+            }
+            if (this.hedges.compareAndSet(hedges, hedges + 1))
+                return true;
+        }
+    }
+
+    /**
+     * Hands back a hedge taken from the budget but not sent, counting it as
+     * denied
+     */
+    public void refund() {
+        this.hedges.decrementAndGet();
+        this.denied.incrementAndGet();
+    }
+
+    /**
+     * Counts a hedge that answered before the call it raced
+     */
+    public void won() {
+        this.wins.incrementAndGet();
+    }
+
+    /**
+     * Takes a snapshot of the counters
+     *
+     * @return HedgeStats
+     */
+    public HedgeStats getStats() {
+        return new HedgeStats(this.calls.get(), this.hedges.get(), this.wins.get(), this.denied.get());
+    }
+
+    /**
+     * Gets the latency percentiles of every resource family, e.g. for a
+     * dashboard
+     *
+     * @return p50, p95 and p99 in milliseconds keyed by resource family
+     */
+    public Map<String, long[]> getLatencies() {
+        Map<String, long[]> latencies = new TreeMap<>();
+        for (Map.Entry<String, LatencyHistogram> entry : this.histograms.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            latencies.put(entry.getKey(), new long[] { histogram.getPercentile(50), histogram.getPercentile(95),
+                    histogram.getPercentile(99) });
+        }
+        return latencies;
+    }
+
+    /**
+     * Checks if GETs are hedged
+     *
+     * @return enabled
+     */
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * Enables or disables hedging
+     *
+     * @param enabled
+     *            boolean
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Gets the executor running hedges
+     *
+     * @return Executor
+     */
+    public Executor getExecutor() {
+        return this.executor;
+    }
+
+    /**
+     * Sets the executor running hedges; by default up to 16 daemon threads
+     * of the policy's own and no queue, since a hedge waiting for a thread
+     * is too late. It must not be the executor running the calls hedged.
+     *
+     * @param executor
+     *            Executor
+     */
+    public void setExecutor(Executor executor) {
+        if (executor == null)
+            throw new IllegalArgumentException("executor must not be null");
+        this.executor = executor;
+    }
+
+    /**
+     * Gets the latency percentile after which a call is hedged
+     *
+     * @return percentile
+     */
+    public double getPercentile() {
+        return this.percentile;
+    }
+
+    /**
+     * Sets the latency percentile after which a call is hedged
+     *
+     * @param percentile
+     *            between 0 and 100
+     */
+    public void setPercentile(double percentile) {
+        if ((percentile <= 0) || (percentile > 100))
+            throw new IllegalArgumentException("percentile must be between 0 and 100");
+        this.percentile = percentile;
+    }
+
+    /**
+     * Gets the shortest hedge delay
+     *
+     * @return minDelay in milliseconds
+     */
+    public long getMinDelay() {
+        return this.minDelay;
+    }
+
+    /**
+     * Sets the shortest hedge delay
+     *
+     * @param minDelay
+     *            milliseconds
+     */
+    public void setMinDelay(long minDelay) {
+        if (minDelay < 0)
+            throw new IllegalArgumentException("minDelay must not be negative");
+        this.minDelay = minDelay;
+    }
+
+    /**
+     * Gets the number of latencies recorded before a family is hedged
+     *
+     * @return minSamples
+     */
+    public long getMinSamples() {
+        return this.minSamples;
+    }
+
+    /**
+     * Sets the number of latencies recorded before a family is hedged
+     *
+     * @param minSamples
+     *            long
+     */
+    public void setMinSamples(long minSamples) {
+        if (minSamples < 1)
+            throw new IllegalArgumentException("minSamples must be positive");
+        this.minSamples = minSamples;
+    }
+
+    /**
+     * Gets the hedges allowed per hundred hedgeable calls
+     *
+     * @return budgetPercent
+     */
+    public double getBudgetPercent() {
+        return this.budgetPercent;
+    }
+
+    /**
+     * Sets the hedges allowed per hundred hedgeable calls
+     *
+     * @param budgetPercent
+     *            between 0 and 100
+     */
+    public void setBudgetPercent(double budgetPercent) {
+        if ((budgetPercent < 0) || (budgetPercent > 100))
+            throw new IllegalArgumentException("budgetPercent must be between 0 and 100");
+        this.budgetPercent = budgetPercent;
+    }
+
+    /**
+     * Gets the samples kept by each histogram before older ones are decayed
+     *
+     * @return maxSamples
+     */
+    public long getMaxSamples() {
+        return this.maxSamples;
+    }
+
+    /**
+     * Sets the samples kept by histograms created from now on
+     *
+     * @param maxSamples
+     *            long
+     */
+    public void setMaxSamples(long maxSamples) {
+        if (maxSamples < 2)
+            throw new IllegalArgumentException("maxSamples must be at least 2");
+        this.maxSamples = maxSamples;
+    }
+
+    private static Executor createExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(16, 16, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "veridu-hedge-" + this.count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+}
@@ -0,0 +1,75 @@
+package com.veridu.hedge;
+
+/**
+ * Class HedgeStats is a snapshot of the counters of a HedgePolicy
+ *
+ * @version 1.0
+ */
+public class HedgeStats {
+
+    private final long calls;
+    private final long hedges;
+    private final long wins;
+    private final long denied;
+
+    /**
+     * Class constructor
+     *
+     * @param calls
+     *            Hedgeable calls
+     * @param hedges
+     *            Hedge requests sent
+     * @param wins
+     *            Hedges that answered first
+     * @param denied
+     *            Hedges refused by the budget or finding no free thread
+     */
+    public HedgeStats(long calls, long hedges, long wins, long denied) {
+        this.calls = calls;
+        this.hedges = hedges;
+        this.wins = wins;
+        this.denied = denied;
+    }
+
+    /**
+     * Gets the number of hedgeable calls
+     *
+     * @return calls
+     */
+    public long getCalls() {
+        return this.calls;
+    }
+
+    /**
+     * Gets the number of hedge requests sent
+     *
+     * @return hedges
+     */
+    public long getHedges() {
+        return this.hedges;
+    }
+
+    /**
+     * Gets the number of hedges that answered first
+     *
+     * @return wins
+     */
+    public long getWins() {
+        return this.wins;
+    }
+
+    /**
+     * Gets the number of hedges refused by the budget
+     *
+     * @return denied
+     */
+    public long getDenied() {
+        return this.denied;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("calls=%d hedges=%d wins=%d denied=%d", this.calls, this.hedges, this.wins,
+                this.denied);
+    }
+}
@@ -0,0 +1,117 @@
+package com.veridu.hedge;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Class LatencyHistogram counts call durations in log-linear buckets: exact
+ * up to 8 milliseconds, then 8 buckets per power of two, so any percentile
+ * is known within 12.5% from 488 counters whatever the number of
+ * calls. Recording is lock-free.
+ *
+ * Once it holds maxSamples durations every count is halved, so old calls
+ * weigh less and less and the histogram follows the API's current latency.
+ *
+ * @version 1.0
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKETS = 8;
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int BUCKETS = SUB_BUCKETS + ((63 - SUB_BUCKET_BITS) * SUB_BUCKETS);
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final long maxSamples;
+
+    /**
+     * Class constructor
+     *
+     * @param maxSamples
+     *            Count from which older samples are decayed
+     */
+    public LatencyHistogram(long maxSamples) {
+        if (maxSamples < 2)
+            throw new IllegalArgumentException("maxSamples must be at least 2");
+        this.maxSamples = maxSamples;
+    }
+
+    /**
+     * Records a call duration
+     *
+     * @param millis
+     *            Duration in milliseconds
+     */
+    public void record(long millis) {
+        this.counts.incrementAndGet(index(Math.max(0, millis)));
+        if (this.count.incrementAndGet() >= this.maxSamples)
+            decay();
+    }
+
+    /**
+     * Gets the number of samples weighing on the percentiles
+     *
+     * @return count
+     */
+    public long getCount() {
+        return this.count.get();
+    }
+
+    /**
+     * Gets a percentile of the recorded durations
+     *
+     * @param percentile
+     *            between 0 and 100
+     *
+     * @return milliseconds, the upper bound of the bucket holding the
+     *         percentile, -1 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++)
+            total += this.counts.get(i);
+        if (total == 0)
+            return -1;
+        long target = Math.max(1, (long) Math.ceil((total * percentile) / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += this.counts.get(i);
+            if (seen >= target)
+                return upperBound(i);
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    /**
+     * Halves every count
+     */
+    private void decay() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            long value;
+            do {
+                value = this.counts.get(i);
+            } while (!this.counts.compareAndSet(i, value, value / 2));
+            total += value / 2;
+        }
+        this.count.set(total);
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + ((exponent - SUB_BUCKET_BITS) * SUB_BUCKETS) + sub;
+    }
+
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS)
+            return index;
+        int exponent = ((index - SUB_BUCKETS) / SUB_BUCKETS) + SUB_BUCKET_BITS;
+        int sub = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        long lower = ((long) (SUB_BUCKETS + sub)) << (exponent - SUB_BUCKET_BITS);
+        return (lower + (1L << (exponent - SUB_BUCKET_BITS))) - 1;
+    }
+
+}
@@ -0,0 +1,22 @@
+package com.veridu.ratelimit;
+
+/**
+ * Enum AcquireMode tells what a call does when the rate limit has no permit
+ * left for it
+ *
+ * @version 1.0
+ */
+public enum AcquireMode {
+    /**
+     * Waits as long as it takes
+     */
+    BLOCK,
+    /**
+     * Waits up to the limiter's maximum wait, fails beyond it
+     */
+    TIMED,
+    /**
+     * Fails at once
+     */
+    FAIL_FAST
+}
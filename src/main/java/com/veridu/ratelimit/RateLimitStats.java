@@ -0,0 +1,129 @@
+package com.veridu.ratelimit;
+
+/**
+ * Class RateLimitStats is a snapshot of a token bucket
+ *
+ * @version 1.0
+ */
+public class RateLimitStats {
+
+    private final String name;
+    private final double rate;
+    private final double tokens;
+    private final long limit;
+    private final long remaining;
+    private final long acquired;
+    private final long throttled;
+    private final long rejected;
+
+    /**
+     * Class constructor
+     *
+     * @param name
+     *            Bucket name
+     * @param rate
+     *            Configured permits per second, 0 if unlimited
+     * @param tokens
+     *            Permits available, negative while calls are queued
+     * @param limit
+     *            Calls per window last reported by the server, -1 if unknown
+     * @param remaining
+     *            Calls left in the server window, -1 if unknown
+     * @param acquired
+     *            Permits handed out
+     * @param throttled
+     *            Permits handed out after a wait
+     * @param rejected
+     *            Permits refused
+     */
+    public RateLimitStats(String name, double rate, double tokens, long limit, long remaining, long acquired,
+            long throttled, long rejected) {
+        this.name = name;
+        this.rate = rate;
+        this.tokens = tokens;
+        this.limit = limit;
+        this.remaining = remaining;
+        this.acquired = acquired;
+        this.throttled = throttled;
+        this.rejected = rejected;
+    }
+
+    /**
+     * Gets the bucket name
+     *
+     * @return name
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Gets the configured rate
+     *
+     * @return permits per second, 0 if unlimited
+     */
+    public double getRate() {
+        return this.rate;
+    }
+
+    /**
+     * Gets the permits available
+     *
+     * @return tokens, negative while calls are queued
+     */
+    public double getTokens() {
+        return this.tokens;
+    }
+
+    /**
+     * Gets the calls per window last reported by the server
+     *
+     * @return limit, -1 if unknown
+     */
+    public long getLimit() {
+        return this.limit;
+    }
+
+    /**
+     * Gets the calls left in the server window
+     *
+     * @return remaining, -1 if unknown
+     */
+    public long getRemaining() {
+        return this.remaining;
+    }
+
+    /**
+     * Gets the number of permits handed out
+     *
+     * @return acquired
+     */
+    public long getAcquired() {
+        return this.acquired;
+    }
+
+    /**
+     * Gets the number of permits handed out after a wait
+     *
+     * @return throttled
+     */
+    public long getThrottled() {
+        return this.throttled;
+    }
+
+    /**
+     * Gets the number of permits refused
+     *
+     * @return rejected
+     */
+    public long getRejected() {
+        return this.rejected;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s rate=%.2f/s tokens=%.2f limit=%d remaining=%d acquired=%d throttled=%d rejected=%d",
+                this.name, this.rate, this.tokens, this.limit, this.remaining, this.acquired, this.throttled,
+                this.rejected);
+    }
+}
@@ -0,0 +1,354 @@
+package com.veridu.ratelimit;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import com.veridu.exceptions.RateLimited;
+import com.veridu.retry.RetryPolicy;
+
+/**
+ * Class RateLimiter keeps calls within the API's rate limits before they
+ * are sent. Every client key has a token bucket, and so has every client
+ * key and resource family pair a limit was configured for; a call takes a
+ * permit from both. Buckets follow the rate-limit headers of the responses
+ * (X-RateLimit-Limit, X-RateLimit-Remaining, X-RateLimit-Reset and their
+ * RateLimit-* forms) and the Retry-After of 429 responses, so a client that
+ * set no limit still stops when the server says its window is spent.
+ *
+ * Blocking calls wait on their own thread as the acquire mode allows;
+ * asynchronous calls reserve their permit with {@link #reserve(String, String)}
+ * and are scheduled for when it is due, without holding a thread.
+ *
+ * @version 1.0
+ */
+public class RateLimiter {
+
+    private final ConcurrentMap<String, TokenBucket> clientBuckets = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, TokenBucket> resourceBuckets = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Limit> clientLimits = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Limit> resourceLimits = new ConcurrentHashMap<>();
+
+    /**
+     * Limit of client keys without one of their own
+     */
+    private volatile Limit defaultLimit = Limit.NONE;
+
+    /**
+     * Whether calls go through the limiter at all
+     */
+    private volatile boolean enabled = true;
+
+    /**
+     * What a call does when no permit is left
+     */
+    private volatile AcquireMode mode = AcquireMode.TIMED;
+
+    /**
+     * Longest wait of a call in TIMED mode, in milliseconds
+     */
+    private volatile long maxWait = 10000;
+
+    /**
+     * Reserves a permit for a call, waiting as the acquire mode allows
+     *
+     * @param client
+     *            Client key
+     * @param family
+     *            Resource family
+     *
+     * @throws RateLimited
+     *             Exception
+     */
+    public void acquire(String client, String family) throws RateLimited {
+        long wait = reserve(client, family);
+        if (wait < 0)
+            throw new RateLimited("Rate limit reached for " + family);
+        if (wait == 0)
+            return;
+        try {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RateLimited("Interrupted waiting for a permit for " + family);
+        }
+    }
+
+    /**
+     * Reserves a permit for a call without waiting for it
+     *
+     * @param client
+     *            Client key
+     * @param family
+     *            Resource family
+     *
+     * @return nanoseconds until the permit is due, -1 if the acquire mode
+     *         does not allow that long a wait
+     */
+    public long reserve(String client, String family) {
+        long maxWait;
+        switch (this.mode) {
+        case BLOCK:
+            maxWait = -1;
+            break;
+        case FAIL_FAST:
+            maxWait = 0;
+            break;
+        default:
+            maxWait = TimeUnit.MILLISECONDS.toNanos(this.maxWait);
+            break;
+        }
+        return reserve(client, family, maxWait);
+    }
+
+    /**
+     * Reserves a permit from the client bucket and, if the family has a limit,
+     * from the resource bucket
+     *
+     * @param client
+     *            Client key
+     * @param family
+     *            Resource family
+     * @param maxWait
+     *            nanoseconds, negative for no bound
+     *
+     * @return nanoseconds until the permit is due, -1 if beyond maxWait
+     */
+    public long reserve(String client, String family, long maxWait) {
+        TokenBucket clientBucket = clientBucket(client);
+        long wait = clientBucket.reserve(maxWait);
+        if (wait < 0)
+            return -1;
+        TokenBucket resourceBucket = resourceBucket(client, family);
+        if (resourceBucket == null)
+            return wait;
+        long resourceWait = resourceBucket.reserve(maxWait);
+        if (resourceWait < 0) {
+            clientBucket.refund();
+            return -1;
+        }
+        return Math.max(wait, resourceWait);
+    }
+
+    /**
+     * Adapts the client's bucket to the rate-limit headers of a response
+     *
+     * @param client
+     *            Client key
+     * @param status
+     *            HTTP status
+     * @param headers
+     *            Response headers keyed by lower-case name
+     */
+    public void update(String client, int status, Map<String, List<String>> headers) {
+        if ((headers == null) || headers.isEmpty())
+            return;
+        TokenBucket bucket = clientBucket(client);
+        long limit = header(headers, "x-ratelimit-limit", "ratelimit-limit", "x-rate-limit-limit");
+        long remaining = header(headers, "x-ratelimit-remaining", "ratelimit-remaining", "x-rate-limit-remaining");
+        long reset = header(headers, "x-ratelimit-reset", "ratelimit-reset", "x-rate-limit-reset");
+        if (reset >= 0) {
+            // large values are epoch seconds, small ones seconds from now
+            long millis = reset > 1000000000L ? (reset * 1000L) - System.currentTimeMillis() : reset * 1000L;
+            reset = TimeUnit.MILLISECONDS.toNanos(Math.max(0, millis));
+        }
+        bucket.update(limit, remaining, reset);
+        if (status == 429) {
+            long retryAfter = RetryPolicy.parseRetryAfter(first(headers, "retry-after"));
+            if (retryAfter >= 0)
+                bucket.block(TimeUnit.MILLISECONDS.toNanos(retryAfter));
+        }
+    }
+
+    /**
+     * Sets the limit of a client key
+     *
+     * @param client
+     *            Client key, null for every key without a limit of its own
+     * @param perSecond
+     *            Permits per second, 0 for no limit
+     * @param burst
+     *            Permits available at once
+     */
+    public void setClientLimit(String client, double perSecond, int burst) {
+        Limit limit = new Limit(perSecond, burst);
+        if (client == null)
+            this.defaultLimit = limit;
+        else
+            this.clientLimits.put(client, limit);
+        for (Map.Entry<String, TokenBucket> entry : this.clientBuckets.entrySet()) {
+            if ((client == null) ? !this.clientLimits.containsKey(entry.getKey()) : client.equals(entry.getKey()))
+                entry.getValue().configure(perSecond, burst);
+        }
+    }
+
+    /**
+     * Sets the limit of a resource family, applied to each client key
+     *
+     * @param family
+     *            Resource family, e.g. "profile"
+     * @param perSecond
+     *            Permits per second, 0 for no limit
+     * @param burst
+     *            Permits available at once
+     */
+    public void setResourceLimit(String family, double perSecond, int burst) {
+        this.resourceLimits.put(family, new Limit(perSecond, burst));
+        for (Map.Entry<String, TokenBucket> entry : this.resourceBuckets.entrySet()) {
+            if (entry.getKey().endsWith("/" + family))
+                entry.getValue().configure(perSecond, burst);
+        }
+    }
+
+    /**
+     * Gets a snapshot of every bucket, e.g. for a dashboard
+     *
+     * @return RateLimitStats keyed by bucket name, in name order
+     */
+    public Map<String, RateLimitStats> getStats() {
+        Map<String, RateLimitStats> stats = new TreeMap<>();
+        for (TokenBucket bucket : this.clientBuckets.values())
+            stats.put(bucket.getName(), bucket.getStats());
+        for (TokenBucket bucket : this.resourceBuckets.values())
+            stats.put(bucket.getName(), bucket.getStats());
+        return stats;
+    }
+
+    /**
+     * Drops every bucket, forgetting what the server reported
+     */
+    public void reset() {
+        this.clientBuckets.clear();
+        this.resourceBuckets.clear();
+    }
+
+    /**
+     * Checks if calls go through the limiter
+     *
+     * @return enabled
+     */
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * Enables or disables the limiter
+     *
+     * @param enabled
+     *            boolean
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Gets what a call does when no permit is left
+     *
+     * @return mode
+     */
+    public AcquireMode getMode() {
+        return this.mode;
+    }
+
+    /**
+     * Sets what a call does when no permit is left
+     *
+     * @param mode
+     *            AcquireMode
+     */
+    public void setMode(AcquireMode mode) {
+        if (mode == null)
+            throw new IllegalArgumentException("mode must not be null");
+        this.mode = mode;
+    }
+
+    /**
+     * Gets the longest wait of a call in TIMED mode
+     *
+     * @return maxWait in milliseconds
+     */
+    public long getMaxWait() {
+        return this.maxWait;
+    }
+
+    /**
+     * Sets the longest wait of a call in TIMED mode
+     *
+     * @param maxWait
+     *            milliseconds
+     */
+    public void setMaxWait(long maxWait) {
+        if (maxWait < 0)
+            throw new IllegalArgumentException("maxWait must not be negative");
+        this.maxWait = maxWait;
+    }
+
+    private TokenBucket clientBucket(String client) {
+        if (client == null)
+            client = "";
+        TokenBucket bucket = this.clientBuckets.get(client);
+        if (bucket != null)
+            return bucket;
+        Limit limit = this.clientLimits.get(client);
+        if (limit == null)
+            limit = this.defaultLimit;
+        bucket = new TokenBucket(client, limit.rate, limit.burst);
+        TokenBucket existing = this.clientBuckets.putIfAbsent(client, bucket);
+        return existing == null ? bucket : existing;
+    }
+
+    private TokenBucket resourceBucket(String client, String family) {
+        Limit limit = this.resourceLimits.get(family);
+        if ((limit == null) || (limit.rate <= 0))
+            return null;
+        String name = client + "/" + family;
+        TokenBucket bucket = this.resourceBuckets.get(name);
+        if (bucket != null)
+            return bucket;
+        bucket = new TokenBucket(name, limit.rate, limit.burst);
+        TokenBucket existing = this.resourceBuckets.putIfAbsent(name, bucket);
+        return existing == null ? bucket : existing;
+    }
+
+    private static String first(Map<String, List<String>> headers, String name) {
+        List<String> values = headers.get(name);
+        if ((values == null) || values.isEmpty())
+            return null;
+        return values.get(0);
+    }
+
+    private static long header(Map<String, List<String>> headers, String... names) {
+        for (String name : names) {
+            String value = first(headers, name);
+            if (value == null)
+                continue;
+            try {
+                return Math.max(0, Long.parseLong(value.trim()));
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A configured rate and burst
+     */
+    private static final class Limit {
+        static final Limit NONE = new Limit(0, 0);
+
+        final double rate;
+        final int burst;
+
+        Limit(double rate, int burst) {
+            if (rate < 0)
+                throw new IllegalArgumentException("rate must not be negative");
+            this.rate = rate;
+            this.burst = burst;
+        }
+    }
+
+}
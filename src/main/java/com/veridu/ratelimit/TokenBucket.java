@@ -0,0 +1,211 @@
+package com.veridu.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Class TokenBucket paces the calls of one client key, or of one client key
+ * to one resource family. The configured rate refills the bucket up to its
+ * burst; the rate-limit headers of the API's responses then narrow it down:
+ * once the server says no call is left in its window, permits are held back
+ * until the window resets.
+ *
+ * Tokens may go negative: a call that has to wait reserves its token right
+ * away, so the calls queued behind it wait in turn instead of all waking up
+ * together.
+ *
+ * @version 1.0
+ */
+public class TokenBucket {
+
+    private final String name;
+    private final ReentrantLock lock = new ReentrantLock();
+    private double rate;
+    private double burst;
+    private double tokens;
+    private long refilledAt;
+    private long remaining = -1;
+    private long limit = -1;
+    private long resetAt = 0;
+    private long acquired = 0;
+    private long throttled = 0;
+    private long rejected = 0;
+
+    /**
+     * Class constructor
+     *
+     * @param name
+     *            Client key, or client key and resource family
+     * @param rate
+     *            Permits per second, 0 for no configured limit
+     * @param burst
+     *            Permits available at once
+     */
+    TokenBucket(String name, double rate, int burst) {
+        this.name = name;
+        this.refilledAt = System.nanoTime();
+        configure(rate, burst);
+        this.tokens = this.burst;
+    }
+
+    /**
+     * Changes the configured rate, keeping the tokens already earned
+     *
+     * @param rate
+     *            Permits per second, 0 for no configured limit
+     * @param burst
+     *            Permits available at once
+     */
+    void configure(double rate, int burst) {
+        this.lock.lock();
+        try {
+            refill(System.nanoTime());
+            this.rate = rate;
+            this.burst = rate > 0 ? Math.max(1, burst) : Double.POSITIVE_INFINITY;
+            this.tokens = Math.min(this.tokens, this.burst);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Reserves a permit
+     *
+     * @param maxWait
+     *            Longest acceptable wait in nanoseconds, negative for no
+     *            bound
+     *
+     * @return nanoseconds to wait before the call, -1 if that would exceed
+     *         maxWait, in which case nothing is reserved
+     */
+    public long reserve(long maxWait) {
+        return reserve(System.nanoTime(), maxWait);
+    }
+
+    long reserve(long now, long maxWait) {
+        this.lock.lock();
+        try {
+            refill(now);
+            long wait = 0;
+            if ((this.rate > 0) && (this.tokens < 1))
+                wait = (long) Math.ceil(((1 - this.tokens) / this.rate) * TimeUnit.SECONDS.toNanos(1));
+            if (this.remaining == 0)
+                wait = Math.max(wait, this.resetAt - now);
+            if ((maxWait >= 0) && (wait > maxWait)) {
+                this.rejected++;
+                return -1;
+            }
+            this.tokens--;
+            if (this.remaining > 0)
+                this.remaining--;
+            this.acquired++;
+            if (wait > 0)
+                this.throttled++;
+            return wait;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Gives back a permit that was reserved but not used
+     */
+    public void refund() {
+        this.lock.lock();
+        try {
+            this.tokens = Math.min(this.burst, this.tokens + 1);
+            this.acquired--;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Narrows the bucket down to what the server reported
+     *
+     * @param limit
+     *            Calls allowed per server window, -1 if unknown
+     * @param remaining
+     *            Calls left in the current window, -1 if unknown
+     * @param reset
+     *            Nanoseconds until the window resets, -1 if unknown
+     */
+    public void update(long limit, long remaining, long reset) {
+        update(System.nanoTime(), limit, remaining, reset);
+    }
+
+    void update(long now, long limit, long remaining, long reset) {
+        this.lock.lock();
+        try {
+            refill(now);
+            if (limit >= 0)
+                this.limit = limit;
+            if ((remaining < 0) || (reset < 0))
+                return;
+            this.remaining = remaining;
+            this.resetAt = now + reset;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Holds every permit back for a while, as asked by a 429 response
+     *
+     * @param delay
+     *            nanoseconds
+     */
+    public void block(long delay) {
+        block(System.nanoTime(), delay);
+    }
+
+    void block(long now, long delay) {
+        this.lock.lock();
+        try {
+            refill(now);
+            long until = now + delay;
+            if ((this.remaining != 0) || ((until - this.resetAt) > 0))
+                this.resetAt = until;
+            this.remaining = 0;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the name of the bucket
+     *
+     * @return name
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Takes a snapshot of the bucket
+     *
+     * @return RateLimitStats
+     */
+    public RateLimitStats getStats() {
+        this.lock.lock();
+        try {
+            refill(System.nanoTime());
+            return new RateLimitStats(this.name, this.rate, this.rate > 0 ? this.tokens : Double.POSITIVE_INFINITY,
+                    this.limit, this.remaining, this.acquired, this.throttled, this.rejected);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void refill(long now) {
+        if (this.rate > 0)
+            this.tokens = Math.min(this.burst, this.tokens + ((now - this.refilledAt) * this.rate) / 1e9);
+        else
+            this.tokens = this.burst;
+        this.refilledAt = now;
+        // the server window is over, its count no longer applies
+        if ((this.remaining >= 0) && ((now - this.resetAt) >= 0))
+            this.remaining = -1;
+    }
+
+}
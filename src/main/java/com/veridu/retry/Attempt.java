@@ -0,0 +1,111 @@
+package com.veridu.retry;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class Attempt tracks one API call across its retries: the attempt number,
+ * when the call started and what the server answered last
+ *
+ * @version 1.0
+ */
+public class Attempt {
+
+    private final long started = System.currentTimeMillis();
+    private int number = 1;
+    private int status = 0;
+    private Map<String, List<String>> headers = Collections.emptyMap();
+
+    /**
+     * Gets the attempt number, starting at 1
+     *
+     * @return number
+     */
+    public int getNumber() {
+        return this.number;
+    }
+
+    /**
+     * Gets the time the call started
+     *
+     * @return milliseconds since the epoch
+     */
+    public long getStarted() {
+        return this.started;
+    }
+
+    /**
+     * Gets the time spent on the call so far
+     *
+     * @return milliseconds
+     */
+    public long getElapsed() {
+        return System.currentTimeMillis() - this.started;
+    }
+
+    /**
+     * Gets the HTTP status of the last response
+     *
+     * @return status, 0 if no response arrived
+     */
+    public int getStatus() {
+        return this.status;
+    }
+
+    /**
+     * Gets the Retry-After header of the last response
+     *
+     * @return retryAfter, null if absent
+     */
+    public String getRetryAfter() {
+        return getHeader("Retry-After");
+    }
+
+    /**
+     * Gets the headers of the last response
+     *
+     * @return headers keyed in lower case, empty if there was no response
+     */
+    public Map<String, List<String>> getHeaders() {
+        return this.headers;
+    }
+
+    /**
+     * Gets the first value of a header of the last response
+     *
+     * @param name
+     *            Header name, case-insensitive
+     *
+     * @return value, null if absent
+     */
+    public String getHeader(String name) {
+        List<String> values = this.headers.get(name.toLowerCase());
+        if ((values == null) || values.isEmpty())
+            return null;
+        return values.get(0);
+    }
+
+    /**
+     * Records the response of the current attempt
+     *
+     * @param status
+     *            HTTP status
+     * @param headers
+     *            Response headers, keyed in lower case
+     */
+    public void record(int status, Map<String, List<String>> headers) {
+        this.status = status;
+        this.headers = headers == null ? Collections.<String, List<String>> emptyMap() : headers;
+    }
+
+    /**
+     * Moves on to the next attempt
+     */
+    public void next() {
+        this.number++;
+        this.status = 0;
+        this.headers = Collections.emptyMap();
+    }
+
+}
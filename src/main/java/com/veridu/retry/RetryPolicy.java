@@ -0,0 +1,352 @@
+package com.veridu.retry;
+
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLHandshakeException;
+import javax.net.ssl.SSLPeerUnverifiedException;
+
+import com.veridu.exceptions.APIError;
+import com.veridu.exceptions.RequestFailed;
+
+/**
+ * Class RetryPolicy decides which failed API calls are tried again and how
+ * long to wait first. Waits grow exponentially with full jitter, and every
+ * call has a budget: a maximum number of attempts and a maximum time spent
+ * including the waits.
+ *
+ * Failures where the server did not process the request (connect errors,
+ * 429, SESSION_TOKEN_INVALID) are retried for any method. Other transient
+ * failures (5xx, timeouts, dropped connections) are only retried for
+ * idempotent methods.
+ *
+ * @version 1.0
+ */
+public class RetryPolicy {
+
+    /**
+     * API error type answered when the session token is not (yet) known
+     */
+    final public static String SESSION_TOKEN_INVALID = "SESSION_TOKEN_INVALID";
+
+    /**
+     * Attempts per call, the first one included
+     */
+    private volatile int maxAttempts = 3;
+
+    /**
+     * Wait before the first retry, in milliseconds
+     */
+    private volatile long initialBackoff = 100;
+
+    /**
+     * Longest wait between two attempts, in milliseconds
+     */
+    private volatile long maxBackoff = 2000;
+
+    /**
+     * Factor applied to the wait after each attempt
+     */
+    private volatile double multiplier = 2.0;
+
+    /**
+     * Maximum time spent on a call, waits included, in milliseconds
+     */
+    private volatile long budget = 10000;
+
+    /**
+     * Methods safe to repeat after the server may have processed them
+     */
+    private volatile Set<String> idempotentMethods = Collections
+            .unmodifiableSet(new HashSet<>(Arrays.asList("GET", "HEAD", "PUT", "DELETE", "OPTIONS")));
+
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong exhausted = new AtomicLong();
+
+    /**
+     * Returns a policy that never retries
+     *
+     * @return RetryPolicy
+     */
+    public static RetryPolicy none() {
+        RetryPolicy policy = new RetryPolicy();
+        policy.setMaxAttempts(1);
+        return policy;
+    }
+
+    /**
+     * Decides whether a failed attempt is retried
+     *
+     * @param method
+     *            HTTP method of the call
+     * @param attempt
+     *            Attempt that failed
+     * @param failure
+     *            Exception the attempt ended with
+     *
+     * @return milliseconds to wait before the next attempt, -1 to give up
+     */
+    public long delay(String method, Attempt attempt, Exception failure) {
+        boolean unprocessed = isUnprocessed(attempt, failure);
+        if (!unprocessed && !(isTransient(attempt, failure) && isIdempotent(method)))
+            return -1;
+        if (attempt.getNumber() >= this.maxAttempts) {
+            this.exhausted.incrementAndGet();
+            return -1;
+        }
+        long delay = backoff(attempt.getNumber());
+        long retryAfter = parseRetryAfter(attempt.getRetryAfter());
+        if (retryAfter >= 0)
+            delay = retryAfter;
+        if ((attempt.getElapsed() + delay) > this.budget) {
+            this.exhausted.incrementAndGet();
+            return -1;
+        }
+        this.retries.incrementAndGet();
+        return delay;
+    }
+
+    /**
+     * Checks if a method can be repeated safely
+     *
+     * @param method
+     *            HTTP method
+     *
+     * @return boolean
+     */
+    public boolean isIdempotent(String method) {
+        return this.idempotentMethods.contains(method.toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * Computes the jittered wait before a retry
+     *
+     * @param number
+     *            Number of the attempt that failed, starting at 1
+     *
+     * @return milliseconds, between 0 and the exponential backoff
+     */
+    public long backoff(int number) {
+        double ceiling = this.initialBackoff * Math.pow(this.multiplier, number - 1);
+        long bound = (long) Math.min(this.maxBackoff, ceiling);
+        if (bound <= 0)
+            return 0;
+        return ThreadLocalRandom.current().nextLong(bound + 1);
+    }
+
+    /**
+     * Parses a Retry-After header, in seconds or as an HTTP date
+     *
+     * @param value
+     *            Header value, may be null
+     *
+     * @return milliseconds, -1 if absent or malformed
+     */
+    public static long parseRetryAfter(String value) {
+        if ((value == null) || value.trim().isEmpty())
+            return -1;
+        value = value.trim();
+        try {
+            return Math.max(0, Long.parseLong(value) * 1000L);
+        } catch (NumberFormatException e) {
+            // not delta-seconds, try an HTTP date
+        }
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        try {
+            return Math.max(0, format.parse(value).getTime() - System.currentTimeMillis());
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Gets the number of retries granted
+     *
+     * @return retries
+     */
+    public long getRetries() {
+        return this.retries.get();
+    }
+
+    /**
+     * Gets the number of retryable failures given up because the attempts or
+     * the time budget ran out
+     *
+     * @return exhausted
+     */
+    public long getExhausted() {
+        return this.exhausted.get();
+    }
+
+    /**
+     * Gets the maximum attempts per call
+     *
+     * @return maxAttempts
+     */
+    public int getMaxAttempts() {
+        return this.maxAttempts;
+    }
+
+    /**
+     * Sets the maximum attempts per call, the first one included; 1 disables
+     * retries
+     *
+     * @param maxAttempts
+     *            int
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 1)
+            throw new IllegalArgumentException("maxAttempts must be positive");
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Gets the wait before the first retry
+     *
+     * @return initialBackoff in milliseconds
+     */
+    public long getInitialBackoff() {
+        return this.initialBackoff;
+    }
+
+    /**
+     * Sets the wait before the first retry
+     *
+     * @param initialBackoff
+     *            milliseconds
+     */
+    public void setInitialBackoff(long initialBackoff) {
+        if (initialBackoff < 0)
+            throw new IllegalArgumentException("initialBackoff must not be negative");
+        this.initialBackoff = initialBackoff;
+    }
+
+    /**
+     * Gets the longest wait between two attempts
+     *
+     * @return maxBackoff in milliseconds
+     */
+    public long getMaxBackoff() {
+        return this.maxBackoff;
+    }
+
+    /**
+     * Sets the longest wait between two attempts
+     *
+     * @param maxBackoff
+     *            milliseconds
+     */
+    public void setMaxBackoff(long maxBackoff) {
+        if (maxBackoff < 0)
+            throw new IllegalArgumentException("maxBackoff must not be negative");
+        this.maxBackoff = maxBackoff;
+    }
+
+    /**
+     * Gets the factor applied to the wait after each attempt
+     *
+     * @return multiplier
+     */
+    public double getMultiplier() {
+        return this.multiplier;
+    }
+
+    /**
+     * Sets the factor applied to the wait after each attempt
+     *
+     * @param multiplier
+     *            at least 1
+     */
+    public void setMultiplier(double multiplier) {
+        if (multiplier < 1)
+            throw new IllegalArgumentException("multiplier must be at least 1");
+        this.multiplier = multiplier;
+    }
+
+    /**
+     * Gets the maximum time spent on a call
+     *
+     * @return budget in milliseconds
+     */
+    public long getBudget() {
+        return this.budget;
+    }
+
+    /**
+     * Sets the maximum time spent on a call, waits included. A retry whose
+     * wait would overrun it is not made.
+     *
+     * @param budget
+     *            milliseconds
+     */
+    public void setBudget(long budget) {
+        if (budget < 0)
+            throw new IllegalArgumentException("budget must not be negative");
+        this.budget = budget;
+    }
+
+    /**
+     * Gets the methods retried after transient server-side failures
+     *
+     * @return idempotentMethods
+     */
+    public Set<String> getIdempotentMethods() {
+        return this.idempotentMethods;
+    }
+
+    /**
+     * Sets the methods retried after transient server-side failures, e.g. add
+     * POST if the calls made are known to be safe to repeat
+     *
+     * @param idempotentMethods
+     *            Set of upper-case methods
+     */
+    public void setIdempotentMethods(Set<String> idempotentMethods) {
+        this.idempotentMethods = Collections.unmodifiableSet(new HashSet<>(idempotentMethods));
+    }
+
+    /**
+     * Failures that leave the request unprocessed
+     */
+    private static boolean isUnprocessed(Attempt attempt, Exception failure) {
+        if (attempt.getStatus() == 429)
+            return true;
+        if ((failure instanceof APIError) && SESSION_TOKEN_INVALID.equals(((APIError) failure).getType()))
+            return true;
+        if (failure instanceof RequestFailed) {
+            Throwable cause = failure.getCause();
+            return (cause instanceof ConnectException) || (cause instanceof NoRouteToHostException);
+        }
+        return false;
+    }
+
+    /**
+     * Failures worth another try once the request may have been processed
+     */
+    private static boolean isTransient(Attempt attempt, Exception failure) {
+        if (attempt.getStatus() >= 500)
+            return true;
+        if (!(failure instanceof RequestFailed) || (failure.getCause() == null))
+            return false;
+        // a certificate the client rejects stays rejected
+        Throwable cause = failure.getCause();
+        return !(cause instanceof SSLHandshakeException) && !(cause instanceof SSLPeerUnverifiedException);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RetryPolicy[maxAttempts=%d, backoff=%d..%dms, budget=%dms, retries=%d, exhausted=%d]",
+                this.maxAttempts, this.initialBackoff, this.maxBackoff, this.budget, this.retries.get(),
+                this.exhausted.get());
+    }
+
+}
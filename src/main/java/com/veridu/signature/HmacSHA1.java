@@ -22,6 +22,30 @@ public class HmacSHA1 {
      *             when signature generation fails
      */
     public static String Calculate(String data, String key) throws java.security.SignatureException {
+        try {
+            Mac mac = Create(key);
+
+            // compute the hmac on input data bytes
+            byte[] rawHmac = mac.doFinal(data.getBytes());
+            return Hex.Encode(rawHmac);
+        } catch (SignatureException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SignatureException("Failed to generate HMAC : " + e.getMessage());
+        }
+    }
+
+    /**
+     * Creates a Mac initialized with the signing key. doFinal resets it, so
+     * the instance can sign any number of inputs with the same key.
+     *
+     * @param key
+     *            The signing key.
+     * @return The initialized Mac.
+     * @throws java.security.SignatureException
+     *             when the algorithm or key is not available
+     */
+    public static Mac Create(String key) throws java.security.SignatureException {
         try {
             // get an hmac_sha1 key from the raw key bytes
             SecretKeySpec signingKey = new SecretKeySpec(key.getBytes(), HMAC_SHA1_ALGORITHM);
@@ -29,10 +53,7 @@ public class HmacSHA1 {
             // get an hmac_sha1 Mac instance and initialize with the signing key
             Mac mac = Mac.getInstance(HMAC_SHA1_ALGORITHM);
             mac.init(signingKey);
-
-            // compute the hmac on input data bytes
-            byte[] rawHmac = mac.doFinal(data.getBytes());
-            return Hex.Encode(rawHmac);
+            return mac;
         } catch (Exception e) {
             throw new SignatureException("Failed to generate HMAC : " + e.getMessage());
         }
@@ -2,12 +2,20 @@ package com.veridu.signature;
 
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
 import java.security.SignatureException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+
+import javax.crypto.Mac;
+
 import org.json.simple.parser.ParseException;
 
 import com.veridu.Utils;
+import com.veridu.buffer.BufferPool;
+import com.veridu.buffer.Utf8;
 
 /**
  * Class Signature
@@ -17,6 +25,11 @@ public class Signature {
     private String secret;
     private String version = "0.3";
 
+    /**
+     * Idle Mac instances, initialized with the secret
+     */
+    private final BlockingQueue<Mac> macs = new ArrayBlockingQueue<>(16);
+
     public Signature(String clientid, String secret, String version) {
         this.clientid = clientid;
         this.secret = secret;
@@ -61,7 +74,7 @@ public class Signature {
             String data = "client=" + this.clientid + "&method=" + method + "&nonce=" + nonce + "&resource="
                     + URLEncoder.encode(url, "UTF-8") + "&timestamp="
                     + String.valueOf(System.currentTimeMillis() / 1000L) + "&version=" + this.version;
-            String sign = HmacSHA1.Calculate(data, this.secret);
+            String sign = sign(data);
             return data.concat("&signature=").concat(URLEncoder.encode(sign, "UTF-8"));
         } catch (UnsupportedEncodingException ex) {
             Logger.getLogger(Signature.class.getName()).log(Level.SEVERE, null, ex);
@@ -69,4 +82,31 @@ public class Signature {
         return null;
     }
 
+    /**
+     * Computes the HMAC of the request data with a pooled Mac, reading the
+     * data from a pooled buffer
+     *
+     * @param data
+     *            String
+     *
+     * @return hex-encoded signature
+     *
+     * @throws SignatureException
+     *             Exception
+     */
+    private String sign(String data) throws SignatureException {
+        Mac mac = this.macs.poll();
+        if (mac == null)
+            mac = HmacSHA1.Create(this.secret);
+        ByteBuffer input = Utf8.encode(data, BufferPool.shared());
+        try {
+            mac.update(input);
+            return Hex.Encode(mac.doFinal());
+        } finally {
+            BufferPool.shared().release(input);
+            mac.reset();
+            this.macs.offer(mac);
+        }
+    }
+
 }
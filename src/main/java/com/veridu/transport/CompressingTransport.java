@@ -0,0 +1,298 @@
+package com.veridu.transport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Class CompressingTransport negotiates gzip/deflate on top of another
+ * transport. Compressed responses are inflated while they are read, so the
+ * JSON parser consumes the decoded stream directly; request bodies above a
+ * threshold can be gzipped as well.
+ *
+ * @version 1.0
+ */
+public class CompressingTransport implements Transport {
+
+    /**
+     * Accept-Encoding sent with every request
+     */
+    final public static String ACCEPT_ENCODING = "gzip, deflate";
+
+    private final Transport transport;
+
+    /**
+     * Request bodies at least this large are gzipped, -1 disables it
+     */
+    private volatile int requestThreshold = -1;
+
+    private final AtomicLong responses = new AtomicLong();
+    private final AtomicLong compressedResponses = new AtomicLong();
+    private final AtomicLong responseWireBytes = new AtomicLong();
+    private final AtomicLong responseBytes = new AtomicLong();
+    private final AtomicLong compressedRequests = new AtomicLong();
+    private final AtomicLong requestWireBytes = new AtomicLong();
+    private final AtomicLong requestBytes = new AtomicLong();
+
+    /**
+     * Class constructor
+     *
+     * @param transport
+     *            Transport carrying the requests
+     */
+    public CompressingTransport(Transport transport) {
+        this.transport = transport;
+    }
+
+    /**
+     * Executes a request, asking for a compressed response
+     *
+     * @param request
+     *            HttpRequest
+     *
+     * @return HttpResponse whose body is decoded
+     *
+     * @throws IOException
+     *             Exception
+     */
+    @Override
+    public HttpResponse execute(HttpRequest request) throws IOException {
+        HttpRequest sent = prepare(request);
+        HttpResponse response = this.transport.execute(sent);
+        this.responses.incrementAndGet();
+        String encoding = response.getHeader("Content-Encoding");
+        if (encoding != null)
+            encoding = encoding.trim().toLowerCase();
+        if (!"gzip".equals(encoding) && !"x-gzip".equals(encoding) && !"deflate".equals(encoding))
+            return response;
+        this.compressedResponses.incrementAndGet();
+        Map<String, List<String>> headers = new HashMap<>();
+        for (Entry<String, List<String>> header : response.getHeaders().entrySet()) {
+            if (!header.getKey().equals("content-encoding") && !header.getKey().equals("content-length"))
+                headers.put(header.getKey(), header.getValue());
+        }
+        return new HttpResponse(response.getCode(), headers, new Decoded(response.getBody(), encoding), response);
+    }
+
+    /**
+     * Closes the underlying transport
+     */
+    @Override
+    public void close() {
+        this.transport.close();
+    }
+
+    /**
+     * Gets the wrapped transport
+     *
+     * @return Transport
+     */
+    public Transport getTransport() {
+        return this.transport;
+    }
+
+    /**
+     * Gets the compression counters
+     *
+     * @return CompressionStats
+     */
+    public CompressionStats getStats() {
+        return new CompressionStats(this.responses.get(), this.compressedResponses.get(),
+                this.responseWireBytes.get(), this.responseBytes.get(), this.compressedRequests.get(),
+                this.requestWireBytes.get(), this.requestBytes.get());
+    }
+
+    /**
+     * Gets the size from which request bodies are gzipped
+     *
+     * @return bytes, -1 if request bodies are never compressed
+     */
+    public int getRequestThreshold() {
+        return this.requestThreshold;
+    }
+
+    /**
+     * Sets the size from which request bodies are gzipped, e.g. large Batch
+     * jobs. The API has to accept Content-Encoding on requests.
+     *
+     * @param requestThreshold
+     *            bytes, -1 to never compress request bodies
+     */
+    public void setRequestThreshold(int requestThreshold) {
+        this.requestThreshold = requestThreshold;
+    }
+
+    private HttpRequest prepare(HttpRequest request) throws IOException {
+        boolean accept = !hasHeader(request, "Accept-Encoding");
+        boolean compress = (this.requestThreshold >= 0) && request.hasBody()
+                && (request.getBodyLength() >= this.requestThreshold) && !hasHeader(request, "Content-Encoding");
+        if (!accept && !compress)
+            return request;
+        final HttpRequest sent = new HttpRequest(request.getMethod(), request.getUrl());
+        // aborting the caller's request aborts the one sent in its place
+        if (!request.attach(new Closeable() {
+            @Override
+            public void close() {
+                sent.abort();
+            }
+        }))
+            sent.abort();
+        for (Entry<String, String> header : request.getHeaders().entrySet())
+            sent.setHeader(header.getKey(), header.getValue());
+        if (accept)
+            sent.setHeader("Accept-Encoding", ACCEPT_ENCODING);
+        if (!compress) {
+            sent.setBody(request.getBody(), request.getBodyLength());
+            return sent;
+        }
+        int length = request.getBodyLength();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(Math.max(64, length / 4));
+        GZIPOutputStream gzip = new GZIPOutputStream(buffer);
+        gzip.write(request.getBody(), 0, length);
+        gzip.close();
+        byte[] compressed = buffer.toByteArray();
+        this.compressedRequests.incrementAndGet();
+        this.requestBytes.addAndGet(length);
+        this.requestWireBytes.addAndGet(compressed.length);
+        sent.setHeader("Content-Encoding", "gzip");
+        sent.setBody(compressed);
+        return sent;
+    }
+
+    private static boolean hasHeader(HttpRequest request, String name) {
+        for (String header : request.getHeaders().keySet()) {
+            if (header.equalsIgnoreCase(name))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Counts the bytes read from the wire
+     */
+    private static final class Counting extends FilterInputStream {
+        long count = 0;
+
+        Counting(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1)
+                this.count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0)
+                this.count += n;
+            return n;
+        }
+    }
+
+    /**
+     * Inflates a response body as it is read. The decoder is created on the
+     * first read, an empty body stays empty.
+     */
+    private final class Decoded extends InputStream {
+        private final Counting wire;
+        private final String encoding;
+        private final AtomicBoolean recorded = new AtomicBoolean(false);
+        private InputStream decoder = null;
+        private long count = 0;
+
+        Decoded(InputStream body, String encoding) {
+            this.wire = new Counting(body);
+            this.encoding = encoding;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n == -1 ? -1 : (one[0] & 0xFF);
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            InputStream decoder = decoder();
+            int n = decoder == null ? -1 : decoder.read(buffer, offset, length);
+            if (n > 0)
+                this.count += n;
+            else if (n == -1)
+                record();
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            record();
+            if (this.decoder != null)
+                this.decoder.close();
+            else
+                this.wire.close();
+        }
+
+        private InputStream decoder() throws IOException {
+            if (this.decoder != null)
+                return this.decoder;
+            PushbackInputStream in = new PushbackInputStream(this.wire, 2);
+            byte[] head = new byte[2];
+            int n = 0;
+            // a slow or chunked stream may hand the header over a byte at a time
+            while (n < 2) {
+                int read = in.read(head, n, 2 - n);
+                if (read == -1)
+                    break;
+                n += read;
+            }
+            if (n == 0)
+                return null;
+            in.unread(head, 0, n);
+            if (this.encoding.equals("deflate")) {
+                // RFC 1950 zlib stream, although some servers send raw deflate
+                int header = ((head[0] & 0xFF) << 8) | (head[1] & 0xFF);
+                boolean zlib = (n == 2) && ((head[0] & 0x0F) == 8) && ((header % 31) == 0);
+                final Inflater inflater = new Inflater(!zlib);
+                this.decoder = new InflaterInputStream(in, inflater, 8192) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            inflater.end();
+                        }
+                    }
+                };
+            } else {
+                this.decoder = new GZIPInputStream(in, 8192);
+            }
+            return this.decoder;
+        }
+
+        private void record() {
+            if (!this.recorded.compareAndSet(false, true))
+                return;
+            CompressingTransport.this.responseWireBytes.addAndGet(this.wire.count);
+            CompressingTransport.this.responseBytes.addAndGet(this.count);
+        }
+    }
+
+}
@@ -0,0 +1,128 @@
+package com.veridu.transport;
+
+/**
+ * Class CompressionStats is a snapshot of the compression counters
+ *
+ * @version 1.0
+ */
+public class CompressionStats {
+
+    private final long responses;
+    private final long compressedResponses;
+    private final long responseWireBytes;
+    private final long responseBytes;
+    private final long compressedRequests;
+    private final long requestWireBytes;
+    private final long requestBytes;
+
+    /**
+     * Class constructor
+     *
+     * @param responses
+     *            Responses received
+     * @param compressedResponses
+     *            Responses received compressed
+     * @param responseWireBytes
+     *            Compressed bytes read, for compressed responses
+     * @param responseBytes
+     *            Decoded bytes, for compressed responses
+     * @param compressedRequests
+     *            Request bodies sent compressed
+     * @param requestWireBytes
+     *            Compressed bytes sent, for compressed requests
+     * @param requestBytes
+     *            Original bytes, for compressed requests
+     */
+    public CompressionStats(long responses, long compressedResponses, long responseWireBytes, long responseBytes,
+            long compressedRequests, long requestWireBytes, long requestBytes) {
+        this.responses = responses;
+        this.compressedResponses = compressedResponses;
+        this.responseWireBytes = responseWireBytes;
+        this.responseBytes = responseBytes;
+        this.compressedRequests = compressedRequests;
+        this.requestWireBytes = requestWireBytes;
+        this.requestBytes = requestBytes;
+    }
+
+    /**
+     * Gets the number of responses received
+     *
+     * @return responses
+     */
+    public long getResponses() {
+        return this.responses;
+    }
+
+    /**
+     * Gets the number of responses received compressed
+     *
+     * @return compressedResponses
+     */
+    public long getCompressedResponses() {
+        return this.compressedResponses;
+    }
+
+    /**
+     * Gets the compressed bytes read for compressed responses
+     *
+     * @return responseWireBytes
+     */
+    public long getResponseWireBytes() {
+        return this.responseWireBytes;
+    }
+
+    /**
+     * Gets the decoded bytes of compressed responses
+     *
+     * @return responseBytes
+     */
+    public long getResponseBytes() {
+        return this.responseBytes;
+    }
+
+    /**
+     * Gets the number of request bodies sent compressed
+     *
+     * @return compressedRequests
+     */
+    public long getCompressedRequests() {
+        return this.compressedRequests;
+    }
+
+    /**
+     * Gets the compressed bytes sent for compressed requests
+     *
+     * @return requestWireBytes
+     */
+    public long getRequestWireBytes() {
+        return this.requestWireBytes;
+    }
+
+    /**
+     * Gets the original bytes of compressed requests
+     *
+     * @return requestBytes
+     */
+    public long getRequestBytes() {
+        return this.requestBytes;
+    }
+
+    /**
+     * Gets the bytes compression kept off the wire, both directions
+     *
+     * @return bytes saved
+     */
+    public long getBytesSaved() {
+        return (this.responseBytes - this.responseWireBytes) + (this.requestBytes - this.requestWireBytes);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "CompressionStats[responses=%d, compressed=%d, wire=%d, decoded=%d, requests=%d, "
+                        + "requestWire=%d, requestOriginal=%d, saved=%d]",
+                this.responses, this.compressedResponses, this.responseWireBytes, this.responseBytes,
+                this.compressedRequests, this.requestWireBytes, this.requestBytes, getBytesSaved());
+    }
+
+}
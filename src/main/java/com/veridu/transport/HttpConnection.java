@@ -0,0 +1,530 @@
+package com.veridu.transport;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Class HttpConnection is a persistent HTTP/1.1 connection owned by a pool
+ *
+ * @version 1.0
+ */
+final class HttpConnection implements Closeable {
+
+    /**
+     * Receives a connection back once its response has been consumed
+     */
+    interface Owner {
+
+        /**
+         * The connection can carry another request
+         *
+         * @param connection
+         *            HttpConnection
+         */
+        void release(HttpConnection connection);
+
+        /**
+         * The connection must be closed
+         *
+         * @param connection
+         *            HttpConnection
+         */
+        void discard(HttpConnection connection);
+    }
+
+    /**
+     * Bytes drained from an unread body before giving up on reuse
+     */
+    private static final int DRAIN_LIMIT = 64 * 1024;
+
+    private final Owner owner;
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+
+    /**
+     * Time the connection went idle
+     */
+    private long lastUsed = System.currentTimeMillis();
+
+    /**
+     * Keep-alive advertised by the server, in milliseconds (-1 if none)
+     */
+    private long keepAlive = -1;
+
+    /**
+     * Number of completed exchanges
+     */
+    private int uses = 0;
+
+    /**
+     * Whether any byte of the current response has been received
+     */
+    private boolean answered = false;
+
+    /**
+     * Request being carried, which closes the connection if aborted
+     */
+    private HttpRequest request = null;
+
+    private HttpConnection(Owner owner, Socket socket) throws IOException {
+        this.owner = owner;
+        this.socket = socket;
+        this.in = new BufferedInputStream(socket.getInputStream(), 8192);
+        this.out = new BufferedOutputStream(socket.getOutputStream(), 8192);
+    }
+
+    /**
+     * Opens a connection to the host of the given URL
+     *
+     * @param owner
+     *            Owner
+     * @param url
+     *            URL
+     * @param connectTimeout
+     *            milliseconds
+     * @param readTimeout
+     *            milliseconds
+     *
+     * @return HttpConnection
+     *
+     * @throws IOException
+     *             Exception
+     */
+    static HttpConnection open(Owner owner, URL url, int connectTimeout, int readTimeout) throws IOException {
+        boolean secure = "https".equalsIgnoreCase(url.getProtocol());
+        int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            socket.connect(new InetSocketAddress(url.getHost(), port), connectTimeout);
+            socket.setSoTimeout(readTimeout);
+            if (secure) {
+                SSLSocketFactory factory = (SSLSocketFactory) SSLSocketFactory.getDefault();
+                SSLSocket ssl = (SSLSocket) factory.createSocket(socket, url.getHost(), port, true);
+                SSLParameters parameters = ssl.getSSLParameters();
+                parameters.setEndpointIdentificationAlgorithm("HTTPS");
+                ssl.setSSLParameters(parameters);
+                ssl.startHandshake();
+                socket = ssl;
+            }
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        return new HttpConnection(owner, socket);
+    }
+
+    /**
+     * Encodes the request line and headers of a request
+     *
+     * @param request
+     *            HttpRequest
+     * @param url
+     *            URL of the request
+     *
+     * @return byte[] head, blank line included
+     */
+    static byte[] head(HttpRequest request, URL url) {
+        String target = url.getFile();
+        if (target.isEmpty())
+            target = "/";
+        String host = url.getHost();
+        if (url.getPort() != -1 && url.getPort() != url.getDefaultPort())
+            host = host + ":" + url.getPort();
+        StringBuilder head = new StringBuilder(256);
+        head.append(request.getMethod()).append(' ').append(target).append(" HTTP/1.1\r\n");
+        head.append("Host: ").append(host).append("\r\n");
+        for (Entry<String, String> header : request.getHeaders().entrySet())
+            head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        if (request.hasBody())
+            head.append("Content-Length: ").append(request.getBodyLength()).append("\r\n");
+        else if (!"GET".equals(request.getMethod()) && !"HEAD".equals(request.getMethod()))
+            head.append("Content-Length: 0\r\n");
+        head.append("\r\n");
+        return head.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Sends a request and reads the response head. The body stream hands the
+     * connection back to its owner when it is exhausted or closed.
+     *
+     * @param request
+     *            HttpRequest
+     * @param url
+     *            URL
+     *
+     * @return HttpResponse
+     *
+     * @throws IOException
+     *             Exception
+     */
+    HttpResponse exchange(HttpRequest request, URL url) throws IOException {
+        this.answered = false;
+        if (!request.attach(this))
+            throw new InterruptedIOException("Request aborted");
+        this.request = request;
+        try {
+            this.out.write(head(request, url));
+            if (request.hasBody())
+                this.out.write(request.getBody(), 0, request.getBodyLength());
+            this.out.flush();
+
+            String status;
+            do {
+                status = readLine();
+                if (status == null)
+                    throw new EOFException("Connection closed before response");
+                this.answered = true;
+                Map<String, List<String>> headers = readHeaders();
+                int code = parseCode(status);
+                if (code >= 100 && code < 200)
+                    continue;
+                return respond(request.getMethod(), status, code, headers);
+            } while (true);
+        } catch (IOException e) {
+            detach();
+            throw e;
+        }
+    }
+
+    /**
+     * Whether any byte of the last response was received
+     *
+     * @return boolean
+     */
+    boolean isAnswered() {
+        return this.answered;
+    }
+
+    /**
+     * Number of exchanges completed on this connection
+     *
+     * @return uses
+     */
+    int getUses() {
+        return this.uses;
+    }
+
+    /**
+     * Checks whether the connection can be leased again
+     *
+     * @param now
+     *            current time in milliseconds
+     * @param idleTimeout
+     *            milliseconds
+     *
+     * @return boolean
+     */
+    boolean isReusable(long now, long idleTimeout) {
+        if (this.socket.isClosed() || this.socket.isInputShutdown() || this.socket.isOutputShutdown())
+            return false;
+        long limit = idleTimeout;
+        if ((this.keepAlive >= 0) && (this.keepAlive < limit))
+            limit = this.keepAlive;
+        return (now - this.lastUsed) < limit;
+    }
+
+    /**
+     * Closes the socket
+     */
+    @Override
+    public void close() {
+        try {
+            this.socket.close();
+        } catch (IOException e) {
+            // nothing left to release
+        }
+    }
+
+    private HttpResponse respond(String method, String status, int code, Map<String, List<String>> headers)
+            throws IOException {
+        boolean reusable = status.startsWith("HTTP/1.1");
+        String connection = first(headers, "connection");
+        if (connection != null) {
+            if (connection.equalsIgnoreCase("close"))
+                reusable = false;
+            else if (connection.equalsIgnoreCase("keep-alive"))
+                reusable = true;
+        }
+        this.keepAlive = parseKeepAlive(first(headers, "keep-alive"));
+
+        if ("HEAD".equals(method) || code == 204 || code == 304) {
+            complete(reusable);
+            return new HttpResponse(code, headers, new ByteArrayInputStream(new byte[0]), null);
+        }
+
+        String encoding = first(headers, "transfer-encoding");
+        String length = first(headers, "content-length");
+        if ((encoding != null) && encoding.toLowerCase().contains("chunked"))
+            return new HttpResponse(code, headers, new Body(0, true, reusable), null);
+        if (length == null)
+            return new HttpResponse(code, headers, new Body(-1, false, false), null);
+
+        long size;
+        try {
+            size = Long.parseLong(length.trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed Content-Length: " + length);
+        }
+        if (size == 0) {
+            complete(reusable);
+            return new HttpResponse(code, headers, new ByteArrayInputStream(new byte[0]), null);
+        }
+        return new HttpResponse(code, headers, new Body(size, false, reusable), null);
+    }
+
+    /**
+     * Stops carrying the request, before the connection is handed back
+     */
+    private void detach() {
+        HttpRequest request = this.request;
+        if (request == null)
+            return;
+        this.request = null;
+        request.detach(this);
+    }
+
+    private void complete(boolean reusable) {
+        detach();
+        this.uses++;
+        this.lastUsed = System.currentTimeMillis();
+        if (reusable)
+            this.owner.release(this);
+        else
+            this.owner.discard(this);
+    }
+
+    private Map<String, List<String>> readHeaders() throws IOException {
+        Map<String, List<String>> headers = new HashMap<>();
+        String line;
+        while (((line = readLine()) != null) && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon <= 0)
+                continue;
+            String name = line.substring(0, colon).trim().toLowerCase();
+            List<String> values = headers.get(name);
+            if (values == null) {
+                values = new ArrayList<>(1);
+                headers.put(name, values);
+            }
+            values.add(line.substring(colon + 1).trim());
+        }
+        if (line == null)
+            throw new EOFException("Connection closed while reading headers");
+        return headers;
+    }
+
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+        int b;
+        while ((b = this.in.read()) != -1) {
+            if (b == '\n') {
+                byte[] bytes = line.toByteArray();
+                int length = bytes.length;
+                if ((length > 0) && (bytes[length - 1] == '\r'))
+                    length--;
+                return new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+            }
+            line.write(b);
+        }
+        if (line.size() == 0)
+            return null;
+        throw new EOFException("Connection closed mid-line");
+    }
+
+    private static int parseCode(String status) throws IOException {
+        String[] parts = status.split(" ", 3);
+        if ((parts.length < 2) || !parts[0].startsWith("HTTP/"))
+            throw new IOException("Malformed status line: " + status);
+        try {
+            return Integer.parseInt(parts[1]);
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed status line: " + status);
+        }
+    }
+
+    private static long parseKeepAlive(String value) {
+        if (value == null)
+            return -1;
+        for (String part : value.split(",")) {
+            String[] pair = part.trim().split("=");
+            if ((pair.length == 2) && pair[0].trim().equalsIgnoreCase("timeout")) {
+                try {
+                    return Long.parseLong(pair[1].trim()) * 1000L;
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static String first(Map<String, List<String>> headers, String name) {
+        List<String> values = headers.get(name);
+        if ((values == null) || values.isEmpty())
+            return null;
+        return values.get(0);
+    }
+
+    /**
+     * Response body delimited by Content-Length, chunked encoding or the end
+     * of the connection
+     */
+    private final class Body extends InputStream {
+        private long remaining;
+        private final boolean chunked;
+        private final boolean reusable;
+        private boolean eof = false;
+        private boolean closed = false;
+
+        Body(long remaining, boolean chunked, boolean reusable) {
+            this.remaining = remaining;
+            this.chunked = chunked;
+            this.reusable = reusable;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n == -1 ? -1 : (one[0] & 0xFF);
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (this.eof || this.closed)
+                return -1;
+            if (length == 0)
+                return 0;
+            if (this.chunked && (this.remaining == 0)) {
+                this.remaining = nextChunk();
+                if (this.remaining == 0) {
+                    finish();
+                    return -1;
+                }
+            }
+            int wanted = length;
+            if (this.remaining > 0)
+                wanted = (int) Math.min(length, this.remaining);
+            int n;
+            try {
+                n = HttpConnection.this.in.read(buffer, offset, wanted);
+            } catch (IOException e) {
+                abort();
+                throw e;
+            }
+            if (n == -1) {
+                if (this.remaining < 0) {
+                    finish();
+                    return -1;
+                }
+                abort();
+                throw new EOFException("Connection closed before end of body");
+            }
+            if (this.remaining > 0) {
+                this.remaining -= n;
+                if (this.remaining == 0) {
+                    if (this.chunked)
+                        readLine();
+                    else
+                        finish();
+                }
+            }
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            if (this.eof || this.closed)
+                return 0;
+            int available = HttpConnection.this.in.available();
+            if (this.remaining > 0)
+                return (int) Math.min(available, this.remaining);
+            return this.chunked ? 0 : available;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (this.closed)
+                return;
+            if (!this.eof && this.reusable) {
+                byte[] skip = new byte[4096];
+                int drained = 0;
+                try {
+                    int n;
+                    while (!this.eof && (drained < DRAIN_LIMIT) && ((n = read(skip, 0, skip.length)) != -1))
+                        drained += n;
+                } catch (IOException e) {
+                    // connection already discarded
+                }
+            }
+            this.closed = true;
+            if (!this.eof)
+                abort();
+        }
+
+        private long nextChunk() throws IOException {
+            String line = readLine();
+            if (line == null) {
+                abort();
+                throw new EOFException("Connection closed before chunk");
+            }
+            int extension = line.indexOf(';');
+            if (extension >= 0)
+                line = line.substring(0, extension);
+            long size;
+            try {
+                size = Long.parseLong(line.trim(), 16);
+            } catch (NumberFormatException e) {
+                abort();
+                throw new IOException("Malformed chunk size: " + line);
+            }
+            if (size == 0) {
+                // trailers end with an empty line
+                String trailer;
+                while (((trailer = readLine()) != null) && !trailer.isEmpty())
+                    ;
+            }
+            return size;
+        }
+
+        private void finish() {
+            if (this.eof)
+                return;
+            this.eof = true;
+            complete(this.reusable);
+        }
+
+        private void abort() {
+            if (this.eof)
+                return;
+            this.eof = true;
+            detach();
+            HttpConnection.this.owner.discard(HttpConnection.this);
+        }
+    }
+
+}
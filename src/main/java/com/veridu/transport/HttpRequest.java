@@ -0,0 +1,243 @@
+package com.veridu.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Class HttpRequest holds a single request handed to a Transport
+ *
+ * @version 1.0
+ */
+public class HttpRequest {
+
+    /**
+     * Methods safe to send twice, as RetryPolicy holds them by default
+     */
+    private static final Set<String> IDEMPOTENT_METHODS = Collections
+            .unmodifiableSet(new HashSet<>(Arrays.asList("GET", "HEAD", "PUT", "DELETE", "OPTIONS")));
+
+    /**
+     * HTTP method
+     */
+    private final String method;
+
+    /**
+     * Absolute URL, including the query string
+     */
+    private final String url;
+
+    /**
+     * Request headers, in insertion order
+     */
+    private final Map<String, String> headers = new LinkedHashMap<>();
+
+    /**
+     * Request body, null when there is none
+     */
+    private byte[] body = null;
+
+    /**
+     * Number of bytes of the body array that are sent
+     */
+    private int bodyLength = 0;
+
+    /**
+     * Whether the request was aborted
+     */
+    private boolean aborted = false;
+
+    /**
+     * Closes the connection carrying the request, null while none does
+     */
+    private Closeable connection = null;
+
+    /**
+     * Class constructor
+     *
+     * @param method
+     *            String
+     * @param url
+     *            String
+     */
+    public HttpRequest(String method, String url) {
+        this.method = method;
+        this.url = url;
+    }
+
+    /**
+     * Gets the HTTP method
+     *
+     * @return method
+     */
+    public String getMethod() {
+        return this.method;
+    }
+
+    /**
+     * Checks if the request may be sent again on another connection without
+     * changing its effect
+     *
+     * @return boolean
+     */
+    public boolean isIdempotent() {
+        return isIdempotent(this.method);
+    }
+
+    static boolean isIdempotent(String method) {
+        return IDEMPOTENT_METHODS.contains(method.toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * Aborts the request, from any thread: the connection carrying it is
+     * closed, so the call waiting for its response fails at once, and a
+     * transport not carrying it yet fails it without sending it. The
+     * connection is not reused.
+     */
+    public synchronized void abort() {
+        this.aborted = true;
+        if (this.connection == null)
+            return;
+        try {
+            this.connection.close();
+        } catch (IOException e) {
+            // the call fails either way
+        }
+        this.connection = null;
+    }
+
+    /**
+     * Checks if the request was aborted
+     *
+     * @return boolean
+     */
+    public synchronized boolean isAborted() {
+        return this.aborted;
+    }
+
+    /**
+     * Attaches the connection carrying the request, closed if the request is
+     * aborted. Transports call it before sending the request.
+     *
+     * @param connection
+     *            Closeable closing the connection
+     *
+     * @return false if the request was aborted already and must not be sent
+     */
+    public synchronized boolean attach(Closeable connection) {
+        if (this.aborted)
+            return false;
+        this.connection = connection;
+        return true;
+    }
+
+    /**
+     * Detaches a connection once it no longer carries the request, so an
+     * abort does not close it under a later request
+     *
+     * @param connection
+     *            Closeable given to {@link #attach(Closeable)}
+     */
+    public synchronized void detach(Closeable connection) {
+        if (this.connection == connection)
+            this.connection = null;
+    }
+
+    /**
+     * Gets the URL
+     *
+     * @return url
+     */
+    public String getUrl() {
+        return this.url;
+    }
+
+    /**
+     * Gets the request headers
+     *
+     * @return headers
+     */
+    public Map<String, String> getHeaders() {
+        return Collections.unmodifiableMap(this.headers);
+    }
+
+    /**
+     * Sets a request header
+     *
+     * @param name
+     *            String
+     * @param value
+     *            String
+     *
+     * @return self
+     */
+    public HttpRequest setHeader(String name, String value) {
+        this.headers.put(name, value);
+        return this;
+    }
+
+    /**
+     * Gets the request body
+     *
+     * @return body
+     */
+    public byte[] getBody() {
+        return this.body;
+    }
+
+    /**
+     * Gets the number of body bytes to send, starting at offset 0 of the body
+     * array, which may be a larger pooled buffer
+     *
+     * @return bodyLength
+     */
+    public int getBodyLength() {
+        return this.bodyLength;
+    }
+
+    /**
+     * Checks if the request carries a body
+     *
+     * @return boolean
+     */
+    public boolean hasBody() {
+        return (this.body != null) && (this.bodyLength > 0);
+    }
+
+    /**
+     * Sets the request body
+     *
+     * @param body
+     *            byte[]
+     *
+     * @return self
+     */
+    public HttpRequest setBody(byte[] body) {
+        return setBody(body, body == null ? 0 : body.length);
+    }
+
+    /**
+     * Sets the request body to the first bytes of an array
+     *
+     * @param body
+     *            byte[]
+     * @param length
+     *            Number of bytes to send
+     *
+     * @return self
+     */
+    public HttpRequest setBody(byte[] body, int length) {
+        if ((length < 0) || (length > (body == null ? 0 : body.length)))
+            throw new IllegalArgumentException("Invalid body length: " + length);
+        this.body = body;
+        this.bodyLength = length;
+        return this;
+    }
+
+}
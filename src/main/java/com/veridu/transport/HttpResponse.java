@@ -0,0 +1,114 @@
+package com.veridu.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class HttpResponse holds the status, headers and body stream of a response
+ *
+ * @version 1.0
+ */
+public class HttpResponse implements Closeable {
+
+    /**
+     * HTTP status code
+     */
+    private final int code;
+
+    /**
+     * Response headers, keyed by lower-case name
+     */
+    private final Map<String, List<String>> headers;
+
+    /**
+     * Response body
+     */
+    private final InputStream body;
+
+    /**
+     * Called once the body has been closed, may be null
+     */
+    private final Closeable release;
+
+    /**
+     * Class constructor
+     *
+     * @param code
+     *            HTTP status code
+     * @param headers
+     *            Headers keyed by lower-case name
+     * @param body
+     *            Body stream
+     * @param release
+     *            Called after the body is closed, may be null
+     */
+    public HttpResponse(int code, Map<String, List<String>> headers, InputStream body, Closeable release) {
+        this.code = code;
+        this.headers = headers;
+        this.body = body;
+        this.release = release;
+    }
+
+    /**
+     * Gets the HTTP status code
+     *
+     * @return code
+     */
+    public int getCode() {
+        return this.code;
+    }
+
+    /**
+     * Gets all response headers
+     *
+     * @return headers keyed by lower-case name
+     */
+    public Map<String, List<String>> getHeaders() {
+        return Collections.unmodifiableMap(this.headers);
+    }
+
+    /**
+     * Gets the first value of a response header
+     *
+     * @param name
+     *            String (case insensitive)
+     *
+     * @return header value or null
+     */
+    public String getHeader(String name) {
+        List<String> values = this.headers.get(name.toLowerCase());
+        if ((values == null) || (values.isEmpty()))
+            return null;
+        return values.get(0);
+    }
+
+    /**
+     * Gets the body stream
+     *
+     * @return body
+     */
+    public InputStream getBody() {
+        return this.body;
+    }
+
+    /**
+     * Closes the body and hands the underlying connection back
+     *
+     * @throws IOException
+     *             Exception
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            this.body.close();
+        } finally {
+            if (this.release != null)
+                this.release.close();
+        }
+    }
+
+}
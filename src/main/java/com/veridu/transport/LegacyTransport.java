@@ -0,0 +1,166 @@
+package com.veridu.transport;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Class LegacyTransport opens a new HttpURLConnection for every request and
+ * disconnects it once the response has been read
+ *
+ * @version 1.0
+ */
+public class LegacyTransport implements Transport {
+
+    /**
+     * Connect timeout in milliseconds
+     */
+    private int connectTimeout = 10000;
+
+    /**
+     * Read timeout in milliseconds
+     */
+    private int readTimeout = 10000;
+
+    /**
+     * Executes a request over a fresh HttpURLConnection
+     *
+     * @param request
+     *            HttpRequest
+     *
+     * @return HttpResponse response
+     *
+     * @throws IOException
+     *             Exception
+     */
+    @Override
+    public HttpResponse execute(final HttpRequest request) throws IOException {
+        URL requestUrl = new URL(request.getUrl());
+        final HttpURLConnection connection = (HttpURLConnection) requestUrl.openConnection();
+        final Closeable disconnect = new Closeable() {
+            @Override
+            public void close() {
+                connection.disconnect();
+            }
+        };
+        if (!request.attach(disconnect))
+            throw new InterruptedIOException("Request aborted");
+        try {
+            for (Entry<String, String> header : request.getHeaders().entrySet())
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            connection.setRequestMethod(request.getMethod());
+            connection.setConnectTimeout(this.connectTimeout);
+            connection.setReadTimeout(this.readTimeout);
+            connection.setUseCaches(false);
+            connection.setDoOutput(true);
+            // Send request
+            if (request.hasBody()) {
+                connection.setRequestProperty("Content-Length", Integer.toString(request.getBodyLength()));
+                connection.setDoInput(true);
+                OutputStream wr = connection.getOutputStream();
+                wr.write(request.getBody(), 0, request.getBodyLength());
+                wr.flush();
+                wr.close();
+            }
+
+            // Get Response
+            int code = connection.getResponseCode();
+            InputStream is;
+            if (code >= 400)
+                is = connection.getErrorStream();
+            else
+                is = connection.getInputStream();
+            if (is == null)
+                is = new ByteArrayInputStream(new byte[0]);
+
+            return new HttpResponse(code, headers(connection), is, new Closeable() {
+                @Override
+                public void close() {
+                    request.detach(disconnect);
+                    connection.disconnect();
+                }
+            });
+        } catch (IOException e) {
+            request.detach(disconnect);
+            connection.disconnect();
+            throw e;
+        }
+    }
+
+    /**
+     * Nothing to release, connections are not kept
+     */
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Gets the connect timeout
+     *
+     * @return connectTimeout in milliseconds
+     */
+    public int getConnectTimeout() {
+        return this.connectTimeout;
+    }
+
+    /**
+     * Sets the connect timeout
+     *
+     * @param connectTimeout
+     *            milliseconds
+     */
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * Gets the read timeout
+     *
+     * @return readTimeout in milliseconds
+     */
+    public int getReadTimeout() {
+        return this.readTimeout;
+    }
+
+    /**
+     * Sets the read timeout
+     *
+     * @param readTimeout
+     *            milliseconds
+     */
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * Copies the response headers keyed by lower-case name
+     *
+     * @param connection
+     *            HttpURLConnection
+     *
+     * @return headers
+     */
+    private Map<String, List<String>> headers(HttpURLConnection connection) {
+        Map<String, List<String>> headers = new HashMap<>();
+        Map<String, List<String>> fields = connection.getHeaderFields();
+        if (fields == null)
+            return headers;
+        for (Entry<String, List<String>> field : fields.entrySet()) {
+            if (field.getKey() == null)
+                continue;
+            headers.put(field.getKey().toLowerCase(), new ArrayList<>(field.getValue()));
+        }
+        return headers;
+    }
+
+}
@@ -0,0 +1,448 @@
+package com.veridu.transport;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+import javax.net.ssl.SSLContext;
+
+import com.veridu.async.AsyncResult;
+import com.veridu.buffer.BufferPool;
+import com.veridu.buffer.ByteBufferInputStream;
+
+/**
+ * Class NioConnection is a non-blocking HTTP/1.1 connection driven by a
+ * reactor. Every method must be called from the reactor thread.
+ *
+ * @version 1.0
+ */
+final class NioConnection {
+
+    /**
+     * A request waiting for, or travelling on, a connection
+     */
+    static final class Exchange {
+        final String method;
+        final ByteBuffer bytes;
+        final AsyncResult<HttpResponse> result = new AsyncResult<>();
+        final long queued = System.currentTimeMillis();
+        boolean sent = false;
+        boolean retried = false;
+
+        /**
+         * Class constructor
+         *
+         * @param method
+         *            HTTP method
+         * @param bytes
+         *            Encoded request, head and body, in read mode
+         */
+        Exchange(String method, ByteBuffer bytes) {
+            this.method = method;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Receives the events of a connection
+     */
+    interface Listener {
+
+        /**
+         * The connection can carry a request
+         *
+         * @param connection
+         *            NioConnection
+         */
+        void onReady(NioConnection connection);
+
+        /**
+         * An exchange completed
+         *
+         * @param connection
+         *            NioConnection
+         * @param exchange
+         *            Exchange
+         * @param response
+         *            HttpResponse
+         */
+        void onResponse(NioConnection connection, Exchange exchange, HttpResponse response);
+
+        /**
+         * The connection failed; exchange is null if none was in flight
+         *
+         * @param connection
+         *            NioConnection
+         * @param exchange
+         *            Exchange or null
+         * @param exception
+         *            IOException
+         */
+        void onFailure(NioConnection connection, Exchange exchange, IOException exception);
+
+        /**
+         * An idle connection outlived its idle timeout
+         *
+         * @param connection
+         *            NioConnection
+         *
+         * @return true if it was still idle and may be closed
+         */
+        boolean onIdleExpired(NioConnection connection);
+
+        /**
+         * The connection is closed, called exactly once
+         *
+         * @param connection
+         *            NioConnection
+         */
+        void onClosed(NioConnection connection);
+    }
+
+    private enum State {
+        NEW, CONNECTING, HANDSHAKING, IDLE, BUSY, CLOSED
+    }
+
+    private final NioReactor reactor;
+    private final Listener listener;
+    private final InetSocketAddress address;
+    private final TlsSession tls;
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final long idleTimeout;
+    private final BufferPool pool;
+    private final ResponseParser parser;
+    private ByteBuffer readBuffer;
+    private SocketChannel channel = null;
+    private SelectionKey key = null;
+    private State state = State.NEW;
+    private Exchange exchange = null;
+    private ByteBuffer outbound = null;
+    private long deadline = 0;
+    private long lastUsed = 0;
+    private long keepAlive = -1;
+    private int uses = 0;
+
+    /**
+     * Class constructor
+     *
+     * @param reactor
+     *            NioReactor serving the connection
+     * @param listener
+     *            Listener
+     * @param address
+     *            Remote address, resolved by the caller
+     * @param context
+     *            SSLContext, null for plain HTTP
+     * @param connectTimeout
+     *            milliseconds, TLS handshake included
+     * @param readTimeout
+     *            milliseconds without progress on a response
+     * @param idleTimeout
+     *            milliseconds
+     * @param pool
+     *            BufferPool lending the read and response buffers
+     */
+    NioConnection(NioReactor reactor, Listener listener, InetSocketAddress address, SSLContext context,
+            int connectTimeout, int readTimeout, long idleTimeout, BufferPool pool) {
+        this.reactor = reactor;
+        this.listener = listener;
+        this.address = address;
+        this.tls = context == null ? null : new TlsSession(context, address.getHostString(), address.getPort());
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.idleTimeout = idleTimeout;
+        this.pool = pool;
+        this.parser = new ResponseParser(pool);
+        this.readBuffer = pool.acquire();
+    }
+
+    NioReactor getReactor() {
+        return this.reactor;
+    }
+
+    /**
+     * Number of exchanges completed on this connection
+     *
+     * @return uses
+     */
+    int getUses() {
+        return this.uses;
+    }
+
+    /**
+     * Starts connecting
+     */
+    void open() {
+        this.deadline = System.currentTimeMillis() + this.connectTimeout;
+        try {
+            if (this.address.isUnresolved())
+                throw new UnknownHostException(this.address.getHostString());
+            this.channel = SocketChannel.open();
+            this.channel.configureBlocking(false);
+            this.channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            this.channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+            this.state = State.CONNECTING;
+            if (this.channel.connect(this.address)) {
+                this.key = this.reactor.register(this.channel, 0, this);
+                connected();
+            } else {
+                this.key = this.reactor.register(this.channel, SelectionKey.OP_CONNECT, this);
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Sends a request
+     *
+     * @param exchange
+     *            Exchange
+     */
+    void start(Exchange exchange) {
+        if (this.state != State.IDLE) {
+            this.listener.onFailure(this, exchange, new ClosedChannelException());
+            return;
+        }
+        this.state = State.BUSY;
+        this.exchange = exchange;
+        exchange.sent = true;
+        this.parser.reset(exchange.method);
+        this.deadline = System.currentTimeMillis() + this.readTimeout;
+        try {
+            ByteBuffer bytes = exchange.bytes.duplicate();
+            if (this.tls != null) {
+                this.tls.send(bytes);
+                queue(this.tls.drain());
+            } else {
+                queue(bytes);
+            }
+            flush();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Handles the ready operations of the channel
+     *
+     * @param key
+     *            SelectionKey
+     */
+    void handle(SelectionKey key) {
+        try {
+            if (!key.isValid())
+                return;
+            if (key.isConnectable()) {
+                if (!this.channel.finishConnect())
+                    return;
+                connected();
+            }
+            if (key.isValid() && key.isWritable())
+                flush();
+            if (key.isValid() && key.isReadable())
+                read();
+        } catch (IOException e) {
+            fail(e);
+        } catch (RuntimeException e) {
+            fail(new IOException(e));
+        }
+    }
+
+    /**
+     * Fails the exchange in flight once its deadline passes, closes the
+     * connection once it has been idle too long
+     *
+     * @param now
+     *            current time in milliseconds
+     */
+    void checkTimeouts(long now) {
+        switch (this.state) {
+        case CONNECTING:
+        case HANDSHAKING:
+            if (now > this.deadline)
+                fail(new SocketTimeoutException("Connect timed out"));
+            break;
+        case BUSY:
+            if (now > this.deadline)
+                fail(new SocketTimeoutException("Read timed out"));
+            break;
+        case IDLE:
+            long limit = this.idleTimeout;
+            if ((this.keepAlive >= 0) && (this.keepAlive < limit))
+                limit = this.keepAlive;
+            if (((now - this.lastUsed) >= limit) && this.listener.onIdleExpired(this))
+                close();
+            break;
+        default:
+            break;
+        }
+    }
+
+    /**
+     * Closes the connection, failing the exchange in flight
+     *
+     * @param exception
+     *            IOException reported to the exchange
+     */
+    void fail(IOException exception) {
+        if (this.state == State.CLOSED)
+            return;
+        Exchange failed = this.exchange;
+        this.exchange = null;
+        closeChannel();
+        this.listener.onFailure(this, failed, exception);
+        this.listener.onClosed(this);
+    }
+
+    /**
+     * Checks if the connection failed before the server answered the current
+     * request after having served others, i.e. the server dropped it while
+     * idle
+     *
+     * @return boolean
+     */
+    boolean isStale() {
+        return (this.uses > 0) && !this.parser.isStarted();
+    }
+
+    /**
+     * Closes the connection
+     */
+    void close() {
+        if (this.state == State.CLOSED)
+            return;
+        closeChannel();
+        this.listener.onClosed(this);
+    }
+
+    private void connected() throws IOException {
+        if (this.tls == null) {
+            ready();
+            return;
+        }
+        this.state = State.HANDSHAKING;
+        this.tls.begin();
+        queue(this.tls.drain());
+        flush();
+    }
+
+    private void ready() {
+        this.state = State.IDLE;
+        this.lastUsed = System.currentTimeMillis();
+        this.listener.onReady(this);
+    }
+
+    private void read() throws IOException {
+        this.readBuffer.clear();
+        int n = this.channel.read(this.readBuffer);
+        if (n == -1) {
+            eof();
+            return;
+        }
+        if (n == 0)
+            return;
+        this.readBuffer.flip();
+        ByteBuffer data = this.readBuffer;
+        if (this.tls != null) {
+            data = this.tls.receive(this.readBuffer);
+            ByteBuffer records = this.tls.drain();
+            if (records.hasRemaining()) {
+                queue(records);
+                flush();
+            }
+            if ((this.state == State.HANDSHAKING) && !this.tls.isHandshaking()) {
+                ready();
+                return;
+            }
+        }
+        if (this.state == State.BUSY) {
+            this.deadline = System.currentTimeMillis() + this.readTimeout;
+            if (this.parser.feed(data))
+                complete();
+        } else if (this.state == State.IDLE) {
+            if (data.hasRemaining() || ((this.tls != null) && this.tls.isClosed()))
+                eof();
+        }
+        if ((this.state != State.CLOSED) && (this.tls != null) && this.tls.isClosed())
+            eof();
+    }
+
+    private void eof() throws IOException {
+        if (this.tls != null)
+            this.tls.finish();
+        if ((this.state == State.BUSY) && this.parser.finish()) {
+            complete();
+            return;
+        }
+        if (this.state == State.IDLE) {
+            close();
+            return;
+        }
+        throw new EOFException("Connection closed before end of response");
+    }
+
+    private void complete() {
+        Exchange done = this.exchange;
+        HttpResponse response = new HttpResponse(this.parser.getCode(), this.parser.getHeaders(),
+                new ByteBufferInputStream(this.parser.takeBody(), this.pool), null);
+        this.exchange = null;
+        this.uses++;
+        this.keepAlive = this.parser.getKeepAlive();
+        boolean reusable = this.parser.isReusable() && ((this.tls == null) || !this.tls.isClosed());
+        if (reusable)
+            this.state = State.IDLE;
+        else
+            close();
+        this.lastUsed = System.currentTimeMillis();
+        // back to the pool first, so the caller's next request finds the connection idle
+        if (this.state == State.IDLE)
+            this.listener.onReady(this);
+        this.listener.onResponse(this, done, response);
+    }
+
+    private void queue(ByteBuffer bytes) {
+        if (!bytes.hasRemaining())
+            return;
+        if ((this.outbound == null) || !this.outbound.hasRemaining()) {
+            this.outbound = bytes;
+            return;
+        }
+        ByteBuffer joined = ByteBuffer.allocate(this.outbound.remaining() + bytes.remaining());
+        joined.put(this.outbound).put(bytes).flip();
+        this.outbound = joined;
+    }
+
+    private void flush() throws IOException {
+        if ((this.outbound != null) && this.outbound.hasRemaining())
+            this.channel.write(this.outbound);
+        boolean pending = (this.outbound != null) && this.outbound.hasRemaining();
+        this.key.interestOps(pending ? (SelectionKey.OP_READ | SelectionKey.OP_WRITE) : SelectionKey.OP_READ);
+    }
+
+    private void closeChannel() {
+        this.state = State.CLOSED;
+        this.parser.reset(null);
+        this.pool.release(this.readBuffer);
+        this.readBuffer = null;
+        this.reactor.unregister(this);
+        if (this.key != null)
+            this.key.cancel();
+        if (this.channel != null) {
+            try {
+                this.channel.close();
+            } catch (IOException e) {
+                // nothing left to release
+            }
+        }
+    }
+
+}
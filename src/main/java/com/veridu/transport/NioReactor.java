@@ -0,0 +1,163 @@
+package com.veridu.transport;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Class NioReactor is one I/O thread: a selector loop serving the connections
+ * registered with it. Every connection is only ever touched by its reactor
+ * thread; other threads hand it work through execute().
+ *
+ * @version 1.0
+ */
+final class NioReactor implements Runnable {
+
+    /**
+     * Longest select, so timeouts are checked at least this often
+     */
+    private static final long TICK = 50;
+
+    private final Selector selector;
+    private final Thread thread;
+    private final Runnable tick;
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Set<NioConnection> connections = new HashSet<>();
+    private volatile boolean running = true;
+
+    /**
+     * Class constructor
+     *
+     * @param name
+     *            Thread name
+     * @param tick
+     *            Run on every loop iteration, may be null
+     *
+     * @throws IOException
+     *             Exception
+     */
+    NioReactor(String name, Runnable tick) throws IOException {
+        this.selector = Selector.open();
+        this.tick = tick;
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        this.thread.start();
+    }
+
+    /**
+     * Runs a task on the reactor thread
+     *
+     * @param task
+     *            Runnable
+     */
+    void execute(Runnable task) {
+        this.tasks.add(task);
+        this.selector.wakeup();
+    }
+
+    /**
+     * Checks if the reactor still accepts connections
+     *
+     * @return boolean
+     */
+    boolean isRunning() {
+        return this.running;
+    }
+
+    /**
+     * Registers a channel, from the reactor thread
+     *
+     * @param channel
+     *            SocketChannel
+     * @param ops
+     *            Interest set
+     * @param connection
+     *            NioConnection served by the channel
+     *
+     * @return SelectionKey
+     *
+     * @throws IOException
+     *             Exception
+     */
+    SelectionKey register(SocketChannel channel, int ops, NioConnection connection) throws IOException {
+        if (!this.running)
+            throw new ClosedChannelException();
+        SelectionKey key = channel.register(this.selector, ops, connection);
+        this.connections.add(connection);
+        return key;
+    }
+
+    /**
+     * Forgets a closed connection, from the reactor thread
+     *
+     * @param connection
+     *            NioConnection
+     */
+    void unregister(NioConnection connection) {
+        this.connections.remove(connection);
+    }
+
+    /**
+     * Stops the loop; connections still open are failed
+     */
+    void shutdown() {
+        this.running = false;
+        this.selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (this.running) {
+                runTasks();
+                this.selector.select(TICK);
+                Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    ((NioConnection) key.attachment()).handle(key);
+                }
+                long now = System.currentTimeMillis();
+                for (NioConnection connection : new ArrayList<>(this.connections))
+                    connection.checkTimeouts(now);
+                if (this.tick != null)
+                    this.tick.run();
+            }
+        } catch (IOException | RuntimeException e) {
+            this.running = false;
+        } finally {
+            do {
+                runTasks();
+                for (NioConnection connection : new ArrayList<>(this.connections))
+                    connection.fail(new IOException("Transport is closed"));
+            } while (!this.tasks.isEmpty());
+            try {
+                this.selector.close();
+            } catch (IOException e) {
+                // nothing left to release
+            }
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = this.tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                // a failing task must not stop the loop serving everyone else
+            }
+        }
+    }
+
+}
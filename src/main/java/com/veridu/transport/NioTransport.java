@@ -0,0 +1,676 @@
+package com.veridu.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.net.ssl.SSLContext;
+
+import com.veridu.async.AsyncResult;
+import com.veridu.async.Callback;
+import com.veridu.buffer.BufferPool;
+
+/**
+ * Class NioTransport drives HTTP/1.1 connections from a few selector threads
+ * instead of one blocked thread per request: sockets are non-blocking, TLS
+ * runs through an SSLEngine and responses are parsed as they arrive. Requests
+ * beyond the per-route connection limit wait in a queue, not on a thread.
+ *
+ * Responses are buffered in memory before they are handed over, which suits
+ * the small JSON documents of the API.
+ *
+ * @version 1.0
+ */
+public class NioTransport implements Transport {
+
+    /**
+     * Maximum connections (busy and idle) per route
+     */
+    private int maxPerRoute = 64;
+
+    /**
+     * Idle connections older than this are closed, in milliseconds
+     */
+    private long idleTimeout = 30000;
+
+    /**
+     * Maximum wait for a free connection, in milliseconds
+     */
+    private long leaseTimeout = 10000;
+
+    /**
+     * Connect timeout in milliseconds, TLS handshake included
+     */
+    private int connectTimeout = 10000;
+
+    /**
+     * Read timeout in milliseconds
+     */
+    private int readTimeout = 10000;
+
+    /**
+     * SSLContext for https routes
+     */
+    private SSLContext sslContext = null;
+
+    /**
+     * Pool lending read, request and response buffers
+     */
+    private BufferPool bufferPool = BufferPool.shared();
+
+    private final NioReactor[] reactors;
+    private final AtomicInteger next = new AtomicInteger();
+    private final ConcurrentMap<String, Route> routes = new ConcurrentHashMap<>();
+    private volatile boolean closed = false;
+
+    /**
+     * Class constructor with one I/O thread per two cores
+     *
+     * @throws IOException
+     *             when a selector cannot be opened
+     */
+    public NioTransport() throws IOException {
+        this(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    /**
+     * Class constructor
+     *
+     * @param ioThreads
+     *            Number of selector threads
+     *
+     * @throws IOException
+     *             when a selector cannot be opened
+     */
+    public NioTransport(int ioThreads) throws IOException {
+        if (ioThreads < 1)
+            throw new IllegalArgumentException("ioThreads must be positive");
+        this.reactors = new NioReactor[ioThreads];
+        try {
+            for (int i = 0; i < ioThreads; i++) {
+                Runnable tick = null;
+                if (i == 0) {
+                    tick = new Runnable() {
+                        @Override
+                        public void run() {
+                            expireQueued(System.currentTimeMillis());
+                        }
+                    };
+                }
+                this.reactors[i] = new NioReactor("veridu-nio-" + (i + 1), tick);
+            }
+        } catch (IOException e) {
+            for (NioReactor reactor : this.reactors) {
+                if (reactor != null)
+                    reactor.shutdown();
+            }
+            throw e;
+        }
+        for (NioReactor reactor : this.reactors)
+            reactor.start();
+    }
+
+    /**
+     * Executes a request, blocking until its response is complete
+     *
+     * @param request
+     *            HttpRequest
+     *
+     * @return HttpResponse response
+     *
+     * @throws IOException
+     *             Exception
+     */
+    @Override
+    public HttpResponse execute(HttpRequest request) throws IOException {
+        AsyncResult<HttpResponse> result = executeAsync(request);
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            result.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for " + request.getUrl());
+        } catch (CancellationException e) {
+            throw new InterruptedIOException("Request aborted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Executes a request without blocking. The result is completed on an I/O
+     * thread, so callbacks must not block. Aborting the request cancels the
+     * result; an exchange already on the wire still completes, and its
+     * response is dropped.
+     *
+     * @param request
+     *            HttpRequest
+     *
+     * @return AsyncResult completed with the response
+     */
+    public AsyncResult<HttpResponse> executeAsync(final HttpRequest request) {
+        if (this.closed)
+            return AsyncResult.failed(new IOException("Transport is closed"));
+        URL url;
+        try {
+            url = new URL(request.getUrl());
+        } catch (IOException e) {
+            return AsyncResult.failed(e);
+        }
+        byte[] head = HttpConnection.head(request, url);
+        final BufferPool pool = this.bufferPool;
+        final ByteBuffer bytes = pool.acquire(head.length + request.getBodyLength());
+        bytes.put(head);
+        if (request.hasBody())
+            bytes.put(request.getBody(), 0, request.getBodyLength());
+        bytes.flip();
+        final NioConnection.Exchange exchange = new NioConnection.Exchange(request.getMethod(), bytes);
+        final Closeable cancel = new Closeable() {
+            @Override
+            public void close() {
+                exchange.result.cancel(false);
+            }
+        };
+        if (!request.attach(cancel)) {
+            pool.release(bytes);
+            return AsyncResult.failed(new InterruptedIOException("Request aborted"));
+        }
+        exchange.result.addCallback(new Callback<HttpResponse>() {
+            @Override
+            public void onSuccess(HttpResponse response) {
+                request.detach(cancel);
+                pool.release(bytes);
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                request.detach(cancel);
+                // a cancelled exchange may still be on the wire
+                if (!exchange.result.isCancelled())
+                    pool.release(bytes);
+            }
+        });
+        route(url).submit(exchange);
+        return exchange.result;
+    }
+
+    /**
+     * Stops the I/O threads; requests still in flight or queued fail
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        for (Route route : this.routes.values())
+            route.failQueued(new IOException("Transport is closed"));
+        for (NioReactor reactor : this.reactors)
+            reactor.shutdown();
+    }
+
+    /**
+     * Gets the connection counters summed over every route
+     *
+     * @return PoolStats
+     */
+    public PoolStats getStats() {
+        PoolStats total = new PoolStats(0, 0, 0, 0, 0, 0);
+        for (Route route : this.routes.values())
+            total = total.add(route.stats());
+        return total;
+    }
+
+    /**
+     * Gets the connection counters of each route
+     *
+     * @return PoolStats keyed by route (scheme://host:port)
+     */
+    public Map<String, PoolStats> getRouteStats() {
+        Map<String, PoolStats> stats = new HashMap<>();
+        for (Route route : this.routes.values())
+            stats.put(route.key, route.stats());
+        return stats;
+    }
+
+    /**
+     * Gets the number of requests waiting for a connection
+     *
+     * @return queued requests
+     */
+    public int getQueued() {
+        int queued = 0;
+        for (Route route : this.routes.values())
+            queued += route.queued();
+        return queued;
+    }
+
+    /**
+     * Gets the number of I/O threads
+     *
+     * @return ioThreads
+     */
+    public int getIoThreads() {
+        return this.reactors.length;
+    }
+
+    /**
+     * Gets the maximum connections per route
+     *
+     * @return maxPerRoute
+     */
+    public int getMaxPerRoute() {
+        return this.maxPerRoute;
+    }
+
+    /**
+     * Sets the maximum connections per route. Applies to routes opened after
+     * the call.
+     *
+     * @param maxPerRoute
+     *            int
+     */
+    public void setMaxPerRoute(int maxPerRoute) {
+        if (maxPerRoute < 1)
+            throw new IllegalArgumentException("maxPerRoute must be positive");
+        this.maxPerRoute = maxPerRoute;
+    }
+
+    /**
+     * Gets the idle timeout
+     *
+     * @return idleTimeout in milliseconds
+     */
+    public long getIdleTimeout() {
+        return this.idleTimeout;
+    }
+
+    /**
+     * Sets the idle timeout
+     *
+     * @param idleTimeout
+     *            milliseconds
+     */
+    public void setIdleTimeout(long idleTimeout) {
+        if (idleTimeout < 1)
+            throw new IllegalArgumentException("idleTimeout must be positive");
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Gets the maximum wait for a free connection
+     *
+     * @return leaseTimeout in milliseconds
+     */
+    public long getLeaseTimeout() {
+        return this.leaseTimeout;
+    }
+
+    /**
+     * Sets the maximum wait for a free connection
+     *
+     * @param leaseTimeout
+     *            milliseconds
+     */
+    public void setLeaseTimeout(long leaseTimeout) {
+        this.leaseTimeout = leaseTimeout;
+    }
+
+    /**
+     * Gets the connect timeout
+     *
+     * @return connectTimeout in milliseconds
+     */
+    public int getConnectTimeout() {
+        return this.connectTimeout;
+    }
+
+    /**
+     * Sets the connect timeout
+     *
+     * @param connectTimeout
+     *            milliseconds
+     */
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * Gets the read timeout
+     *
+     * @return readTimeout in milliseconds
+     */
+    public int getReadTimeout() {
+        return this.readTimeout;
+    }
+
+    /**
+     * Sets the read timeout
+     *
+     * @param readTimeout
+     *            milliseconds
+     */
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * Gets the SSLContext used for https routes
+     *
+     * @return SSLContext, the JVM default if none was set
+     *
+     * @throws NoSuchAlgorithmException
+     *             Exception
+     */
+    public SSLContext getSslContext() throws NoSuchAlgorithmException {
+        if (this.sslContext == null)
+            return SSLContext.getDefault();
+        return this.sslContext;
+    }
+
+    /**
+     * Sets the SSLContext used for https routes
+     *
+     * @param sslContext
+     *            SSLContext
+     */
+    public void setSslContext(SSLContext sslContext) {
+        this.sslContext = sslContext;
+    }
+
+    /**
+     * Gets the pool lending read, request and response buffers
+     *
+     * @return BufferPool
+     */
+    public BufferPool getBufferPool() {
+        return this.bufferPool;
+    }
+
+    /**
+     * Sets the pool lending read, request and response buffers, e.g. one of
+     * direct buffers to keep socket reads off the heap. Applies to
+     * connections opened after the call.
+     *
+     * @param bufferPool
+     *            BufferPool
+     */
+    public void setBufferPool(BufferPool bufferPool) {
+        if (bufferPool == null)
+            throw new IllegalArgumentException("bufferPool must not be null");
+        this.bufferPool = bufferPool;
+    }
+
+    private Route route(URL url) {
+        int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+        String key = url.getProtocol().toLowerCase() + "://" + url.getHost().toLowerCase() + ":" + port;
+        Route route = this.routes.get(key);
+        if (route == null) {
+            Route created = new Route(key, url.getHost(), port, "https".equalsIgnoreCase(url.getProtocol()),
+                    this.maxPerRoute);
+            route = this.routes.putIfAbsent(key, created);
+            if (route == null)
+                route = created;
+        }
+        return route;
+    }
+
+    private void expireQueued(long now) {
+        for (Route route : this.routes.values())
+            route.expire(now);
+    }
+
+    private NioReactor nextReactor() {
+        return this.reactors[(this.next.getAndIncrement() & Integer.MAX_VALUE) % this.reactors.length];
+    }
+
+    /**
+     * Connections to one scheme, host and port
+     */
+    private final class Route implements NioConnection.Listener {
+        private final String key;
+        private final String host;
+        private final int port;
+        private volatile InetSocketAddress address;
+        private final boolean secure;
+        private final int max;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Deque<NioConnection> idle = new ArrayDeque<>();
+        private final Deque<NioConnection.Exchange> queue = new ArrayDeque<>();
+        private int open = 0;
+        private long created = 0;
+        private long reused = 0;
+        private long evicted = 0;
+        private long discarded = 0;
+
+        Route(String key, String host, int port, boolean secure, int max) {
+            this.key = key;
+            this.host = host;
+            this.port = port;
+            this.address = InetSocketAddress.createUnresolved(host, port);
+            this.secure = secure;
+            this.max = max;
+        }
+
+        void submit(final NioConnection.Exchange exchange) {
+            if (NioTransport.this.closed) {
+                exchange.result.fail(new IOException("Transport is closed"));
+                return;
+            }
+            NioConnection connection;
+            boolean connect = false;
+            this.lock.lock();
+            try {
+                connection = this.idle.pollFirst();
+                if (connection != null) {
+                    this.reused++;
+                } else {
+                    this.queue.addLast(exchange);
+                    if (this.open < this.max) {
+                        this.open++;
+                        this.created++;
+                        connect = true;
+                    }
+                }
+            } finally {
+                this.lock.unlock();
+            }
+            if (connection != null) {
+                final NioConnection leased = connection;
+                leased.getReactor().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        leased.start(exchange);
+                    }
+                });
+            } else if (connect) {
+                // resolve here, connections opened later by the I/O threads reuse the address
+                this.address = new InetSocketAddress(this.host, this.port);
+                connect();
+            }
+        }
+
+        @Override
+        public void onReady(NioConnection connection) {
+            NioConnection.Exchange exchange;
+            this.lock.lock();
+            try {
+                do {
+                    exchange = this.queue.pollFirst();
+                } while ((exchange != null) && exchange.result.isDone());
+                if (exchange == null)
+                    this.idle.addFirst(connection);
+                else if (connection.getUses() > 0)
+                    this.reused++;
+            } finally {
+                this.lock.unlock();
+            }
+            if (exchange != null)
+                connection.start(exchange);
+        }
+
+        @Override
+        public void onResponse(NioConnection connection, NioConnection.Exchange exchange, HttpResponse response) {
+            exchange.result.complete(response);
+        }
+
+        @Override
+        public void onFailure(NioConnection connection, NioConnection.Exchange exchange, IOException exception) {
+            if (exchange == null) {
+                if (connection.getUses() == 0)
+                    failOldest(exception);
+                return;
+            }
+            boolean stale = !exchange.retried && connection.isStale() && HttpRequest.isIdempotent(exchange.method);
+            if (!exchange.sent || stale) {
+                exchange.retried = exchange.retried || exchange.sent;
+                exchange.sent = false;
+                submit(exchange);
+                return;
+            }
+            exchange.result.fail(exception);
+        }
+
+        @Override
+        public boolean onIdleExpired(NioConnection connection) {
+            this.lock.lock();
+            try {
+                return this.idle.contains(connection);
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        @Override
+        public void onClosed(NioConnection connection) {
+            boolean connect = false;
+            this.lock.lock();
+            try {
+                this.open--;
+                if (this.idle.remove(connection))
+                    this.evicted++;
+                else
+                    this.discarded++;
+                if (!this.queue.isEmpty() && (this.open < this.max) && !NioTransport.this.closed) {
+                    this.open++;
+                    this.created++;
+                    connect = true;
+                }
+            } finally {
+                this.lock.unlock();
+            }
+            if (connect)
+                connect();
+        }
+
+        void expire(long now) {
+            List<NioConnection.Exchange> expired = new ArrayList<>();
+            this.lock.lock();
+            try {
+                Iterator<NioConnection.Exchange> iterator = this.queue.iterator();
+                while (iterator.hasNext()) {
+                    NioConnection.Exchange exchange = iterator.next();
+                    if (exchange.result.isDone() || ((now - exchange.queued) >= NioTransport.this.leaseTimeout)) {
+                        iterator.remove();
+                        expired.add(exchange);
+                    }
+                }
+            } finally {
+                this.lock.unlock();
+            }
+            for (NioConnection.Exchange exchange : expired)
+                exchange.result.fail(new IOException("Timeout waiting for a connection to " + this.key));
+        }
+
+        void failQueued(IOException exception) {
+            List<NioConnection.Exchange> failed;
+            this.lock.lock();
+            try {
+                failed = new ArrayList<>(this.queue);
+                this.queue.clear();
+            } finally {
+                this.lock.unlock();
+            }
+            for (NioConnection.Exchange exchange : failed)
+                exchange.result.fail(exception);
+        }
+
+        int queued() {
+            this.lock.lock();
+            try {
+                return this.queue.size();
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        PoolStats stats() {
+            this.lock.lock();
+            try {
+                return new PoolStats(this.created, this.reused, this.evicted, this.discarded, this.open
+                        - this.idle.size(), this.idle.size());
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        /**
+         * A connection never came up: fails the request waiting longest for it
+         */
+        private void failOldest(IOException exception) {
+            NioConnection.Exchange exchange;
+            this.lock.lock();
+            try {
+                exchange = this.queue.pollFirst();
+            } finally {
+                this.lock.unlock();
+            }
+            if (exchange != null)
+                exchange.result.fail(exception);
+        }
+
+        private void connect() {
+            SSLContext context = null;
+            if (this.secure) {
+                try {
+                    context = getSslContext();
+                } catch (NoSuchAlgorithmException e) {
+                    this.lock.lock();
+                    try {
+                        this.open--;
+                    } finally {
+                        this.lock.unlock();
+                    }
+                    failOldest(new IOException(e));
+                    return;
+                }
+            }
+            final NioConnection connection = new NioConnection(nextReactor(), this, this.address, context,
+                    NioTransport.this.connectTimeout, NioTransport.this.readTimeout, NioTransport.this.idleTimeout,
+                    NioTransport.this.bufferPool);
+            connection.getReactor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    connection.open();
+                }
+            });
+        }
+    }
+
+}
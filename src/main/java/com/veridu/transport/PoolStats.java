@@ -0,0 +1,115 @@
+package com.veridu.transport;
+
+/**
+ * Class PoolStats is a snapshot of the connection pool counters
+ *
+ * @version 1.0
+ */
+public class PoolStats {
+
+    private final long created;
+    private final long reused;
+    private final long evicted;
+    private final long discarded;
+    private final int leased;
+    private final int idle;
+
+    /**
+     * Class constructor
+     *
+     * @param created
+     *            Connections opened
+     * @param reused
+     *            Leases served by an idle connection
+     * @param evicted
+     *            Idle connections closed after their idle timeout
+     * @param discarded
+     *            Connections closed because they could not be reused
+     * @param leased
+     *            Connections currently in use
+     * @param idle
+     *            Connections currently idle in the pool
+     */
+    public PoolStats(long created, long reused, long evicted, long discarded, int leased, int idle) {
+        this.created = created;
+        this.reused = reused;
+        this.evicted = evicted;
+        this.discarded = discarded;
+        this.leased = leased;
+        this.idle = idle;
+    }
+
+    /**
+     * Adds two snapshots together
+     *
+     * @param other
+     *            PoolStats
+     *
+     * @return PoolStats sum
+     */
+    public PoolStats add(PoolStats other) {
+        return new PoolStats(this.created + other.created, this.reused + other.reused, this.evicted + other.evicted,
+                this.discarded + other.discarded, this.leased + other.leased, this.idle + other.idle);
+    }
+
+    /**
+     * Gets the number of connections opened
+     *
+     * @return created
+     */
+    public long getCreated() {
+        return this.created;
+    }
+
+    /**
+     * Gets the number of leases served by an idle connection
+     *
+     * @return reused
+     */
+    public long getReused() {
+        return this.reused;
+    }
+
+    /**
+     * Gets the number of idle connections closed after their idle timeout
+     *
+     * @return evicted
+     */
+    public long getEvicted() {
+        return this.evicted;
+    }
+
+    /**
+     * Gets the number of connections closed because they could not be reused
+     *
+     * @return discarded
+     */
+    public long getDiscarded() {
+        return this.discarded;
+    }
+
+    /**
+     * Gets the number of connections currently in use
+     *
+     * @return leased
+     */
+    public int getLeased() {
+        return this.leased;
+    }
+
+    /**
+     * Gets the number of connections currently idle
+     *
+     * @return idle
+     */
+    public int getIdle() {
+        return this.idle;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PoolStats[created=%d, reused=%d, evicted=%d, discarded=%d, leased=%d, idle=%d]",
+                this.created, this.reused, this.evicted, this.discarded, this.leased, this.idle);
+    }
+
+}
@@ -0,0 +1,386 @@
+package com.veridu.transport;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class PooledTransport keeps a bounded pool of persistent HTTP/1.1
+ * connections per route (scheme, host and port), so consecutive calls skip the
+ * TCP and TLS handshakes
+ *
+ * @version 1.0
+ */
+public class PooledTransport implements Transport {
+
+    /**
+     * Maximum connections (leased and idle) per route
+     */
+    private int maxPerRoute = 8;
+
+    /**
+     * Idle connections older than this are closed, in milliseconds
+     */
+    private long idleTimeout = 30000;
+
+    /**
+     * Maximum wait for a free connection, in milliseconds
+     */
+    private long leaseTimeout = 10000;
+
+    /**
+     * Connect timeout in milliseconds
+     */
+    private int connectTimeout = 10000;
+
+    /**
+     * Read timeout in milliseconds
+     */
+    private int readTimeout = 10000;
+
+    private final ConcurrentMap<String, Route> routes = new ConcurrentHashMap<>();
+    private final AtomicBoolean sweeping = new AtomicBoolean(false);
+    private volatile ScheduledExecutorService sweeper = null;
+    private volatile boolean closed = false;
+
+    /**
+     * Class constructor with default limits
+     */
+    public PooledTransport() {
+    }
+
+    /**
+     * Class constructor
+     *
+     * @param maxPerRoute
+     *            Maximum connections per route
+     * @param idleTimeout
+     *            Idle timeout in milliseconds
+     */
+    public PooledTransport(int maxPerRoute, long idleTimeout) {
+        setMaxPerRoute(maxPerRoute);
+        setIdleTimeout(idleTimeout);
+    }
+
+    /**
+     * Executes a request over a pooled connection. A request that fails on a
+     * reused connection before any response byte arrives is retried once on a
+     * new connection, if its method is idempotent (GET, HEAD, PUT, DELETE or
+     * OPTIONS).
+     *
+     * @param request
+     *            HttpRequest
+     *
+     * @return HttpResponse response
+     *
+     * @throws IOException
+     *             Exception
+     */
+    @Override
+    public HttpResponse execute(HttpRequest request) throws IOException {
+        if (this.closed)
+            throw new IOException("Transport is closed");
+        if (request.isAborted())
+            throw new InterruptedIOException("Request aborted");
+        URL url = new URL(request.getUrl());
+        Route route = route(url);
+        boolean retried = false;
+        while (true) {
+            HttpConnection connection = route.lease();
+            try {
+                return connection.exchange(request, url);
+            } catch (IOException e) {
+                route.discard(connection);
+                boolean stale = (connection.getUses() > 0) && !connection.isAnswered();
+                if (stale && !retried && request.isIdempotent() && !request.isAborted()) {
+                    retried = true;
+                    continue;
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Closes every idle connection and stops the idle sweeper. Leased
+     * connections are closed when their response is.
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        ScheduledExecutorService sweeper = this.sweeper;
+        if (sweeper != null)
+            sweeper.shutdownNow();
+        for (Route route : this.routes.values())
+            route.closeIdle();
+    }
+
+    /**
+     * Closes idle connections that outlived the idle timeout
+     */
+    public void evictIdleConnections() {
+        long now = System.currentTimeMillis();
+        for (Route route : this.routes.values())
+            route.evict(now);
+    }
+
+    /**
+     * Gets the pool counters summed over every route
+     *
+     * @return PoolStats
+     */
+    public PoolStats getStats() {
+        PoolStats total = new PoolStats(0, 0, 0, 0, 0, 0);
+        for (Route route : this.routes.values())
+            total = total.add(route.stats());
+        return total;
+    }
+
+    /**
+     * Gets the pool counters of each route
+     *
+     * @return PoolStats keyed by route (scheme://host:port)
+     */
+    public Map<String, PoolStats> getRouteStats() {
+        Map<String, PoolStats> stats = new HashMap<>();
+        for (Route route : this.routes.values())
+            stats.put(route.key, route.stats());
+        return stats;
+    }
+
+    /**
+     * Gets the maximum connections per route
+     *
+     * @return maxPerRoute
+     */
+    public int getMaxPerRoute() {
+        return this.maxPerRoute;
+    }
+
+    /**
+     * Sets the maximum connections per route. Applies to routes opened after
+     * the call.
+     *
+     * @param maxPerRoute
+     *            int
+     */
+    public void setMaxPerRoute(int maxPerRoute) {
+        if (maxPerRoute < 1)
+            throw new IllegalArgumentException("maxPerRoute must be positive");
+        this.maxPerRoute = maxPerRoute;
+    }
+
+    /**
+     * Gets the idle timeout
+     *
+     * @return idleTimeout in milliseconds
+     */
+    public long getIdleTimeout() {
+        return this.idleTimeout;
+    }
+
+    /**
+     * Sets the idle timeout
+     *
+     * @param idleTimeout
+     *            milliseconds
+     */
+    public void setIdleTimeout(long idleTimeout) {
+        if (idleTimeout < 1)
+            throw new IllegalArgumentException("idleTimeout must be positive");
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Gets the maximum wait for a free connection
+     *
+     * @return leaseTimeout in milliseconds
+     */
+    public long getLeaseTimeout() {
+        return this.leaseTimeout;
+    }
+
+    /**
+     * Sets the maximum wait for a free connection
+     *
+     * @param leaseTimeout
+     *            milliseconds
+     */
+    public void setLeaseTimeout(long leaseTimeout) {
+        this.leaseTimeout = leaseTimeout;
+    }
+
+    /**
+     * Gets the connect timeout
+     *
+     * @return connectTimeout in milliseconds
+     */
+    public int getConnectTimeout() {
+        return this.connectTimeout;
+    }
+
+    /**
+     * Sets the connect timeout
+     *
+     * @param connectTimeout
+     *            milliseconds
+     */
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * Gets the read timeout
+     *
+     * @return readTimeout in milliseconds
+     */
+    public int getReadTimeout() {
+        return this.readTimeout;
+    }
+
+    /**
+     * Sets the read timeout
+     *
+     * @param readTimeout
+     *            milliseconds
+     */
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    private Route route(URL url) {
+        int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+        String key = url.getProtocol().toLowerCase() + "://" + url.getHost().toLowerCase() + ":" + port;
+        Route route = this.routes.get(key);
+        if (route == null) {
+            Route created = new Route(key, this.maxPerRoute);
+            route = this.routes.putIfAbsent(key, created);
+            if (route == null)
+                route = created;
+            startSweeper();
+        }
+        return route;
+    }
+
+    private void startSweeper() {
+        if (!this.sweeping.compareAndSet(false, true))
+            return;
+        ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "veridu-pool-sweeper");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long period = Math.max(1000, this.idleTimeout / 2);
+        sweeper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                evictIdleConnections();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+        this.sweeper = sweeper;
+        if (this.closed)
+            sweeper.shutdownNow();
+    }
+
+    /**
+     * Connections to one scheme, host and port
+     */
+    private final class Route implements HttpConnection.Owner {
+        private final String key;
+        private final int max;
+        private final Semaphore permits;
+        private final ConcurrentLinkedDeque<HttpConnection> idle = new ConcurrentLinkedDeque<>();
+        private final AtomicLong created = new AtomicLong();
+        private final AtomicLong reused = new AtomicLong();
+        private final AtomicLong evicted = new AtomicLong();
+        private final AtomicLong discarded = new AtomicLong();
+
+        Route(String key, int max) {
+            this.key = key;
+            this.max = max;
+            this.permits = new Semaphore(max, true);
+        }
+
+        HttpConnection lease() throws IOException {
+            try {
+                if (!this.permits.tryAcquire(PooledTransport.this.leaseTimeout, TimeUnit.MILLISECONDS))
+                    throw new IOException("Timeout waiting for a connection to " + this.key);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for a connection to " + this.key);
+            }
+            try {
+                long now = System.currentTimeMillis();
+                HttpConnection connection;
+                while ((connection = this.idle.pollFirst()) != null) {
+                    if (connection.isReusable(now, PooledTransport.this.idleTimeout)) {
+                        this.reused.incrementAndGet();
+                        return connection;
+                    }
+                    this.evicted.incrementAndGet();
+                    connection.close();
+                }
+                connection = HttpConnection.open(this, new URL(this.key), PooledTransport.this.connectTimeout,
+                        PooledTransport.this.readTimeout);
+                this.created.incrementAndGet();
+                return connection;
+            } catch (IOException | RuntimeException e) {
+                this.permits.release();
+                throw e;
+            }
+        }
+
+        @Override
+        public void release(HttpConnection connection) {
+            if (PooledTransport.this.closed || (this.idle.size() >= this.max))
+                connection.close();
+            else
+                this.idle.offerFirst(connection);
+            this.permits.release();
+        }
+
+        @Override
+        public void discard(HttpConnection connection) {
+            connection.close();
+            this.discarded.incrementAndGet();
+            this.permits.release();
+        }
+
+        void evict(long now) {
+            for (HttpConnection connection : this.idle) {
+                if (!connection.isReusable(now, PooledTransport.this.idleTimeout)
+                        && this.idle.removeFirstOccurrence(connection)) {
+                    this.evicted.incrementAndGet();
+                    connection.close();
+                }
+            }
+        }
+
+        void closeIdle() {
+            HttpConnection connection;
+            while ((connection = this.idle.pollFirst()) != null)
+                connection.close();
+        }
+
+        PoolStats stats() {
+            return new PoolStats(this.created.get(), this.reused.get(), this.evicted.get(), this.discarded.get(),
+                    this.max - this.permits.availablePermits(), this.idle.size());
+        }
+    }
+
+}
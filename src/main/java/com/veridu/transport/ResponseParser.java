@@ -0,0 +1,331 @@
+package com.veridu.transport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.veridu.buffer.BufferPool;
+
+/**
+ * Class ResponseParser decodes an HTTP/1.1 response fed in arbitrary slices,
+ * as they come off a non-blocking channel. The body is gathered in a buffer
+ * borrowed from a pool.
+ *
+ * @version 1.0
+ */
+final class ResponseParser {
+
+    private enum State {
+        STATUS, HEADERS, BODY, CHUNK_SIZE, CHUNK_DATA, CHUNK_END, TRAILERS, UNTIL_CLOSE, DONE
+    }
+
+    private State state = State.STATUS;
+    private boolean headOnly = false;
+    private boolean started = false;
+    private String status = null;
+    private int code = 0;
+    private Map<String, List<String>> headers = new HashMap<>();
+    private long remaining = 0;
+    private boolean reusable = false;
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+    private final BufferPool pool;
+    private ByteBuffer body = null;
+
+    /**
+     * Class constructor using the shared buffer pool
+     */
+    ResponseParser() {
+        this(BufferPool.shared());
+    }
+
+    /**
+     * Class constructor
+     *
+     * @param pool
+     *            BufferPool lending the body buffers
+     */
+    ResponseParser(BufferPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Prepares the parser for the response to a new request
+     *
+     * @param method
+     *            Request method, a HEAD response has no body
+     */
+    void reset(String method) {
+        this.state = State.STATUS;
+        this.headOnly = "HEAD".equals(method);
+        this.started = false;
+        this.status = null;
+        this.code = 0;
+        this.headers = new HashMap<>();
+        this.remaining = 0;
+        this.reusable = false;
+        this.line.reset();
+        this.pool.release(this.body);
+        this.body = null;
+    }
+
+    /**
+     * Consumes bytes
+     *
+     * @param buffer
+     *            ByteBuffer in read mode
+     *
+     * @return true once the response is complete
+     *
+     * @throws IOException
+     *             on malformed input
+     */
+    boolean feed(ByteBuffer buffer) throws IOException {
+        if (buffer.hasRemaining())
+            this.started = true;
+        while (buffer.hasRemaining() && (this.state != State.DONE)) {
+            switch (this.state) {
+            case STATUS:
+            case HEADERS:
+            case CHUNK_SIZE:
+            case CHUNK_END:
+            case TRAILERS:
+                String text = readLine(buffer);
+                if (text != null)
+                    onLine(text);
+                break;
+            case BODY:
+            case CHUNK_DATA:
+                int n = (int) Math.min(this.remaining, buffer.remaining());
+                copy(buffer, n);
+                this.remaining -= n;
+                if (this.remaining == 0)
+                    this.state = this.state == State.BODY ? State.DONE : State.CHUNK_END;
+                break;
+            case UNTIL_CLOSE:
+                copy(buffer, buffer.remaining());
+                break;
+            default:
+                break;
+            }
+        }
+        return this.state == State.DONE;
+    }
+
+    /**
+     * Signals the end of the connection
+     *
+     * @return true if the response is complete (body delimited by close)
+     */
+    boolean finish() {
+        if (this.state == State.UNTIL_CLOSE)
+            this.state = State.DONE;
+        return this.state == State.DONE;
+    }
+
+    /**
+     * Whether any byte of the response was received
+     *
+     * @return boolean
+     */
+    boolean isStarted() {
+        return this.started;
+    }
+
+    /**
+     * Whether the connection can carry another request
+     *
+     * @return boolean
+     */
+    boolean isReusable() {
+        return this.reusable;
+    }
+
+    int getCode() {
+        return this.code;
+    }
+
+    Map<String, List<String>> getHeaders() {
+        return this.headers;
+    }
+
+    byte[] getBody() {
+        if (this.body == null)
+            return new byte[0];
+        ByteBuffer copy = this.body.duplicate();
+        copy.flip();
+        byte[] bytes = new byte[copy.remaining()];
+        copy.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Hands the body buffer over to the caller, who releases it to the pool
+     *
+     * @return ByteBuffer in read mode
+     */
+    ByteBuffer takeBody() {
+        ByteBuffer body = this.body;
+        this.body = null;
+        if (body == null)
+            return ByteBuffer.allocate(0);
+        body.flip();
+        return body;
+    }
+
+    /**
+     * Keep-alive advertised by the server
+     *
+     * @return milliseconds, -1 if none
+     */
+    long getKeepAlive() {
+        String value = first("keep-alive");
+        if (value == null)
+            return -1;
+        for (String part : value.split(",")) {
+            String[] pair = part.trim().split("=");
+            if ((pair.length == 2) && pair[0].trim().equalsIgnoreCase("timeout")) {
+                try {
+                    return Long.parseLong(pair[1].trim()) * 1000L;
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private void onLine(String text) throws IOException {
+        switch (this.state) {
+        case STATUS:
+            String[] parts = text.split(" ", 3);
+            if ((parts.length < 2) || !parts[0].startsWith("HTTP/"))
+                throw new IOException("Malformed status line: " + text);
+            try {
+                this.code = Integer.parseInt(parts[1]);
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed status line: " + text);
+            }
+            this.status = text;
+            this.state = State.HEADERS;
+            break;
+        case HEADERS:
+            if (text.isEmpty())
+                onHeadersDone();
+            else
+                addHeader(text);
+            break;
+        case CHUNK_SIZE:
+            int extension = text.indexOf(';');
+            String size = extension >= 0 ? text.substring(0, extension) : text;
+            try {
+                this.remaining = Long.parseLong(size.trim(), 16);
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed chunk size: " + text);
+            }
+            this.state = this.remaining == 0 ? State.TRAILERS : State.CHUNK_DATA;
+            break;
+        case CHUNK_END:
+            this.state = State.CHUNK_SIZE;
+            break;
+        case TRAILERS:
+            if (text.isEmpty())
+                this.state = State.DONE;
+            break;
+        default:
+            break;
+        }
+    }
+
+    private void onHeadersDone() throws IOException {
+        if ((this.code >= 100) && (this.code < 200)) {
+            this.headers = new HashMap<>();
+            this.state = State.STATUS;
+            return;
+        }
+        this.reusable = this.status.startsWith("HTTP/1.1");
+        String connection = first("connection");
+        if (connection != null) {
+            if (connection.equalsIgnoreCase("close"))
+                this.reusable = false;
+            else if (connection.equalsIgnoreCase("keep-alive"))
+                this.reusable = true;
+        }
+        if (this.headOnly || (this.code == 204) || (this.code == 304)) {
+            this.state = State.DONE;
+            return;
+        }
+        String encoding = first("transfer-encoding");
+        String length = first("content-length");
+        if ((encoding != null) && encoding.toLowerCase().contains("chunked")) {
+            this.state = State.CHUNK_SIZE;
+        } else if (length != null) {
+            try {
+                this.remaining = Long.parseLong(length.trim());
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed Content-Length: " + length);
+            }
+            this.state = this.remaining == 0 ? State.DONE : State.BODY;
+        } else {
+            this.reusable = false;
+            this.state = State.UNTIL_CLOSE;
+        }
+    }
+
+    private void addHeader(String text) {
+        int colon = text.indexOf(':');
+        if (colon <= 0)
+            return;
+        String name = text.substring(0, colon).trim().toLowerCase();
+        List<String> values = this.headers.get(name);
+        if (values == null) {
+            values = new ArrayList<>(1);
+            this.headers.put(name, values);
+        }
+        values.add(text.substring(colon + 1).trim());
+    }
+
+    private String first(String name) {
+        List<String> values = this.headers.get(name);
+        if ((values == null) || values.isEmpty())
+            return null;
+        return values.get(0);
+    }
+
+    private String readLine(ByteBuffer buffer) {
+        while (buffer.hasRemaining()) {
+            byte b = buffer.get();
+            if (b == '\n') {
+                byte[] bytes = this.line.toByteArray();
+                this.line.reset();
+                int length = bytes.length;
+                if ((length > 0) && (bytes[length - 1] == '\r'))
+                    length--;
+                return new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+            }
+            this.line.write(b);
+        }
+        return null;
+    }
+
+    private void copy(ByteBuffer buffer, int n) {
+        if (this.body == null) {
+            this.body = this.pool.acquire(n);
+        } else if (this.body.remaining() < n) {
+            ByteBuffer bigger = this.pool.acquire(Math.max(this.body.capacity() * 2, this.body.position() + n));
+            this.body.flip();
+            bigger.put(this.body);
+            this.pool.release(this.body);
+            this.body = bigger;
+        }
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(slice.position() + n);
+        this.body.put(slice);
+        buffer.position(buffer.position() + n);
+    }
+
+}
@@ -0,0 +1,238 @@
+package com.veridu.transport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+
+/**
+ * Class TlsSession drives a client SSLEngine over a non-blocking channel: the
+ * owner feeds it the bytes read from the socket and writes out whatever it
+ * produced
+ *
+ * @version 1.0
+ */
+final class TlsSession {
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final SSLEngine engine;
+
+    /**
+     * Received records not yet decrypted, in write mode
+     */
+    private ByteBuffer netIn;
+
+    /**
+     * Decrypted application data, in write mode
+     */
+    private ByteBuffer appIn;
+
+    /**
+     * Scratch buffer for wrapped records, in write mode
+     */
+    private ByteBuffer netOut;
+
+    /**
+     * Records waiting to be written to the socket
+     */
+    private final ByteArrayOutputStream outbound = new ByteArrayOutputStream(1024);
+
+    private boolean closed = false;
+
+    /**
+     * Class constructor
+     *
+     * @param context
+     *            SSLContext
+     * @param host
+     *            Peer host, verified against its certificate
+     * @param port
+     *            Peer port
+     */
+    TlsSession(SSLContext context, String host, int port) {
+        this.engine = context.createSSLEngine(host, port);
+        this.engine.setUseClientMode(true);
+        SSLParameters parameters = this.engine.getSSLParameters();
+        parameters.setEndpointIdentificationAlgorithm("HTTPS");
+        this.engine.setSSLParameters(parameters);
+        this.netIn = ByteBuffer.allocate(this.engine.getSession().getPacketBufferSize());
+        this.appIn = ByteBuffer.allocate(this.engine.getSession().getApplicationBufferSize());
+        this.netOut = ByteBuffer.allocate(this.engine.getSession().getPacketBufferSize());
+    }
+
+    /**
+     * Starts the handshake, the ClientHello is then ready to be written
+     *
+     * @throws IOException
+     *             Exception
+     */
+    void begin() throws IOException {
+        this.engine.beginHandshake();
+        receive(EMPTY);
+    }
+
+    /**
+     * Checks if the handshake is still in progress
+     *
+     * @return boolean
+     */
+    boolean isHandshaking() {
+        HandshakeStatus status = this.engine.getHandshakeStatus();
+        return (status != HandshakeStatus.NOT_HANDSHAKING) && (status != HandshakeStatus.FINISHED);
+    }
+
+    /**
+     * Checks if the peer closed the session
+     *
+     * @return boolean
+     */
+    boolean isClosed() {
+        return this.closed;
+    }
+
+    /**
+     * Processes bytes read from the socket, advancing the handshake if needed
+     *
+     * @param data
+     *            ByteBuffer in read mode, fully consumed
+     *
+     * @return ByteBuffer decrypted application data, in read mode
+     *
+     * @throws IOException
+     *             Exception
+     */
+    ByteBuffer receive(ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            if (this.netIn.remaining() < data.remaining())
+                this.netIn = grow(this.netIn, data.remaining());
+            this.netIn.put(data);
+        }
+        while (!this.closed) {
+            HandshakeStatus status = this.engine.getHandshakeStatus();
+            if (status == HandshakeStatus.NEED_TASK) {
+                runTasks();
+                continue;
+            }
+            if (status == HandshakeStatus.NEED_WRAP) {
+                wrap(EMPTY);
+                continue;
+            }
+            this.netIn.flip();
+            SSLEngineResult result;
+            try {
+                result = this.engine.unwrap(this.netIn, this.appIn);
+            } finally {
+                this.netIn.compact();
+            }
+            switch (result.getStatus()) {
+            case BUFFER_OVERFLOW:
+                this.appIn = grow(this.appIn, this.engine.getSession().getApplicationBufferSize());
+                continue;
+            case BUFFER_UNDERFLOW:
+                if (this.netIn.position() == this.netIn.capacity())
+                    this.netIn = grow(this.netIn, this.engine.getSession().getPacketBufferSize());
+                break;
+            case CLOSED:
+                this.closed = true;
+                break;
+            default:
+                if ((result.bytesConsumed() > 0) || (result.bytesProduced() > 0)
+                        || (this.engine.getHandshakeStatus() != status))
+                    continue;
+                break;
+            }
+            break;
+        }
+        this.appIn.flip();
+        ByteBuffer plain = ByteBuffer.allocate(this.appIn.remaining());
+        plain.put(this.appIn).flip();
+        this.appIn.clear();
+        return plain;
+    }
+
+    /**
+     * Encrypts application data
+     *
+     * @param data
+     *            ByteBuffer in read mode, fully consumed
+     *
+     * @throws IOException
+     *             Exception
+     */
+    void send(ByteBuffer data) throws IOException {
+        if (this.closed)
+            throw new EOFException("TLS session closed by peer");
+        do {
+            wrap(data);
+        } while (data.hasRemaining());
+    }
+
+    /**
+     * Takes the records produced so far
+     *
+     * @return ByteBuffer in read mode, empty if there is nothing to write
+     */
+    ByteBuffer drain() {
+        ByteBuffer records = ByteBuffer.wrap(this.outbound.toByteArray());
+        this.outbound.reset();
+        return records;
+    }
+
+    /**
+     * Handles the end of the underlying connection
+     */
+    void finish() {
+        this.closed = true;
+        try {
+            this.engine.closeInbound();
+        } catch (SSLException e) {
+            // peer did not send close_notify, the HTTP framing tells truncation
+        }
+        this.engine.closeOutbound();
+    }
+
+    private void wrap(ByteBuffer data) throws IOException {
+        while (true) {
+            SSLEngineResult result = this.engine.wrap(data, this.netOut);
+            switch (result.getStatus()) {
+            case BUFFER_OVERFLOW:
+                this.netOut = grow(this.netOut, this.engine.getSession().getPacketBufferSize());
+                continue;
+            case CLOSED:
+                this.closed = true;
+                break;
+            default:
+                break;
+            }
+            this.netOut.flip();
+            this.outbound.write(this.netOut.array(), this.netOut.arrayOffset() + this.netOut.position(),
+                    this.netOut.remaining());
+            this.netOut.clear();
+            if (this.closed && data.hasRemaining())
+                throw new EOFException("TLS session closed by peer");
+            return;
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = this.engine.getDelegatedTask()) != null)
+            task.run();
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int extra) {
+        ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() + extra);
+        buffer.flip();
+        bigger.put(buffer);
+        return bigger;
+    }
+
+}
@@ -0,0 +1,33 @@
+package com.veridu.transport;
+
+import java.io.IOException;
+
+/**
+ * Interface Transport is the HTTP layer used by the endpoints to reach the API
+ *
+ * @version 1.0
+ */
+public interface Transport {
+
+    /**
+     * Executes a request. The caller owns the returned response and must close
+     * it once the body has been consumed. The connection carrying the request
+     * is attached to it ({@link HttpRequest#attach}) until the response is
+     * consumed, so aborting the request closes it.
+     *
+     * @param request
+     *            HttpRequest
+     *
+     * @return HttpResponse response
+     *
+     * @throws IOException
+     *             Exception
+     */
+    public HttpResponse execute(HttpRequest request) throws IOException;
+
+    /**
+     * Releases any resources (sockets, threads) held by the transport
+     */
+    public void close();
+
+}
@@ -0,0 +1,92 @@
+package com.veridu.transport;
+
+import java.io.IOException;
+
+/**
+ * Class Transports creates the transports shipped with the SDK
+ *
+ * @version 1.0
+ */
+public class Transports {
+
+    /**
+     * Class name of the HTTP/2 transport, only built on Java 11 or newer
+     */
+    private static final String HTTP2_TRANSPORT = "com.veridu.transport.Http2Transport";
+
+    /**
+     * Returns a pooled keep-alive HTTP/1.1 transport
+     *
+     * @return PooledTransport
+     */
+    public static PooledTransport pooled() {
+        return new PooledTransport();
+    }
+
+    /**
+     * Returns a transport negotiating gzip/deflate on top of another one
+     *
+     * @param transport
+     *            Transport
+     *
+     * @return CompressingTransport
+     */
+    public static CompressingTransport compressed(Transport transport) {
+        return new CompressingTransport(transport);
+    }
+
+    /**
+     * Returns a transport opening one HttpURLConnection per request
+     *
+     * @return LegacyTransport
+     */
+    public static LegacyTransport legacy() {
+        return new LegacyTransport();
+    }
+
+    /**
+     * Returns a non-blocking transport driven by selector threads
+     *
+     * @return NioTransport
+     *
+     * @throws IOException
+     *             when a selector cannot be opened
+     */
+    public static NioTransport nio() throws IOException {
+        return new NioTransport();
+    }
+
+    /**
+     * Checks whether the HTTP/2 transport can be used: it has to be built in
+     * (JDK 11+ build) and the running JVM has to be Java 11 or newer
+     *
+     * @return boolean
+     */
+    public static boolean isHttp2Available() {
+        try {
+            Class.forName(HTTP2_TRANSPORT);
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns a transport multiplexing requests over HTTP/2
+     *
+     * @return Transport
+     *
+     * @throws UnsupportedOperationException
+     *             when the HTTP/2 transport is not available
+     */
+    public static Transport http2() {
+        try {
+            return (Transport) Class.forName(HTTP2_TRANSPORT).newInstance();
+        } catch (ClassNotFoundException | LinkageError e) {
+            throw new UnsupportedOperationException("HTTP/2 transport requires Java 11 (build and runtime)");
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new UnsupportedOperationException("HTTP/2 transport could not be created: " + e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,126 @@
+package com.veridu.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * Class Http2Transport sends requests through java.net.http.HttpClient, which
+ * negotiates HTTP/2 and multiplexes concurrent calls over a few connections.
+ * Requires Java 11; obtain it through {@link Transports#http2()}.
+ *
+ * @version 1.0
+ */
+public class Http2Transport implements Transport {
+
+    /**
+     * Headers managed by HttpClient itself
+     */
+    private static final Set<String> RESTRICTED = new HashSet<>(
+            Arrays.asList("connection", "content-length", "expect", "host", "upgrade"));
+
+    /**
+     * Underlying client, shared by every request
+     */
+    private final HttpClient client;
+
+    /**
+     * Per request timeout
+     */
+    private final Duration timeout;
+
+    /**
+     * Class constructor with a 10 second connect and request timeout
+     */
+    public Http2Transport() {
+        this(HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).connectTimeout(Duration.ofSeconds(10))
+                .followRedirects(HttpClient.Redirect.NEVER).build(), Duration.ofSeconds(10));
+    }
+
+    /**
+     * Class constructor
+     *
+     * @param client
+     *            HttpClient
+     * @param timeout
+     *            Per request timeout
+     */
+    public Http2Transport(HttpClient client, Duration timeout) {
+        this.client = client;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Executes a request, blocking until the response head arrives
+     *
+     * @param request
+     *            HttpRequest
+     *
+     * @return HttpResponse response
+     *
+     * @throws IOException
+     *             Exception
+     */
+    @Override
+    public HttpResponse execute(HttpRequest request) throws IOException {
+        try {
+            java.net.http.HttpResponse<InputStream> response = this.client.send(build(request),
+                    java.net.http.HttpResponse.BodyHandlers.ofInputStream());
+            return new HttpResponse(response.statusCode(), headers(response), response.body(), null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for " + request.getUrl());
+        }
+    }
+
+    /**
+     * Nothing to release, HttpClient connections close when idle
+     */
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Gets the underlying client
+     *
+     * @return client
+     */
+    public HttpClient getClient() {
+        return this.client;
+    }
+
+    private java.net.http.HttpRequest build(HttpRequest request) {
+        java.net.http.HttpRequest.Builder builder = java.net.http.HttpRequest.newBuilder(URI.create(request.getUrl()))
+                .timeout(this.timeout);
+        for (Entry<String, String> header : request.getHeaders().entrySet()) {
+            if (!RESTRICTED.contains(header.getKey().toLowerCase()))
+                builder.header(header.getKey(), header.getValue());
+        }
+        if (request.hasBody())
+            // the publisher may read after execute returns, by then a pooled body is reused
+            builder.method(request.getMethod(), java.net.http.HttpRequest.BodyPublishers
+                    .ofByteArray(Arrays.copyOf(request.getBody(), request.getBodyLength())));
+        else
+            builder.method(request.getMethod(), java.net.http.HttpRequest.BodyPublishers.noBody());
+        return builder.build();
+    }
+
+    private static Map<String, List<String>> headers(java.net.http.HttpResponse<?> response) {
+        Map<String, List<String>> headers = new HashMap<>();
+        for (Entry<String, List<String>> header : response.headers().map().entrySet())
+            headers.put(header.getKey().toLowerCase(), new ArrayList<>(header.getValue()));
+        return headers;
+    }
+
+}
@@ -45,6 +45,13 @@ public class APITest {
         assertTrue(factoryapi instanceof API);
     }
 
+    @Test
+    public void testGetAsync() {
+        Object async = this.api.getAsync();
+        assertTrue(async instanceof AsyncAPI);
+        assertTrue(this.api.getAsync().getApi() == this.api);
+    }
+
     @Test
     public void testGetApplication() {
         Object endpoint = this.api.getApplication();
@@ -0,0 +1,110 @@
+package com.veridu.async;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.veridu.exceptions.APIError;
+
+public class AsyncResultTest {
+
+    @Test
+    public void testCompleteOnlyOnce() throws Exception {
+        AsyncResult<String> result = new AsyncResult<>();
+        assertTrue(result.complete("first"));
+        assertFalse(result.complete("second"));
+        assertFalse(result.fail(new APIError()));
+        assertEquals("first", result.get());
+    }
+
+    @Test
+    public void testFailureIsWrapped() throws InterruptedException {
+        APIError error = new APIError("boom");
+        AsyncResult<String> result = AsyncResult.failed(error);
+        assertTrue(result.isFailed());
+        try {
+            result.get();
+        } catch (ExecutionException e) {
+            assertSame(error, e.getCause());
+            return;
+        }
+        throw new AssertionError("get() must throw");
+    }
+
+    @Test
+    public void testCallbackAddedAfterCompletionRuns() {
+        final AtomicReference<String> seen = new AtomicReference<>();
+        AsyncResult.completed("done").addCallback(new Callback<String>() {
+            @Override
+            public void onSuccess(String result) {
+                seen.set(result);
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+            }
+        });
+        assertEquals("done", seen.get());
+    }
+
+    @Test(expected = TimeoutException.class)
+    public void testGetTimesOut() throws Exception {
+        new AsyncResult<String>().get(10, TimeUnit.MILLISECONDS);
+    }
+
+    @Test(expected = CancellationException.class)
+    public void testCancel() throws Exception {
+        AsyncResult<String> result = new AsyncResult<>();
+        assertTrue(result.cancel(true));
+        assertTrue(result.isCancelled());
+        result.get();
+    }
+
+    @Test
+    public void testAllKeepsOrder() throws Exception {
+        AsyncResult<String> first = new AsyncResult<>();
+        AsyncResult<String> second = new AsyncResult<>();
+        AsyncResult<List<String>> all = AsyncResult.all(Arrays.asList(first, second));
+        second.complete("b");
+        assertFalse(all.isDone());
+        first.complete("a");
+        assertEquals(Arrays.asList("a", "b"), all.get());
+    }
+
+    @Test
+    public void testAllFailsOnFirstFailure() {
+        AsyncResult<String> first = new AsyncResult<>();
+        AsyncResult<String> second = new AsyncResult<>();
+        AsyncResult<List<String>> all = AsyncResult.all(Arrays.asList(first, second));
+        second.fail(new APIError());
+        assertTrue(all.isFailed());
+    }
+
+    @Test
+    public void testDispatchersSubmitRunsOffThread() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        AsyncResult<String> result = Dispatchers.submit(Dispatchers.shared(), new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                release.await();
+                return Thread.currentThread().getName();
+            }
+        });
+        assertFalse(result.isDone());
+        release.countDown();
+        assertTrue(result.get(5, TimeUnit.SECONDS).startsWith("veridu-async-"));
+    }
+}
@@ -0,0 +1,46 @@
+package com.veridu.async;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class DispatchersTest {
+
+    @Test
+    public void testVirtualMatchesAvailability() throws Exception {
+        if (!Dispatchers.isVirtualAvailable()) {
+            try {
+                Dispatchers.virtual();
+            } catch (UnsupportedOperationException e) {
+                return;
+            }
+            throw new AssertionError("virtual() must fail when virtual threads are not available");
+        }
+        ExecutorService executor = Dispatchers.virtual();
+        AsyncResult<Boolean> result = Dispatchers.submit(executor, new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return (Boolean) Thread.class.getMethod("isVirtual").invoke(Thread.currentThread());
+            }
+        });
+        assertEquals(Boolean.TRUE, result.get(5, TimeUnit.SECONDS));
+        executor.shutdown();
+    }
+
+    @Test
+    public void testSubmitToShutdownExecutorFails() {
+        ExecutorService executor = java.util.concurrent.Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        AsyncResult<String> result = Dispatchers.submit(executor, new Callable<String>() {
+            @Override
+            public String call() {
+                return "never";
+            }
+        });
+        assertEquals(true, result.isFailed());
+    }
+}
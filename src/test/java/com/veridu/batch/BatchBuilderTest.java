@@ -0,0 +1,113 @@
+package com.veridu.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import org.json.simple.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.veridu.async.AsyncResult;
+import com.veridu.endpoint.Batch;
+import com.veridu.endpoint.Profile;
+import com.veridu.exceptions.APIError;
+import com.veridu.exceptions.InvalidResponse;
+import com.veridu.exceptions.InvalidUsername;
+import com.veridu.exceptions.RequestFailed;
+import com.veridu.retry.RetryPolicy;
+import com.veridu.storage.Storage;
+
+public class BatchBuilderTest {
+    BatchDispatcherTest.BatchServer server;
+    BatchBuilder builder;
+
+    @Before
+    public void setUp() {
+        Storage storage = new Storage();
+        storage.setSessionToken("token");
+        this.server = new BatchDispatcherTest.BatchServer();
+        Batch batch = new Batch("key", "secret", "0.3", storage);
+        batch.setTransport(this.server);
+        batch.setRetryPolicy(RetryPolicy.none());
+        this.builder = batch.builder();
+    }
+
+    private static Throwable cause(AsyncResult<?> result) throws InterruptedException {
+        try {
+            result.get();
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+        throw new AssertionError("the result must fail");
+    }
+
+    @Test
+    public void testJobsSettleTypedResults() throws Exception {
+        AsyncResult<JSONObject> profile = this.builder.profile().retrieve(Profile.FILTER_KBA, "alice");
+        AsyncResult<String> score = this.builder.user().attributeScore("email", "bob");
+        AsyncResult<JSONObject> scores = this.builder.user().getAllAttributeScores("carol");
+        assertEquals(3, this.builder.size());
+        this.builder.submit();
+        assertEquals(0, this.builder.size());
+        assertEquals("/profile/alice", profile.get().get("resource"));
+        assertEquals("kba", ((JSONObject) profile.get().get("data")).get("filter"));
+        assertEquals("score", score.get());
+        assertEquals("/user/carol/score", scores.get().get("resource"));
+        assertEquals(1, this.server.calls.get());
+    }
+
+    @Test
+    public void testJobErrorsFailOnlyTheirResult() throws Exception {
+        AsyncResult<String> invalid = this.builder.user().attributeValue("email", "not a username!");
+        AsyncResult<JSONObject> ghost = this.builder.profile().retrieve("ghost");
+        AsyncResult<JSONObject> details = this.builder.user().attributeDetails("email", "dave");
+        AsyncResult<String> value = this.builder.user().attributeValue("email", "dave");
+        assertEquals(3, this.builder.size());
+        this.builder.submit();
+        assertTrue(cause(invalid) instanceof InvalidUsername);
+        assertEquals("NOT_FOUND", ((APIError) cause(ghost)).getType());
+        // the stub answers a String where the details object belongs
+        assertTrue(cause(details) instanceof InvalidResponse);
+        assertEquals("value", value.get());
+    }
+
+    @Test
+    public void testFailedBatchFailsEveryJob() throws Exception {
+        this.server.broken = true;
+        AsyncResult<JSONObject> first = this.builder.user().getAllDetails("erin");
+        AsyncResult<JSONObject> second = this.builder.user().getAllAttributeValues("erin");
+        this.builder.submit();
+        assertTrue(cause(first) instanceof RequestFailed);
+        assertTrue(cause(second) instanceof RequestFailed);
+    }
+
+    @Test
+    public void testCallsRecordedFromManyThreadsAreAllSent() throws Exception {
+        final List<AsyncResult<String>> results = Collections.synchronizedList(new ArrayList<AsyncResult<String>>());
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final String username = "user" + i;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 250; j++)
+                        results.add(BatchBuilderTest.this.builder.user().attributeValue("email", username));
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads)
+            thread.join();
+        assertEquals(1000, this.builder.size());
+        this.builder.submit();
+        for (AsyncResult<String> result : results)
+            assertEquals("value", result.get());
+        assertEquals(1, this.server.calls.get());
+    }
+}
@@ -0,0 +1,254 @@
+package com.veridu.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.veridu.async.AsyncResult;
+import com.veridu.cache.ResponseCache;
+import com.veridu.endpoint.AbstractEndpoint;
+import com.veridu.endpoint.Batch;
+import com.veridu.exceptions.APIError;
+import com.veridu.exceptions.RequestFailed;
+import com.veridu.retry.RetryPolicy;
+import com.veridu.storage.Storage;
+import com.veridu.transport.HttpRequest;
+import com.veridu.transport.HttpResponse;
+import com.veridu.transport.Transport;
+
+public class BatchDispatcherTest {
+    Storage storage;
+    Batch batch;
+    BatchServer server;
+    BatchDispatcher dispatcher;
+
+    @Before
+    public void setUp() {
+        this.storage = new Storage();
+        this.storage.setSessionToken("token");
+        this.server = new BatchServer();
+        this.batch = configure(new Batch("key", "secret", "0.3", this.storage));
+        this.dispatcher = new BatchDispatcher(this.batch);
+    }
+
+    private <T extends AbstractEndpoint> T configure(T endpoint) {
+        endpoint.setTransport(this.server);
+        endpoint.setRetryPolicy(RetryPolicy.none());
+        return endpoint;
+    }
+
+    @Test
+    public void testFullBatchIsSentAndDemultiplexed() throws Exception {
+        this.dispatcher.setWindow(60000);
+        this.dispatcher.setMaxJobs(3);
+        AsyncResult<JSONObject> first = this.dispatcher.submit("GET", "profile/a", "");
+        AsyncResult<JSONObject> second = this.dispatcher.submit("GET", "/missing/b", "");
+        AsyncResult<JSONObject> third = this.dispatcher.submit("POST", "user/c", "&name=J+Doe&age=3");
+        assertEquals("/profile/a", first.get().get("resource"));
+        assertEquals("J Doe", ((JSONObject) third.get().get("data")).get("name"));
+        try {
+            second.get();
+            throw new AssertionError("the failed job must fail its own result");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof APIError);
+            assertEquals("NOT_FOUND", ((APIError) e.getCause()).getType());
+        }
+        assertEquals(1, this.server.calls.get());
+        assertEquals(1, this.dispatcher.getBatches());
+        assertEquals(3, this.dispatcher.getJobs());
+    }
+
+    @Test
+    public void testWindowFlushesPartialBatch() throws Exception {
+        this.dispatcher.setWindow(5);
+        AsyncResult<JSONObject> first = this.dispatcher.submit("GET", "profile/a", "");
+        AsyncResult<JSONObject> second = this.dispatcher.submit("GET", "profile/b", "");
+        assertEquals("/profile/a", first.get().get("resource"));
+        assertEquals("/profile/b", second.get().get("resource"));
+        assertEquals(1, this.server.calls.get());
+    }
+
+    @Test
+    public void testFailedBatchFailsEveryJob() throws Exception {
+        this.server.broken = true;
+        this.dispatcher.setMaxJobs(2);
+        AsyncResult<JSONObject> first = this.dispatcher.submit("GET", "profile/a", "");
+        AsyncResult<JSONObject> second = this.dispatcher.submit("GET", "profile/b", "");
+        for (AsyncResult<JSONObject> result : new AsyncResult[] { first, second }) {
+            try {
+                result.get();
+                throw new AssertionError("every job must fail");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RequestFailed);
+            }
+        }
+        assertEquals(1, this.dispatcher.getFailedBatches());
+    }
+
+    @Test
+    public void testEndpointCallsAreBatched() throws Exception {
+        this.dispatcher.setWindow(60000);
+        this.dispatcher.setMaxJobs(2);
+        AbstractEndpoint endpoint = configure(new AbstractEndpoint("key", "secret", "0.3", this.storage));
+        endpoint.setBatchDispatcher(this.dispatcher);
+        AsyncResult<JSONObject> async = endpoint.fetchAsync("GET", "details/a");
+        assertEquals("/details/b", endpoint.fetch("GET", "details/b").get("resource"));
+        assertEquals("/details/a", async.get().get("resource"));
+        assertEquals(1, this.server.calls.get());
+        this.storage.purgeSession();
+        endpoint.fetch("GET", "details/c");
+        assertEquals(2, this.server.calls.get());
+        assertEquals(2, this.dispatcher.getJobs());
+    }
+
+    @Test
+    public void testLoneCallIsNotHeldForTheWindow() throws Exception {
+        this.dispatcher.setWindow(60000);
+        AbstractEndpoint endpoint = configure(new AbstractEndpoint("key", "secret", "0.3", this.storage));
+        endpoint.setBatchDispatcher(this.dispatcher);
+        assertEquals("/details/a", endpoint.fetch("GET", "details/a").get("resource"));
+        assertEquals(1, this.server.calls.get());
+        assertEquals(0, this.dispatcher.getJobs());
+    }
+
+    @Test
+    public void testCallOnTheEndpointExecutorJoinsBatch() throws Exception {
+        this.dispatcher.setWindow(60000);
+        this.dispatcher.setMaxJobs(2);
+        final AbstractEndpoint endpoint = configure(new AbstractEndpoint("key", "secret", "0.3", this.storage));
+        endpoint.setBatchDispatcher(this.dispatcher);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            endpoint.setExecutor(executor);
+            this.batch.setExecutor(executor);
+            AsyncResult<JSONObject> async = endpoint.fetchAsync("GET", "details/a");
+            Future<JSONObject> sync = executor.submit(new Callable<JSONObject>() {
+                @Override
+                public JSONObject call() throws Exception {
+                    return endpoint.fetch("GET", "details/b");
+                }
+            });
+            assertEquals("/details/b", sync.get(5, TimeUnit.SECONDS).get("resource"));
+            assertEquals("/details/a", async.get().get("resource"));
+            assertEquals(1, this.server.calls.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testBatchedCallsGoThroughTheResponseCache() throws Exception {
+        this.dispatcher.setMaxJobs(1);
+        AbstractEndpoint endpoint = configure(new AbstractEndpoint("key", "secret", "0.3", this.storage));
+        endpoint.setBatchDispatcher(this.dispatcher);
+        ResponseCache cache = new ResponseCache();
+        cache.setEnabled(true);
+        endpoint.setResponseCache(cache);
+        assertEquals("/details/a", endpoint.fetchAsync("GET", "details/a").get().get("resource"));
+        assertEquals("/details/a", endpoint.fetchAsync("GET", "details/a").get().get("resource"));
+        assertEquals(1, this.server.calls.get());
+        assertEquals(1, cache.getStats().getHits());
+        // the batched write invalidates the user's entries before it settles
+        endpoint.fetchAsync("POST", "personal/a", "first=John").get();
+        assertEquals(2, this.server.calls.get());
+        assertEquals("/details/a", endpoint.fetchAsync("GET", "details/a").get().get("resource"));
+        assertEquals(3, this.server.calls.get());
+        assertEquals(3, this.dispatcher.getJobs());
+    }
+
+    /**
+     * Transport answering batch/ requests job by job, and any other request
+     * with the resource it was sent to
+     */
+    static final class BatchServer implements Transport {
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger maxActive = new AtomicInteger();
+        volatile boolean broken = false;
+        volatile long delay = 0;
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public HttpResponse execute(HttpRequest request) throws IOException {
+            this.calls.incrementAndGet();
+            if (this.broken)
+                throw new IOException("Connection reset");
+            JSONObject response = new JSONObject();
+            response.put("status", true);
+            if (request.getUrl().endsWith("batch/")) {
+                int now = this.active.incrementAndGet();
+                while (this.maxActive.get() < now)
+                    this.maxActive.compareAndSet(this.maxActive.get(), now);
+                try {
+                    Thread.sleep(this.delay);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                } finally {
+                    this.active.decrementAndGet();
+                }
+                String body = new String(request.getBody(), 0, request.getBodyLength(), StandardCharsets.UTF_8);
+                String jobs = URLDecoder.decode(body.substring(body.indexOf("jobs=") + 5), "UTF-8");
+                JSONArray results = new JSONArray();
+                try {
+                    for (Object job : (JSONArray) new JSONParser().parse(jobs))
+                        results.add(answer((JSONObject) job));
+                } catch (org.json.simple.parser.ParseException e) {
+                    throw new IOException(e);
+                }
+                response.put("batch", results);
+            } else {
+                response.put("resource", request.getUrl().substring(request.getUrl().indexOf("/0.3") + 4));
+            }
+            Map<String, List<String>> headers = new HashMap<>();
+            return new HttpResponse(200, headers,
+                    new ByteArrayInputStream(response.toJSONString().getBytes(StandardCharsets.UTF_8)), null);
+        }
+
+        @SuppressWarnings("unchecked")
+        static JSONObject answer(JSONObject job) {
+            JSONObject result = new JSONObject();
+            String resource = job.get("resource").toString();
+            if (resource.startsWith("/missing") || resource.contains("/ghost")) {
+                JSONObject error = new JSONObject();
+                error.put("type", "NOT_FOUND");
+                error.put("message", "Not found");
+                result.put("status", false);
+                result.put("error", error);
+                return result;
+            }
+            result.put("status", true);
+            result.put("resource", resource);
+            result.put("attribute", resource.substring(resource.lastIndexOf('/') + 1));
+            JSONObject profile = new JSONObject();
+            profile.put("resource", resource);
+            result.put("profile", profile);
+            if (job.containsKey("data"))
+                result.put("data", job.get("data"));
+            return result;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.veridu.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class BatchSizerTest {
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    @Test
+    public void testGrowsChunkThenConcurrencyWithinBounds() {
+        BatchSizer sizer = new BatchSizer(10, 50, 1, 3);
+        sizer.setChunkStep(20);
+        long now = System.nanoTime();
+        for (int i = 0; i < 20; i++) {
+            sizer.record(now, false, now + millis(100));
+            now += millis(100);
+        }
+        assertEquals(50, sizer.getChunkSize());
+        assertEquals(3, sizer.getConcurrency());
+        SizerStats stats = sizer.getStats();
+        assertEquals(20, stats.getChunks());
+        assertEquals(100.0, stats.getLatency(), 0.001);
+        assertEquals(0.0, stats.getErrorRate(), 0.001);
+    }
+
+    @Test
+    public void testFailureHalvesOncePerRound() {
+        BatchSizer sizer = new BatchSizer(10, 400, 2, 8);
+        sizer.setChunkStep(1000);
+        long now = System.nanoTime();
+        for (int i = 0; i < 30; i++)
+            sizer.record(now, false, now + millis(10));
+        assertEquals(400, sizer.getChunkSize());
+        assertEquals(8, sizer.getConcurrency());
+        // chunks sent together fail together: one decrease only
+        long sent = now + millis(20);
+        sizer.record(sent, true, sent + millis(50));
+        sizer.record(sent, true, sent + millis(60));
+        assertEquals(200, sizer.getChunkSize());
+        assertEquals(4, sizer.getConcurrency());
+        assertEquals(1, sizer.getStats().getDecreases());
+        assertTrue(sizer.getStats().getErrorRate() > 0.3);
+        // a chunk sent after the decrease decreases again
+        sizer.record(sent + millis(100), true, sent + millis(150));
+        assertEquals(100, sizer.getChunkSize());
+        assertEquals(2, sizer.getConcurrency());
+    }
+
+    @Test
+    public void testSlowChunkDecreasesDownToTheBounds() {
+        BatchSizer sizer = new BatchSizer(10, 100, 1, 4);
+        sizer.setTargetLatency(1000);
+        long now = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            now += millis(5000);
+            sizer.record(now, false, now + millis(2000));
+        }
+        assertEquals(10, sizer.getChunkSize());
+        assertEquals(1, sizer.getConcurrency());
+    }
+}
@@ -0,0 +1,159 @@
+package com.veridu.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.simple.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.veridu.endpoint.Batch;
+import com.veridu.exceptions.APIError;
+import com.veridu.exceptions.RequestFailed;
+import com.veridu.retry.RetryPolicy;
+import com.veridu.storage.Storage;
+
+public class BulkBatchTest {
+    BatchDispatcherTest.BatchServer server;
+    Batch batch;
+    BulkBatch bulk;
+
+    @Before
+    public void setUp() {
+        Storage storage = new Storage();
+        storage.setSessionToken("token");
+        this.server = new BatchDispatcherTest.BatchServer();
+        this.batch = new Batch("key", "secret", "0.3", storage);
+        this.batch.setTransport(this.server);
+        this.batch.setRetryPolicy(RetryPolicy.none());
+        this.bulk = new BulkBatch(this.batch);
+    }
+
+    @Test
+    public void testStreamIsChunkedUnderConcurrencyLimit() throws Exception {
+        this.server.delay = 5;
+        this.bulk.setChunkSize(50);
+        this.bulk.setConcurrency(3);
+        Counter counter = new Counter();
+        BulkStats stats = this.bulk.run(new Jobs(1000), counter);
+        assertEquals(1000, stats.getJobs());
+        assertEquals(20, stats.getChunks());
+        assertEquals(20, this.server.calls.get());
+        assertTrue(this.server.maxActive.get() <= 3);
+        assertEquals(990, counter.succeeded.get());
+        assertEquals(10, counter.notFound.get());
+        assertEquals(990, stats.getSucceeded());
+        assertEquals(10, stats.getFailed());
+        // each job reaches the callback with its own index
+        assertEquals(999L * 1000 / 2, counter.indexes.get());
+    }
+
+    @Test
+    public void testFailedChunkFailsEachOfItsJobs() throws Exception {
+        this.server.broken = true;
+        this.bulk.setChunkSize(4);
+        Counter counter = new Counter();
+        BulkStats stats = this.bulk.run(new Jobs(10), counter);
+        assertEquals(3, stats.getFailedChunks());
+        assertEquals(10, stats.getFailed());
+        assertEquals(10, counter.requestFailed.get());
+    }
+
+    @Test
+    public void testRunFromTheEndpointExecutorCompletes() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            this.bulk.setChunkSize(10);
+            this.batch.setExecutor(executor);
+            Future<BulkStats> stats = executor.submit(new Callable<BulkStats>() {
+                @Override
+                public BulkStats call() throws Exception {
+                    return BulkBatchTest.this.bulk.run(new Jobs(100), new Counter());
+                }
+            });
+            assertEquals(10, stats.get(5, TimeUnit.SECONDS).getChunks());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSizerAdaptsChunksOfARun() throws Exception {
+        BatchSizer sizer = new BatchSizer(10, 200, 1, 4);
+        sizer.setChunkStep(50);
+        this.bulk.setSizer(sizer);
+        Counter counter = new Counter();
+        BulkStats stats = this.bulk.run(new Jobs(2000), counter);
+        assertEquals(2000, counter.succeeded.get() + counter.notFound.get());
+        assertEquals(200, sizer.getChunkSize());
+        assertTrue(sizer.getConcurrency() > 1);
+        assertTrue(stats.getChunks() < 200);
+        assertEquals(stats.getChunks(), sizer.getStats().getChunks());
+    }
+
+    /**
+     * Lazy job stream; every hundredth job asks for a missing resource
+     */
+    static final class Jobs implements Iterator<JSONObject> {
+        final long count;
+        long next = 0;
+
+        Jobs(long count) {
+            this.count = count;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.next < this.count;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public JSONObject next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            JSONObject job = new JSONObject();
+            job.put("method", "GET");
+            job.put("resource", ((this.next % 100) == 99 ? "/missing/" : "/profile/") + this.next);
+            this.next++;
+            return job;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    static final class Counter implements JobCallback {
+        final AtomicLong succeeded = new AtomicLong();
+        final AtomicLong notFound = new AtomicLong();
+        final AtomicLong requestFailed = new AtomicLong();
+        final AtomicLong indexes = new AtomicLong();
+
+        @Override
+        public void onSuccess(long index, JSONObject job, JSONObject result) {
+            assertEquals(job.get("resource"), result.get("resource"));
+            this.indexes.addAndGet(index);
+            this.succeeded.incrementAndGet();
+        }
+
+        @Override
+        public void onFailure(long index, JSONObject job, Exception exception) {
+            this.indexes.addAndGet(index);
+            if ((exception instanceof APIError) && "NOT_FOUND".equals(((APIError) exception).getType()))
+                this.notFound.incrementAndGet();
+            else if (exception instanceof RequestFailed)
+                this.requestFailed.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.veridu.bloom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+public class BloomFilterTest {
+
+    @Test
+    public void testAddedUsernamesAreKnownAndOthersMostlyNot() {
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+        int added = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (filter.add("user" + i))
+                added++;
+        }
+        // an add may itself be a false positive
+        assertTrue(added > 9900);
+        for (int i = 0; i < 10000; i++)
+            assertTrue(filter.mightContain("user" + i));
+        int positives = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (filter.mightContain("other" + i))
+                positives++;
+        }
+        // 1% expected
+        assertTrue(positives < 200);
+        BloomStats stats = filter.getStats();
+        assertTrue(stats.getFpp() < 0.02);
+        assertEquals(7, stats.getHashes());
+        assertTrue(stats.getMemoryBytes() < 12000);
+        assertFalse(filter.add("user1"));
+    }
+
+    @Test
+    public void testSeededFilterSurvivesWritingOut() throws Exception {
+        BloomFilter filter = new BloomFilter(100, 0.001);
+        assertEquals(3, filter.seed(new StringReader("john\n\n  jane \nmary\n")));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        filter.writeTo(out);
+        BloomFilter copy = BloomFilter.readFrom(new ByteArrayInputStream(out.toByteArray()));
+        assertTrue(copy.mightContain("jane"));
+        assertTrue(copy.mightContain("mary"));
+        assertFalse(copy.mightContain("ghost"));
+        assertEquals(3, copy.getStats().getInsertions());
+        assertEquals(filter.getStats().getBits(), copy.getStats().getBits());
+    }
+}
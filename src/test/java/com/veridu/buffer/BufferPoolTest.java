@@ -0,0 +1,69 @@
+package com.veridu.buffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class BufferPoolTest {
+
+    @Test
+    public void testReleasedBufferIsReused() {
+        BufferPool pool = new BufferPool(64, 4, false);
+        ByteBuffer buffer = pool.acquire();
+        buffer.put((byte) 1);
+        pool.release(buffer);
+        assertEquals(1, pool.getPooled());
+        ByteBuffer again = pool.acquire();
+        assertSame(buffer, again);
+        assertEquals(0, again.position());
+        assertEquals(64, again.limit());
+        assertEquals(1, pool.getHits());
+        assertEquals(1, pool.getMisses());
+    }
+
+    @Test
+    public void testPoolIsBounded() {
+        BufferPool pool = new BufferPool(64, 2, false);
+        ByteBuffer[] buffers = { pool.acquire(), pool.acquire(), pool.acquire() };
+        for (ByteBuffer buffer : buffers)
+            pool.release(buffer);
+        assertEquals(2, pool.getPooled());
+    }
+
+    @Test
+    public void testOversizedAndForeignBuffersAreNotKept() {
+        BufferPool pool = new BufferPool(64, 4, false);
+        ByteBuffer big = pool.acquire(100);
+        assertEquals(100, big.capacity());
+        assertEquals(1, pool.getOversized());
+        pool.release(big);
+        pool.release(ByteBuffer.allocateDirect(64));
+        pool.release(null);
+        assertEquals(0, pool.getPooled());
+    }
+
+    @Test
+    public void testDirectBuffers() {
+        BufferPool pool = new BufferPool(64, 4, true);
+        ByteBuffer buffer = pool.acquire();
+        assertTrue(buffer.isDirect());
+        assertTrue(pool.isDirect());
+        assertFalse(BufferPool.shared().isDirect());
+    }
+
+    @Test
+    public void testUtf8EncodeMatchesGetBytes() {
+        String text = "a=1&name=João&city=東京&emoji=😀";
+        BufferPool pool = new BufferPool(16, 4, false);
+        ByteBuffer buffer = Utf8.encode(text, pool);
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        assertEquals(text, new String(bytes, StandardCharsets.UTF_8));
+    }
+}
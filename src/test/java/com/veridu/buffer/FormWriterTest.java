@@ -0,0 +1,48 @@
+package com.veridu.buffer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class FormWriterTest {
+
+    private static String text(ByteBuffer buffer) {
+        return new String(buffer.array(), buffer.position(), buffer.remaining(), StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    public void testEncodesAsUrlEncoder() throws Exception {
+        String value = "{\"name\":\"J Doe\",\"city\":\"São Paulo\",\"tag\":\"a&b=c+d*e_f.g-h~€😀\"}";
+        FormWriter writer = new FormWriter(new BufferPool(16, 4, false), 16);
+        writer.raw("jobs=");
+        writer.write(value);
+        assertEquals("jobs=" + URLEncoder.encode(value, "UTF-8"), text(writer.toBuffer()));
+    }
+
+    @Test
+    public void testSurrogatePairSplitAcrossWrites() throws Exception {
+        FormWriter writer = new FormWriter(BufferPool.shared(), 64);
+        writer.write('\ud83d');
+        writer.write("\ude00!");
+        assertEquals(URLEncoder.encode("😀!", "UTF-8"), text(writer.toBuffer()));
+    }
+
+    @Test
+    public void testBufferGrowsAndReturnsToPool() {
+        BufferPool pool = new BufferPool(8, 4, false);
+        FormWriter writer = new FormWriter(pool, 8);
+        for (int i = 0; i < 100; i++)
+            writer.write("ab");
+        ByteBuffer body = writer.toBuffer();
+        assertEquals(200, body.remaining());
+        pool.release(body);
+        writer = new FormWriter(pool, 8);
+        writer.write("ab");
+        writer.close();
+        assertEquals(1, pool.getPooled());
+    }
+}
@@ -0,0 +1,58 @@
+package com.veridu.buffer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class PooledReaderTest {
+
+    @Test
+    public void testMultiByteCharactersAcrossBufferBoundaries() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 100; i++)
+            builder.append("João 東京 😀 ");
+        String text = builder.toString();
+        for (boolean direct : new boolean[] { false, true }) {
+            BufferPool pool = new BufferPool(7, 2, direct);
+            assertEquals(text, read(new PooledReader(
+                    new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)), pool)));
+            assertEquals(1, pool.getPooled());
+        }
+    }
+
+    @Test
+    public void testEmptyStream() throws IOException {
+        assertEquals("", read(new PooledReader(new ByteArrayInputStream(new byte[0]), BufferPool.shared())));
+    }
+
+    @Test
+    public void testByteBufferInputStreamReleasesOnClose() throws IOException {
+        BufferPool pool = new BufferPool(16, 2, true);
+        ByteBuffer buffer = pool.acquire();
+        buffer.put("body".getBytes(StandardCharsets.UTF_8)).flip();
+        InputStream in = new ByteBufferInputStream(buffer, pool);
+        byte[] bytes = new byte[8];
+        assertEquals(4, in.read(bytes, 0, 8));
+        assertEquals(-1, in.read());
+        in.close();
+        in.close();
+        assertEquals(1, pool.getPooled());
+    }
+
+    private static String read(Reader reader) throws IOException {
+        StringBuilder out = new StringBuilder();
+        char[] chars = new char[5];
+        int n;
+        while ((n = reader.read(chars, 0, chars.length)) != -1)
+            out.append(chars, 0, n);
+        reader.close();
+        return out.toString();
+    }
+}
@@ -0,0 +1,69 @@
+package com.veridu.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.simple.JSONObject;
+import org.junit.Test;
+
+public class HookInvalidatorTest {
+
+    private static ResponseCache cache(long started) {
+        ResponseCache cache = new ResponseCache();
+        cache.setDefaultTtl(60000);
+        cache.put("john profile", "john", "profile", new JSONObject(), started);
+        cache.put("john state", "john", "state", new JSONObject(), started);
+        cache.put("john facts", "john", "facts", new JSONObject(), started);
+        cache.put("jane profile", "jane", "profile", new JSONObject(), started);
+        return cache;
+    }
+
+    @Test
+    public void testTriggerInvalidatesItsFamiliesOfTheUser() throws Exception {
+        long started = System.currentTimeMillis() - 1000;
+        ResponseCache cache = cache(started);
+        HookInvalidator invalidator = new HookInvalidator(cache);
+        final List<String[]> invalidated = new ArrayList<>();
+        invalidator.setListener(new InvalidationListener() {
+            @Override
+            public void onInvalidated(String trigger, String username, String[] families) {
+                invalidated.add(families);
+            }
+        });
+        invalidator.setFamilies("profile", "profile");
+        assertTrue(invalidator.handle("{\"trigger\":\"profile.update\",\"user\":\"john\"}"));
+        long now = System.currentTimeMillis() + 1;
+        assertNull(cache.get("john profile", "profile", now));
+        assertNotNull(cache.get("john state", "state", now));
+        assertNotNull(cache.get("john facts", "facts", now));
+        assertNotNull(cache.get("jane profile", "profile", now));
+        assertEquals(1, invalidated.size());
+        assertArrayEquals(new String[] { "profile" }, invalidated.get(0));
+    }
+
+    @Test
+    public void testUnknownTriggerInvalidatesEveryFamilyOfTheUser() throws Exception {
+        long started = System.currentTimeMillis() - 1000;
+        ResponseCache cache = cache(started);
+        HookInvalidator invalidator = new HookInvalidator(cache);
+        assertNull(invalidator.getFamilies("unknown"));
+        assertTrue(invalidator.handle("{\"trigger\":\"unknown\",\"username\":\"john\"}"));
+        long now = System.currentTimeMillis() + 1;
+        assertNull(cache.get("john profile", "profile", now));
+        assertNull(cache.get("john state", "state", now));
+        assertNull(cache.get("john facts", "facts", now));
+        assertNotNull(cache.get("jane profile", "profile", now));
+        // events without a user change nothing
+        assertFalse(invalidator.handle("{\"trigger\":\"check\"}"));
+        assertFalse(invalidator.handle("[]"));
+        assertEquals(3, invalidator.getEvents());
+        assertEquals(2, invalidator.getIgnored());
+    }
+}
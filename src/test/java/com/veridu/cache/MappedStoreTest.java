@@ -0,0 +1,143 @@
+package com.veridu.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import org.json.simple.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @SuppressWarnings("unchecked")
+    private static JSONObject value(String text) {
+        JSONObject value = new JSONObject();
+        value.put("status", true);
+        value.put("text", text);
+        return value;
+    }
+
+    private static CacheEntry entry(String text, String user, long created) {
+        return new CacheEntry(value(text), user, created, Long.MAX_VALUE);
+    }
+
+    @Test
+    public void testEntriesSurviveReopen() throws Exception {
+        File file = new File(this.folder.getRoot(), "cache.log");
+        MappedStore store = new MappedStore(file, 65536);
+        store.put("a", new CacheEntry(value("a"), "john", 1000, Long.MAX_VALUE, "\"v1\"", null));
+        store.put("b", entry("b", null, 1000));
+        store.put("c", entry("c", "jane", 1000));
+        store.put("d", new CacheEntry(value("d"), null, 1000, 2000));
+        store.remove("b");
+        store.invalidate("jane", 1500);
+        store.close();
+        assertNull(store.get("a"));
+
+        store = new MappedStore(file, 65536);
+        try {
+            CacheEntry entry = store.get("a");
+            assertEquals(value("a"), entry.getValue());
+            assertEquals("john", entry.getUser());
+            assertEquals("\"v1\"", entry.getEtag());
+            // removed, invalidated and expired
+            assertNull(store.get("b"));
+            assertNull(store.get("c"));
+            assertNull(store.get("d"));
+            assertEquals(1, store.size());
+            store.put("c", entry("c2", "jane", 2000));
+            assertEquals(value("c2"), store.get("c").getValue());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testFullLogIsCompacted() throws Exception {
+        File file = new File(this.folder.getRoot(), "cache.log");
+        MappedStore store = new MappedStore(file, 65536);
+        try {
+            for (int i = 0; i < 2000; i++) {
+                store.put("key" + (i % 100), entry("value" + i, null, i));
+                if (i >= 1500)
+                    store.put("new" + i, entry("value" + i, null, i));
+            }
+            assertTrue(store.getCompactions() > 0);
+            assertTrue(store.getUsedBytes() <= store.getMaxBytes());
+            assertTrue(store.getEvictions() > 0);
+            assertTrue(store.size() <= 600);
+            assertEquals(value("value1999"), store.get("key99").getValue());
+            assertEquals(value("value1999"), store.get("new1999").getValue());
+            int size = store.size();
+            store.close();
+            store = new MappedStore(file, 65536);
+            assertEquals(size, store.size());
+            assertEquals(value("value1999"), store.get("new1999").getValue());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testManyInvalidationsDoNotFillTheLog() throws Exception {
+        File file = new File(this.folder.getRoot(), "cache.log");
+        MappedStore store = new MappedStore(file, 65536);
+        try {
+            store.put("old", entry("old", "jane", 0));
+            for (int i = 0; i < 10000; i++) {
+                store.invalidate("user" + i, 1000 + i);
+                if ((i % 1000) == 0)
+                    store.put("key" + i, entry("value" + i, "user" + i, 1000 + i));
+            }
+            assertTrue(store.getCompactions() > 0);
+            assertTrue(store.getUsedBytes() <= store.getMaxBytes());
+            store.put("new", entry("new", "john", 20000));
+            assertEquals(value("new"), store.get("new").getValue());
+            store.invalidate("john", 20000);
+            store.remove("key9000");
+            store.close();
+            // the invalidation kept for the surviving entry still drops it
+            store = new MappedStore(file, 65536);
+            assertNull(store.get("new"));
+            assertNull(store.get("key9000"));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testRecordCutShortIsIgnored() throws Exception {
+        File file = new File(this.folder.getRoot(), "cache.log");
+        MappedStore store = new MappedStore(file, 65536);
+        store.put("a", entry("a", null, 1000));
+        int end = store.getUsedBytes();
+        store.put("b", entry("b", null, 1000));
+        store.close();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(end + 20);
+            int b = raf.read();
+            raf.seek(end + 20);
+            raf.write(b ^ 0xff);
+        } finally {
+            raf.close();
+        }
+
+        store = new MappedStore(file, 65536);
+        try {
+            assertEquals(value("a"), store.get("a").getValue());
+            assertNull(store.get("b"));
+            assertEquals(end, store.getUsedBytes());
+        } finally {
+            store.close();
+        }
+    }
+}
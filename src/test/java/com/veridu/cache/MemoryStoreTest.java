@@ -0,0 +1,62 @@
+package com.veridu.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.json.simple.JSONObject;
+import org.junit.Test;
+
+public class MemoryStoreTest {
+
+    private static CacheEntry entry() {
+        return new CacheEntry(new JSONObject(), null, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Keys falling in the same segment as "a"
+     */
+    private static String[] sameSegment(int count) {
+        String[] keys = new String[count];
+        int segment = segment("a");
+        keys[0] = "a";
+        for (int i = 0, found = 1; found < count; i++) {
+            if (segment("k" + i) == segment)
+                keys[found++] = "k" + i;
+        }
+        return keys;
+    }
+
+    private static int segment(String key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & 15;
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        // two entries per segment
+        MemoryStore store = new MemoryStore(32);
+        String[] keys = sameSegment(3);
+        store.put(keys[0], entry());
+        store.put(keys[1], entry());
+        assertNotNull(store.get(keys[0]));
+        store.put(keys[2], entry());
+        assertNull(store.get(keys[1]));
+        assertNotNull(store.get(keys[0]));
+        assertNotNull(store.get(keys[2]));
+        assertEquals(1, store.getEvictions());
+    }
+
+    @Test
+    public void testSizeIsBounded() {
+        MemoryStore store = new MemoryStore(64);
+        for (int i = 0; i < 1000; i++)
+            store.put("key" + i, entry());
+        assertTrue(store.size() <= 64);
+        assertEquals(1000 - store.size(), store.getEvictions());
+        assertNotNull(store.get("key999"));
+        store.clear();
+        assertEquals(0, store.size());
+    }
+}
@@ -0,0 +1,100 @@
+package com.veridu.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.junit.Test;
+
+public class OffHeapStoreTest {
+
+    @SuppressWarnings("unchecked")
+    private static JSONObject value(String text) {
+        JSONObject value = new JSONObject();
+        value.put("status", true);
+        value.put("text", text);
+        return value;
+    }
+
+    private static CacheEntry entry(String text) {
+        return new CacheEntry(value(text), null, 0, Long.MAX_VALUE);
+    }
+
+    private static int segment(String key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & 15;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testEntriesRoundTrip() {
+        OffHeapStore store = new OffHeapStore(1 << 20);
+        JSONObject nested = new JSONObject();
+        nested.put("score", 0.75);
+        nested.put("missing", null);
+        JSONArray list = new JSONArray();
+        list.add(-42L);
+        list.add(Long.MAX_VALUE);
+        list.add("ação ✓");
+        list.add(nested);
+        JSONObject value = value("john");
+        value.put("list", list);
+        value.put("empty", new JSONObject());
+        store.put("a", new CacheEntry(value, "john", 1000, 2000, "\"v1\"", "Mon, 01 Jan 2024 00:00:00 GMT"));
+        CacheEntry entry = store.get("a");
+        assertEquals(value, entry.getValue());
+        assertSame(entry.getValue(), entry.getValue());
+        assertEquals("john", entry.getUser());
+        assertEquals(1000, entry.getCreated());
+        assertEquals(2000, entry.getExpires());
+        assertEquals("\"v1\"", entry.getEtag());
+        assertEquals("Mon, 01 Jan 2024 00:00:00 GMT", entry.getLastModified());
+        store.put("a", entry("jane"));
+        assertEquals(value("jane"), store.get("a").getValue());
+        assertNull(store.get("a").getUser());
+        assertEquals(1, store.size());
+        store.remove("a");
+        assertNull(store.get("a"));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void testBytesAreBounded() {
+        OffHeapStore store = new OffHeapStore(64 * 1024, 1024);
+        for (int i = 0; i < 5000; i++)
+            store.put("key" + i, entry("value" + i));
+        assertTrue(store.getUsedBytes() <= store.getMaxBytes());
+        assertEquals(5000, store.size() + store.getEvictions());
+        assertEquals(value("value4999"), store.get("key4999").getValue());
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 2000; i++)
+            large.append('x');
+        store.put("key4999", entry(large.toString()));
+        assertNull(store.get("key4999"));
+        assertEquals(1, store.getRejected());
+        store.clear();
+        assertEquals(0, store.size());
+        assertEquals(0, store.getUsedBytes());
+    }
+
+    @Test
+    public void testEntriesInUseSurviveEviction() {
+        OffHeapStore store = new OffHeapStore(64 * 1024, 1024);
+        store.put("a", entry("hot"));
+        int segment = segment("a");
+        // enough entries of the same segment to refill all of its slabs
+        for (int i = 0, found = 0; found < 500; i++) {
+            if (segment("k" + i) != segment)
+                continue;
+            found++;
+            store.put("k" + i, entry("cold" + i));
+            assertNotNull(store.get("a"));
+        }
+        assertEquals(value("hot"), store.get("a").getValue());
+        assertTrue(store.getEvictions() > 0);
+    }
+}
@@ -0,0 +1,115 @@
+package com.veridu.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.json.simple.JSONObject;
+import org.junit.Test;
+
+public class ResponseCacheTest {
+
+    @Test
+    public void testEntriesExpireWithTheirFamilyTtl() {
+        ResponseCache cache = new ResponseCache();
+        cache.setTtl("profile", 1000);
+        JSONObject value = new JSONObject();
+        cache.put("a", "john", "profile", value, 10000);
+        cache.put("b", "john", "state", value, 10000);
+        assertSame(value, cache.get("a", "profile", 10999).getValue());
+        assertNull(cache.get("a", "profile", 11000));
+        assertNull(cache.get("b", "state", 10000));
+        assertEquals(1, cache.getStats().getHits());
+        assertEquals(2, cache.getStats().getMisses());
+        assertEquals(0, cache.getStats().getEntries());
+    }
+
+    @Test
+    public void testInvalidationDropsEntriesFetchedBefore() {
+        ResponseCache cache = new ResponseCache();
+        cache.put("john", "john", "details", new JSONObject(), 1000);
+        cache.put("jane", "jane", "details", new JSONObject(), 1000);
+        cache.invalidate("john", 2000);
+        assertNull(cache.get("john", "details", 3000));
+        assertNotNull(cache.get("jane", "details", 3000));
+        // a response whose call started before the change is not kept
+        cache.put("john", "john", "details", new JSONObject(), 1500);
+        assertNull(cache.get("john", "details", 3000));
+        cache.put("john", "john", "details", new JSONObject(), 2500);
+        assertEquals(new JSONObject(), cache.get("john", "details", 3000).getValue());
+    }
+
+    @Test
+    public void testExpiredEntryWithValidatorsIsKeptForRevalidation() {
+        ResponseCache cache = new ResponseCache();
+        cache.setTtl("profile", 1000);
+        JSONObject value = new JSONObject();
+        cache.put("a", "john", "profile", value, 10000, "\"v1\"", null);
+        CacheEntry stale = cache.get("a", "profile", 20000);
+        assertEquals("\"v1\"", stale.getEtag());
+        assertTrue(stale.isExpired(20000));
+        cache.revalidated("a", "profile", stale, 20000, null);
+        CacheEntry renewed = cache.get("a", "profile", 20500);
+        assertSame(value, renewed.getValue());
+        assertFalse(renewed.isExpired(20500));
+        assertEquals("\"v1\"", renewed.getEtag());
+        assertEquals(1, cache.getStats().getHits());
+        assertEquals(1, cache.getStats().getMisses());
+        assertEquals(1, cache.getStats().getRevalidations());
+    }
+
+    @Test
+    public void testStaleEntryIsRefreshedOnceAtBoundedRate() {
+        ResponseCache cache = new ResponseCache();
+        cache.setTtl("profile", 1000);
+        cache.setStaleTtl("profile", 5000);
+        final List<Runnable> queued = new ArrayList<>();
+        cache.setRefreshExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                queued.add(command);
+            }
+        });
+        cache.setRefreshLimit(1, 2);
+        cache.put("a", "john", "profile", new JSONObject(), 10000);
+        CacheEntry entry = cache.get("a", "profile", 12000);
+        assertTrue(entry.isExpired(12000));
+        assertTrue(cache.isServable(entry, "profile", 12000));
+        assertNull(cache.get("a", "profile", 16000));
+        Runnable nothing = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+        assertTrue(cache.refresh("a", "profile", nothing));
+        assertFalse(cache.refresh("a", "profile", nothing));
+        queued.get(0).run();
+        assertTrue(cache.refresh("a", "profile", nothing));
+        // the rate limit is spent
+        assertFalse(cache.refresh("b", "profile", nothing));
+        assertEquals(1, cache.getStats().getStale());
+        assertEquals(2, cache.getStats().getRefreshes());
+    }
+
+    @Test
+    public void testKeysFollowScopeAndUserIsSecondSegment() {
+        ResponseCache cache = new ResponseCache();
+        String url = "https://api.veridu.com/0.3/profile/john";
+        assertFalse(cache.key("client", "s1", url, null).equals(cache.key("client", "s2", url, null)));
+        cache.setScope(CacheScope.CLIENT);
+        assertEquals(cache.key("client", "s1", url, null), cache.key("client", "s2", url, null));
+        assertFalse(cache.key("client", "s1", url, "filter=kba").equals(cache.key("client", "s1", url, null)));
+        assertEquals("john", ResponseCache.user("profile/john"));
+        assertEquals("john", ResponseCache.user("/user/john/email/score"));
+        assertEquals("john", ResponseCache.user("badge/john?type=x"));
+        assertNull(ResponseCache.user("credential"));
+        assertNull(ResponseCache.user("lookup?postcode=1"));
+    }
+}
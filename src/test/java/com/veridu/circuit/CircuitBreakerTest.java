@@ -0,0 +1,110 @@
+package com.veridu.circuit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+    CircuitBreakers breakers;
+
+    @Before
+    public void setUp() {
+        this.breakers = new CircuitBreakers();
+        this.breakers.setWindowSize(10);
+        this.breakers.setMinimumCalls(4);
+        this.breakers.setSlowCallDuration(100);
+        this.breakers.setOpenDuration(50);
+        this.breakers.setProbes(2);
+    }
+
+    @Test
+    public void testFamily() {
+        assertEquals("profile", CircuitBreakers.family("profile/john"));
+        assertEquals("check", CircuitBreakers.family("/check/john/tracesmart"));
+        assertEquals("batch", CircuitBreakers.family("batch"));
+        assertEquals("user", CircuitBreakers.family("user?filter=all"));
+    }
+
+    @Test
+    public void testOpensOnFailureRate() {
+        CircuitBreaker breaker = this.breakers.get("profile");
+        call(breaker, 0, false);
+        call(breaker, 0, true);
+        call(breaker, 0, false);
+        assertEquals(CircuitState.CLOSED, breaker.getState());
+        call(breaker, 0, true);
+        assertEquals(CircuitState.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+        CircuitStats stats = this.breakers.getStats().get("profile");
+        assertEquals(1, stats.getOpened());
+        assertEquals(1, stats.getRejected());
+        assertEquals(CircuitState.CLOSED, this.breakers.get("check").getState());
+    }
+
+    @Test
+    public void testOpensOnSlowCallRate() {
+        CircuitBreaker breaker = this.breakers.get("check");
+        for (int i = 0; i < 3; i++)
+            call(breaker, 150, false);
+        assertEquals(CircuitState.CLOSED, breaker.getState());
+        call(breaker, 150, false);
+        assertEquals(CircuitState.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void testSlidingWindowForgetsOldFailures() {
+        CircuitBreaker breaker = this.breakers.get("otp");
+        for (int i = 0; i < 3; i++)
+            call(breaker, 0, false);
+        call(breaker, 0, true);
+        for (int i = 0; i < 9; i++)
+            call(breaker, 0, false);
+        call(breaker, 0, true);
+        call(breaker, 0, true);
+        call(breaker, 0, true);
+        assertEquals(CircuitState.CLOSED, breaker.getState());
+        assertEquals(30.0, breaker.getStats().getFailureRate(), 0.01);
+    }
+
+    @Test
+    public void testHalfOpenProbesCloseTheBreaker() throws InterruptedException {
+        CircuitBreaker breaker = tripped();
+        Thread.sleep(60);
+        assertEquals(CircuitState.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+        breaker.record(0, false);
+        breaker.record(0, false);
+        assertEquals(CircuitState.CLOSED, breaker.getState());
+        assertEquals(0, breaker.getStats().getCalls());
+    }
+
+    @Test
+    public void testFailedProbeReopens() throws InterruptedException {
+        CircuitBreaker breaker = tripped();
+        Thread.sleep(60);
+        assertTrue(breaker.tryAcquire());
+        breaker.record(0, true);
+        assertEquals(CircuitState.OPEN, breaker.getState());
+        assertEquals(2, breaker.getStats().getOpened());
+        breaker.reset();
+        assertEquals(CircuitState.CLOSED, breaker.getState());
+    }
+
+    private CircuitBreaker tripped() {
+        CircuitBreaker breaker = this.breakers.get("batch");
+        for (int i = 0; i < 4; i++)
+            call(breaker, 0, true);
+        assertEquals(CircuitState.OPEN, breaker.getState());
+        return breaker;
+    }
+
+    private static void call(CircuitBreaker breaker, long duration, boolean failed) {
+        assertTrue(breaker.tryAcquire());
+        breaker.record(duration, failed);
+    }
+}
@@ -0,0 +1,89 @@
+package com.veridu.coalesce;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import com.veridu.exceptions.APIError;
+import com.veridu.exceptions.RequestFailed;
+import com.veridu.exceptions.SDKException;
+
+public class SingleFlightTest {
+
+    @Test
+    public void testFollowersShareLeaderResult() throws Exception {
+        final SingleFlight flights = new SingleFlight();
+        final Flight flight = flights.join("a");
+        assertTrue(flight.isLeader());
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Callable<Object> follower = new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    Flight joined = flights.join("a");
+                    assertSame(flight, joined);
+                    assertFalse(joined.isLeader());
+                    return joined.await();
+                }
+            };
+            Future<Object> first = executor.submit(follower);
+            Future<Object> second = executor.submit(follower);
+            while (flights.getStats().getHits() < 2)
+                Thread.sleep(1);
+            Object result = new Object();
+            flight.complete(result);
+            flight.land();
+            assertSame(result, first.get());
+            assertSame(result, second.get());
+        } finally {
+            executor.shutdown();
+        }
+        CoalescingStats stats = flights.getStats();
+        assertEquals(1, stats.getCalls());
+        assertEquals(2, stats.getHits());
+        assertEquals(1, stats.getCollapses());
+        assertEquals(0, stats.getInFlight());
+    }
+
+    @Test
+    public void testFailureIsShared() {
+        SingleFlight flights = new SingleFlight();
+        Flight flight = flights.join("a");
+        Flight joined = flights.join("a");
+        APIError failure = new APIError("Not found");
+        flight.fail(failure);
+        flight.land();
+        try {
+            joined.await();
+            throw new AssertionError("await must throw the leader's failure");
+        } catch (SDKException e) {
+            assertSame(failure, e);
+        }
+    }
+
+    @Test
+    public void testLandedFlightIsNotJoined() throws SDKException {
+        SingleFlight flights = new SingleFlight();
+        Flight flight = flights.join("a");
+        Flight other = flights.join("b");
+        assertNotSame(flight, other);
+        flight.land();
+        try {
+            flight.await();
+            throw new AssertionError("a flight landing without outcome must fail its waiters");
+        } catch (RequestFailed e) {
+            // expected
+        }
+        assertNotSame(flight, flights.join("a"));
+        assertEquals(3, flights.getStats().getCalls());
+    }
+}
@@ -6,20 +6,40 @@ import static org.easymock.EasyMock.isA;
 import static org.easymock.EasyMock.replay;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.net.ConnectException;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.security.SignatureException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.easymock.EasyMock;
 import org.json.simple.JSONObject;
@@ -30,22 +50,41 @@ import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.powermock.api.easymock.PowerMock;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 import org.powermock.reflect.internal.WhiteboxImpl;
 
+import com.veridu.async.AsyncResult;
+import com.veridu.cache.ResponseCache;
+import com.veridu.circuit.CircuitBreakers;
+import com.veridu.circuit.CircuitState;
+import com.veridu.coalesce.SingleFlight;
 import com.veridu.exceptions.APIError;
+import com.veridu.exceptions.CircuitOpen;
 import com.veridu.exceptions.EmptyResponse;
 import com.veridu.exceptions.InvalidFormat;
 import com.veridu.exceptions.InvalidResponse;
 import com.veridu.exceptions.NonceMismatch;
+import com.veridu.exceptions.RateLimited;
 import com.veridu.exceptions.RequestFailed;
 import com.veridu.exceptions.SignatureFailed;
+import com.veridu.hedge.HedgePolicy;
+import com.veridu.ratelimit.AcquireMode;
+import com.veridu.ratelimit.RateLimiter;
+import com.veridu.retry.RetryPolicy;
 import com.veridu.signature.Signature;
 import com.veridu.storage.Storage;
+import com.veridu.transport.HttpRequest;
+import com.veridu.transport.HttpResponse;
+import com.veridu.transport.LegacyTransport;
+import com.veridu.transport.PooledTransport;
+import com.veridu.transport.StubServer;
+import com.veridu.transport.Transport;
 
 @RunWith(PowerMockRunner.class)
-@PrepareForTest(AbstractEndpoint.class)
+@PrepareForTest({ AbstractEndpoint.class, LegacyTransport.class })
+@PowerMockIgnore({ "com.sun.net.httpserver.*", "sun.net.httpserver.*" })
 public class AbstractEndpointTest {
     String key = "key";
     String secret = "secret";
@@ -62,6 +101,27 @@ public class AbstractEndpointTest {
         endpoint.storage.purgeSession();
         endpoint.storage.setSessionToken("token");
         endpoint.storage.setUsername("username");
+        endpoint.setCircuitBreakers(new CircuitBreakers());
+        endpoint.setRateLimiter(new RateLimiter());
+        endpoint.setSingleFlight(new SingleFlight());
+        endpoint.setHedgePolicy(new HedgePolicy());
+        endpoint.setResponseCache(new ResponseCache());
+        return endpoint;
+    }
+
+    public AbstractEndpoint setUp(final String body) {
+        AbstractEndpoint endpoint = setUp();
+        endpoint.setTransport(new Transport() {
+            @Override
+            public HttpResponse execute(HttpRequest request) {
+                return new HttpResponse(200, new HashMap<String, List<String>>(),
+                        new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), null);
+            }
+
+            @Override
+            public void close() {
+            }
+        });
         return endpoint;
     }
 
@@ -69,53 +129,562 @@ public class AbstractEndpointTest {
     public void testFetchAPIError() throws InvalidResponse, RequestFailed, EmptyResponse, InvalidFormat, APIError {
         expectedEx.expect(APIError.class);
         expectedEx.expectMessage("Session token is invalid");
-        AbstractEndpoint endpoint = setUp();
-        expect(endpoint.request(isA(String.class), isA(String.class), isA(String.class)))
-                .andReturn("{\"status\":false,\"error\":{\"code\":400,\"type\":\"SESSION_TOKEN_INVALID\","
+        AbstractEndpoint endpoint = setUp("{\"status\":false,\"error\":{\"code\":400,\"type\":\"SESSION_TOKEN_INVALID\","
                         + "\"message\":\"Session token is invalid.\"}}");
-        replay(endpoint);
         endpoint.fetch("GET", "test/user", "");
     }
 
     @Test(expected = EmptyResponse.class)
     public void testFetchEmptyResponse() throws RequestFailed, EmptyResponse, InvalidFormat, InvalidResponse, APIError {
-        AbstractEndpoint endpoint = setUp();
-        expect(endpoint.request(isA(String.class), isA(String.class), isA(String.class))).andReturn("");
-        replay(endpoint);
+        AbstractEndpoint endpoint = setUp("");
         endpoint.fetch("GET", "test/user", "");
     }
 
     @Test(expected = InvalidFormat.class)
     public void testFetchInvalidFormat() throws InvalidResponse, RequestFailed, EmptyResponse, InvalidFormat, APIError {
-        AbstractEndpoint endpoint = setUp();
-        expect(endpoint.request(isA(String.class), isA(String.class), isA(String.class)))
-                .andReturn("Response (on invalid format)");
-        replay(endpoint);
+        AbstractEndpoint endpoint = setUp("Response (on invalid format)");
         endpoint.fetch("GET", "test/user", "");
     }
 
     @Test(expected = InvalidResponse.class)
     public void testFetchInvalidResponse()
             throws InvalidResponse, RequestFailed, EmptyResponse, InvalidFormat, InvalidResponse, APIError {
-        AbstractEndpoint endpoint = setUp();
-        expect(endpoint.request(isA(String.class), isA(String.class), isA(String.class)))
-                .andReturn("{\"expires\":1455540581,\"token\":\"token\"}");
-        replay(endpoint);
+        AbstractEndpoint endpoint = setUp("{\"expires\":1455540581,\"token\":\"token\"}");
         endpoint.fetch("GET", "test/user", "");
     }
 
     @Test
     public void testFetchValidResponse()
             throws EmptyResponse, InvalidFormat, InvalidResponse, APIError, RequestFailed, ParseException {
-        AbstractEndpoint endpoint = setUp();
-        expect(endpoint.request(isA(String.class), isA(String.class), isA(String.class)))
-                .andReturn("{\"expires\":1455540581,\"status\":true,\"token\":\"token\"}");
-        replay(endpoint);
+        AbstractEndpoint endpoint = setUp("{\"expires\":1455540581,\"status\":true,\"token\":\"token\"}");
         JSONParser parser = new JSONParser();
         JSONObject json = (JSONObject) parser.parse("{\"expires\":1455540581,\"status\":true,\"token\":\"token\"}");
         assertEquals(json, endpoint.fetch("GET", "test/user", ""));
     }
 
+    @Test
+    public void testFetchDecodesUtf8() throws Exception {
+        AbstractEndpoint endpoint = setUp("{\"status\":true,\"name\":\"Jo\u00e3o \u00c7\u00e9sar \u4e2d\"}");
+        assertEquals("Jo\u00e3o \u00c7\u00e9sar \u4e2d", endpoint.fetch("GET", "test/user", "").get("name"));
+    }
+
+    @Test(expected = InvalidFormat.class)
+    public void testFetchNonObjectIsInvalidFormat() throws Exception {
+        setUp("[1,2]").fetch("GET", "test/user", "");
+    }
+
+    @Test(expected = RequestFailed.class)
+    public void testFetchTransportFailure() throws Exception {
+        AbstractEndpoint endpoint = setUp();
+        endpoint.setTransport(new Transport() {
+            @Override
+            public HttpResponse execute(HttpRequest request) throws IOException {
+                throw new IOException("Connection refused");
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        endpoint.fetch("GET", "test/user", "");
+    }
+
+    @Test
+    public void testFetchRetriesServerErrors() throws Exception {
+        AbstractEndpoint endpoint = setUp();
+        Scripted transport = new Scripted(endpoint);
+        transport.reply(503, null, "{\"status\":false,\"error\":{\"message\":\"Unavailable\"}}");
+        transport.reply(502, null, "<html>Bad Gateway</html>");
+        transport.reply(200, null, "{\"status\":true}");
+        assertEquals(true, endpoint.fetch("GET", "test/user", "").get("status"));
+        assertEquals(3, transport.requests.size());
+        assertEquals(2, endpoint.getRetryPolicy().getRetries());
+    }
+
+    @Test
+    public void testFetchDoesNotRepeatPostAfterServerError() throws Exception {
+        AbstractEndpoint endpoint = setUp();
+        Scripted transport = new Scripted(endpoint);
+        transport.reply(503, null, "{\"status\":false,\"error\":{\"message\":\"Unavailable\"}}");
+        transport.reply(200, null, "{\"status\":true}");
+        try {
+            endpoint.fetch("POST", "test/user", "a=1");
+            throw new AssertionError("POST must not be retried");
+        } catch (APIError e) {
+            assertEquals(1, transport.requests.size());
+        }
+    }
+
+    @Test
+    public void testFetchRetriesPostThatNeverReachedTheServer() throws Exception {
+        AbstractEndpoint endpoint = setUp();
+        Scripted transport = new Scripted(endpoint);
+        transport.fail(new ConnectException("Connection refused"));
+        transport.reply(429, "0", "{\"status\":false,\"error\":{\"message\":\"Too many requests\"}}");
+        transport.reply(200, null, "{\"status\":true}");
+        assertEquals(true, endpoint.fetch("POST", "test/user", "a=1").get("status"));
+        assertEquals(3, transport.requests.size());
+    }
+
+    @Test
+    public void testFetchRetriesInvalidSessionToken() throws Exception {
+        AbstractEndpoint endpoint = setUp();
+        Scripted transport = new Scripted(endpoint);
+        transport.reply(400, null, "{\"status\":false,\"error\":{\"code\":400,\"type\":\"SESSION_TOKEN_INVALID\","
+                + "\"message\":\"Session token is invalid.\"}}");
+        transport.reply(200, null, "{\"status\":true}");
+        endpoint.storage.setSessionToken("renewed");
+        assertEquals(true, endpoint.fetch("POST", "test/user", "a=1").get("status"));
+        assertEquals("renewed", transport.requests.get(1).getHeaders().get("Veridu-Session"));
+    }
+
+    @Test
+    public void testFetchAPIErrorCarriesTypeAndCode() throws Exception {
+        AbstractEndpoint endpoint = setUp("{\"status\":false,\"error\":{\"code\":404,\"type\":\"NOT_FOUND\","
+                + "\"message\":\"Not found.\"}}");
+        try {
+            endpoint.fetch("GET", "test/user", "");
+            throw new AssertionError("fetch must fail");
+        } catch (APIError e) {
+            assertEquals("NOT_FOUND", e.getType());
+            assertEquals(404, e.getCode());
+        }
+    }
+
+    @Test
+    public void testSignedFetchSignsEveryAttempt() throws Exception {
+        AbstractEndpoint endpoint = EasyMock.createMockBuilder(AbstractEndpoint.class).addMockedMethod("generateNonce")
+                .addMockedMethod("fetch", String.class, String.class, String.class).createMock();
+        endpoint.setRetryPolicy(fastRetries());
+        endpoint.signature = this.signature;
+        JSONObject json = (JSONObject) new JSONParser().parse("{\"status\":true,\"nonce\":\"nonce2\"}");
+        expect(endpoint.generateNonce()).andReturn("nonce1");
+        expect(endpoint.generateNonce()).andReturn("nonce2");
+        expect(endpoint.signature.signRequest("GET", "test/user", "nonce1")).andReturn("signature1");
+        expect(endpoint.signature.signRequest("GET", "test/user", "nonce2")).andReturn("signature2");
+        expect(endpoint.fetch("GET", "test/user", "signature1"))
+                .andThrow(new RequestFailed("Connection refused", new ConnectException()));
+        expect(endpoint.fetch("GET", "test/user", "signature2")).andReturn(json);
+        replay(endpoint, this.signature);
+        assertEquals(json, endpoint.signedFetch("GET", "test/user", ""));
+        EasyMock.verify(endpoint, this.signature);
+    }
+
+    @Test
+    public void testOpenCircuitFailsFast() throws Exception {
+        AbstractEndpoint endpoint = setUp();
+        Scripted transport = new Scripted(endpoint);
+        endpoint.setRetryPolicy(RetryPolicy.none());
+        endpoint.getCircuitBreakers().setMinimumCalls(2);
+        for (int i = 0; i < 2; i++) {
+            transport.reply(503, null, "{\"status\":false,\"error\":{\"message\":\"Unavailable\"}}");
+            try {
+                endpoint.fetch("GET", "profile/user", "");
+            } catch (APIError e) {
+                // counted as a failure
+            }
+        }
+        assertEquals(CircuitState.OPEN, endpoint.getCircuitBreakers().getStats().get("profile").getState());
+        try {
+            endpoint.fetch("GET", "profile/user", "");
+            throw new AssertionError("fetch must fail fast");
+        } catch (CircuitOpen e) {
+            assertEquals(2, transport.requests.size());
+        }
+        transport.reply(404, null, "{\"status\":false,\"error\":{\"message\":\"Not found\"}}");
+        try {
+            endpoint.fetch("GET", "check/user", "");
+        } catch (APIError e) {
+            assertEquals(3, transport.requests.size());
+        }
+    }
+
+    @Test
+    public void testSpentRateLimitHoldsCallsBack() throws Exception {
+        AbstractEndpoint endpoint = setUp();
+        Scripted transport = new Scripted(endpoint);
+        endpoint.getRateLimiter().setMode(AcquireMode.FAIL_FAST);
+        Map<String, List<String>> headers = new HashMap<>();
+        headers.put("x-ratelimit-limit", Arrays.asList("100"));
+        headers.put("x-ratelimit-remaining", Arrays.asList("0"));
+        headers.put("x-ratelimit-reset", Arrays.asList("60"));
+        transport.replyWith(200, headers, "{\"status\":true}");
+        endpoint.fetch("GET", "profile/user", "");
+        try {
+            endpoint.fetch("GET", "profile/user", "");
+            throw new AssertionError("fetch must be held back");
+        } catch (RateLimited e) {
+            assertEquals(1, transport.requests.size());
+        }
+        assertTrue(endpoint.fetchAsync("GET", "profile/user").isFailed());
+        assertEquals(1, transport.requests.size());
+        assertEquals(2, endpoint.getRateLimiter().getStats().get("").getRejected());
+        assertEquals(100, endpoint.getRateLimiter().getStats().get("").getLimit());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testConcurrentGetsShareOneCall() throws Exception {
+        final AbstractEndpoint endpoint = setUp();
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+        endpoint.setTransport(new Transport() {
+            @Override
+            public HttpResponse execute(HttpRequest request) throws IOException {
+                calls.incrementAndGet();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return new HttpResponse(200, new HashMap<String, List<String>>(),
+                        new ByteArrayInputStream("{\"status\":true,\"user\":{\"name\":\"u\"}}".getBytes(StandardCharsets.UTF_8)),
+                        null);
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        List<AsyncResult<JSONObject>> gets = new ArrayList<>();
+        for (int i = 0; i < 4; i++)
+            gets.add(endpoint.fetchAsync("GET", "profile/u"));
+        while ((endpoint.getSingleFlight().getStats().getHits() < 3))
+            Thread.sleep(1);
+        AsyncResult<JSONObject> post = endpoint.fetchAsync("POST", "profile/u");
+        while (calls.get() < 2)
+            Thread.sleep(1);
+        release.countDown();
+        for (AsyncResult<JSONObject> get : gets) {
+            JSONObject user = (JSONObject) get.get().get("user");
+            assertEquals("u", user.get("name"));
+            user.put("name", "changed");
+        }
+        post.get();
+        assertEquals(2, calls.get());
+        assertEquals(1, endpoint.getSingleFlight().getStats().getCollapses());
+        assertNotSame(gets.get(0).get(), gets.get(1).get());
+        assertNotSame(gets.get(0).get().get("user"), gets.get(1).get().get("user"));
+    }
+
+    @Test
+    public void testCachedGetIsServedUntilUserChanges() throws Exception {
+        AbstractEndpoint endpoint = setUp();
+        endpoint.getResponseCache().setEnabled(true);
+        Scripted transport = new Scripted(endpoint);
+        transport.reply(200, null, "{\"status\":true,\"details\":1}");
+        transport.reply(200, null, "{\"status\":true}");
+        transport.reply(200, null, "{\"status\":true,\"details\":2}");
+        transport.reply(200, null, "{\"status\":true,\"state\":1}");
+        transport.reply(200, null, "{\"status\":true,\"state\":2}");
+        JSONObject first = endpoint.fetch("GET", "details/username");
+        JSONObject second = endpoint.fetch("GET", "details/username");
+        assertEquals(1L, second.get("details"));
+        assertNotSame(first, second);
+        assertEquals(1, transport.requests.size());
+        endpoint.fetch("POST", "personal/username", "first=John");
+        assertEquals(2L, endpoint.fetch("GET", "details/username").get("details"));
+        // state is not a cached family
+        endpoint.fetch("GET", "state/username");
+        assertEquals(2L, endpoint.fetch("GET", "state/username").get("state"));
+        assertEquals(5, transport.requests.size());
+        assertEquals(1, endpoint.getResponseCache().getStats().getHits());
+        assertEquals(2, endpoint.getResponseCache().getStats().getMisses());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testChangingNestedMembersLeavesCachedResponse() throws Exception {
+        AbstractEndpoint endpoint = setUp();
+        endpoint.getResponseCache().setEnabled(true);
+        Scripted transport = new Scripted(endpoint);
+        transport.reply(200, null, "{\"status\":true,\"details\":{\"name\":\"John\"},\"list\":[{\"id\":1}]}");
+        JSONObject missed = endpoint.fetch("GET", "details/username");
+        ((JSONObject) missed.get("details")).put("name", "Changed");
+        JSONObject hit = endpoint.fetch("GET", "details/username");
+        assertEquals("John", ((JSONObject) hit.get("details")).get("name"));
+        ((JSONObject) ((List<Object>) hit.get("list")).get(0)).put("id", 2L);
+        ((List<Object>) hit.get("list")).clear();
+        JSONObject again = endpoint.fetch("GET", "details/username");
+        assertEquals("John", ((JSONObject) again.get("details")).get("name"));
+        assertEquals(1L, ((JSONObject) ((List<Object>) again.get("list")).get(0)).get("id"));
+        assertEquals(1, transport.requests.size());
+    }
+
+    @Test
+    public void testNotFoundIsCachedUntilUserIsCreated() throws Exception {
+        AbstractEndpoint endpoint = setUp();
+        endpoint.getResponseCache().setEnabled(true);
+        Scripted transport = new Scripted(endpoint);
+        String notFound = "{\"status\":false,\"error\":{\"code\":404,\"type\":\"NOT_FOUND\",\"message\":\"No user\"}}";
+        transport.reply(404, null, notFound);
+        transport.reply(200, null, "{\"status\":true}");
+        transport.reply(200, null, "{\"status\":true,\"profile\":1}");
+        for (int i = 0; i < 2; i++) {
+            try {
+                endpoint.fetch("GET", "profile/ghost");
+                fail("APIError expected");
+            } catch (APIError e) {
+                assertEquals("NOT_FOUND", e.getType());
+                assertEquals("No user", e.getMessage());
+                assertEquals(404, e.getCode());
+            }
+        }
+        assertEquals(1, transport.requests.size());
+        assertEquals(1, endpoint.getResponseCache().getStats().getErrors());
+        endpoint.fetch("POST", "user/ghost/");
+        assertEquals(1L, endpoint.fetch("GET", "profile/ghost").get("profile"));
+        assertEquals(3, transport.requests.size());
+    }
+
+    @Test
+    public void testStaleEntryIsServedWhileRefreshed() throws Exception {
+        AbstractEndpoint endpoint = setUp();
+        ResponseCache cache = endpoint.getResponseCache();
+        cache.setEnabled(true);
+        cache.setTtl("state", 50);
+        cache.setStaleTtl("state", 60000);
+        cache.setRefreshExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        Scripted transport = new Scripted(endpoint);
+        transport.reply(200, null, "{\"status\":true,\"state\":1}");
+        transport.reply(200, null, "{\"status\":true,\"state\":2}");
+        endpoint.fetch("GET", "state/username");
+        Thread.sleep(60);
+        // served at once, refreshed behind the caller's back
+        assertEquals(1L, endpoint.fetch("GET", "state/username").get("state"));
+        assertEquals(2, transport.requests.size());
+        assertEquals(2L, endpoint.fetch("GET", "state/username").get("state"));
+        assertEquals(2, transport.requests.size());
+        assertEquals(1, cache.getStats().getStale());
+        assertEquals(1, cache.getStats().getRefreshes());
+    }
+
+    @Test
+    public void testExpiredEntryIsRevalidatedWithConditionalGet() throws Exception {
+        final StubServer server = new StubServer().etag("\"v1\"").respond(200, "{\"status\":true,\"details\":1}");
+        final PooledTransport pooled = new PooledTransport();
+        try {
+            AbstractEndpoint endpoint = setUp();
+            endpoint.setTransport(new Transport() {
+                @Override
+                public HttpResponse execute(HttpRequest request) throws IOException {
+                    String path = request.getUrl().substring(AbstractEndpoint.BASE_URL.length() - 1);
+                    HttpRequest local = new HttpRequest(request.getMethod(), server.url(path));
+                    for (Map.Entry<String, String> header : request.getHeaders().entrySet())
+                        local.setHeader(header.getKey(), header.getValue());
+                    return pooled.execute(local);
+                }
+
+                @Override
+                public void close() {
+                }
+            });
+            ResponseCache cache = endpoint.getResponseCache();
+            cache.setEnabled(true);
+            cache.setTtl("details", 1);
+            endpoint.fetch("GET", "details/username");
+            Thread.sleep(5);
+            assertEquals(1L, endpoint.fetch("GET", "details/username").get("details"));
+            assertEquals("\"v1\"", server.getLastRequestHeader("If-None-Match"));
+            assertEquals(1, server.getNotModified());
+            assertEquals(1, cache.getStats().getRevalidations());
+            // a changed resource comes with its new body
+            server.etag("\"v2\"").respond(200, "{\"status\":true,\"details\":2}");
+            Thread.sleep(5);
+            assertEquals(2L, endpoint.fetch("GET", "details/username").get("details"));
+            assertEquals(1, server.getNotModified());
+            assertEquals(3, server.getRequests());
+        } finally {
+            pooled.close();
+            server.stop();
+        }
+    }
+
+    /**
+     * Transport whose first request hangs until it is aborted
+     */
+    private static final class Hanging implements Transport {
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicInteger aborted = new AtomicInteger();
+        volatile Thread first = null;
+
+        @Override
+        public HttpResponse execute(HttpRequest request) throws IOException {
+            if (this.calls.incrementAndGet() == 1) {
+                this.first = Thread.currentThread();
+                final CountDownLatch closed = new CountDownLatch(1);
+                request.attach(new Closeable() {
+                    @Override
+                    public void close() {
+                        closed.countDown();
+                    }
+                });
+                try {
+                    closed.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                this.aborted.incrementAndGet();
+                throw new IOException("Socket closed");
+            }
+            return new HttpResponse(200, new HashMap<String, List<String>>(),
+                    new ByteArrayInputStream("{\"status\":true}".getBytes(StandardCharsets.UTF_8)), null);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static HedgePolicy hedgeAlways(AbstractEndpoint endpoint) {
+        HedgePolicy policy = endpoint.getHedgePolicy();
+        for (int i = 0; i < policy.getMinSamples(); i++)
+            policy.record("details", 20);
+        policy.setEnabled(true);
+        policy.setBudgetPercent(100);
+        return policy;
+    }
+
+    @Test
+    public void testSlowGetIsHedgedAndLoserAborted() throws Exception {
+        AbstractEndpoint endpoint = setUp();
+        Hanging transport = new Hanging();
+        endpoint.setTransport(transport);
+        HedgePolicy policy = hedgeAlways(endpoint);
+        assertEquals(true, endpoint.fetch("GET", "details/user", "").get("status"));
+        // the call ran on the caller's thread and its connection was closed
+        assertEquals(Thread.currentThread(), transport.first);
+        assertEquals(2, transport.calls.get());
+        assertEquals(1, transport.aborted.get());
+        assertEquals(1, policy.getStats().getWins());
+        endpoint.fetch("POST", "details/user", "");
+        assertEquals(3, transport.calls.get());
+        assertEquals(1, policy.getStats().getHedges());
+    }
+
+    @Test
+    public void testHedgedGetsDoNotStarveTheExecutor() throws Exception {
+        AbstractEndpoint endpoint = setUp();
+        endpoint.setTransport(new Hanging());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            endpoint.setExecutor(executor);
+            hedgeAlways(endpoint);
+            assertEquals(true, endpoint.fetchAsync("GET", "details/user").get(5, TimeUnit.SECONDS).get("status"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testLosingHedgeDoesNotRevalidateTheEntry() throws Exception {
+        AbstractEndpoint endpoint = setUp();
+        final AtomicInteger calls = new AtomicInteger();
+        final List<String> conditions = Collections.synchronizedList(new ArrayList<String>());
+        endpoint.setTransport(new Transport() {
+            @Override
+            public HttpResponse execute(HttpRequest request) throws IOException {
+                int call = calls.incrementAndGet();
+                conditions.add(request.getHeaders().get("If-None-Match"));
+                Map<String, List<String>> headers = new HashMap<>();
+                if (call == 2) {
+                    // answers not modified once it has already lost
+                    final CountDownLatch closed = new CountDownLatch(1);
+                    request.attach(new Closeable() {
+                        @Override
+                        public void close() {
+                            closed.countDown();
+                        }
+                    });
+                    try {
+                        closed.await();
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                    headers.put("etag", Arrays.asList("\"v1\""));
+                    return new HttpResponse(304, headers, new ByteArrayInputStream(new byte[0]), null);
+                }
+                if (call == 4)
+                    return new HttpResponse(304, headers, new ByteArrayInputStream(new byte[0]), null);
+                String version = call == 1 ? "1" : "2";
+                headers.put("etag", Arrays.asList("\"v" + version + "\""));
+                return new HttpResponse(200, headers, new ByteArrayInputStream(
+                        ("{\"status\":true,\"details\":" + version + "}").getBytes(StandardCharsets.UTF_8)), null);
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        ResponseCache cache = endpoint.getResponseCache();
+        cache.setEnabled(true);
+        cache.setTtl("details", 1);
+        endpoint.fetch("GET", "details/username");
+        Thread.sleep(5);
+        HedgePolicy policy = hedgeAlways(endpoint);
+        assertEquals(2L, endpoint.fetch("GET", "details/username").get("details"));
+        assertEquals(1, policy.getStats().getWins());
+        assertEquals(0, cache.getStats().getRevalidations());
+        // the winner's body and ETag were cached
+        policy.setEnabled(false);
+        Thread.sleep(5);
+        assertEquals(2L, endpoint.fetch("GET", "details/username").get("details"));
+        assertEquals("\"v2\"", conditions.get(3));
+    }
+
+    private static RetryPolicy fastRetries() {
+        RetryPolicy policy = new RetryPolicy();
+        policy.setInitialBackoff(0);
+        return policy;
+    }
+
+    /**
+     * Transport replaying a script of responses and failures
+     */
+    private static final class Scripted implements Transport {
+        final List<HttpRequest> requests = Collections.synchronizedList(new ArrayList<HttpRequest>());
+        private final LinkedList<Object> script = new LinkedList<>();
+
+        Scripted(AbstractEndpoint endpoint) {
+            endpoint.setTransport(this);
+            endpoint.setRetryPolicy(fastRetries());
+        }
+
+        void reply(int code, String retryAfter, String body) {
+            Map<String, List<String>> headers = new HashMap<>();
+            if (retryAfter != null)
+                headers.put("retry-after", Arrays.asList(retryAfter));
+            replyWith(code, headers, body);
+        }
+
+        void replyWith(int code, Map<String, List<String>> headers, String body) {
+            this.script.add(new HttpResponse(code, headers,
+                    new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), null));
+        }
+
+        void fail(IOException exception) {
+            this.script.add(exception);
+        }
+
+        @Override
+        public HttpResponse execute(HttpRequest request) throws IOException {
+            this.requests.add(request);
+            Object next = this.script.removeFirst();
+            if (next instanceof IOException)
+                throw (IOException) next;
+            return (HttpResponse) next;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
     @Test
     public void testQueryBuilderReturnsEmpty() throws Exception {
         AbstractEndpoint endpoint = setUp();
@@ -151,7 +720,7 @@ public class AbstractEndpointTest {
         URL requestUrl = PowerMock.createMock(URL.class);
         HttpURLConnection conn = EasyMock.createMockBuilder(HttpURLConnection.class).addMockedMethod("getResponseCode")
                 .addMockedMethod("getInputStream").addMockedMethod("getOutputStream").createNiceMock();
-        InputStream is = PowerMock.createMock(InputStream.class);
+        InputStream is = PowerMock.createNiceMock(InputStream.class);
         OutputStream os = PowerMock.createMock(OutputStream.class);
         InputStreamReader isr = EasyMock.createMock(InputStreamReader.class);
         BufferedReader rd = PowerMock.createNiceMock(BufferedReader.class);
@@ -165,6 +734,7 @@ public class AbstractEndpointTest {
         expect(rd.readLine()).andReturn("response").once();
         expect(rd.readLine()).andReturn(null).once();
         endpoint.storage = new Storage();
+        endpoint.setTransport(new LegacyTransport());
         PowerMock.replay(URL.class, requestUrl);
         PowerMock.replay(HttpURLConnection.class, conn);
         PowerMock.replay(InputStream.class, is);
@@ -181,7 +751,7 @@ public class AbstractEndpointTest {
         URL requestUrl = PowerMock.createMock(URL.class);
         HttpURLConnection conn = EasyMock.createMockBuilder(HttpURLConnection.class).addMockedMethod("getResponseCode")
                 .addMockedMethod("getInputStream").createNiceMock();
-        InputStream is = PowerMock.createMock(InputStream.class);
+        InputStream is = PowerMock.createNiceMock(InputStream.class);
         InputStreamReader isr = EasyMock.createMock(InputStreamReader.class);
         BufferedReader rd = PowerMock.createNiceMock(BufferedReader.class);
         PowerMock.expectNew(URL.class, resource + "?filter=kba").andReturn(requestUrl).anyTimes();
@@ -193,6 +763,7 @@ public class AbstractEndpointTest {
         expect(rd.readLine()).andReturn("response").once();
         expect(rd.readLine()).andReturn(null).once();
         endpoint.storage = new Storage();
+        endpoint.setTransport(new LegacyTransport());
         PowerMock.replay(URL.class, requestUrl);
         PowerMock.replay(HttpURLConnection.class, conn);
         PowerMock.replay(InputStream.class, is);
@@ -209,7 +780,7 @@ public class AbstractEndpointTest {
         URL requestUrl = PowerMock.createMock(URL.class);
         HttpURLConnection conn = EasyMock.createMockBuilder(HttpURLConnection.class).addMockedMethod("getResponseCode")
                 .addMockedMethod("getInputStream").createNiceMock();
-        InputStream is = PowerMock.createMock(InputStream.class);
+        InputStream is = PowerMock.createNiceMock(InputStream.class);
         InputStreamReader isr = EasyMock.createMock(InputStreamReader.class);
         BufferedReader rd = PowerMock.createNiceMock(BufferedReader.class);
         PowerMock.expectNew(URL.class, resource).andReturn(requestUrl).anyTimes();
@@ -221,6 +792,7 @@ public class AbstractEndpointTest {
         expect(rd.readLine()).andReturn("response").once();
         expect(rd.readLine()).andReturn(null).once();
         endpoint.storage = new Storage();
+        endpoint.setTransport(new LegacyTransport());
         PowerMock.replay(URL.class, requestUrl);
         PowerMock.replay(HttpURLConnection.class, conn);
         PowerMock.replay(InputStream.class, is);
@@ -237,7 +809,7 @@ public class AbstractEndpointTest {
         URL requestUrl = PowerMock.createMock(URL.class);
         HttpURLConnection conn = EasyMock.createMockBuilder(HttpURLConnection.class).addMockedMethod("getResponseCode")
                 .addMockedMethod("getInputStream").createNiceMock();
-        InputStream is = PowerMock.createMock(InputStream.class);
+        InputStream is = PowerMock.createNiceMock(InputStream.class);
         InputStreamReader isr = EasyMock.createMock(InputStreamReader.class);
         BufferedReader rd = PowerMock.createNiceMock(BufferedReader.class);
         PowerMock.expectNew(URL.class, resource).andReturn(requestUrl).anyTimes();
@@ -249,6 +821,7 @@ public class AbstractEndpointTest {
         expect(rd.readLine()).andReturn("response").once();
         expect(rd.readLine()).andReturn(null).once();
         endpoint.storage = new Storage();
+        endpoint.setTransport(new LegacyTransport());
         PowerMock.replay(URL.class, requestUrl);
         PowerMock.replay(HttpURLConnection.class, conn);
         PowerMock.replay(InputStream.class, is);
@@ -343,6 +916,73 @@ public class AbstractEndpointTest {
         assertEquals(json, endpoint.signedFetch(method, resource, ""));
     }
 
+    @Test
+    public void testGenerateNonceIsRandomHex() {
+        AbstractEndpoint endpoint = setUp();
+        String first = endpoint.generateNonce();
+        String second = endpoint.generateNonce();
+        assertTrue(first.matches("^[0-9a-f]{20}$"));
+        assertFalse(first.equals(second));
+    }
+
+    @Test
+    public void testNoncesAreUniqueAcrossThreads() throws InterruptedException {
+        final AbstractEndpoint endpoint = setUp();
+        final Set<String> nonces = Collections.synchronizedSet(new HashSet<String>());
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 1000; j++)
+                        nonces.add(endpoint.generateNonce());
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads)
+            thread.join();
+        assertEquals(8000, nonces.size());
+    }
+
+    @Test
+    public void testFetchAsyncReturnsFetchResult() throws Exception {
+        AbstractEndpoint endpoint = EasyMock.createMockBuilder(AbstractEndpoint.class)
+                .addMockedMethod("fetch", String.class, String.class, String.class).createMock();
+        JSONParser parser = new JSONParser();
+        JSONObject json = (JSONObject) parser.parse("{\"status\":true,\"token\":\"token\"}");
+        expect(endpoint.fetch("GET", "test/user", "")).andReturn(json);
+        replay(endpoint);
+        assertEquals(json, endpoint.fetchAsync("GET", "test/user").get());
+    }
+
+    @Test
+    public void testFetchAsyncReportsFailure() throws Exception {
+        AbstractEndpoint endpoint = EasyMock.createMockBuilder(AbstractEndpoint.class)
+                .addMockedMethod("fetch", String.class, String.class, String.class).createMock();
+        expect(endpoint.fetch("GET", "test/user", "")).andThrow(new APIError("error"));
+        replay(endpoint);
+        try {
+            endpoint.fetchAsync("GET", "test/user").get();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof APIError);
+            return;
+        }
+        throw new AssertionError("fetchAsync must fail");
+    }
+
+    @Test
+    public void testSignedFetchAsyncReturnsSignedFetchResult() throws Exception {
+        AbstractEndpoint endpoint = EasyMock.createMockBuilder(AbstractEndpoint.class)
+                .addMockedMethod("signedFetch", String.class, String.class, String.class).createMock();
+        JSONParser parser = new JSONParser();
+        JSONObject json = (JSONObject) parser.parse("{\"status\":true}");
+        expect(endpoint.signedFetch("POST", "user/test/", "")).andReturn(json);
+        replay(endpoint);
+        assertEquals(json, endpoint.signedFetchAsync("POST", "user/test/").get());
+    }
+
     @Test
     public void testValidateUsernameInvalidUsername() {
         assertFalse(AbstractEndpoint.validateUsername("@123#"));
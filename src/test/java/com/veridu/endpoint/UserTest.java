@@ -3,7 +3,9 @@ package com.veridu.endpoint;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.isA;
 import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.powermock.api.easymock.PowerMock.mockStatic;
 
@@ -17,6 +19,7 @@ import org.powermock.api.easymock.PowerMock;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import com.veridu.bloom.BloomFilter;
 import com.veridu.endpoint.AbstractEndpoint;
 import com.veridu.endpoint.User;
 import com.veridu.exceptions.APIError;
@@ -42,7 +45,10 @@ public class UserTest {
     Signature signature = EasyMock.createMockBuilder(Signature.class).addMockedMethod("signRequest").createMock();
     
     public User setUp() {
-        User user = EasyMock.createMockBuilder(User.class).addMockedMethod("fetch", String.class, String.class)
+        User user = EasyMock.createMockBuilder(User.class)
+                .withConstructor(String.class, String.class, String.class, Storage.class)
+                .withArgs("key", "version", "secret", new Storage())
+                .addMockedMethod("fetch", String.class, String.class)
                 .addMockedMethod("fetch", String.class, String.class, String.class)
                 .addMockedMethod("signedFetch", String.class, String.class).createMock();
         user.storage = new Storage();
@@ -252,6 +258,73 @@ public class UserTest {
         assertEquals("user", user.storage.getUsername());
     }
 
+    @Test
+    public void testCreateSkipsKnownUsersOnceConfirmed() throws ParseException, SignatureFailed, NonceMismatch,
+            EmptyResponse, InvalidFormat, InvalidResponse, APIError, RequestFailed, EmptySession, InvalidUsername {
+        mockStatic(AbstractEndpoint.class);
+        expect(AbstractEndpoint.validateUsername(isA(String.class))).andReturn(true).anyTimes();
+        PowerMock.replayAll();
+        User user = setUp();
+        user.setKnownUsers(new BloomFilter(1000, 0.001));
+        JSONParser parser = new JSONParser();
+        JSONObject json = (JSONObject) parser.parse("{\"status\": \"true\"}");
+        expect(user.signedFetch("POST", "user/user/")).andReturn(json).once();
+        expect(user.fetch("GET", "user/user/score")).andReturn(json).once();
+        replay(user);
+        assertTrue(user.create("user"));
+        assertTrue(user.create("user"));
+        assertEquals("user", user.storage.getUsername());
+        verify(user);
+        assertEquals(1, user.getKnownUsers().getStats().getInsertions());
+        assertEquals(1, user.getSkippedCreates());
+        assertEquals(0, user.getFalsePositives());
+    }
+
+    @Test
+    public void testCreateSendsFalsePositives() throws ParseException, SignatureFailed, NonceMismatch, EmptyResponse,
+            InvalidFormat, InvalidResponse, APIError, RequestFailed, EmptySession, InvalidUsername {
+        mockStatic(AbstractEndpoint.class);
+        expect(AbstractEndpoint.validateUsername(isA(String.class))).andReturn(true).anyTimes();
+        PowerMock.replayAll();
+        User user = setUp();
+        user.setKnownUsers(new BloomFilter(1000, 0.001));
+        user.getKnownUsers().add("user");
+        JSONParser parser = new JSONParser();
+        JSONObject json = (JSONObject) parser.parse("{\"status\": \"true\"}");
+        expect(user.fetch("GET", "user/user/score")).andThrow(new APIError("Not found", "NOT_FOUND", 404)).once();
+        expect(user.signedFetch("POST", "user/user/")).andReturn(json).once();
+        replay(user);
+        assertTrue(user.create("user"));
+        verify(user);
+        assertEquals(0, user.getSkippedCreates());
+        assertEquals(1, user.getFalsePositives());
+    }
+
+    @Test
+    public void testCreateFailsWhenKnownUserCannotBeConfirmed() throws ParseException, SignatureFailed,
+            NonceMismatch, EmptyResponse, InvalidFormat, InvalidResponse, APIError, RequestFailed, EmptySession,
+            InvalidUsername {
+        mockStatic(AbstractEndpoint.class);
+        expect(AbstractEndpoint.validateUsername(isA(String.class))).andReturn(true).anyTimes();
+        PowerMock.replayAll();
+        User user = setUp();
+        user.setKnownUsers(new BloomFilter(1000, 0.001));
+        user.getKnownUsers().add("user");
+        APIError denied = new APIError("Session expired", "SESSION_TOKEN_INVALID", 401);
+        expect(user.fetch("GET", "user/user/score")).andThrow(denied).once();
+        replay(user);
+        try {
+            user.create("user");
+            throw new AssertionError("the confirm GET's error must reach the caller");
+        } catch (APIError e) {
+            assertEquals(denied, e);
+        }
+        // the create call was not sent
+        verify(user);
+        assertEquals(0, user.getSkippedCreates());
+        assertEquals(0, user.getFalsePositives());
+    }
+
     @Test(expected = EmptySession.class)
     public void testCreateThrowsEmptySession() throws ParseException, SignatureFailed, NonceMismatch, EmptyResponse,
             InvalidFormat, InvalidResponse, APIError, RequestFailed, EmptySession, InvalidUsername {
@@ -0,0 +1,51 @@
+package com.veridu.hedge;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HedgePolicyTest {
+
+    @Test
+    public void testDelayNeedsEnabledAndSamples() {
+        HedgePolicy policy = new HedgePolicy();
+        policy.setMinSamples(10);
+        policy.setMinDelay(0);
+        for (int i = 0; i < 9; i++)
+            policy.record("details", 40);
+        assertEquals(-1, policy.delay("details"));
+        policy.setEnabled(true);
+        assertEquals(-1, policy.delay("details"));
+        policy.record("details", 40);
+        assertEquals(LatencyHistogram.upperBound(LatencyHistogram.index(40)), policy.delay("details"));
+        assertEquals(-1, policy.delay("facts"));
+        assertEquals(3, policy.getStats().getCalls());
+    }
+
+    @Test
+    public void testMinDelay() {
+        HedgePolicy policy = new HedgePolicy();
+        policy.setEnabled(true);
+        policy.setMinSamples(1);
+        policy.record("details", 1);
+        assertEquals(policy.getMinDelay(), policy.delay("details"));
+    }
+
+    @Test
+    public void testBudgetCapsHedges() {
+        HedgePolicy policy = new HedgePolicy();
+        policy.setEnabled(true);
+        policy.setBudgetPercent(10);
+        for (int i = 0; i < 19; i++)
+            policy.delay("details");
+        assertTrue(policy.tryHedge());
+        assertFalse(policy.tryHedge());
+        policy.delay("details");
+        assertTrue(policy.tryHedge());
+        HedgeStats stats = policy.getStats();
+        assertEquals(2, stats.getHedges());
+        assertEquals(1, stats.getDenied());
+    }
+}
@@ -0,0 +1,43 @@
+package com.veridu.hedge;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketsCoverTheirValues() {
+        long[] values = { 0, 1, 7, 8, 9, 15, 16, 100, 999, 1000, 65535, 1L << 40, Long.MAX_VALUE };
+        for (long value : values) {
+            long upper = LatencyHistogram.upperBound(LatencyHistogram.index(value));
+            assertTrue(value + " <= " + upper, value <= upper);
+            assertTrue(value + " within 12.5% of " + upper, (upper - value) <= Math.max(0, value / 8));
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram(100000);
+        assertEquals(-1, histogram.getPercentile(50));
+        for (int i = 1; i <= 1000; i++)
+            histogram.record(i);
+        assertEquals(1000, histogram.getCount());
+        long p50 = histogram.getPercentile(50);
+        long p99 = histogram.getPercentile(99);
+        assertTrue(p50 >= 500 && p50 <= 563);
+        assertTrue(p99 >= 990 && p99 <= 1023);
+    }
+
+    @Test
+    public void testDecayFollowsRecentLatency() {
+        LatencyHistogram histogram = new LatencyHistogram(100);
+        for (int i = 0; i < 99; i++)
+            histogram.record(1000);
+        for (int i = 0; i < 300; i++)
+            histogram.record(10);
+        assertTrue(histogram.getCount() < 100);
+        assertEquals(10, histogram.getPercentile(90));
+    }
+}
@@ -0,0 +1,89 @@
+package com.veridu.ratelimit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.veridu.exceptions.RateLimited;
+
+public class RateLimiterTest {
+
+    @Test
+    public void testResourceLimitIsPerClientKey() throws RateLimited {
+        RateLimiter limiter = new RateLimiter();
+        limiter.setMode(AcquireMode.FAIL_FAST);
+        limiter.setResourceLimit("batch", 0.1, 1);
+        limiter.acquire("a", "batch");
+        limiter.acquire("b", "batch");
+        limiter.acquire("a", "profile");
+        try {
+            limiter.acquire("a", "batch");
+            throw new AssertionError("second batch call must be refused");
+        } catch (RateLimited e) {
+            // the client permit was given back
+            assertEquals(2, limiter.getStats().get("a").getAcquired());
+        }
+        assertEquals(1, limiter.getStats().get("a/batch").getRejected());
+    }
+
+    @Test
+    public void testClientLimitOverridesDefault() {
+        RateLimiter limiter = new RateLimiter();
+        limiter.setClientLimit(null, 0.1, 1);
+        limiter.setClientLimit("vip", 0, 0);
+        assertEquals(0, limiter.reserve("other", "profile", 0));
+        assertEquals(-1, limiter.reserve("other", "profile", 0));
+        for (int i = 0; i < 10; i++)
+            assertEquals(0, limiter.reserve("vip", "profile", 0));
+    }
+
+    @Test
+    public void testTimedModeWaitsWithinMaxWait() throws RateLimited {
+        RateLimiter limiter = new RateLimiter();
+        limiter.setClientLimit(null, 20, 1);
+        limiter.setMaxWait(1000);
+        long started = System.nanoTime();
+        limiter.acquire("a", "profile");
+        limiter.acquire("a", "profile");
+        assertTrue((System.nanoTime() - started) >= 40000000L);
+        assertEquals(1, limiter.getStats().get("a").getThrottled());
+        limiter.setMaxWait(0);
+        try {
+            limiter.acquire("a", "profile");
+            throw new AssertionError("wait beyond maxWait must be refused");
+        } catch (RateLimited e) {
+            assertEquals(1, limiter.getStats().get("a").getRejected());
+        }
+    }
+
+    @Test
+    public void testRetryAfterOf429BlocksClient() {
+        RateLimiter limiter = new RateLimiter();
+        Map<String, List<String>> headers = new HashMap<>();
+        headers.put("retry-after", Arrays.asList("30"));
+        limiter.update("a", 200, headers);
+        assertEquals(0, limiter.reserve("a", "profile", 0));
+        limiter.update("a", 429, headers);
+        assertEquals(-1, limiter.reserve("a", "profile", 0));
+        assertTrue(limiter.reserve("a", "profile", -1) > 0);
+        assertFalse(limiter.reserve("b", "profile", 0) < 0);
+    }
+
+    @Test
+    public void testEpochReset() {
+        RateLimiter limiter = new RateLimiter();
+        Map<String, List<String>> headers = new HashMap<>();
+        headers.put("ratelimit-remaining", Arrays.asList("0"));
+        headers.put("ratelimit-reset", Arrays.asList(Long.toString((System.currentTimeMillis() / 1000) + 60)));
+        limiter.update("a", 200, headers);
+        long wait = limiter.reserve("a", "profile", -1);
+        assertTrue((wait > 50000000000L) && (wait <= 61000000000L));
+    }
+}
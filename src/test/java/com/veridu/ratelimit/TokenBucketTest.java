@@ -0,0 +1,62 @@
+package com.veridu.ratelimit;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TokenBucketTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void testBurstThenPaced() {
+        TokenBucket bucket = new TokenBucket("key", 2, 2);
+        long now = System.nanoTime();
+        assertEquals(0, bucket.reserve(now, -1));
+        assertEquals(0, bucket.reserve(now, -1));
+        // queued calls wait in turn, half a second apart
+        assertEquals(SECOND / 2, bucket.reserve(now, -1));
+        assertEquals(SECOND, bucket.reserve(now, -1));
+        assertEquals(0, bucket.reserve(now + (2 * SECOND), -1));
+        assertEquals(2, bucket.getStats().getThrottled());
+    }
+
+    @Test
+    public void testWaitBeyondMaxIsRejectedWithoutReserving() {
+        TokenBucket bucket = new TokenBucket("key", 1, 1);
+        long now = System.nanoTime();
+        assertEquals(0, bucket.reserve(now, 0));
+        assertEquals(-1, bucket.reserve(now, 0));
+        assertEquals(-1, bucket.reserve(now, SECOND / 2));
+        assertEquals(SECOND, bucket.reserve(now, SECOND));
+        RateLimitStats stats = bucket.getStats();
+        assertEquals(2, stats.getAcquired());
+        assertEquals(2, stats.getRejected());
+    }
+
+    @Test
+    public void testUnlimitedFollowsServerWindow() {
+        TokenBucket bucket = new TokenBucket("key", 0, 0);
+        long now = System.nanoTime();
+        assertEquals(0, bucket.reserve(now, 0));
+        bucket.update(now, 10, 2, 30 * SECOND);
+        assertEquals(0, bucket.reserve(now, 0));
+        assertEquals(0, bucket.reserve(now, 0));
+        assertEquals(30 * SECOND, bucket.reserve(now, -1));
+        // once the window resets the server count no longer applies
+        assertEquals(0, bucket.reserve(now + (30 * SECOND), 0));
+        assertEquals(-1, bucket.getStats().getRemaining());
+        assertEquals(10, bucket.getStats().getLimit());
+    }
+
+    @Test
+    public void testBlockHoldsPermitsBack() {
+        TokenBucket bucket = new TokenBucket("key", 0, 0);
+        long now = System.nanoTime();
+        bucket.block(now, 5 * SECOND);
+        assertEquals(-1, bucket.reserve(now, SECOND));
+        assertEquals(4 * SECOND, bucket.reserve(now + SECOND, -1));
+        assertEquals(0, bucket.reserve(now + (5 * SECOND), 0));
+    }
+}
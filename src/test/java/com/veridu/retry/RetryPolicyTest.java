@@ -0,0 +1,103 @@
+package com.veridu.retry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+import javax.net.ssl.SSLHandshakeException;
+
+import org.junit.Test;
+
+import com.veridu.exceptions.APIError;
+import com.veridu.exceptions.InvalidFormat;
+import com.veridu.exceptions.RequestFailed;
+
+public class RetryPolicyTest {
+
+    @Test
+    public void testBackoffIsJitteredAndCapped() {
+        RetryPolicy policy = new RetryPolicy();
+        policy.setInitialBackoff(100);
+        policy.setMaxBackoff(300);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(policy.backoff(1) <= 100);
+            assertTrue(policy.backoff(2) <= 200);
+            assertTrue(policy.backoff(10) <= 300);
+            assertTrue(policy.backoff(10) >= 0);
+        }
+    }
+
+    @Test
+    public void testServerErrorsRetriedForIdempotentMethodsOnly() {
+        RetryPolicy policy = new RetryPolicy();
+        Attempt attempt = new Attempt();
+        attempt.record(503, null);
+        APIError error = new APIError("unavailable");
+        assertTrue(policy.delay("GET", attempt, error) >= 0);
+        assertTrue(policy.delay("delete", attempt, error) >= 0);
+        assertEquals(-1, policy.delay("POST", attempt, error));
+        assertEquals(-1, policy.delay("GET", new Attempt(), error));
+    }
+
+    @Test
+    public void testUnprocessedRequestsRetriedForAnyMethod() {
+        RetryPolicy policy = new RetryPolicy();
+        assertTrue(policy.delay("POST", new Attempt(), new RequestFailed("refused", new ConnectException())) >= 0);
+        assertTrue(policy.delay("POST", new Attempt(),
+                new APIError("Session token is invalid.", RetryPolicy.SESSION_TOKEN_INVALID, 400)) >= 0);
+        Attempt limited = new Attempt();
+        limited.record(429, retryAfter("0"));
+        assertEquals(0, policy.delay("POST", limited, new InvalidFormat()));
+        assertEquals(-1, policy.delay("POST", new Attempt(), new RequestFailed("timeout", new SocketTimeoutException())));
+        assertEquals(3, policy.getRetries());
+    }
+
+    @Test
+    public void testAttemptsAndBudgetAreBounded() {
+        RetryPolicy policy = new RetryPolicy();
+        policy.setMaxAttempts(2);
+        RequestFailed failure = new RequestFailed("reset", new IOException("Connection reset"));
+        Attempt attempt = new Attempt();
+        assertTrue(policy.delay("GET", attempt, failure) >= 0);
+        attempt.next();
+        assertEquals(-1, policy.delay("GET", attempt, failure));
+        Attempt limited = new Attempt();
+        limited.record(429, retryAfter("60"));
+        assertEquals(-1, policy.delay("GET", limited, failure));
+        assertEquals(2, policy.getExhausted());
+        assertEquals(-1, RetryPolicy.none().delay("GET", new Attempt(), failure));
+    }
+
+    @Test
+    public void testRejectedCertificatesAreNotRetried() {
+        assertEquals(-1, new RetryPolicy().delay("GET", new Attempt(),
+                new RequestFailed("handshake", new SSLHandshakeException("PKIX path building failed"))));
+    }
+
+    private static Map<String, List<String>> retryAfter(String value) {
+        return Collections.singletonMap("retry-after", Arrays.asList(value));
+    }
+
+    @Test
+    public void testParseRetryAfter() {
+        assertEquals(-1, RetryPolicy.parseRetryAfter(null));
+        assertEquals(-1, RetryPolicy.parseRetryAfter("soon"));
+        assertEquals(120000, RetryPolicy.parseRetryAfter("120"));
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        long delay = RetryPolicy.parseRetryAfter(format.format(new Date(System.currentTimeMillis() + 30000)));
+        assertTrue((delay > 25000) && (delay <= 30000));
+        assertEquals(0, RetryPolicy.parseRetryAfter(format.format(new Date(0))));
+    }
+}
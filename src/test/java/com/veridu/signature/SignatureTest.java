@@ -1,8 +1,10 @@
 package com.veridu.signature;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
 import java.security.SignatureException;
 import org.json.simple.parser.ParseException;
 import org.junit.Test;
@@ -16,6 +18,18 @@ public class SignatureTest {
         assertTrue(signedRequest instanceof String);
     }
 
+    @Test
+    public void testPooledSignatureMatchesHmac()
+            throws SignatureException, UnsupportedEncodingException, ParseException {
+        for (int i = 0; i < 3; i++) {
+            String signed = this.signature.signRequest("GET", "/user/name", "nonce" + i);
+            int position = signed.indexOf("&signature=");
+            String data = signed.substring(0, position);
+            String sign = URLDecoder.decode(signed.substring(position + 11), "UTF-8");
+            assertEquals(HmacSHA1.Calculate(data, "secret"), sign);
+        }
+    }
+
     @Test(expected = UnsupportedEncodingException.class)
     public void testSignRequestThrowsSignatureException()
             throws SignatureException, UnsupportedEncodingException, ParseException {
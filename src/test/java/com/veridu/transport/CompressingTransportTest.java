@@ -0,0 +1,146 @@
+package com.veridu.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CompressingTransportTest {
+    StubServer server;
+    PooledTransport pooled;
+    CompressingTransport transport;
+
+    @Before
+    public void setUp() throws IOException {
+        this.server = new StubServer();
+        this.pooled = new PooledTransport(2, 30000);
+        this.transport = new CompressingTransport(this.pooled);
+    }
+
+    @After
+    public void tearDown() {
+        this.transport.close();
+        this.server.stop();
+    }
+
+    @Test
+    public void testGzipResponseIsDecodedAndConnectionReused() throws IOException {
+        String body = "{\"status\":true,\"list\":[" + repeat("\"entry\",", 200) + "\"last\"]}";
+        this.server.encoding("gzip").respond(200, body);
+        for (int i = 0; i < 2; i++) {
+            HttpResponse response = this.transport.execute(new HttpRequest("GET", this.server.url("/raw")));
+            assertNull(response.getHeader("Content-Encoding"));
+            assertEquals(body, PooledTransportTest.body(response));
+        }
+        assertEquals(CompressingTransport.ACCEPT_ENCODING, this.server.getLastRequestHeader("Accept-Encoding"));
+        assertEquals(1, this.pooled.getStats().getCreated());
+        CompressionStats stats = this.transport.getStats();
+        assertEquals(2, stats.getCompressedResponses());
+        assertEquals(2L * body.length(), stats.getResponseBytes());
+        assertTrue(stats.getBytesSaved() > body.length());
+    }
+
+    @Test
+    public void testDeflateResponseIsDecoded() throws IOException {
+        this.server.encoding("deflate").chunked(true).respond(200, "{\"status\":true}");
+        assertEquals("{\"status\":true}",
+                PooledTransportTest.body(this.transport.execute(new HttpRequest("GET", this.server.url("/a")))));
+    }
+
+    @Test
+    public void testRawDeflateResponseIsDecoded() throws IOException {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        DeflaterOutputStream out = new DeflaterOutputStream(encoded, new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+        out.write("{\"status\":true}".getBytes(StandardCharsets.UTF_8));
+        out.close();
+        assertEquals("{\"status\":true}", PooledTransportTest.body(deflated(new ByteArrayInputStream(encoded
+                .toByteArray())).execute(new HttpRequest("GET", "http://localhost/"))));
+    }
+
+    @Test
+    public void testZlibHeaderReadByteByByteIsDetected() throws IOException {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        DeflaterOutputStream out = new DeflaterOutputStream(encoded);
+        out.write("{\"status\":true}".getBytes(StandardCharsets.UTF_8));
+        out.close();
+        InputStream slow = new ByteArrayInputStream(encoded.toByteArray()) {
+            @Override
+            public synchronized int read(byte[] buffer, int offset, int length) {
+                return super.read(buffer, offset, Math.min(length, 1));
+            }
+        };
+        assertEquals("{\"status\":true}",
+                PooledTransportTest.body(deflated(slow).execute(new HttpRequest("GET", "http://localhost/"))));
+    }
+
+    @Test
+    public void testPlainResponsePassesThrough() throws IOException {
+        assertEquals("{\"status\":true}",
+                PooledTransportTest.body(this.transport.execute(new HttpRequest("GET", this.server.url("/a")))));
+        CompressionStats stats = this.transport.getStats();
+        assertEquals(1, stats.getResponses());
+        assertEquals(0, stats.getCompressedResponses());
+        assertEquals(0, stats.getBytesSaved());
+    }
+
+    @Test
+    public void testLargeRequestBodyIsGzipped() throws IOException {
+        this.transport.setRequestThreshold(1024);
+        String jobs = "jobs=" + repeat("%7B%22method%22%3A%22GET%22%7D", 100);
+        HttpRequest request = new HttpRequest("POST", this.server.url("/batch"));
+        request.setHeader("Content-Type", "application/x-www-form-urlencoded");
+        request.setBody(jobs.getBytes(StandardCharsets.UTF_8));
+        PooledTransportTest.body(this.transport.execute(request));
+        assertEquals("gzip", this.server.getLastRequestHeader("Content-Encoding"));
+        assertEquals(jobs, this.server.getLastRequestBody());
+        assertEquals(1, this.transport.getStats().getCompressedRequests());
+        assertTrue(this.transport.getStats().getRequestWireBytes() < jobs.length());
+    }
+
+    @Test
+    public void testSmallRequestBodyIsSentAsIs() throws IOException {
+        this.transport.setRequestThreshold(1024);
+        HttpRequest request = new HttpRequest("POST", this.server.url("/user"));
+        request.setBody("a=1".getBytes(StandardCharsets.UTF_8));
+        PooledTransportTest.body(this.transport.execute(request));
+        assertNull(this.server.getLastRequestHeader("Content-Encoding"));
+        assertEquals("a=1", this.server.getLastRequestBody());
+    }
+
+    private static CompressingTransport deflated(final InputStream body) {
+        return new CompressingTransport(new Transport() {
+            @Override
+            public HttpResponse execute(HttpRequest request) {
+                Map<String, List<String>> headers = new HashMap<>();
+                headers.put("content-encoding", Arrays.asList("deflate"));
+                return new HttpResponse(200, headers, body, null);
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+    }
+
+    private static String repeat(String value, int times) {
+        StringBuilder builder = new StringBuilder(value.length() * times);
+        for (int i = 0; i < times; i++)
+            builder.append(value);
+        return builder.toString();
+    }
+}
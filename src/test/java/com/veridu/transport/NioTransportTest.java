@@ -0,0 +1,138 @@
+package com.veridu.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.veridu.async.AsyncResult;
+import com.veridu.buffer.BufferPool;
+
+public class NioTransportTest {
+    StubServer server;
+    NioTransport transport;
+
+    @Before
+    public void setUp() throws IOException {
+        this.server = new StubServer();
+        this.transport = new NioTransport(2);
+        this.transport.setMaxPerRoute(2);
+    }
+
+    @After
+    public void tearDown() {
+        this.transport.close();
+        this.server.stop();
+    }
+
+    @Test
+    public void testSequentialRequestsReuseConnection() throws IOException {
+        for (int i = 0; i < 3; i++)
+            assertEquals("{\"status\":true}",
+                    PooledTransportTest.body(this.transport.execute(new HttpRequest("GET", this.server.url("/a")))));
+        assertEquals(3, this.server.getRequests());
+        assertEquals(1, this.server.getConnections());
+        PoolStats stats = this.transport.getStats();
+        assertEquals(1, stats.getCreated());
+        assertEquals(2, stats.getReused());
+        assertEquals(1, stats.getIdle());
+    }
+
+    @Test
+    public void testDirectBufferPoolWithLargeBody() throws IOException {
+        BufferPool pool = new BufferPool(256, 8, true);
+        this.transport.setBufferPool(pool);
+        StringBuilder body = new StringBuilder("{\"list\":[");
+        for (int i = 0; i < 500; i++)
+            body.append("\"entry\",");
+        body.append("\"last\"]}");
+        this.server.chunked(true).respond(200, body.toString());
+        for (int i = 0; i < 2; i++)
+            assertEquals(body.toString(),
+                    PooledTransportTest.body(this.transport.execute(new HttpRequest("GET", this.server.url("/a")))));
+        assertTrue(pool.getHits() > 0);
+        assertTrue(pool.getOversized() > 0);
+    }
+
+    @Test
+    public void testChunkedResponse() throws IOException {
+        this.server.chunked(true).respond(200, "{\"status\":true,\"list\":[1,2,3]}");
+        for (int i = 0; i < 2; i++)
+            assertEquals("{\"status\":true,\"list\":[1,2,3]}",
+                    PooledTransportTest.body(this.transport.execute(new HttpRequest("GET", this.server.url("/a")))));
+        assertEquals(1, this.transport.getStats().getCreated());
+    }
+
+    @Test
+    public void testPostSendsBody() throws IOException {
+        HttpRequest request = new HttpRequest("POST", this.server.url("/user"));
+        request.setHeader("Content-Type", "application/x-www-form-urlencoded");
+        request.setBody("a=1&b=2".getBytes(StandardCharsets.UTF_8));
+        HttpResponse response = this.transport.execute(request);
+        assertEquals(200, response.getCode());
+        assertEquals("application/json", response.getHeader("Content-Type"));
+        PooledTransportTest.body(response);
+        assertEquals("a=1&b=2", this.server.getLastRequestBody());
+    }
+
+    @Test
+    public void testErrorStatusKeepsBody() throws IOException {
+        this.server.respond(404, "{\"status\":false}");
+        HttpResponse response = this.transport.execute(new HttpRequest("GET", this.server.url("/missing")));
+        assertEquals(404, response.getCode());
+        assertEquals("{\"status\":false}", PooledTransportTest.body(response));
+    }
+
+    @Test
+    public void testRequestsBeyondMaxPerRouteAreQueued() throws Exception {
+        this.server.delay(50);
+        List<AsyncResult<HttpResponse>> results = new ArrayList<>();
+        for (int i = 0; i < 20; i++)
+            results.add(this.transport.executeAsync(new HttpRequest("GET", this.server.url("/a"))));
+        for (AsyncResult<HttpResponse> result : results)
+            assertEquals("{\"status\":true}", PooledTransportTest.body(result.get(10, TimeUnit.SECONDS)));
+        assertEquals(20, this.server.getRequests());
+        assertTrue(this.server.getConnections() <= 2);
+        assertEquals(0, this.transport.getQueued());
+    }
+
+    @Test
+    public void testIdleConnectionsAreEvicted() throws Exception {
+        this.transport.setIdleTimeout(50);
+        PooledTransportTest.body(this.transport.execute(new HttpRequest("GET", this.server.url("/a"))));
+        Thread.sleep(300);
+        PoolStats stats = this.transport.getStats();
+        assertEquals(0, stats.getIdle());
+        assertEquals(1, stats.getEvicted());
+        PooledTransportTest.body(this.transport.execute(new HttpRequest("GET", this.server.url("/a"))));
+        assertEquals(2, this.transport.getStats().getCreated());
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadTimeout() throws IOException {
+        this.transport.setReadTimeout(100);
+        this.server.delay(1000);
+        this.transport.execute(new HttpRequest("GET", this.server.url("/slow")));
+    }
+
+    @Test
+    public void testClosedTransportFails() throws InterruptedException {
+        this.transport.close();
+        try {
+            this.transport.executeAsync(new HttpRequest("GET", this.server.url("/a"))).get();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+            return;
+        }
+        throw new AssertionError("a closed transport must fail requests");
+    }
+}
@@ -0,0 +1,178 @@
+package com.veridu.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PooledTransportTest {
+    StubServer server;
+    PooledTransport transport;
+
+    @Before
+    public void setUp() throws IOException {
+        this.server = new StubServer();
+        this.transport = new PooledTransport(2, 30000);
+    }
+
+    @After
+    public void tearDown() {
+        this.transport.close();
+        this.server.stop();
+    }
+
+    @Test
+    public void testSequentialRequestsReuseConnection() throws IOException {
+        for (int i = 0; i < 3; i++)
+            assertEquals("{\"status\":true}", body(this.transport.execute(new HttpRequest("GET", this.server.url("/a")))));
+        assertEquals(3, this.server.getRequests());
+        assertEquals(1, this.server.getConnections());
+        PoolStats stats = this.transport.getStats();
+        assertEquals(1, stats.getCreated());
+        assertEquals(2, stats.getReused());
+        assertEquals(0, stats.getLeased());
+        assertEquals(1, stats.getIdle());
+    }
+
+    @Test
+    public void testChunkedResponseIsReused() throws IOException {
+        this.server.chunked(true).respond(200, "{\"status\":true,\"list\":[1,2,3]}");
+        assertEquals("{\"status\":true,\"list\":[1,2,3]}",
+                body(this.transport.execute(new HttpRequest("GET", this.server.url("/a")))));
+        assertEquals("{\"status\":true,\"list\":[1,2,3]}",
+                body(this.transport.execute(new HttpRequest("GET", this.server.url("/b")))));
+        assertEquals(1, this.transport.getStats().getCreated());
+    }
+
+    @Test
+    public void testPostSendsBody() throws IOException {
+        HttpRequest request = new HttpRequest("POST", this.server.url("/user"));
+        request.setHeader("Content-Type", "application/x-www-form-urlencoded");
+        request.setBody("a=1&b=2".getBytes(StandardCharsets.UTF_8));
+        HttpResponse response = this.transport.execute(request);
+        assertEquals(200, response.getCode());
+        assertEquals("application/json", response.getHeader("Content-Type"));
+        body(response);
+        assertEquals("a=1&b=2", this.server.getLastRequestBody());
+    }
+
+    @Test
+    public void testOnlyIdempotentRequestsAreRetried() {
+        assertTrue(new HttpRequest("GET", this.server.url("/a")).isIdempotent());
+        assertTrue(new HttpRequest("delete", this.server.url("/a")).isIdempotent());
+        assertFalse(new HttpRequest("POST", this.server.url("/a")).isIdempotent());
+        assertFalse(new HttpRequest("PATCH", this.server.url("/a")).isIdempotent());
+    }
+
+    @Test
+    public void testAbortClosesConnectionInFlight() throws Exception {
+        this.server.delay(5000);
+        final HttpRequest request = new HttpRequest("GET", this.server.url("/a"));
+        Thread aborter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                request.abort();
+            }
+        });
+        aborter.start();
+        long started = System.currentTimeMillis();
+        try {
+            this.transport.execute(request);
+            fail("aborted request must fail");
+        } catch (IOException e) {
+            assertTrue((System.currentTimeMillis() - started) < 2000);
+        }
+        aborter.join();
+        assertEquals(0, this.transport.getStats().getIdle());
+        assertEquals(0, this.transport.getStats().getLeased());
+        // an aborted request is not sent again
+        try {
+            this.transport.execute(request);
+            fail("aborted request must fail");
+        } catch (IOException e) {
+            assertEquals(1, this.transport.getStats().getCreated());
+        }
+    }
+
+    @Test
+    public void testErrorStatusKeepsBody() throws IOException {
+        this.server.respond(404, "{\"status\":false}");
+        HttpResponse response = this.transport.execute(new HttpRequest("GET", this.server.url("/missing")));
+        assertEquals(404, response.getCode());
+        assertEquals("{\"status\":false}", body(response));
+    }
+
+    @Test
+    public void testMaxPerRouteBoundsConnections() throws Exception {
+        this.server.delay(100);
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            results.add(executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws IOException {
+                    return body(PooledTransportTest.this.transport
+                            .execute(new HttpRequest("GET", PooledTransportTest.this.server.url("/a"))));
+                }
+            }));
+        }
+        for (Future<String> result : results)
+            assertEquals("{\"status\":true}", result.get());
+        executor.shutdown();
+        assertTrue(this.server.getConnections() <= 2);
+        assertTrue(this.transport.getStats().getCreated() <= 2);
+    }
+
+    @Test
+    public void testIdleConnectionsAreEvicted() throws Exception {
+        this.transport.setIdleTimeout(50);
+        body(this.transport.execute(new HttpRequest("GET", this.server.url("/a"))));
+        assertEquals(1, this.transport.getStats().getIdle());
+        Thread.sleep(100);
+        this.transport.evictIdleConnections();
+        PoolStats stats = this.transport.getStats();
+        assertEquals(0, stats.getIdle());
+        assertEquals(1, stats.getEvicted());
+        body(this.transport.execute(new HttpRequest("GET", this.server.url("/a"))));
+        assertEquals(2, this.transport.getStats().getCreated());
+    }
+
+    @Test
+    public void testUnreadBodyIsDrainedOnClose() throws IOException {
+        this.transport.execute(new HttpRequest("GET", this.server.url("/a"))).close();
+        body(this.transport.execute(new HttpRequest("GET", this.server.url("/a"))));
+        assertEquals(1, this.transport.getStats().getCreated());
+        assertEquals(1, this.server.getConnections());
+    }
+
+    static String body(HttpResponse response) throws IOException {
+        InputStream in = response.getBody();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] chunk = new byte[256];
+        int n;
+        while ((n = in.read(chunk)) != -1)
+            buffer.write(chunk, 0, n);
+        response.close();
+        return new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,66 @@
+package com.veridu.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class ResponseParserTest {
+
+    @Test
+    public void testContentLengthFedByteByByte() throws IOException {
+        ResponseParser parser = new ResponseParser();
+        parser.reset("GET");
+        byte[] bytes = "HTTP/1.1 200 OK\r\nContent-Length: 4\r\nKeep-Alive: timeout=5\r\n\r\nbody"
+                .getBytes(StandardCharsets.ISO_8859_1);
+        for (int i = 0; i < bytes.length - 1; i++)
+            assertFalse(parser.feed(ByteBuffer.wrap(bytes, i, 1)));
+        assertTrue(parser.feed(ByteBuffer.wrap(bytes, bytes.length - 1, 1)));
+        assertEquals(200, parser.getCode());
+        assertEquals("body", new String(parser.getBody(), StandardCharsets.UTF_8));
+        assertTrue(parser.isReusable());
+        assertEquals(5000, parser.getKeepAlive());
+    }
+
+    @Test
+    public void testChunkedWithInterimResponse() throws IOException {
+        ResponseParser parser = new ResponseParser();
+        parser.reset("POST");
+        assertTrue(parser.feed(ByteBuffer.wrap(("HTTP/1.1 100 Continue\r\n\r\n"
+                + "HTTP/1.1 201 Created\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "3\r\nabc\r\n2;ext=1\r\nde\r\n0\r\nX-Trailer: 1\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1))));
+        assertEquals(201, parser.getCode());
+        assertEquals("abcde", new String(parser.getBody(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testBodyUntilClose() throws IOException {
+        ResponseParser parser = new ResponseParser();
+        parser.reset("GET");
+        assertFalse(parser.feed(ByteBuffer.wrap("HTTP/1.0 200 OK\r\n\r\npartial".getBytes(StandardCharsets.ISO_8859_1))));
+        assertTrue(parser.finish());
+        assertFalse(parser.isReusable());
+        assertEquals("partial", new String(parser.getBody(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testHeadHasNoBody() throws IOException {
+        ResponseParser parser = new ResponseParser();
+        parser.reset("HEAD");
+        assertTrue(parser.feed(ByteBuffer.wrap("HTTP/1.1 200 OK\r\nContent-Length: 10\r\n\r\n"
+                .getBytes(StandardCharsets.ISO_8859_1))));
+        assertEquals(0, parser.getBody().length);
+    }
+
+    @Test(expected = IOException.class)
+    public void testMalformedStatusLine() throws IOException {
+        ResponseParser parser = new ResponseParser();
+        parser.reset("GET");
+        parser.feed(ByteBuffer.wrap("garbage\r\n".getBytes(StandardCharsets.ISO_8859_1)));
+    }
+}
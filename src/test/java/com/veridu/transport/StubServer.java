@@ -0,0 +1,171 @@
+package com.veridu.transport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local HTTP server answering every request with a fixed JSON body. Given
+ * an ETag or Last-Modified value, it sends it with the body and answers
+ * 304 Not Modified to requests whose If-None-Match or If-Modified-Since
+ * matches.
+ */
+public class StubServer {
+    private final HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger notModified = new AtomicInteger();
+    private final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+    private volatile String body = "{\"status\":true}";
+    private volatile int code = 200;
+    private volatile boolean chunked = false;
+    private volatile long delay = 0;
+    private volatile String encoding = null;
+    private volatile String etag = null;
+    private volatile String lastModified = null;
+    private volatile String lastRequestBody = null;
+    private volatile Headers lastRequestHeaders = null;
+
+    public StubServer() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.setExecutor(Executors.newCachedThreadPool());
+        this.server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                serve(exchange);
+            }
+        });
+        this.server.start();
+    }
+
+    public String url(String path) {
+        return "http://127.0.0.1:" + this.server.getAddress().getPort() + path;
+    }
+
+    public StubServer respond(int code, String body) {
+        this.code = code;
+        this.body = body;
+        return this;
+    }
+
+    public StubServer chunked(boolean chunked) {
+        this.chunked = chunked;
+        return this;
+    }
+
+    public StubServer encoding(String encoding) {
+        this.encoding = encoding;
+        return this;
+    }
+
+    public StubServer etag(String etag) {
+        this.etag = etag;
+        return this;
+    }
+
+    public StubServer lastModified(String lastModified) {
+        this.lastModified = lastModified;
+        return this;
+    }
+
+    public StubServer delay(long delay) {
+        this.delay = delay;
+        return this;
+    }
+
+    public int getRequests() {
+        return this.requests.get();
+    }
+
+    public int getNotModified() {
+        return this.notModified.get();
+    }
+
+    public int getConnections() {
+        return this.clientPorts.size();
+    }
+
+    public String getLastRequestBody() {
+        return this.lastRequestBody;
+    }
+
+    public String getLastRequestHeader(String name) {
+        return this.lastRequestHeaders == null ? null : this.lastRequestHeaders.getFirst(name);
+    }
+
+    public void stop() {
+        this.server.stop(0);
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        this.requests.incrementAndGet();
+        this.clientPorts.add(exchange.getRemoteAddress().getPort());
+        this.lastRequestHeaders = exchange.getRequestHeaders();
+        InputStream requestBody = exchange.getRequestBody();
+        if ("gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding")))
+            requestBody = new GZIPInputStream(requestBody);
+        this.lastRequestBody = read(requestBody);
+        if (this.delay > 0) {
+            try {
+                Thread.sleep(this.delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        Headers request = exchange.getRequestHeaders();
+        String etag = this.etag;
+        String lastModified = this.lastModified;
+        if (etag != null)
+            exchange.getResponseHeaders().set("ETag", etag);
+        if (lastModified != null)
+            exchange.getResponseHeaders().set("Last-Modified", lastModified);
+        boolean matches = etag != null ? etag.equals(request.getFirst("If-None-Match"))
+                : (lastModified != null) && lastModified.equals(request.getFirst("If-Modified-Since"));
+        if (matches) {
+            this.notModified.incrementAndGet();
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        byte[] bytes = this.body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if ((this.encoding != null) && (accept != null) && accept.contains(this.encoding)) {
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+            OutputStream out = this.encoding.equals("gzip") ? new GZIPOutputStream(encoded)
+                    : new DeflaterOutputStream(encoded);
+            out.write(bytes);
+            out.close();
+            bytes = encoded.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", this.encoding);
+        }
+        exchange.sendResponseHeaders(this.code, this.chunked ? 0 : bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] chunk = new byte[1024];
+        int n;
+        while ((n = in.read(chunk)) != -1)
+            buffer.write(chunk, 0, n);
+        return new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
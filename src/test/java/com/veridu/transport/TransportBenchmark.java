@@ -0,0 +1,84 @@
+package com.veridu.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Side-by-side throughput of the available transports.
+ *
+ * Usage: TransportBenchmark [url] [requests] [concurrency]. Without an URL a
+ * local stub server is started (HTTP/1.1 only, so HTTP/2 multiplexing only
+ * shows against a real HTTP/2 endpoint).
+ */
+public class TransportBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        StubServer server = null;
+        String url;
+        if (args.length > 0) {
+            url = args[0];
+        } else {
+            server = new StubServer().delay(5);
+            url = server.url("/0.3/details/user");
+        }
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int concurrency = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+
+        Map<String, Transport> transports = new LinkedHashMap<>();
+        transports.put("legacy", Transports.legacy());
+        PooledTransport pooled = Transports.pooled();
+        pooled.setMaxPerRoute(concurrency);
+        transports.put("pooled", pooled);
+        NioTransport nio = Transports.nio();
+        nio.setMaxPerRoute(concurrency);
+        transports.put("nio", nio);
+        if (Transports.isHttp2Available())
+            transports.put("http2", Transports.http2());
+
+        System.out.println(String.format("%-8s %10s %10s (%d requests, concurrency %d)", "transport", "req/s",
+                "ms", requests, concurrency));
+        for (Entry<String, Transport> entry : transports.entrySet()) {
+            run(entry.getValue(), url, requests / 10, concurrency);
+            long start = System.nanoTime();
+            run(entry.getValue(), url, requests, concurrency);
+            double elapsed = (System.nanoTime() - start) / 1e6;
+            System.out.println(String.format("%-8s %10.0f %10.0f", entry.getKey(), requests * 1000 / elapsed,
+                    elapsed));
+            entry.getValue().close();
+        }
+        if (server != null)
+            server.stop();
+    }
+
+    private static void run(final Transport transport, final String url, int requests, int concurrency)
+            throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        List<Future<Integer>> results = new ArrayList<>(requests);
+        for (int i = 0; i < requests; i++) {
+            results.add(executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws IOException {
+                    HttpResponse response = transport.execute(new HttpRequest("GET", url));
+                    InputStream body = response.getBody();
+                    byte[] buffer = new byte[4096];
+                    while (body.read(buffer) != -1)
+                        ;
+                    response.close();
+                    return response.getCode();
+                }
+            }));
+        }
+        for (Future<Integer> result : results)
+            result.get();
+        executor.shutdown();
+    }
+}
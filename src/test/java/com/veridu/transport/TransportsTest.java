@@ -0,0 +1,54 @@
+package com.veridu.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class TransportsTest {
+
+    @Test
+    public void testPooled() {
+        assertTrue(Transports.pooled() instanceof PooledTransport);
+    }
+
+    @Test
+    public void testLegacy() {
+        assertTrue(Transports.legacy() instanceof LegacyTransport);
+    }
+
+    @Test
+    public void testCompressed() {
+        Transport pooled = Transports.pooled();
+        assertTrue(Transports.compressed(pooled).getTransport() == pooled);
+    }
+
+    @Test
+    public void testNio() throws IOException {
+        NioTransport transport = Transports.nio();
+        assertTrue(transport.getIoThreads() >= 1);
+        transport.close();
+    }
+
+    @Test
+    public void testHttp2MatchesAvailability() throws IOException {
+        if (!Transports.isHttp2Available()) {
+            try {
+                Transports.http2();
+            } catch (UnsupportedOperationException e) {
+                return;
+            }
+            throw new AssertionError("http2() must fail when the transport is not available");
+        }
+        StubServer server = new StubServer();
+        try {
+            HttpResponse response = Transports.http2().execute(new HttpRequest("GET", server.url("/a")));
+            assertEquals(200, response.getCode());
+            assertEquals("{\"status\":true}", PooledTransportTest.body(response));
+        } finally {
+            server.stop();
+        }
+    }
+}